@@ -30,6 +30,12 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    testOptions {
+        unitTests.all {
+            // Timing runs only on request: ./gradlew testDebugUnitTest -Pbenchmark=true
+            it.systemProperty("benchmark", providers.gradleProperty("benchmark").getOrElse("false"))
+        }
+    }
 }
 
 dependencies {
@@ -16,30 +16,45 @@ import androidx.core.graphics.drawable.DrawableCompat;
 import androidx.core.view.ViewCompat;
 
 import com.example.kombuchaapp.NotificationHelper;
+import com.example.kombuchaapp.readings.SensorSamples;
 import com.google.android.material.snackbar.Snackbar;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public final class AlertAdapter {
     private AlertAdapter() {}
 
-    private static TemperatureAlert.Level lastLevelShown = null;
+    // Debounced per sensor, so one probe's alert doesn't hide another's
+    private static final Map<String, TemperatureAlert.Level> lastLevelShown = new HashMap<>();
     private static long lastSevereAtMs = 0;
     private static final long SEVERE_COOLDOWN_MS = 60_000;
 
-    private static long lastCriticalPushAtMs = 0;
+    private static final Map<String, Long> lastCriticalPushAtMs = new HashMap<>();
     private static final long CRITICAL_PUSH_COOLDOWN = 5 * 60_000;
 
+    private static final int OFFLINE_COLOR = Color.parseColor("#757575");
+
     public static void handleNewReading(Activity activity, String recipeId, float tempF, View statusPill) {
+        handleNewReading(activity, recipeId, SensorSamples.DEFAULT_SENSOR, tempF, statusPill);
+    }
+
+    // statusPill may be null for a sensor that isn't the one on show
+    public static void handleNewReading(Activity activity, String recipeId, String sensorId,
+                                        float tempF, View statusPill) {
+        String sensor = SensorSamples.sensorOrDefault(sensorId);
         TemperatureAlert.Result r = TemperatureAlert.evaluateF(tempF);
         View root = activity.findViewById(android.R.id.content);
 
         if (r.level != TemperatureAlert.Level.OPTIMAL
                 && r.level != TemperatureAlert.Level.UNKNOWN
-                && r.level != lastLevelShown) {
-            Snackbar sb = Snackbar.make(root, r.title + " • " + r.message, Snackbar.LENGTH_LONG);
+                && r.level != lastLevelShown.get(sensor)) {
+            Snackbar sb = Snackbar.make(root, sensorPrefix(sensor) + r.title + " • " + r.message,
+                    Snackbar.LENGTH_LONG);
             sb.setBackgroundTint(r.color);
             sb.setTextMaxLines(3);
             sb.show();
-            lastLevelShown = r.level;
+            lastLevelShown.put(sensor, r.level);
         }
 
         if (statusPill != null) {
@@ -78,13 +93,15 @@ public final class AlertAdapter {
         }
 
         if (r.level == TemperatureAlert.Level.CRITICAL) {
-            if (now - lastCriticalPushAtMs > CRITICAL_PUSH_COOLDOWN) {
-                lastCriticalPushAtMs = now;
+            Long lastPush = lastCriticalPushAtMs.get(sensor);
+            if (lastPush == null || now - lastPush > CRITICAL_PUSH_COOLDOWN) {
+                lastCriticalPushAtMs.put(sensor, now);
                 Context ctx = activity.getApplicationContext();
                 NotificationHelper.notifyCritical(
                         ctx,
                         recipeId != null ? recipeId : "",
-                        r.title,
+                        sensor,
+                        sensorPrefix(sensor) + r.title,
                         r.message,
                         tempF
                 );
@@ -92,10 +109,29 @@ public final class AlertAdapter {
         }
     }
 
+    // The sensor stopped reporting; the pill says so instead of showing its last level
+    public static void showSensorOffline(View statusPill, String sensorId, long lastReadingMs) {
+        if (statusPill == null) {
+            return;
+        }
+        statusPill.setVisibility(View.VISIBLE);
+        tintBadge(statusPill, OFFLINE_COLOR);
+        if (statusPill instanceof android.widget.TextView) {
+            ((android.widget.TextView) statusPill).setText("OFFLINE");
+        }
+        String time = android.text.format.DateFormat.getTimeFormat(statusPill.getContext()).format(lastReadingMs);
+        statusPill.setContentDescription("Temperature status: " + sensorPrefix(sensorId)
+                + "sensor offline, no readings since " + time);
+    }
+
     public static void resetDebounce() {
-        lastLevelShown = null;
+        lastLevelShown.clear();
         lastSevereAtMs = 0;
-        lastCriticalPushAtMs = 0;
+        lastCriticalPushAtMs.clear();
+    }
+
+    private static String sensorPrefix(String sensorId) {
+        return SensorSamples.DEFAULT_SENSOR.equals(sensorId) ? "" : sensorId + ": ";
     }
 
     private static void tintBadge(View v, int toColor) {
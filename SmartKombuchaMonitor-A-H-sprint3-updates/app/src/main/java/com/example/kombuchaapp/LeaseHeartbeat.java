@@ -0,0 +1,123 @@
+package com.example.kombuchaapp;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.kombuchaapp.repositories.SensorControlRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Keeps the sensor leases of the brews this phone owns alive while the
+ * app runs: one small transaction per recipe every
+ * SensorControlRepository.HEARTBEAT_MS, on one Handler tick for all of
+ * them. A sensor another brew has taken over is dropped from its lease. Sensors are expected to renew their own lease too, so a brew
+ * doesn't depend on the app staying open; this only covers the gap.
+ *
+ * App-scoped, main thread only.
+ */
+
+public class LeaseHeartbeat {
+
+    private static final String TAG = "LeaseHeartbeat";
+
+    private static LeaseHeartbeat instance;
+
+    private final SensorControlRepository sensorControl = new SensorControlRepository();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, Lease> leases = new HashMap<>();
+    private final Runnable tick = this::onTick;
+    private boolean ticking;
+
+    public static synchronized LeaseHeartbeat getInstance() {
+        if (instance == null) {
+            instance = new LeaseHeartbeat();
+        }
+        return instance;
+    }
+
+    private LeaseHeartbeat() {
+    }
+
+    /*
+     * The recipe is brewing on these sensors. Renews straight away unless
+     * this process already did within the last heartbeat, so reopening a
+     * screen doesn't cost a write.
+     */
+    public void watch(String recipeId, List<String> sensorIds) {
+        Lease lease = leases.get(recipeId);
+        if (lease == null) {
+            lease = new Lease(recipeId);
+            leases.put(recipeId, lease);
+        }
+        if (!lease.sensorIds.equals(sensorIds)) {
+            lease.sensorIds = new ArrayList<>(sensorIds);
+            lease.renewedMs = 0;
+        }
+        if (System.currentTimeMillis() - lease.renewedMs >= SensorControlRepository.HEARTBEAT_MS) {
+            renew(lease);
+        }
+        if (!ticking) {
+            ticking = true;
+            mainHandler.postDelayed(tick, SensorControlRepository.HEARTBEAT_MS);
+        }
+    }
+
+    // Not brewing any more; its sensors were released with the status change
+    public void forget(String recipeId) {
+        leases.remove(recipeId);
+    }
+
+    private void onTick() {
+        long now = System.currentTimeMillis();
+        for (Lease lease : leases.values()) {
+            // A watch() in between may have renewed it already
+            if (now - lease.renewedMs >= SensorControlRepository.HEARTBEAT_MS / 2) {
+                renew(lease);
+            }
+        }
+
+        ticking = !leases.isEmpty();
+        if (ticking) {
+            mainHandler.postDelayed(tick, SensorControlRepository.HEARTBEAT_MS);
+        }
+    }
+
+    private void renew(Lease lease) {
+        lease.renewedMs = System.currentTimeMillis();
+        sensorControl.renewLeases(lease.recipeId, lease.sensorIds, new SensorControlRepository.OnLeasesRenewedListener() {
+            @Override
+            public void onRenewed(List<String> heldSensorIds) {
+                Log.d(TAG, "Renewed " + heldSensorIds + " for recipe " + lease.recipeId);
+                if (heldSensorIds.size() == lease.sensorIds.size()) {
+                    return;
+                }
+                Log.i(TAG, "Recipe " + lease.recipeId + " no longer holds some of " + lease.sensorIds);
+                lease.sensorIds = heldSensorIds;
+                if (heldSensorIds.isEmpty() && leases.get(lease.recipeId) == lease) {
+                    leases.remove(lease.recipeId);
+                }
+            }
+
+            @Override
+            public void onFailure(String error) {
+                // Try again on the next tick
+                lease.renewedMs = 0;
+            }
+        });
+    }
+
+    private static class Lease {
+        final String recipeId;
+        List<String> sensorIds = new ArrayList<>();
+        long renewedMs;
+
+        Lease(String recipeId) {
+            this.recipeId = recipeId;
+        }
+    }
+}
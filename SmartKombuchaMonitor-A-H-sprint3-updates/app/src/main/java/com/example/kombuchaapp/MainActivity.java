@@ -21,6 +21,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.kombuchaapp.models.Recipe;
 import com.example.kombuchaapp.repositories.RecipeRepository;
+import com.example.kombuchaapp.repositories.SensorAssignments;
 import com.google.firebase.analytics.FirebaseAnalytics;
 import com.google.firebase.auth.FirebaseAuth;
 
@@ -40,6 +41,8 @@ public class MainActivity extends AppCompatActivity implements RecipeAdapter.OnR
     private FirebaseAuth fAuth;
     private RecipeRepository recipeRepository;
     private RecipeAdapter recipeAdapter;
+    // Nothing to redraw; listening keeps the cache warm for deleting recipes
+    private final SensorAssignments.OnAssignmentsChangedListener assignmentsListener = () -> { };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -56,6 +59,8 @@ public class MainActivity extends AppCompatActivity implements RecipeAdapter.OnR
         mFirebaseAnalytics = FirebaseAnalytics.getInstance(this);
         fAuth = FirebaseAuth.getInstance();
         recipeRepository = new RecipeRepository();
+        // Watches the user's brewing sensors from here on, in the background too
+        StalenessMonitor.getInstance(this).start();
 
         // Initialize existing buttons
         newRecipeButton = findViewById(R.id.NewRecipeButton);
@@ -129,6 +134,18 @@ public class MainActivity extends AppCompatActivity implements RecipeAdapter.OnR
         popup.show();
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        SensorAssignments.getInstance().addListener(assignmentsListener);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        SensorAssignments.getInstance().removeListener(assignmentsListener);
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -164,6 +181,7 @@ public class MainActivity extends AppCompatActivity implements RecipeAdapter.OnR
     }
 
     private void logout() {
+        StalenessMonitor.getInstance(this).stop();
         fAuth.signOut();
         Toast.makeText(this, "Logged out successfully", Toast.LENGTH_SHORT).show();
         Intent intent = new Intent(MainActivity.this, Login.class);
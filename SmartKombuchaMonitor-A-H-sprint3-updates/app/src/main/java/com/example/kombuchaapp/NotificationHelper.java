@@ -8,6 +8,7 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
 import android.os.Build;
+import android.text.format.DateFormat;
 
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationManagerCompat;
@@ -24,8 +25,13 @@ public final class NotificationHelper {
     private static final String CHANNEL_NAME_PH = "pH Alerts";
     private static final String CHANNEL_DESC_PH = "Kombucha pH phase and harvest alerts";
 
+    public static final String CHANNEL_ID_SENSOR = "sensor_status";
+    private static final String CHANNEL_NAME_SENSOR = "Sensor Status";
+    private static final String CHANNEL_DESC_SENSOR = "Alerts when a brew's sensor stops reporting";
+
     private static final int ID_BASE_CRITICAL = 40000;
     private static final int ID_BASE_PH = 41000;
+    private static final int ID_BASE_SENSOR = 42000;
 
     public static void ensureChannels(Context context) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -51,6 +57,17 @@ public final class NotificationHelper {
             chPh.setLightColor(Color.GREEN);
             chPh.enableVibration(true);
             nm.createNotificationChannel(chPh);
+
+            NotificationChannel chSensor = new NotificationChannel(
+                    CHANNEL_ID_SENSOR,
+                    CHANNEL_NAME_SENSOR,
+                    NotificationManager.IMPORTANCE_HIGH
+            );
+            chSensor.setDescription(CHANNEL_DESC_SENSOR);
+            chSensor.enableLights(true);
+            chSensor.setLightColor(Color.YELLOW);
+            chSensor.enableVibration(true);
+            nm.createNotificationChannel(chSensor);
         }
     }
 
@@ -59,6 +76,16 @@ public final class NotificationHelper {
                                       String title,
                                       String message,
                                       float currentF) {
+        notifyCritical(context, recipeId, null, title, message, currentF);
+    }
+
+    // Each sensor gets its own notification (tagged with sensorId), so a second probe doesn't replace the first
+    public static void notifyCritical(Context context,
+                                      String recipeId,
+                                      String sensorId,
+                                      String title,
+                                      String message,
+                                      float currentF) {
 
         ensureChannels(context);
 
@@ -103,7 +130,7 @@ public final class NotificationHelper {
 
         int notifId = ID_BASE_CRITICAL + Math.abs(reqCode);
         try {
-            nmc.notify(notifId, nb.build());
+            nmc.notify(sensorId, notifId, nb.build());
         } catch (SecurityException ignored) {
         }
     }
@@ -161,4 +188,67 @@ public final class NotificationHelper {
         } catch (SecurityException ignored) {
         }
     }
-}
\ No newline at end of file
+
+    // One per recipe and sensor (tagged with sensorId), cleared again by cancelSensorOffline
+    public static void notifySensorOffline(Context context,
+                                           String recipeId,
+                                           String sensorId,
+                                           long lastReadingMs) {
+
+        ensureChannels(context);
+
+        NotificationManagerCompat nmc = NotificationManagerCompat.from(context);
+        if (!nmc.areNotificationsEnabled()) {
+            return;
+        }
+
+        if (Build.VERSION.SDK_INT >= 33) {
+            int granted = ContextCompat.checkSelfPermission(
+                    context, android.Manifest.permission.POST_NOTIFICATIONS);
+            if (granted != PackageManager.PERMISSION_GRANTED) {
+                return;
+            }
+        }
+
+        Intent intent = new Intent(context, ViewRecipeActivity.class);
+        intent.putExtra("recipe_id", recipeId);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+
+        int reqCode = (recipeId != null ? recipeId.hashCode() : 0) ^ 0x00FF00FF;
+        PendingIntent pi = PendingIntent.getActivity(
+                context,
+                reqCode,
+                intent,
+                Build.VERSION.SDK_INT >= 23
+                        ? PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+                        : PendingIntent.FLAG_UPDATE_CURRENT
+        );
+
+        String sensor = sensorId == null || sensorId.isEmpty() ? "Sensor" : "Sensor " + sensorId;
+        String title = sensor + " offline";
+        String content = "No readings since "
+                + DateFormat.getTimeFormat(context).format(lastReadingMs)
+                + ". The values shown may be out of date; check the probe and its Wi-Fi.";
+
+        NotificationCompat.Builder nb = new NotificationCompat.Builder(context, CHANNEL_ID_SENSOR)
+                .setSmallIcon(android.R.drawable.stat_notify_error)
+                .setContentTitle(title)
+                .setContentText(content)
+                .setStyle(new NotificationCompat.BigTextStyle().bigText(content))
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setCategory(NotificationCompat.CATEGORY_ERROR)
+                .setContentIntent(pi)
+                .setAutoCancel(true);
+
+        int notifId = ID_BASE_SENSOR + Math.abs(reqCode);
+        try {
+            nmc.notify(sensorId, notifId, nb.build());
+        } catch (SecurityException ignored) {
+        }
+    }
+
+    public static void cancelSensorOffline(Context context, String recipeId, String sensorId) {
+        int reqCode = (recipeId != null ? recipeId.hashCode() : 0) ^ 0x00FF00FF;
+        NotificationManagerCompat.from(context).cancel(sensorId, ID_BASE_SENSOR + Math.abs(reqCode));
+    }
+}
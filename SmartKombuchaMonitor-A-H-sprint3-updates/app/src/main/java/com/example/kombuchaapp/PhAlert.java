@@ -3,6 +3,10 @@ package com.example.kombuchaapp;
 public final class PhAlert {
     private PhAlert() {}
 
+    // The brew is ready once its pH is within HARVEST_TOLERANCE of HARVEST_PH
+    public static final float HARVEST_PH = 3.0f;
+    public static final float HARVEST_TOLERANCE = 0.05f;
+
     public enum Level {
         SWEET,
         TANGY,
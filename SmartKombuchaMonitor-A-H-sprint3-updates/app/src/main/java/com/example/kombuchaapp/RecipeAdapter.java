@@ -18,7 +18,11 @@ import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.kombuchaapp.models.Recipe;
+import com.example.kombuchaapp.repositories.BrewArchiveRepository;
+import com.example.kombuchaapp.repositories.LocalReadingsStore;
 import com.example.kombuchaapp.repositories.RecipeRepository;
+import com.example.kombuchaapp.repositories.SensorAssignments;
+import com.example.kombuchaapp.repositories.SensorControlRepository;
 import com.google.firebase.Timestamp;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
@@ -29,10 +33,8 @@ import com.google.firebase.firestore.FirebaseFirestore;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 
 public class RecipeAdapter extends RecyclerView.Adapter<RecipeAdapter.RecipeViewHolder> {
 
@@ -439,6 +441,8 @@ public class RecipeAdapter extends RecyclerView.Adapter<RecipeAdapter.RecipeView
                 recipeRepository.deleteRecipe(recipe.getRecipeId(), new RecipeRepository.OnUpdateListener() {
                     @Override
                     public void onSuccess(String message) {
+                        LocalReadingsStore.getInstance(context).clearRecipe(recipe.getRecipeId());
+                        new BrewArchiveRepository(context).deleteArchive(recipe.getRecipeId());
                         removeRecipe(position);
                         Toast.makeText(context, message, Toast.LENGTH_SHORT).show();
                         if (deleteListener != null) {
@@ -455,29 +459,23 @@ public class RecipeAdapter extends RecyclerView.Adapter<RecipeAdapter.RecipeView
         }
 
         private void removeRecipeForSensors(String deletedRecipeId) {
-            // First, read the current active_config document
-            db.collection("sensor_control").document("active_config").get()
-                    .addOnSuccessListener(documentSnapshot -> {
-                        if (documentSnapshot.exists()) {
-                            String activeRecipeId = documentSnapshot.getString("active_recipe_id");
-
-                            // Check if the deleted recipe is the one that's currently active
-                            if (deletedRecipeId.equals(activeRecipeId)) {
-                                // If it is, clear the active config by setting fields to null
-                                Map<String, Object> updates = new HashMap<>();
-                                updates.put("active_recipe_id", null);
-                                updates.put("active_user_id", null);
-
-                                db.collection("sensor_control").document("active_config")
-                                        .update(updates)
-                                        .addOnSuccessListener(aVoid -> {
-                                            Log.d(TAG, "Active recipe cleared from sensor_control because it was deleted.");
-                                        })
-                                        .addOnFailureListener(e -> Log.e(TAG, "Failed to clear active recipe from sensor_control", e));
-                            }
-                        }
-                    })
-                    .addOnFailureListener(e -> Log.e(TAG, "Failed to check active sensor config", e));
+            SensorAssignments assignments = SensorAssignments.getInstance();
+            if (assignments.isLoaded() && assignments.sensorsOf(deletedRecipeId).isEmpty()) {
+                // Nothing points at it, as for any recipe that isn't brewing; no need to ask the server
+                return;
+            }
+            // Frees only the sensors pointed at the deleted recipe; other brews keep theirs
+            new SensorControlRepository().releaseSensors(deletedRecipeId, new RecipeRepository.OnUpdateListener() {
+                @Override
+                public void onSuccess(String message) {
+                    Log.d(TAG, message + " because recipe " + deletedRecipeId + " was deleted.");
+                }
+
+                @Override
+                public void onFailure(String error) {
+                    Log.e(TAG, "Failed to release sensors of deleted recipe: " + error);
+                }
+            });
         }
     }
 }
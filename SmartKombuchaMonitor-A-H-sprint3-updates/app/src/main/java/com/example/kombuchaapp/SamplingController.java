@@ -0,0 +1,144 @@
+package com.example.kombuchaapp;
+
+import android.util.Log;
+
+import com.example.kombuchaapp.readings.ReadingSeries;
+import com.example.kombuchaapp.readings.TimeSeriesBuffer;
+import com.example.kombuchaapp.repositories.RecipeRepository;
+import com.example.kombuchaapp.repositories.SensorControlRepository;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/*
+ * Keeps each brewing sensor's sample_interval_ms in sensor_control in
+ * line with its SamplingPolicy. Fed the clean readings of the brews on
+ * screen; writes only for live readings, so loading a brew's history
+ * trains the policy without a write per page.
+ *
+ * Nothing watches a brew once its screen has gone, so an interval
+ * sparser than the sensor's own is only written for
+ * SamplingPolicy.VALID_MS and renewed halfway through while readings
+ * keep coming. It is also cleared as soon as the screen stops listening,
+ * and one left behind by a crash lapses by itself. DENSE_MS is the
+ * sensor's own rate, so it clears the field rather than being written.
+ *
+ * App-scoped, main thread only.
+ */
+
+public class SamplingController {
+
+    private static final String TAG = "SamplingController";
+    // Readings older than this are history being loaded rather than the sensor now
+    private static final long LIVE_MS = 2 * SamplingPolicy.SPARSE_MS;
+    // publishedMs after a failed write, so the next reading writes again
+    private static final long UNKNOWN = 0;
+
+    private static SamplingController instance;
+
+    private final SensorControlRepository sensorControl = new SensorControlRepository();
+    private final Map<String, Sensor> sensors = new HashMap<>();
+
+    public static synchronized SamplingController getInstance() {
+        if (instance == null) {
+            instance = new SamplingController();
+        }
+        return instance;
+    }
+
+    private SamplingController() {
+    }
+
+    // samples must belong to a sensor the recipe has claimed
+    public void onSamples(String recipeId, String sensorId, ReadingSeries series, TimeSeriesBuffer samples) {
+        if (samples.size() == 0) {
+            return;
+        }
+        Sensor sensor = sensors.get(sensorId);
+        if (sensor == null || !sensor.recipeId.equals(recipeId)) {
+            sensor = new Sensor(recipeId);
+            sensors.put(sensorId, sensor);
+        }
+        for (int i = 0; i < samples.size(); i++) {
+            if (series == ReadingSeries.TEMPERATURE) {
+                sensor.policy.addTemperatureC(samples.timeAt(i), samples.valueAt(i));
+            } else {
+                sensor.policy.addPh(samples.timeAt(i), samples.valueAt(i));
+            }
+        }
+
+        long latestMs = samples.timeAt(samples.size() - 1);
+        long now = System.currentTimeMillis();
+        if (now - latestMs <= LIVE_MS) {
+            publish(sensorId, sensor, now);
+        }
+    }
+
+    // The recipe's readings stopped streaming; its sensors go back to their own rate
+    public void pauseRecipe(String recipeId) {
+        for (Map.Entry<String, Sensor> entry : sensors.entrySet()) {
+            Sensor sensor = entry.getValue();
+            if (sensor.recipeId.equals(recipeId) && sensor.publishedMs != SamplingPolicy.DENSE_MS) {
+                write(entry.getKey(), sensor, SamplingPolicy.DENSE_MS, 0);
+            }
+        }
+    }
+
+    // Not brewing any more; releasing its sensors cleared their intervals
+    public void forget(String recipeId) {
+        Iterator<Sensor> it = sensors.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().recipeId.equals(recipeId)) {
+                it.remove();
+            }
+        }
+    }
+
+    private void publish(String sensorId, Sensor sensor, long nowMs) {
+        long intervalMs = sensor.policy.intervalMs();
+        if (intervalMs == SamplingPolicy.DENSE_MS) {
+            if (sensor.publishedMs != SamplingPolicy.DENSE_MS) {
+                write(sensorId, sensor, intervalMs, 0);
+            }
+        } else if (intervalMs != sensor.publishedMs || nowMs >= sensor.renewAtMs) {
+            write(sensorId, sensor, intervalMs, nowMs + SamplingPolicy.VALID_MS);
+        }
+    }
+
+    // validUntilMs 0 clears the interval
+    private void write(String sensorId, Sensor sensor, long intervalMs, long validUntilMs) {
+        sensor.publishedMs = intervalMs;
+        sensor.renewAtMs = validUntilMs == 0 ? Long.MAX_VALUE : validUntilMs - SamplingPolicy.VALID_MS / 2;
+        sensorControl.setSampleInterval(sensorId, intervalMs, validUntilMs, new RecipeRepository.OnUpdateListener() {
+            @Override
+            public void onSuccess(String message) {
+                Log.d(TAG, "Sensor " + sensorId + " now samples every " + intervalMs / 1000 + "s");
+            }
+
+            @Override
+            public void onFailure(String error) {
+                // Written again with the next live reading
+                if (sensor.publishedMs == intervalMs) {
+                    sensor.publishedMs = UNKNOWN;
+                }
+            }
+        });
+    }
+
+    private static class Sensor {
+        final String recipeId;
+        final SamplingPolicy policy = new SamplingPolicy();
+        /*
+         * What sensor_control holds as far as this process knows. Starts as
+         * the sensor's own rate: anything an earlier run left there lapses
+         * within VALID_MS.
+         */
+        long publishedMs = SamplingPolicy.DENSE_MS;
+        long renewAtMs = Long.MAX_VALUE;
+
+        Sensor(String recipeId) {
+            this.recipeId = recipeId;
+        }
+    }
+}
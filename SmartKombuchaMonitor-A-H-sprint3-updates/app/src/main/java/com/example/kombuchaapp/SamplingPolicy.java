@@ -0,0 +1,149 @@
+package com.example.kombuchaapp;
+
+import com.example.kombuchaapp.readings.FermentationRate;
+import com.example.kombuchaapp.readings.TimestampParser;
+
+/*
+ * How often one sensor should write readings, from what its readings say
+ * about the brew. A brew sitting in the optimal range days before harvest
+ * hardly changes between readings; one drifting towards an alert
+ * threshold or about to reach its harvest pH needs every one.
+ *
+ * - DENSE_MS before the first temperature reading, while the temperature
+ *   is dormant, critical or lethal, while it is within reach of a level
+ *   boundary (a margin plus an hour of its current drift), and while the
+ *   pH is closing in on harvest or projected to get there within
+ *   HARVEST_LOOKAHEAD_MS.
+ * - SPARSE_MS while the temperature is optimal and steady.
+ * - NORMAL_MS otherwise.
+ *
+ * It goes denser at once but sparser only after the sparser interval has
+ * fit for LOOSEN_AFTER_MS, so a reading hovering at a margin doesn't make
+ * it flap. Time is taken from the readings rather than the clock, so a
+ * recorded brew replays the same.
+ *
+ * Readings must be time-ordered per series; older ones are ignored.
+ * Not thread-safe.
+ */
+public class SamplingPolicy {
+
+    // What sensors do without being told, so also the safe default
+    public static final long DENSE_MS = 30 * TimestampParser.MS_PER_SECOND;
+    public static final long NORMAL_MS = 2 * TimestampParser.MS_PER_MINUTE;
+    // Well inside SensorGaps.GAP_MS, so a missed write doesn't mark the sensor offline
+    public static final long SPARSE_MS = 5 * TimestampParser.MS_PER_MINUTE;
+    // How long a written interval holds before the sensor goes back to DENSE_MS on its own
+    public static final long VALID_MS = 30 * TimestampParser.MS_PER_MINUTE;
+
+    private static final long LOOSEN_AFTER_MS = 30 * TimestampParser.MS_PER_MINUTE;
+    private static final long HARVEST_LOOKAHEAD_MS = 6 * TimestampParser.MS_PER_HOUR;
+    private static final float NEAR_BOUNDARY_F = 1f;
+    private static final float NEAR_HARVEST_PH = 0.05f;
+    private static final double STEADY_F_PER_HOUR = 0.5;
+    // Time constant of the temperature smoothing the drift is taken from
+    private static final double SMOOTHING_MS = 20 * TimestampParser.MS_PER_MINUTE;
+    private static final double MS_PER_HOUR = TimestampParser.MS_PER_HOUR;
+
+    private final FermentationRate phRate = new FermentationRate();
+    private float latestPh = Float.NaN;
+    private long phTimeMs = Long.MIN_VALUE;
+
+    private float latestTempF = Float.NaN;
+    private double smoothedTempF;
+    private double driftFPerHour;
+    private long tempTimeMs = Long.MIN_VALUE;
+
+    private long intervalMs = DENSE_MS;
+    // When the wanted interval first got sparser than intervalMs, or -1
+    private long sparserSinceMs = -1;
+
+    public void addTemperatureC(long timeMs, float tempC) {
+        if (timeMs <= tempTimeMs || Float.isNaN(tempC) || Float.isInfinite(tempC)) {
+            return;
+        }
+        float tempF = tempC * 9f / 5f + 32f;
+        if (tempTimeMs == Long.MIN_VALUE) {
+            smoothedTempF = tempF;
+        } else {
+            double dtMs = timeMs - tempTimeMs;
+            double alpha = 1 - Math.exp(-dtMs / SMOOTHING_MS);
+            double previous = smoothedTempF;
+            smoothedTempF += alpha * (tempF - smoothedTempF);
+            double slope = (smoothedTempF - previous) / (dtMs / MS_PER_HOUR);
+            driftFPerHour += alpha * (slope - driftFPerHour);
+        }
+        latestTempF = tempF;
+        tempTimeMs = timeMs;
+        update(timeMs);
+    }
+
+    public void addPh(long timeMs, float ph) {
+        if (timeMs <= phTimeMs || Float.isNaN(ph) || Float.isInfinite(ph)) {
+            return;
+        }
+        phRate.add(timeMs, ph);
+        latestPh = ph;
+        phTimeMs = timeMs;
+        update(timeMs);
+    }
+
+    // The interval the sensor should use from now on
+    public long intervalMs() {
+        return intervalMs;
+    }
+
+    // What the latest readings call for, before the hysteresis
+    long wantedMs() {
+        if (Float.isNaN(latestTempF)) {
+            return DENSE_MS;
+        }
+        TemperatureAlert.Level level = TemperatureAlert.levelF(latestTempF);
+        if (level != TemperatureAlert.Level.OPTIMAL && level != TemperatureAlert.Level.WARNING) {
+            return DENSE_MS;
+        }
+        double reach = NEAR_BOUNDARY_F + Math.abs(driftFPerHour);
+        if (TemperatureAlert.distanceToBoundaryF((float) smoothedTempF) <= reach
+                || TemperatureAlert.distanceToBoundaryF(latestTempF) <= NEAR_BOUNDARY_F) {
+            return DENSE_MS;
+        }
+        if (isNearHarvest()) {
+            return DENSE_MS;
+        }
+        if (level == TemperatureAlert.Level.OPTIMAL && Math.abs(driftFPerHour) <= STEADY_F_PER_HOUR) {
+            return SPARSE_MS;
+        }
+        return NORMAL_MS;
+    }
+
+    private boolean isNearHarvest() {
+        if (Float.isNaN(latestPh)) {
+            return false;
+        }
+        float readyPh = PhAlert.HARVEST_PH + PhAlert.HARVEST_TOLERANCE;
+        // Once there the harvest notification has gone out; the fit keeps one noisy reading from deciding
+        double ph = phRate.hasFit() ? phRate.fittedPh() : latestPh;
+        if (ph <= readyPh) {
+            return false;
+        }
+        if (ph <= readyPh + NEAR_HARVEST_PH) {
+            return true;
+        }
+        long eta = phRate.etaMs(readyPh);
+        return eta != FermentationRate.NO_ETA && eta - phRate.lastTimeMs() <= HARVEST_LOOKAHEAD_MS;
+    }
+
+    private void update(long timeMs) {
+        long wanted = wantedMs();
+        if (wanted < intervalMs) {
+            intervalMs = wanted;
+            sparserSinceMs = -1;
+        } else if (wanted == intervalMs) {
+            sparserSinceMs = -1;
+        } else if (sparserSinceMs < 0) {
+            sparserSinceMs = timeMs;
+        } else if (timeMs - sparserSinceMs >= LOOSEN_AFTER_MS) {
+            intervalMs = wanted;
+            sparserSinceMs = -1;
+        }
+    }
+}
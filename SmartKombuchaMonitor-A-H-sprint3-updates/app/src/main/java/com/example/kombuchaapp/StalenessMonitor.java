@@ -0,0 +1,335 @@
+package com.example.kombuchaapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.kombuchaapp.readings.ReadingChunks;
+import com.example.kombuchaapp.readings.ReadingSeries;
+import com.example.kombuchaapp.readings.SensorGaps;
+import com.example.kombuchaapp.readings.SensorSamples;
+import com.example.kombuchaapp.readings.TimerWheel;
+import com.example.kombuchaapp.readings.TimestampParser;
+import com.example.kombuchaapp.repositories.SensorAssignments;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Notices when a brewing recipe's sensor stops reporting, including while
+ * the app is in the background. Every reading pushes that sensor's
+ * deadline to SensorGaps.GAP_MS after it; all deadlines live in one
+ * TimerWheel driven by a single once-a-minute tick, so there is no timer
+ * per sensor. A missed deadline marks the sensor offline and posts a
+ * "sensor offline" notification; its next reading clears both.
+ *
+ * Once started, it follows every brew SensorAssignments says this user's
+ * sensors are assigned to, whether or not a screen shows it: one document
+ * listener per sensor and series on the current hour's chunk and the one
+ * before (see ReadingChunks), moved along on the hour. That costs a read
+ * per chunk write, not the recipe's whole readings stream. Screens that do
+ * stream readings pass them on too.
+ *
+ * App-scoped, main thread only.
+ */
+
+public class StalenessMonitor {
+
+    private static final String TAG = "StalenessMonitor";
+    private static final long TICK_MS = TimestampParser.MS_PER_MINUTE;
+    private static final int WHEEL_SLOTS = 64;
+    // Room for a freshly attached listener to catch up before judging a sensor
+    private static final long GRACE_MS = TICK_MS;
+
+    private static StalenessMonitor instance;
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final TimerWheel<Watch> wheel = new TimerWheel<>(TICK_MS, WHEEL_SLOTS, System.currentTimeMillis());
+    private final Map<String, Map<String, Watch>> byRecipe = new HashMap<>();
+    // Brews followed in the background, by recipe
+    private final Map<String, Follow> followed = new HashMap<>();
+    private final List<OnStalenessListener> listeners = new ArrayList<>();
+    private final List<Watch> expired = new ArrayList<>();
+    private final Runnable tick = this::onTick;
+    private final SensorAssignments.OnAssignmentsChangedListener assignmentsListener = this::onAssignmentsChanged;
+    private boolean ticking;
+    private boolean started;
+
+    public static synchronized StalenessMonitor getInstance(Context context) {
+        if (instance == null) {
+            instance = new StalenessMonitor(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private StalenessMonitor(Context context) {
+        this.context = context;
+    }
+
+    // Follows this user's brews from now on, screen or not; harmless if already started
+    public void start() {
+        if (started || FirebaseAuth.getInstance().getCurrentUser() == null) {
+            return;
+        }
+        started = true;
+        SensorAssignments.getInstance().addListener(assignmentsListener);
+    }
+
+    // On logout: the brews are someone else's from here
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        SensorAssignments.getInstance().removeListener(assignmentsListener);
+        for (String recipeId : new ArrayList<>(followed.keySet())) {
+            forgetRecipe(recipeId);
+        }
+    }
+
+    public void addListener(OnStalenessListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(OnStalenessListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Any series counts; a sensor is online as long as it sends something
+    public void onReading(String recipeId, String sensorId, long readingMs) {
+        Watch watch = watchFor(recipeId, SensorSamples.sensorOrDefault(sensorId));
+        if (readingMs <= watch.lastReadingMs) {
+            // Older page or a late reading, says nothing about now
+            return;
+        }
+        watch.lastReadingMs = readingMs;
+        arm(watch);
+        if (watch.offline) {
+            watch.offline = false;
+            NotificationHelper.cancelSensorOffline(context, recipeId, watch.sensorId);
+            for (OnStalenessListener listener : new ArrayList<>(listeners)) {
+                listener.onSensorOnline(recipeId, watch.sensorId);
+            }
+        }
+    }
+
+    public boolean isOffline(String recipeId, String sensorId) {
+        Map<String, Watch> watches = byRecipe.get(recipeId);
+        Watch watch = watches != null ? watches.get(SensorSamples.sensorOrDefault(sensorId)) : null;
+        return watch != null && watch.offline;
+    }
+
+    // The brew is over (or gone); stops watching it and clears its notifications
+    public void forgetRecipe(String recipeId) {
+        Follow follow = followed.remove(recipeId);
+        if (follow != null) {
+            follow.detach();
+        }
+        Map<String, Watch> watches = byRecipe.remove(recipeId);
+        if (watches == null) {
+            return;
+        }
+        for (Watch watch : watches.values()) {
+            wheel.cancel(watch);
+            if (watch.offline) {
+                NotificationHelper.cancelSensorOffline(context, recipeId, watch.sensorId);
+            }
+        }
+    }
+
+    /*
+     * Brews come and go with their sensor assignments: a brew that is
+     * paused, completed or deleted lets its sensors go. Kept as it is while
+     * the assignments aren't loaded.
+     */
+    private void onAssignmentsChanged() {
+        SensorAssignments assignments = SensorAssignments.getInstance();
+        if (!started || !assignments.isLoaded()) {
+            return;
+        }
+        Map<String, List<String>> brews = assignments.sensorsByRecipe();
+        for (String recipeId : new ArrayList<>(followed.keySet())) {
+            if (!brews.containsKey(recipeId)) {
+                forgetRecipe(recipeId);
+            }
+        }
+        for (Map.Entry<String, List<String>> brew : brews.entrySet()) {
+            Follow follow = followed.get(brew.getKey());
+            if (follow != null && follow.sensorIds.equals(brew.getValue())) {
+                continue;
+            }
+            if (follow != null) {
+                follow.detach();
+                dropSensorsNotIn(brew.getKey(), brew.getValue());
+            }
+            follow = new Follow(brew.getKey(), brew.getValue());
+            followed.put(brew.getKey(), follow);
+            attach(follow);
+        }
+    }
+
+    // A sensor taken off the brew is expected to go quiet
+    private void dropSensorsNotIn(String recipeId, List<String> sensorIds) {
+        Map<String, Watch> watches = byRecipe.get(recipeId);
+        if (watches == null) {
+            return;
+        }
+        for (Iterator<Watch> it = watches.values().iterator(); it.hasNext(); ) {
+            Watch watch = it.next();
+            if (!sensorIds.contains(watch.sensorId)) {
+                it.remove();
+                wheel.cancel(watch);
+                if (watch.offline) {
+                    NotificationHelper.cancelSensorOffline(context, recipeId, watch.sensorId);
+                }
+            }
+        }
+    }
+
+    // Listens to the chunks of this hour and the last, then judges sensors with nothing since
+    private void attach(Follow follow) {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        follow.bucketMs = ReadingChunks.bucketStart(now);
+        long sinceMs = follow.bucketMs - ReadingChunks.BUCKET_MS;
+        DocumentReference recipeRef = FirebaseFirestore.getInstance().collection("users")
+                .document(user.getUid()).collection("Recipes").document(follow.recipeId);
+        for (String sensorId : follow.sensorIds) {
+            for (ReadingSeries series : ReadingSeries.values()) {
+                for (long startMs = sinceMs; startMs <= follow.bucketMs; startMs += ReadingChunks.BUCKET_MS) {
+                    follow.registrations.add(recipeRef.collection(series.chunksCollection)
+                            .document(ReadingChunks.chunkId(startMs, sensorId))
+                            .addSnapshotListener((chunk, e) -> {
+                                if (e != null) {
+                                    // Attached afresh on the next tick
+                                    Log.e(TAG, "Chunk listener of recipe " + follow.recipeId + " failed", e);
+                                    follow.bucketMs = Follow.DETACHED;
+                                    return;
+                                }
+                                long lastMs = chunk != null && chunk.exists() ? ReadingChunks.lastTime(chunk) : -1;
+                                if (lastMs >= 0 && followed.get(follow.recipeId) == follow) {
+                                    onReading(follow.recipeId, sensorId, lastMs);
+                                }
+                            }));
+                }
+            }
+            // Nothing in either chunk means nothing since the earlier one began
+            Watch watch = watchFor(follow.recipeId, SensorSamples.sensorOrDefault(sensorId));
+            if (watch.lastReadingMs < sinceMs) {
+                watch.lastReadingMs = sinceMs;
+            }
+            if (!watch.offline) {
+                arm(watch);
+            }
+        }
+        ensureTicking();
+    }
+
+    private Watch watchFor(String recipeId, String sensorId) {
+        Map<String, Watch> watches = byRecipe.get(recipeId);
+        if (watches == null) {
+            watches = new HashMap<>();
+            byRecipe.put(recipeId, watches);
+        }
+        Watch watch = watches.get(sensorId);
+        if (watch == null) {
+            watch = new Watch(recipeId, sensorId);
+            watches.put(sensorId, watch);
+        }
+        return watch;
+    }
+
+    private void arm(Watch watch) {
+        long deadline = Math.max(watch.lastReadingMs + SensorGaps.GAP_MS, System.currentTimeMillis() + GRACE_MS);
+        wheel.schedule(watch, deadline);
+        ensureTicking();
+    }
+
+    private void ensureTicking() {
+        if (!ticking) {
+            ticking = true;
+            mainHandler.postDelayed(tick, TICK_MS);
+        }
+    }
+
+    private void onTick() {
+        expired.clear();
+        wheel.advance(System.currentTimeMillis(), expired);
+        for (Watch watch : expired) {
+            watch.offline = true;
+            NotificationHelper.notifySensorOffline(context, watch.recipeId, watch.sensorId, watch.lastReadingMs);
+            for (OnStalenessListener listener : new ArrayList<>(listeners)) {
+                listener.onSensorOffline(watch.recipeId, watch.sensorId, watch.lastReadingMs);
+            }
+        }
+
+        // New chunks start on the hour
+        long bucketMs = ReadingChunks.bucketStart(System.currentTimeMillis());
+        for (Follow follow : followed.values()) {
+            if (follow.bucketMs != bucketMs) {
+                follow.detach();
+                attach(follow);
+            }
+        }
+
+        // Nothing left to watch, so stop waking up until the next reading
+        ticking = !wheel.isEmpty() || !followed.isEmpty();
+        if (ticking) {
+            mainHandler.postDelayed(tick, TICK_MS);
+        }
+    }
+
+    public interface OnStalenessListener {
+        void onSensorOffline(String recipeId, String sensorId, long lastReadingMs);
+        void onSensorOnline(String recipeId, String sensorId);
+    }
+
+    // The chunk listeners of one brew
+    private static class Follow {
+        static final long DETACHED = -1;
+
+        final String recipeId;
+        final List<String> sensorIds;
+        final List<ListenerRegistration> registrations = new ArrayList<>();
+        long bucketMs = DETACHED;
+
+        Follow(String recipeId, List<String> sensorIds) {
+            this.recipeId = recipeId;
+            this.sensorIds = sensorIds;
+        }
+
+        void detach() {
+            for (ListenerRegistration registration : registrations) {
+                registration.remove();
+            }
+            registrations.clear();
+            bucketMs = DETACHED;
+        }
+    }
+
+    // Identity-keyed in the wheel; one per recipe and sensor
+    private static class Watch {
+        final String recipeId;
+        final String sensorId;
+        long lastReadingMs = Long.MIN_VALUE;
+        boolean offline;
+
+        Watch(String recipeId, String sensorId) {
+            this.recipeId = recipeId;
+            this.sensorId = sensorId;
+        }
+    }
+}
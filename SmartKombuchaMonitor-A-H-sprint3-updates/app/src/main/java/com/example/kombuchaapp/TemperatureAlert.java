@@ -2,11 +2,28 @@ package com.example.kombuchaapp;
 
 import android.graphics.Color;
 
+import com.example.kombuchaapp.readings.ReadingStats;
+
 public final class TemperatureAlert {
     private TemperatureAlert() {}
 
     public enum Level { DORMANT, CRITICAL, WARNING, OPTIMAL, LETHAL, UNKNOWN }
 
+    private static final Level[] LEVELS = Level.values();
+
+    // Buckets readings in °C (as stored and charted) by Level, for ReadingStats
+    public static final ReadingStats.Classifier CELSIUS_LEVELS = new ReadingStats.Classifier() {
+        @Override
+        public int levelCount() {
+            return LEVELS.length;
+        }
+
+        @Override
+        public int levelOf(float tempC) {
+            return levelF(tempC * 9f / 5f + 32f).ordinal();
+        }
+    };
+
     public static final class Result {
         public final Level level;
         public final String title;
@@ -17,25 +34,80 @@ public final class TemperatureAlert {
         }
     }
 
-    public static Result evaluateF(float tempF) {
+    public static Level levelAt(int ordinal) {
+        return LEVELS[ordinal];
+    }
+
+    // Just the level, without building a Result; cheap enough to call per reading
+    public static Level levelF(float tempF) {
         if (Float.isNaN(tempF) || Float.isInfinite(tempF)) {
-            return new Result(Level.UNKNOWN, "No reading", "Waiting for a valid sensor reading…", Color.parseColor("#9E9E9E"));
+            return Level.UNKNOWN;
         }
         if (tempF < 50f) {
-            return new Result(Level.DORMANT, "Dormant (<50°F)", "Fermentation may stall. Warm to 75–80°F.", Color.parseColor("#546E7A"));
+            return Level.DORMANT;
         }
         if (tempF > 90f) {
-            return new Result(Level.LETHAL, "Lethal (>90°F)", "Risk of SCOBY death. Cool down immediately!", Color.parseColor("#B71C1C"));
+            return Level.LETHAL;
         }
         if (tempF < 65f || tempF > 85f) {
-            return new Result(Level.CRITICAL, "Critical (<65°F or >85°F)", "Outside safe range. Adjust the range to be between 65°F and 85°F.", Color.parseColor("#D32F2F"));
+            return Level.CRITICAL;
         }
         if ((tempF >= 65f && tempF < 75f) || (tempF >= 80f && tempF <= 85f)) {
-            return new Result(Level.WARNING, "Warning (65–75°F or 80–85°F)", "Not ideal. Aim for 75–80°F.", Color.parseColor("#F57C00"));
+            return Level.WARNING;
         }
         if (tempF >= 75f && tempF < 80f) {
-            return new Result(Level.OPTIMAL, "Optimal (75–80°F)", "Perfect brewing temperature.", Color.parseColor("#388E3C"));
+            return Level.OPTIMAL;
+        }
+        return Level.UNKNOWN;
+    }
+
+    // Where levelF changes level, in °F
+    private static final float[] BOUNDARIES_F = {50f, 65f, 75f, 80f, 85f, 90f};
+
+    // How far tempF is from the nearest level change, in °F
+    public static float distanceToBoundaryF(float tempF) {
+        float nearest = Float.POSITIVE_INFINITY;
+        for (float boundary : BOUNDARIES_F) {
+            nearest = Math.min(nearest, Math.abs(tempF - boundary));
+        }
+        return nearest;
+    }
+
+    // Higher is worse; used to pick which of several sensors to show
+    public static int severity(Level level) {
+        switch (level) {
+            case LETHAL:
+                return 4;
+            case CRITICAL:
+                return 3;
+            case WARNING:
+                return 2;
+            case DORMANT:
+                return 1;
+            case OPTIMAL:
+                return 0;
+            default:
+                return -1;
+        }
+    }
+
+    public static Result evaluateF(float tempF) {
+        switch (levelF(tempF)) {
+            case DORMANT:
+                return new Result(Level.DORMANT, "Dormant (<50°F)", "Fermentation may stall. Warm to 75–80°F.", Color.parseColor("#546E7A"));
+            case LETHAL:
+                return new Result(Level.LETHAL, "Lethal (>90°F)", "Risk of SCOBY death. Cool down immediately!", Color.parseColor("#B71C1C"));
+            case CRITICAL:
+                return new Result(Level.CRITICAL, "Critical (<65°F or >85°F)", "Outside safe range. Adjust the range to be between 65°F and 85°F.", Color.parseColor("#D32F2F"));
+            case WARNING:
+                return new Result(Level.WARNING, "Warning (65–75°F or 80–85°F)", "Not ideal. Aim for 75–80°F.", Color.parseColor("#F57C00"));
+            case OPTIMAL:
+                return new Result(Level.OPTIMAL, "Optimal (75–80°F)", "Perfect brewing temperature.", Color.parseColor("#388E3C"));
+            default:
+                if (Float.isNaN(tempF) || Float.isInfinite(tempF)) {
+                    return new Result(Level.UNKNOWN, "No reading", "Waiting for a valid sensor reading…", Color.parseColor("#9E9E9E"));
+                }
+                return new Result(Level.UNKNOWN, "Unknown", "Could not classify temperature.", Color.parseColor("#9E9E9E"));
         }
-        return new Result(Level.UNKNOWN, "Unknown", "Could not classify temperature.", Color.parseColor("#9E9E9E"));
     }
 }
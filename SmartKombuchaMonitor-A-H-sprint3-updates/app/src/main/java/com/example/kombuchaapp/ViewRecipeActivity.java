@@ -3,9 +3,11 @@ package com.example.kombuchaapp;
 import android.content.Intent;
 import android.graphics.Color;
 import android.os.Bundle;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ProgressBar;
 import android.widget.RatingBar;
@@ -16,9 +18,25 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 
+import com.example.kombuchaapp.charts.CombinedReadingsChart;
+import com.example.kombuchaapp.charts.ReadingsChart;
+import com.example.kombuchaapp.charts.RecipeReadingsStream;
 import com.example.kombuchaapp.models.Recipe;
-import com.example.kombuchaapp.models.SensorReadings;
+import com.example.kombuchaapp.readings.FermentationRate;
+import com.example.kombuchaapp.readings.ReadingSeries;
+import com.example.kombuchaapp.readings.ReadingStats;
+import com.example.kombuchaapp.readings.SensorSamples;
+import com.example.kombuchaapp.readings.SuspectReadings;
+import com.example.kombuchaapp.readings.TimeSeriesBuffer;
+import com.example.kombuchaapp.repositories.BrewArchiveRepository;
+import com.example.kombuchaapp.repositories.BrewStateMachine;
+import com.example.kombuchaapp.repositories.ListenerHub;
+import com.example.kombuchaapp.repositories.LocalReadingsStore;
+import com.example.kombuchaapp.repositories.ReadingsCompaction;
+import com.example.kombuchaapp.repositories.ReadingsMigration;
 import com.example.kombuchaapp.repositories.RecipeRepository;
+import com.example.kombuchaapp.repositories.SensorAssignments;
+import com.example.kombuchaapp.repositories.SensorControlRepository;
 import com.example.kombuchaapp.AlertAdapter;
 import com.example.kombuchaapp.TemperatureAlert;
 import com.example.kombuchaapp.NotificationHelper;
@@ -27,23 +45,16 @@ import com.example.kombuchaapp.PhAlert;
 import com.github.mikephil.charting.charts.LineChart;
 import com.github.mikephil.charting.components.XAxis;
 import com.github.mikephil.charting.components.YAxis;
-import com.github.mikephil.charting.data.Entry;
-import com.github.mikephil.charting.data.LineData;
-import com.github.mikephil.charting.data.LineDataSet;
-import com.github.mikephil.charting.formatter.IndexAxisValueFormatter;
 import com.google.firebase.Timestamp;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.ListenerRegistration;
-import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -52,16 +63,44 @@ import java.util.Objects;
 public class ViewRecipeActivity extends AppCompatActivity {
 
     private static final String TAG = "ViewRecipeActivity";
+    // How long before the projected harvest time to send the heads-up
+    private static final long HARVEST_LEAD_MS = 12 * 60 * 60_000L;
 
     // UI Components
     private TextView tvRecipeName, tvStatus, tvTeaLeaf, tvWater, tvSugar, tvScoby,
             tvKombuchaStarter, tvFlavor, tvCreatedDate, tvBrewingStartDate,
-            tvCompletionDate, tvNotes, tvTempAlert;
+            tvCompletionDate, tvNotes, tvTempAlert, tvTempStats, tvTempLevels, tvPhStats, tvPhTrend;
     private Button btnEdit, btnStartBrewing, btnMarkCompleted, btnPauseBrewing,
             btnResumeBrewing, btnBackToDraft, btnRebrew, btnAddReview;
     private ProgressBar progressBar;
     private View notesSection, flavorSection, reviewSection;
-    private LineChart temperatureChart, phChart;
+    private LineChart temperatureChart, phChart, combinedChart;
+    private ReadingsChart temperatureReadings, phReadings;
+    private CombinedReadingsChart combinedReadings;
+    private CheckBox cbTempAverage, cbPhAverage;
+    private StalenessMonitor stalenessMonitor;
+    private final StalenessMonitor.OnStalenessListener stalenessListener = new StalenessMonitor.OnStalenessListener() {
+        @Override
+        public void onSensorOffline(String offlineRecipeId, String sensorId, long lastReadingMs) {
+            if (offlineRecipeId.equals(recipeId)) {
+                // Its last temperature no longer says anything about the brew
+                tempLevels.remove(sensorId);
+                AlertAdapter.showSensorOffline(tvTempAlert, sensorId, lastReadingMs);
+            }
+        }
+
+        @Override
+        public void onSensorOnline(String onlineRecipeId, String sensorId) {
+            // The reading that brought it back repaints the status pill
+        }
+    };
+    // Latest temperature level of each sensor; the alert pill shows the worst
+    private final Map<String, TemperatureAlert.Level> tempLevels = new HashMap<>();
+    // The combined chart joins one temperature and one pH sensor, the first of each seen
+    private String combinedTempSensor, combinedPhSensor;
+    // dpH/dt and harvest ETA of each pH sensor, fed with clean readings
+    private final Map<String, FermentationRate> phRates = new LinkedHashMap<>();
+    private RecipeReadingsStream readingsStream;
 
     // Review UI Components
     private RatingBar ratingDisplay;
@@ -69,16 +108,22 @@ public class ViewRecipeActivity extends AppCompatActivity {
 
     // Repository
     private RecipeRepository recipeRepository;
+    private BrewStateMachine brewStateMachine;
+    private SensorAssignments sensorAssignments;
+    private final SensorAssignments.OnAssignmentsChangedListener assignmentsListener = this::updateSensorAvailability;
+    private CharSequence startLabel, resumeLabel, rebrewLabel;
     private FirebaseFirestore db;
     private String recipeId;
     private Recipe currentRecipe;
 
-    private ListenerRegistration readingsListener;
-    private ListenerRegistration tempReadingsListener;
-    private ListenerRegistration phReadingsListener;
-    private ListenerRegistration phNotifyListener;
-
     private boolean hasHarvestNotified = false;
+    private boolean hasHarvestSoonNotified = false;
+    private boolean readingsMigrationStarted = false;
+    private boolean readingsCompactionStarted = false;
+    // The readings queries depend on the recipe's readingsTsMigrated flag, so they wait for the recipe
+    private boolean readingsStreamPending = false;
+    private boolean archiveStarted = false;
+    private BrewArchiveRepository archiveRepository;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -94,6 +139,8 @@ public class ViewRecipeActivity extends AppCompatActivity {
         }
 
         recipeRepository = new RecipeRepository();
+        brewStateMachine = new BrewStateMachine();
+        sensorAssignments = SensorAssignments.getInstance();
         db = FirebaseFirestore.getInstance();
 
         // Initialize toolbar
@@ -115,10 +162,141 @@ public class ViewRecipeActivity extends AppCompatActivity {
         // Setup temperature and pH chart
         setupTempChart();
         setupPhChart();
+        setupCombinedChart();
+        temperatureReadings = new ReadingsChart(temperatureChart, "Temperature (°C)", Color.BLUE, 1f,
+                "No temperature readings yet", TemperatureAlert.CELSIUS_LEVELS);
+        phReadings = new ReadingsChart(phChart, "pH Value", Color.parseColor("#FF6B35"), 0.5f,
+                "No pH readings yet", null);
+        temperatureReadings.setOnStatsChangedListener(this::updateTemperatureStats);
+        phReadings.setOnStatsChangedListener(this::updatePhStats);
+        cbTempAverage.setOnCheckedChangeListener((button, checked) -> temperatureReadings.setShowAverage(checked));
+        cbPhAverage.setOnCheckedChangeListener((button, checked) -> phReadings.setShowAverage(checked));
+        readingsStream = new RecipeReadingsStream(LocalReadingsStore.getInstance(this), new ListenerHub(this));
+        readingsStream.attachChart(ReadingSeries.TEMPERATURE, temperatureReadings);
+        readingsStream.attachChart(ReadingSeries.PH, phReadings);
+        stalenessMonitor = StalenessMonitor.getInstance(this);
+        stalenessMonitor.start();
+        stalenessMonitor.addListener(stalenessListener);
+        // Suspect readings too: a glitching sensor is still online
+        readingsStream.addListener(ReadingSeries.TEMPERATURE, this::onSensorReading, true);
+        readingsStream.addListener(ReadingSeries.PH, this::onSensorReading, true);
+        readingsStream.addListener(ReadingSeries.TEMPERATURE,
+                (series, sensorId, timeMs, value) -> onTemperatureReading(sensorId, value));
+        readingsStream.addListener(ReadingSeries.PH, (series, sensorId, timeMs, value) -> onPhReading(value));
+        combinedReadings = new CombinedReadingsChart(combinedChart, "Temperature (°C)", Color.BLUE,
+                "pH Value", Color.parseColor("#FF6B35"), "Awaiting temperature and pH readings...");
+        readingsStream.addSamplesListener(new RecipeReadingsStream.OnSamplesListener() {
+            @Override
+            public void onSamples(ReadingSeries series, String sensorId, TimeSeriesBuffer samples) {
+                addCombinedSamples(series, sensorId, samples);
+                if (series == ReadingSeries.PH) {
+                    addPhRateSamples(sensorId, samples);
+                }
+                adjustSampling(series, sensorId, samples);
+            }
+
+            @Override
+            public void onCleared(ReadingSeries series) {
+                if (series == ReadingSeries.TEMPERATURE) {
+                    combinedTempSensor = null;
+                    combinedReadings.clearLeft();
+                } else {
+                    combinedPhSensor = null;
+                    combinedReadings.clearRight();
+                    phRates.clear();
+                    updatePhTrend();
+                }
+            }
+        });
 
         // Load temperature and pH readings
-        loadTemperatureReadings();
-        loadPhReadings();
+        archiveRepository = new BrewArchiveRepository(this);
+        loadReadings();
+    }
+
+    // Completed brews open from their on-device archive; everything else streams from Firestore
+    private void loadReadings() {
+        if (!archiveRepository.hasArchive(recipeId)) {
+            startReadingsStream();
+            return;
+        }
+
+        archiveRepository.loadArchive(recipeId, new BrewArchiveRepository.OnArchiveLoadedListener() {
+            @Override
+            public void onSuccess(Map<ReadingSeries, SensorSamples> series) {
+                addArchivedSamples(ReadingSeries.TEMPERATURE, series.get(ReadingSeries.TEMPERATURE), temperatureReadings);
+                addArchivedSamples(ReadingSeries.PH, series.get(ReadingSeries.PH), phReadings);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                Log.w(TAG, "Brew archive unreadable, loading readings from Firestore: " + error);
+                archiveRepository.deleteArchive(recipeId);
+                startReadingsStream();
+            }
+        });
+    }
+
+    private void addArchivedSamples(ReadingSeries series, SensorSamples samples, ReadingsChart chart) {
+        if (samples.isEmpty()) {
+            // Lets the chart show its no-data text
+            chart.addSamples(new TimeSeriesBuffer());
+            return;
+        }
+        // Archived readings were never filtered, so flag glitches the same way the stream does
+        SuspectReadings suspects = new SuspectReadings(series);
+        for (Map.Entry<String, TimeSeriesBuffer> sensor : samples.entries()) {
+            TimeSeriesBuffer raw = sensor.getValue();
+            TimeSeriesBuffer clean = new TimeSeriesBuffer(raw.size());
+            TimeSeriesBuffer suspect = new TimeSeriesBuffer();
+            suspects.split(sensor.getKey(), raw, clean, suspect);
+            chart.addSamples(sensor.getKey(), clean);
+            chart.addSuspectSamples(sensor.getKey(), suspect);
+            addCombinedSamples(series, sensor.getKey(), clean);
+            if (series == ReadingSeries.PH) {
+                addPhRateSamples(sensor.getKey(), clean);
+            }
+        }
+    }
+
+    private void addCombinedSamples(ReadingSeries series, String sensorId, TimeSeriesBuffer samples) {
+        if (series == ReadingSeries.TEMPERATURE) {
+            if (combinedTempSensor == null) {
+                combinedTempSensor = sensorId;
+            }
+            if (combinedTempSensor.equals(sensorId)) {
+                combinedReadings.addLeftSamples(samples);
+            }
+        } else {
+            if (combinedPhSensor == null) {
+                combinedPhSensor = sensorId;
+            }
+            if (combinedPhSensor.equals(sensorId)) {
+                combinedReadings.addRightSamples(samples);
+            }
+        }
+    }
+
+    // Readings of a completed brew are frozen, so write them out once for offline viewing
+    private void archiveCompletedBrew(Recipe recipe) {
+        if (archiveStarted || !"completed".equalsIgnoreCase(recipe.getStatus())
+                || archiveRepository.hasArchive(recipeId)) {
+            return;
+        }
+        archiveStarted = true;
+
+        archiveRepository.archiveRecipe(recipeId, new RecipeRepository.OnUpdateListener() {
+            @Override
+            public void onSuccess(String message) {
+                Log.d(TAG, message + ": " + recipeId);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                archiveStarted = false;
+                Log.w(TAG, "Failed to archive completed brew: " + error);
+            }
+        });
     }
 
     private void initViews() {
@@ -126,6 +304,12 @@ public class ViewRecipeActivity extends AppCompatActivity {
         tvRecipeName = findViewById(R.id.tv_recipe_name);
         tvStatus = findViewById(R.id.tv_status);
         tvTempAlert = findViewById(R.id.tv_temp_alert);
+        tvTempStats = findViewById(R.id.tv_temp_stats);
+        tvTempLevels = findViewById(R.id.tv_temp_levels);
+        tvPhStats = findViewById(R.id.tv_ph_stats);
+        tvPhTrend = findViewById(R.id.tv_ph_trend);
+        cbTempAverage = findViewById(R.id.cb_temp_average);
+        cbPhAverage = findViewById(R.id.cb_ph_average);
         tvTeaLeaf = findViewById(R.id.tv_tea_leaf);
         tvWater = findViewById(R.id.tv_water);
         tvSugar = findViewById(R.id.tv_sugar);
@@ -139,11 +323,14 @@ public class ViewRecipeActivity extends AppCompatActivity {
 
         btnEdit = findViewById(R.id.btn_edit);
         btnStartBrewing = findViewById(R.id.btn_start_brewing);
+        startLabel = btnStartBrewing.getText();
         btnMarkCompleted = findViewById(R.id.btn_mark_completed);
         btnPauseBrewing = findViewById(R.id.btn_pause_brewing);
         btnResumeBrewing = findViewById(R.id.btn_resume_brewing);
+        resumeLabel = btnResumeBrewing.getText();
         btnBackToDraft = findViewById(R.id.btn_back_to_draft);
         btnRebrew = findViewById(R.id.btn_rebrew);
+        rebrewLabel = btnRebrew.getText();
         btnAddReview = findViewById(R.id.btn_add_review);
 
         notesSection = findViewById(R.id.notes_section);
@@ -156,6 +343,7 @@ public class ViewRecipeActivity extends AppCompatActivity {
 
         temperatureChart = findViewById(R.id.temperature_chart);
         phChart = findViewById(R.id.ph_chart);
+        combinedChart = findViewById(R.id.combined_chart);
     }
 
     private void loadRecipe() {
@@ -167,8 +355,14 @@ public class ViewRecipeActivity extends AppCompatActivity {
                 runOnUiThread(() -> {
                     showLoading(false);
                     currentRecipe = recipe;
+                    if (readingsStreamPending) {
+                        startReadingsStream();
+                    }
+                    keepSensorLeases(recipe);
                     displayRecipe(recipe);
                     displayReview(recipe);
+                    migrateReadingTimestamps(recipe);
+                    archiveCompletedBrew(recipe);
                 });
             }
 
@@ -186,6 +380,63 @@ public class ViewRecipeActivity extends AppCompatActivity {
         });
     }
 
+    // Recipes open from the user's own collection, so this phone is the brew's owner
+    private void keepSensorLeases(Recipe recipe) {
+        if ("brewing".equalsIgnoreCase(recipe.getStatus())) {
+            LeaseHeartbeat.getInstance().watch(recipeId, recipe.getSensorIds());
+        } else {
+            LeaseHeartbeat.getInstance().forget(recipeId);
+        }
+    }
+
+    // One-off backfill of numeric ts_ms on readings recorded before the field existed
+    private void migrateReadingTimestamps(Recipe recipe) {
+        if (Boolean.TRUE.equals(recipe.getReadingsTsMigrated())) {
+            compactColdReadings();
+            return;
+        }
+        if (readingsMigrationStarted) {
+            return;
+        }
+        readingsMigrationStarted = true;
+
+        new ReadingsMigration().migrateRecipe(recipeId, new ReadingsMigration.OnMigrationListener() {
+            @Override
+            public void onSuccess(int updatedCount) {
+                Log.d(TAG, "Reading timestamps migrated: " + updatedCount);
+                compactColdReadings();
+            }
+
+            @Override
+            public void onFailure(String error) {
+                // Readers still fall back to the string timestamp, so just retry next time
+                readingsMigrationStarted = false;
+                Log.w(TAG, "Reading timestamp migration failed: " + error);
+            }
+        });
+    }
+
+    // Folds readings older than the chart's live window into encoded hourly chunks; needs ts_ms, so runs after the migration
+    private void compactColdReadings() {
+        if (readingsCompactionStarted) {
+            return;
+        }
+        readingsCompactionStarted = true;
+
+        new ReadingsCompaction().compactRecipe(recipeId, new ReadingsCompaction.OnCompactionListener() {
+            @Override
+            public void onSuccess(int compactedCount) {
+                Log.d(TAG, "Compacted cold readings: " + compactedCount);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                // Originals are only deleted after their chunk verifies, so the next run picks up from here
+                Log.w(TAG, "Reading compaction failed: " + error);
+            }
+        });
+    }
+
     private void displayRecipe(Recipe recipe) {
         // Recipe name
         tvRecipeName.setText(recipe.getRecipeName() != null ? recipe.getRecipeName() : "Unnamed Recipe");
@@ -302,6 +553,28 @@ public class ViewRecipeActivity extends AppCompatActivity {
                 btnRebrew.setVisibility(View.VISIBLE);
                 break;
         }
+        updateSensorAvailability();
+    }
+
+    /*
+     * Every transition that claims sensors (Start, Resume, Rebrew) shows
+     * which of the recipe's sensors another brew holds, read from the
+     * shared cache, so the user sees it before tapping rather than a round
+     * trip later. Resume goes back to exactly those sensors, so it is
+     * greyed out. Start and Rebrew ask which sensors to use first, and
+     * chooseSensors leaves out and turns down busy ones, so they stay
+     * enabled for picking others.
+     */
+    private void updateSensorAvailability() {
+        List<String> busy = new ArrayList<>();
+        if (currentRecipe != null && sensorAssignments.isLoaded()) {
+            busy = sensorAssignments.busySensors(currentRecipe.getSensorIds(), recipeId);
+        }
+        String inUse = "In use: " + TextUtils.join(", ", busy);
+        btnResumeBrewing.setEnabled(busy.isEmpty());
+        btnResumeBrewing.setText(busy.isEmpty() ? resumeLabel : inUse);
+        btnStartBrewing.setText(busy.isEmpty() ? startLabel : startLabel + " (" + inUse + ")");
+        btnRebrew.setText(busy.isEmpty() ? rebrewLabel : rebrewLabel + " (" + inUse + ")");
     }
 
     private void setupButtons() {
@@ -312,7 +585,7 @@ public class ViewRecipeActivity extends AppCompatActivity {
         });
 
         btnStartBrewing.setOnClickListener(v -> startBrewingProcess());
-        btnMarkCompleted.setOnClickListener(v -> updateRecipeStatus("completed"));
+        btnMarkCompleted.setOnClickListener(v -> applyTransition(BrewStateMachine.Transition.COMPLETE, null));
         btnPauseBrewing.setOnClickListener(v -> pauseBrewing());
         btnResumeBrewing.setOnClickListener(v -> resumeBrewing());
         btnBackToDraft.setOnClickListener(v -> confirmBackToDraft());
@@ -452,105 +725,20 @@ public class ViewRecipeActivity extends AppCompatActivity {
     }
 
     private void startBrewingProcess() {
-        showLoading(true);
-
-        // Check the central sensor_control document
-        db.collection("sensor_control").document("active_config").get()
-                .addOnSuccessListener(documentSnapshot -> {
-                   if (documentSnapshot.exists()) {
-                        // Check if another recipe is already active
-                        String activeRecipeId = documentSnapshot.getString("active_recipe_id");
-
-                        // If a recipe is active and it's not the current one, block the process
-                        if (activeRecipeId != null && !activeRecipeId.equals(recipeId)) {
-                            runOnUiThread(() -> {
-                                showLoading(false);
-                                Toast.makeText(ViewRecipeActivity.this,
-                                        "Another recipe is already brewing. Please complete it first.",
-                                        Toast.LENGTH_LONG).show();
-                            });
-                            return; // Stop here
-                        }
-                    }
-
-                    // If the document doesn't exist, or no recipe is active, proceed to start brewing.
-                    runOnUiThread(() -> updateRecipeStatus("brewing"));
-
-                })
-                .addOnFailureListener(e -> {
-                    // If we can't check the status, it's safer to block and show an error.
-                    runOnUiThread(() -> {
-                        showLoading(false);
-                        Log.e(TAG, "Failed to check active brewing status", e);
-                        Toast.makeText(ViewRecipeActivity.this,
-                                "Failed to check brewing status: " + e.getMessage(),
-                                Toast.LENGTH_SHORT).show();
-                    });
-                });
+        chooseSensors(sensorIds -> applyTransition(BrewStateMachine.Transition.START, sensorIds));
     }
 
     private void pauseBrewing() {
-        showLoading(true);
-
-        // Remove from sensor control but keep the status as paused
-        removeRecipeForSensors();
-
-        // Update status to paused
-        recipeRepository.updateRecipeStatus(recipeId, "paused", new RecipeRepository.OnUpdateListener() {
-            @Override
-            public void onSuccess(String message) {
-                runOnUiThread(() -> {
-                    showLoading(false);
-                    Toast.makeText(ViewRecipeActivity.this,
-                            "Brewing paused. Sensors deactivated.",
-                            Toast.LENGTH_SHORT).show();
-                    loadRecipe(); // Reload to update UI
-                });
-            }
-
-            @Override
-            public void onFailure(String error) {
-                runOnUiThread(() -> {
-                    showLoading(false);
-                    Toast.makeText(ViewRecipeActivity.this,
-                            "Failed to pause: " + error,
-                            Toast.LENGTH_SHORT).show();
-                });
-            }
-        });
+        applyTransition(BrewStateMachine.Transition.PAUSE, null);
     }
 
     private void resumeBrewing() {
-        showLoading(true);
-
-        // Check if another recipe is active
-        db.collection("sensor_control").document("active_config").get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        String activeRecipeId = documentSnapshot.getString("active_recipe_id");
-
-                        if (activeRecipeId != null && !activeRecipeId.equals(recipeId)) {
-                            runOnUiThread(() -> {
-                                showLoading(false);
-                                Toast.makeText(ViewRecipeActivity.this,
-                                        "Another recipe is already brewing. Please complete it first.",
-                                        Toast.LENGTH_LONG).show();
-                            });
-                            return;
-                        }
-                    }
-
-                    // Resume brewing - change status and reactivate sensors
-                    runOnUiThread(() -> updateRecipeStatus("brewing"));
-                })
-                .addOnFailureListener(e -> {
-                    runOnUiThread(() -> {
-                        showLoading(false);
-                        Toast.makeText(ViewRecipeActivity.this,
-                                "Failed to check brewing status: " + e.getMessage(),
-                                Toast.LENGTH_SHORT).show();
-                    });
-                });
+        // Back on the sensors it had before, unless it never had any
+        if (currentRecipe != null && !currentRecipe.getSensorIds().isEmpty()) {
+            applyTransition(BrewStateMachine.Transition.RESUME, null);
+        } else {
+            chooseSensors(sensorIds -> applyTransition(BrewStateMachine.Transition.RESUME, sensorIds));
+        }
     }
 
     private void confirmBackToDraft() {
@@ -563,143 +751,57 @@ public class ViewRecipeActivity extends AppCompatActivity {
                 .show();
     }
 
+    // The status goes first, so the sensors stop writing before their readings are deleted
     private void backToDraft() {
         showLoading(true);
-
-        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
-        if (user == null) {
-            showLoading(false);
-            Toast.makeText(this, "Error: User not logged in", Toast.LENGTH_SHORT).show();
-            return;
-        }
-
-        // First, delete all temperature and pH readings for this recipe
-        // We need to wait for both deletions to complete
-        final boolean[] tempDeleted = {false};
-        final boolean[] phDeleted = {false};
-        final boolean[] hasError = {false};
-
-        String userId = user.getUid();
-
-        // Delete temperature readings
-        db.collection("users")
-                .document(userId)
-                .collection("Recipes")
-                .document(recipeId)
-                .collection("temperature_readings")
-                .get()
-                .addOnSuccessListener(tempSnapshots -> {
-                    if (tempSnapshots.isEmpty()) {
-                        tempDeleted[0] = true;
-                        checkAndProceedToUpdateStatus(tempDeleted, phDeleted, hasError, userId);
-                    } else {
-                        // Count how many we need to delete
-                        int totalTemp = tempSnapshots.size();
-                        final int[] deletedTemp = {0};
-
-                        for (com.google.firebase.firestore.DocumentSnapshot doc : tempSnapshots.getDocuments()) {
-                            doc.getReference().delete()
-                                    .addOnSuccessListener(aVoid -> {
-                                        deletedTemp[0]++;
-                                        if (deletedTemp[0] == totalTemp) {
-                                            tempDeleted[0] = true;
-                                            Log.d(TAG, "All temperature readings deleted");
-                                            checkAndProceedToUpdateStatus(tempDeleted, phDeleted, hasError, userId);
-                                        }
-                                    })
-                                    .addOnFailureListener(e -> {
-                                        Log.e(TAG, "Failed to delete temperature reading", e);
-                                        hasError[0] = true;
-                                        tempDeleted[0] = true;
-                                        checkAndProceedToUpdateStatus(tempDeleted, phDeleted, hasError, userId);
-                                    });
-                        }
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to fetch temperature readings", e);
-                    hasError[0] = true;
-                    tempDeleted[0] = true;
-                    checkAndProceedToUpdateStatus(tempDeleted, phDeleted, hasError, userId);
-                });
-
-        // Delete pH readings
-        db.collection("users")
-                .document(userId)
-                .collection("Recipes")
-                .document(recipeId)
-                .collection("ph_readings")
-                .get()
-                .addOnSuccessListener(phSnapshots -> {
-                    if (phSnapshots.isEmpty()) {
-                        phDeleted[0] = true;
-                        checkAndProceedToUpdateStatus(tempDeleted, phDeleted, hasError, userId);
-                    } else {
-                        // Count how many we need to delete
-                        int totalPh = phSnapshots.size();
-                        final int[] deletedPh = {0};
-
-                        for (com.google.firebase.firestore.DocumentSnapshot doc : phSnapshots.getDocuments()) {
-                            doc.getReference().delete()
-                                    .addOnSuccessListener(aVoid -> {
-                                        deletedPh[0]++;
-                                        if (deletedPh[0] == totalPh) {
-                                            phDeleted[0] = true;
-                                            Log.d(TAG, "All pH readings deleted");
-                                            checkAndProceedToUpdateStatus(tempDeleted, phDeleted, hasError, userId);
-                                        }
-                                    })
-                                    .addOnFailureListener(e -> {
-                                        Log.e(TAG, "Failed to delete pH reading", e);
-                                        hasError[0] = true;
-                                        phDeleted[0] = true;
-                                        checkAndProceedToUpdateStatus(tempDeleted, phDeleted, hasError, userId);
-                                    });
-                        }
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to fetch pH readings", e);
-                    hasError[0] = true;
-                    phDeleted[0] = true;
-                    checkAndProceedToUpdateStatus(tempDeleted, phDeleted, hasError, userId);
-                });
-    }
-
-    private void checkAndProceedToUpdateStatus(boolean[] tempDeleted, boolean[] phDeleted, boolean[] hasError, String userId) {
-        // Only proceed when both temp and pH deletions are complete
-        if (tempDeleted[0] && phDeleted[0]) {
-            // Remove from sensor control
-            removeRecipeForSensors();
-
-            // Clear brewing dates and update status to draft
-            Map<String, Object> updates = new HashMap<>();
-            updates.put("status", "draft");
-            updates.put("brewingStartDate", null);
-            updates.put("completionDate", null);
-
-            db.collection("users").document(userId)
-                    .collection("Recipes").document(recipeId)
-                    .update(updates)
-                    .addOnSuccessListener(aVoid -> {
+        brewStateMachine.apply(recipeId, BrewStateMachine.Transition.BACK_TO_DRAFT, null,
+                new RecipeRepository.OnUpdateListener() {
+                    @Override
+                    public void onSuccess(String message) {
                         runOnUiThread(() -> {
-                            showLoading(false);
-                            String message = hasError[0] ?
-                                    "Recipe moved back to draft. Some sensor data may not have been deleted." :
-                                    "Recipe moved back to draft. All sensor data deleted.";
-                            Toast.makeText(ViewRecipeActivity.this, message, Toast.LENGTH_SHORT).show();
-                            loadRecipe();
+                            onTransitionApplied(BrewStateMachine.Transition.BACK_TO_DRAFT);
+                            deleteReadings();
                         });
-                    })
-                    .addOnFailureListener(e -> {
+                    }
+
+                    @Override
+                    public void onFailure(String error) {
                         runOnUiThread(() -> {
                             showLoading(false);
                             Toast.makeText(ViewRecipeActivity.this,
-                                    "Failed to update status: " + e.getMessage(),
+                                    "Failed to update status: " + error,
                                     Toast.LENGTH_SHORT).show();
                         });
-                    });
-        }
+                    }
+                });
+    }
+
+    private void deleteReadings() {
+        // Delete all temperature and pH readings for this recipe (both storage layouts)
+        LocalReadingsStore.getInstance(this).clearRecipe(recipeId);
+        recipeRepository.deleteRecipeReadings(recipeId, new RecipeRepository.OnUpdateListener() {
+            @Override
+            public void onSuccess(String message) {
+                onReadingsDeleted(false);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                Log.e(TAG, "Failed to delete readings: " + error);
+                onReadingsDeleted(true);
+            }
+        });
+    }
+
+    private void onReadingsDeleted(boolean hasError) {
+        runOnUiThread(() -> {
+            showLoading(false);
+            String message = hasError ?
+                    "Recipe moved back to draft. Some sensor data may not have been deleted." :
+                    "Recipe moved back to draft. All sensor data deleted.";
+            Toast.makeText(ViewRecipeActivity.this, message, Toast.LENGTH_SHORT).show();
+            loadRecipe();
+        });
     }
 
     private void confirmRebrew() {
@@ -712,92 +814,68 @@ public class ViewRecipeActivity extends AppCompatActivity {
     }
 
     private void rebrew() {
-        showLoading(true);
-
-        // Check if another recipe is active
-        db.collection("sensor_control").document("active_config").get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        String activeRecipeId = documentSnapshot.getString("active_recipe_id");
-
-                        if (activeRecipeId != null && !activeRecipeId.equals(recipeId)) {
-                            runOnUiThread(() -> {
-                                showLoading(false);
-                                Toast.makeText(ViewRecipeActivity.this,
-                                        "Another recipe is already brewing. Please complete it first.",
-                                        Toast.LENGTH_LONG).show();
-                            });
-                            return;
-                        }
-                    }
+        chooseSensors(sensorIds -> applyTransition(BrewStateMachine.Transition.REBREW, sensorIds));
+    }
 
-                    // Clear completion date and restart brewing
-                    Map<String, Object> updates = new HashMap<>();
-                    updates.put("status", "brewing");
-                    updates.put("brewingStartDate", Timestamp.now());
-                    updates.put("completionDate", null);
+    /*
+     * Asks which sensors the brew reads from, one sensor_control document
+     * each. Prefilled with the ones it used last time that are still free,
+     * and lists the other free ones the cache knows of. A sensor the cache
+     * says is busy is turned down here; anything else is left to the
+     * transaction.
+     */
+    private void chooseSensors(OnSensorsChosenListener listener) {
+        EditText input = new EditText(this);
+        input.setHint("e.g. vessel-1, vessel-2");
+        input.setSingleLine(true);
+        String message = "Which sensors are in this vessel? Separate several IDs with commas.";
+        if (currentRecipe != null && !currentRecipe.getSensorIds().isEmpty()) {
+            List<String> previous = new ArrayList<>(currentRecipe.getSensorIds());
+            if (sensorAssignments.isLoaded()) {
+                previous.removeAll(sensorAssignments.busySensors(previous, recipeId));
+            }
+            input.setText(TextUtils.join(", ", previous));
+        }
+        if (sensorAssignments.isLoaded()) {
+            List<String> free = sensorAssignments.freeSensors(recipeId);
+            message += free.isEmpty() ? "\n\nEvery known sensor is brewing another recipe."
+                    : "\n\nFree: " + TextUtils.join(", ", free);
+        }
 
-                    FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
-                    if (user == null) {
-                        showLoading(false);
-                        Toast.makeText(ViewRecipeActivity.this, "Error: User not logged in", Toast.LENGTH_SHORT).show();
+        new AlertDialog.Builder(this)
+                .setTitle("Sensors")
+                .setMessage(message)
+                .setView(input)
+                .setPositiveButton("Start", (dialog, which) -> {
+                    List<String> sensorIds = SensorControlRepository.parseSensorIds(input.getText().toString());
+                    if (sensorIds.isEmpty()) {
+                        Toast.makeText(this, "Enter at least one sensor ID", Toast.LENGTH_SHORT).show();
                         return;
                     }
-
-                    db.collection("users").document(user.getUid())
-                            .collection("Recipes").document(recipeId)
-                            .update(updates)
-                            .addOnSuccessListener(aVoid -> {
-                                runOnUiThread(() -> {
-                                    addRecipeForSensors();
-                                    showLoading(false);
-                                    Toast.makeText(ViewRecipeActivity.this,
-                                            "Brewing restarted!",
-                                            Toast.LENGTH_SHORT).show();
-                                    loadRecipe();
-                                });
-                            })
-                            .addOnFailureListener(e -> {
-                                runOnUiThread(() -> {
-                                    showLoading(false);
-                                    Toast.makeText(ViewRecipeActivity.this,
-                                            "Failed to restart brewing: " + e.getMessage(),
-                                            Toast.LENGTH_SHORT).show();
-                                });
-                            });
+                    List<String> busy = sensorAssignments.busySensors(sensorIds, recipeId);
+                    if (!busy.isEmpty()) {
+                        Toast.makeText(this, "Already brewing another recipe: " + TextUtils.join(", ", busy),
+                                Toast.LENGTH_LONG).show();
+                        return;
+                    }
+                    listener.onSensorsChosen(sensorIds);
                 })
-                .addOnFailureListener(e -> {
-                    runOnUiThread(() -> {
-                        showLoading(false);
-                        Toast.makeText(ViewRecipeActivity.this,
-                                "Failed to check brewing status: " + e.getMessage(),
-                                Toast.LENGTH_SHORT).show();
-                    });
-                });
+                .setNegativeButton("Cancel", null)
+                .show();
     }
 
-    private void updateRecipeStatus(String newStatus) {
+    /*
+     * Status, dates and sensor assignment change together or not at all;
+     * fails if another brew already has one of the sensors, or the recipe
+     * has moved on since the screen was loaded.
+     */
+    private void applyTransition(BrewStateMachine.Transition transition, List<String> sensorIds) {
         showLoading(true);
-
-        recipeRepository.updateRecipeStatus(recipeId, newStatus, new RecipeRepository.OnUpdateListener() {
+        brewStateMachine.apply(recipeId, transition, sensorIds, new RecipeRepository.OnUpdateListener() {
             @Override
             public void onSuccess(String message) {
                 runOnUiThread(() -> {
-                    // If starting brewing, also set as active recipe in sensor_control
-                    if ("brewing".equals(newStatus)) {
-                        addRecipeForSensors();
-                        startReadingListener();
-                        startPhListener();
-                        hasHarvestNotified = false;
-                    }
-
-                    if ("completed".equals(newStatus)) {
-                        removeRecipeForSensors();
-                        stopReadingListener();
-                        stopPhListener();
-                        tvTempAlert.setVisibility(View.GONE);
-                    }
-
+                    onTransitionApplied(transition);
                     showLoading(false);
                     Toast.makeText(ViewRecipeActivity.this, message, Toast.LENGTH_SHORT).show();
                     loadRecipe(); // Reload to update UI
@@ -810,71 +888,211 @@ public class ViewRecipeActivity extends AppCompatActivity {
                     showLoading(false);
                     Toast.makeText(ViewRecipeActivity.this,
                             "Failed to update status: " + error,
-                            Toast.LENGTH_SHORT).show();
+                            Toast.LENGTH_LONG).show();
                 });
             }
         });
     }
 
-    private void removeRecipeForSensors() {
-        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
-        if (currentUser == null) {
-            Log.w(TAG, "Cannot remove recipe for sensors: No user logged in.");
+    private void onTransitionApplied(BrewStateMachine.Transition transition) {
+        if (transition.claimsSensors()) {
+            hasHarvestNotified = false;
+            hasHarvestSoonNotified = false;
+        } else {
+            // Sensors are switched off, so silence is expected from now on
+            stalenessMonitor.forgetRecipe(recipeId);
+            LeaseHeartbeat.getInstance().forget(recipeId);
+            SamplingController.getInstance().forget(recipeId);
+        }
+
+        if (transition == BrewStateMachine.Transition.COMPLETE) {
+            AlertAdapter.resetDebounce();
+            tempLevels.clear();
+            tvTempAlert.setVisibility(View.GONE);
+        } else if (transition == BrewStateMachine.Transition.REBREW) {
+            // Readings are live again, so the archive is out of date
+            archiveRepository.deleteArchive(recipeId);
+            startReadingsStream();
+        }
+    }
+
+    private interface OnSensorsChosenListener {
+        void onSensorsChosen(List<String> sensorIds);
+    }
+
+    private String formatDate(Timestamp timestamp) {
+        if (timestamp == null) return "N/A";
+        Date date = timestamp.toDate();
+        SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy 'at' hh:mm a", Locale.getDefault());
+        return sdf.format(date);
+    }
+
+    // Older pages are skipped by the fit itself; it only looks at the newest WINDOW_MS
+    private void addPhRateSamples(String sensorId, TimeSeriesBuffer samples) {
+        FermentationRate rate = phRates.get(sensorId);
+        if (rate == null) {
+            rate = new FermentationRate();
+            phRates.put(sensorId, rate);
+        }
+        long before = rate.lastTimeMs();
+        rate.add(samples);
+        if (rate.lastTimeMs() != before) {
+            updatePhTrend();
+            checkHarvestSoon(rate);
+        }
+    }
+
+    // Only for the brew's own sensors while it runs; clean readings, so a glitch doesn't speed a sensor up
+    private void adjustSampling(ReadingSeries series, String sensorId, TimeSeriesBuffer samples) {
+        if (currentRecipe != null
+                && "brewing".equalsIgnoreCase(currentRecipe.getStatus())
+                && currentRecipe.getSensorIds().contains(sensorId)) {
+            SamplingController.getInstance().onSamples(recipeId, sensorId, series, samples);
+        }
+    }
+
+    private void updatePhTrend() {
+        if (phRates.isEmpty()) {
+            tvPhTrend.setText("Not enough readings yet");
             return;
         }
 
-        // To "remove" the active recipe, we set the fields to null.
-        Map<String, Object> updates = new HashMap<>();
-        updates.put("active_recipe_id", null);
-        updates.put("active_user_id", null);
+        StringBuilder text = new StringBuilder();
+        SimpleDateFormat sdf = new SimpleDateFormat("MMM dd 'at' hh:mm a", Locale.getDefault());
+        for (Map.Entry<String, FermentationRate> e : phRates.entrySet()) {
+            FermentationRate rate = e.getValue();
+            String prefix = phRates.size() > 1 ? e.getKey() + ": " : "";
+            if (!rate.hasFit()) {
+                appendLine(text, prefix + "Not enough readings yet");
+                continue;
+            }
+            String line = String.format(Locale.getDefault(), "%+.3f pH/h", rate.ratePerHour());
+            long eta = rate.etaMs(PhAlert.HARVEST_PH);
+            if (eta == FermentationRate.NO_ETA) {
+                line += " • pH not falling";
+            } else if (eta <= rate.lastTimeMs()) {
+                line += String.format(Locale.getDefault(), " • At pH %.1f", PhAlert.HARVEST_PH);
+            } else {
+                line += String.format(Locale.getDefault(), " • pH %.1f around ", PhAlert.HARVEST_PH)
+                        + sdf.format(new Date(eta));
+            }
+            appendLine(text, prefix + line);
+        }
+        tvPhTrend.setText(text);
+    }
 
-        db.collection("sensor_control")
-                .document("active_config")
-                .update(updates)
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Active recipe and user removed from sensor_control.");
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to remove active recipe from sensor_control", e);
-                });
+    // Notifies once when a sensor's projected harvest time is less than HARVEST_LEAD_MS away
+    private void checkHarvestSoon(FermentationRate rate) {
+        if (currentRecipe == null
+                || !"brewing".equalsIgnoreCase(currentRecipe.getStatus())
+                || hasHarvestSoonNotified
+                || hasHarvestNotified) {
+            return;
+        }
+        long eta = rate.etaMs(PhAlert.HARVEST_PH);
+        long now = System.currentTimeMillis();
+        if (eta == FermentationRate.NO_ETA || eta - now > HARVEST_LEAD_MS) {
+            return;
+        }
+        // Only a live reading says anything about now; history replayed on open doesn't
+        if (now - rate.lastTimeMs() > FermentationRate.WINDOW_MS) {
+            return;
+        }
+
+        hasHarvestSoonNotified = true;
+        long hours = Math.max(0, (eta - now) / (60 * 60_000L));
+        String title = hours > 0 ? "Ready to harvest in about " + hours + "h" : "Ready to harvest soon";
+        String message = String.format(Locale.getDefault(),
+                "pH is falling %.3f per hour and should reach %.1f around %s.",
+                -rate.ratePerHour(), PhAlert.HARVEST_PH,
+                new SimpleDateFormat("hh:mm a", Locale.getDefault()).format(new Date(eta)));
+        NotificationHelper.notifyReadyToHarvest(
+                getApplicationContext(),
+                recipeId,
+                title,
+                message,
+                (float) rate.fittedPh()
+        );
     }
 
-    private void addRecipeForSensors() {
-        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
-        if (currentUser == null) {
-            Toast.makeText(ViewRecipeActivity.this, "Error: No user logged in", Toast.LENGTH_SHORT).show();
+    // One line per sensor, prefixed with its id when the recipe has more than one
+    private void updateTemperatureStats() {
+        List<String> sensors = temperatureReadings.getSensorIds();
+        cbTempAverage.setVisibility(sensors.size() >= 2 ? View.VISIBLE : View.GONE);
+        if (sensors.isEmpty()) {
+            tvTempStats.setText("No readings yet");
+            tvTempLevels.setText("No readings yet");
             return;
         }
-        String userId = currentUser.getUid();
 
-        // Create a map to hold the active recipe and user ID.
-        Map<String, Object> activeConfig = new HashMap<>();
-        activeConfig.put("active_recipe_id", recipeId);
-        activeConfig.put("active_user_id", userId);
+        StringBuilder summary = new StringBuilder();
+        StringBuilder levels = new StringBuilder();
+        for (String sensorId : sensors) {
+            ReadingStats stats = temperatureReadings.getStats(sensorId);
+            String prefix = sensors.size() > 1 ? sensorId + ": " : "";
+            appendLine(summary, prefix + String.format(Locale.getDefault(),
+                    "Min %.1f°C • Max %.1f°C • Mean %.1f°C • SD %.2f",
+                    stats.getMin(), stats.getMax(), stats.getMean(), stats.getStdDev())
+                    + suspectNote(temperatureReadings.getSuspectCount(sensorId)));
+
+            StringBuilder sensorLevels = new StringBuilder();
+            for (TemperatureAlert.Level level : TemperatureAlert.Level.values()) {
+                long ms = stats.getTimeInLevelMs(level.ordinal());
+                if (ms <= 0) {
+                    continue;
+                }
+                if (sensorLevels.length() > 0) {
+                    sensorLevels.append(" • ");
+                }
+                sensorLevels.append(level.name().charAt(0)).append(level.name().substring(1).toLowerCase(Locale.ROOT))
+                        .append(' ').append(formatDuration(ms));
+            }
+            appendLine(levels, prefix + (sensorLevels.length() > 0 ? sensorLevels : "Not enough readings yet"));
+        }
+        tvTempStats.setText(summary);
+        tvTempLevels.setText(levels);
+    }
 
-        // Set the data on the 'active_config' document, overwriting previous values.
-        db.collection("sensor_control")
-                .document("active_config")
-                .set(activeConfig)
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Active recipe and user set in sensor_control: " + recipeId);
-                    Toast.makeText(ViewRecipeActivity.this,
-                            "Recipe activated for sensor readings!",
-                            Toast.LENGTH_SHORT).show();
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to set active recipe in sensor_control", e);
-                    Toast.makeText(ViewRecipeActivity.this,
-                            "Warning: Couldn't activate sensors: " + e.getMessage(),
-                            Toast.LENGTH_LONG).show();
-                });
+    private void updatePhStats() {
+        List<String> sensors = phReadings.getSensorIds();
+        cbPhAverage.setVisibility(sensors.size() >= 2 ? View.VISIBLE : View.GONE);
+        if (sensors.isEmpty()) {
+            tvPhStats.setText("No readings yet");
+            return;
+        }
+
+        StringBuilder summary = new StringBuilder();
+        for (String sensorId : sensors) {
+            ReadingStats stats = phReadings.getStats(sensorId);
+            String prefix = sensors.size() > 1 ? sensorId + ": " : "";
+            appendLine(summary, prefix + String.format(Locale.getDefault(),
+                    "Min %.2f • Max %.2f • Mean %.2f • SD %.2f",
+                    stats.getMin(), stats.getMax(), stats.getMean(), stats.getStdDev())
+                    + suspectNote(phReadings.getSuspectCount(sensorId)));
+        }
+        tvPhStats.setText(summary);
     }
 
-    private String formatDate(Timestamp timestamp) {
-        if (timestamp == null) return "N/A";
-        Date date = timestamp.toDate();
-        SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy 'at' hh:mm a", Locale.getDefault());
-        return sdf.format(date);
+    private static String suspectNote(int suspectCount) {
+        if (suspectCount == 0) {
+            return "";
+        }
+        return " • " + suspectCount + (suspectCount == 1 ? " suspect reading hidden" : " suspect readings hidden");
+    }
+
+    private static void appendLine(StringBuilder text, String line) {
+        if (text.length() > 0) {
+            text.append('\n');
+        }
+        text.append(line);
+    }
+
+    private static String formatDuration(long ms) {
+        long minutes = ms / 60_000;
+        if (minutes < 60) {
+            return minutes + "m";
+        }
+        return (minutes / 60) + "h " + (minutes % 60) + "m";
     }
 
     private void showLoading(boolean show) {
@@ -884,104 +1102,85 @@ public class ViewRecipeActivity extends AppCompatActivity {
     @Override
     protected void onStart() {
         super.onStart();
-        if (currentRecipe != null && "brewing".equalsIgnoreCase(currentRecipe.getStatus())) {
-            startReadingListener();
-            startPhListener();
-        }
+        sensorAssignments.addListener(assignmentsListener);
     }
 
     @Override
     protected void onStop() {
         super.onStop();
-        stopReadingListener();
-        stopPhListener();
-        stopChartListener();
+        AlertAdapter.resetDebounce();
+        tempLevels.clear();
+        // StalenessMonitor keeps following the brew in the background
+        if (recipeId != null) {
+            SamplingController.getInstance().pauseRecipe(recipeId);
+        }
+        sensorAssignments.removeListener(assignmentsListener);
     }
-    private void startReadingListener() {
-        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
-        stopReadingListener();
-        readingsListener = db.collection("users")
-                .document(user.getUid())
-                .collection("Recipes")
-                .document(recipeId)
-                .collection("temperature_readings")
-                .orderBy("timestamp", Query.Direction.DESCENDING)
-                .limit(1)
-                .addSnapshotListener((snap, err) -> {
-                    if (err != null || snap == null || snap.isEmpty()) return;
-
-                    Double tempFd = snap.getDocuments().get(0).getDouble("temperature_f");
-                    if (tempFd == null) return;
-                    float tempF = tempFd.floatValue();
-
-                    AlertAdapter.handleNewReading(this, recipeId, tempF, tvTempAlert);
-
-                    TemperatureAlert.Result r = TemperatureAlert.evaluateF(tempF);
-                    tvTempAlert.setVisibility(View.VISIBLE);
-                    tvTempAlert.setContentDescription("Temperature status: " + r.title);
-                });
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (stalenessMonitor != null) {
+            stalenessMonitor.removeListener(stalenessListener);
+        }
     }
 
-    private void stopReadingListener() {
-        if (readingsListener != null) {
-            readingsListener.remove();
-            readingsListener = null;
+    // Any reading shows the sensor is alive; only a brewing recipe's sensors are expected to report
+    private void onSensorReading(ReadingSeries series, String sensorId, long timeMs, float value) {
+        if (currentRecipe != null && "brewing".equalsIgnoreCase(currentRecipe.getStatus())) {
+            stalenessMonitor.onReading(recipeId, sensorId, timeMs);
         }
-        AlertAdapter.resetDebounce();
     }
 
-    private void startPhListener() {
-        stopPhListener();
-
-        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
-        if (user == null) {
-            Log.w(TAG, "Cannot listen for pH: No user logged in.");
+    /*
+     * Latest temperature of one sensor from the readings stream; alerts only
+     * matter while brewing. Each sensor is alerted on separately, and the
+     * status pill follows whichever sensor is currently worst.
+     */
+    private void onTemperatureReading(String sensorId, float tempC) {
+        if (currentRecipe == null || !"brewing".equalsIgnoreCase(currentRecipe.getStatus())) {
             return;
         }
+        float tempF = tempC * 9f / 5f + 32f;
+
+        TemperatureAlert.Result r = TemperatureAlert.evaluateF(tempF);
+        tempLevels.put(sensorId, r.level);
+        boolean worst = true;
+        for (Map.Entry<String, TemperatureAlert.Level> other : tempLevels.entrySet()) {
+            if (!other.getKey().equals(sensorId)
+                    && TemperatureAlert.severity(other.getValue()) > TemperatureAlert.severity(r.level)) {
+                worst = false;
+                break;
+            }
+        }
 
-        phNotifyListener = db.collection("users")
-                .document(user.getUid())
-                .collection("Recipes")
-                .document(recipeId)
-                .collection("ph_readings")
-                .orderBy("timestamp", Query.Direction.DESCENDING)
-                .limit(1)
-                .addSnapshotListener((snapshots, error) -> {
-                    if (error != null || snapshots == null || snapshots.isEmpty()) {
-                        return;
-                    }
-
-                    Double phVal = snapshots.getDocuments().get(0).getDouble("ph_value");
-                    if (phVal == null) return;
-
-                    float ph = phVal.floatValue();
-
-                    if (currentRecipe != null
-                            && "brewing".equalsIgnoreCase(currentRecipe.getStatus())
-                            && !hasHarvestNotified
-                            && !Float.isNaN(ph)
-                            && Math.abs(ph - 3.0f) <= 0.05f) {
-
-                        hasHarvestNotified = true;
-
-                        PhAlert.Result r = PhAlert.evaluate(ph);
+        AlertAdapter.handleNewReading(this, recipeId, sensorId, tempF, worst ? tvTempAlert : null);
 
-                        NotificationHelper.notifyReadyToHarvest(
-                                getApplicationContext(),
-                                recipeId,
-                                r.title,
-                                r.message,
-                                ph
-                        );
-                    }
-                });
+        if (worst) {
+            tvTempAlert.setVisibility(View.VISIBLE);
+            tvTempAlert.setContentDescription("Temperature status: " + r.title);
+        }
     }
 
-    private void stopPhListener() {
-        if (phNotifyListener != null) {
-            phNotifyListener.remove();
-            phNotifyListener = null;
+    // Latest pH from the readings stream; notifies once when the brew is ready to harvest
+    private void onPhReading(float ph) {
+        if (currentRecipe != null
+                && "brewing".equalsIgnoreCase(currentRecipe.getStatus())
+                && !hasHarvestNotified
+                && !Float.isNaN(ph)
+                && Math.abs(ph - PhAlert.HARVEST_PH) <= PhAlert.HARVEST_TOLERANCE) {
+
+            hasHarvestNotified = true;
+
+            PhAlert.Result r = PhAlert.evaluate(ph);
+
+            NotificationHelper.notifyReadyToHarvest(
+                    getApplicationContext(),
+                    recipeId,
+                    r.title,
+                    r.message,
+                    ph
+            );
         }
     }
 
@@ -1030,160 +1229,23 @@ public class ViewRecipeActivity extends AppCompatActivity {
         temperatureChart.invalidate();
     }
 
-    private void loadTemperatureReadings() {
+    private void startReadingsStream() {
+        if (currentRecipe == null) {
+            readingsStreamPending = true;
+            return;
+        }
+        readingsStreamPending = false;
         FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
         if (user == null) {
-            Log.w(TAG, "Cannot load temperature readings: No user logged in.");
+            Log.w(TAG, "Cannot load readings: No user logged in.");
             return;
         }
 
-        // Stop previous listener if exists
-        if (tempReadingsListener != null) {
-            tempReadingsListener.remove();
-        }
-
-        // Listen to temperature readings for this recipe
-        tempReadingsListener = db.collection("users")
+        // One live query per series for the charts, alerts and harvest detection
+        readingsStream.start(db.collection("users")
                 .document(user.getUid())
                 .collection("Recipes")
-                .document(recipeId)
-                .collection("temperature_readings")
-                .orderBy("timestamp", Query.Direction.ASCENDING)
-                .addSnapshotListener((snapshots, error) -> {
-                    if (error != null) {
-                        Log.e(TAG, "Error loading temperature readings", error);
-                        return;
-                    }
-
-                    if (snapshots == null || snapshots.isEmpty()) {
-                        // No data yet
-                        temperatureChart.clear();
-                        temperatureChart.setNoDataText("No temperature readings yet");
-                        temperatureChart.invalidate();
-                        return;
-                    }
-
-                    // Parse readings
-                    List<SensorReadings> readings = new ArrayList<>();
-                    for (QueryDocumentSnapshot doc : snapshots) {
-                        SensorReadings reading = doc.toObject(SensorReadings.class);
-                        readings.add(reading);
-                    }
-
-                    updateTemperatureChart(readings);
-                });
-    }
-
-    private void updateTemperatureChart(List<SensorReadings> readings) {
-        if (readings.isEmpty()) {
-            temperatureChart.clear();
-            temperatureChart.setNoDataText("No temperature readings yet");
-            temperatureChart.invalidate();
-            return;
-        }
-
-        List<Entry> tempEntries = new ArrayList<>();
-        List<String> xLabels = new ArrayList<>();
-
-        SimpleDateFormat inputFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-        SimpleDateFormat outputFormat = new SimpleDateFormat("MM/dd HH:mm", Locale.getDefault());
-
-        float minTemp = Float.MAX_VALUE;
-        float maxTemp = Float.MIN_VALUE;
-
-        for (int i = 0; i < readings.size(); i++) {
-            SensorReadings reading = readings.get(i);
-            float temp = reading.getTemperature_c();
-            tempEntries.add(new Entry(i, temp));
-
-            // Track min/max for Y-axis
-            minTemp = Math.min(minTemp, temp);
-            maxTemp = Math.max(maxTemp, temp);
-
-            // Format timestamp for X-axis label
-            try {
-                Date date = inputFormat.parse(reading.getTimestamp());
-                if (date != null) {
-                    xLabels.add(outputFormat.format(date));
-                } else {
-                    xLabels.add(String.valueOf(i + 1));
-                }
-            } catch (ParseException e) {
-                xLabels.add(String.valueOf(i + 1));
-            }
-        }
-
-        // Configure X-axis with time labels
-        XAxis xAxis = temperatureChart.getXAxis();
-        xAxis.setValueFormatter(new IndexAxisValueFormatter(xLabels));
-
-        // Intelligently set label count based on number of data points
-        int dataPointCount = readings.size();
-        int labelCount;
-
-        if (dataPointCount <= 10) {
-            // Show all labels if 10 or fewer points
-            labelCount = dataPointCount;
-        } else if (dataPointCount <= 50) {
-            // Show every 5th label
-            labelCount = dataPointCount / 5;
-        } else if (dataPointCount <= 100) {
-            // Show every 10th label
-            labelCount = dataPointCount / 10;
-        } else {
-            // For very large datasets, show roughly 15-20 labels
-            labelCount = 15;
-        }
-
-        xAxis.setLabelCount(labelCount, false);
-        xAxis.setLabelRotationAngle(-45f);
-        // Allow granularity to be smaller than 1 for dense data
-        xAxis.setGranularity(1f);
-        xAxis.setGranularityEnabled(true);
-
-        // Configure Y-axis with dynamic range based on data
-        YAxis yAxis = temperatureChart.getAxisLeft();
-        // Add some padding (10%) above and below the data range
-        float range = maxTemp - minTemp;
-        float padding = range > 0 ? range * 0.1f : 1f; // At least 1 degree padding if all temps are the same
-        yAxis.setAxisMinimum(minTemp - padding);
-        yAxis.setAxisMaximum(maxTemp + padding);
-
-        // Create dataset
-        LineDataSet dataSet = new LineDataSet(tempEntries, "Temperature (°C)");
-        dataSet.setColor(Color.BLUE);
-        dataSet.setCircleColor(Color.BLUE);
-        dataSet.setCircleHoleColor(Color.BLACK);
-        dataSet.setLineWidth(2f);
-
-        // Adjust circle size based on data density
-        if (dataPointCount > 50) {
-            dataSet.setCircleRadius(1.5f);
-            dataSet.setDrawCircles(true);
-        } else if (dataPointCount > 20) {
-            dataSet.setCircleRadius(2f);
-            dataSet.setDrawCircles(true);
-        } else {
-            dataSet.setCircleRadius(3f);
-            dataSet.setDrawCircles(true);
-        }
-
-        dataSet.setDrawValues(false);
-        dataSet.setMode(LineDataSet.Mode.CUBIC_BEZIER);
-        dataSet.setCubicIntensity(0.2f); // Smoother curves for dense data
-
-        // Update chart
-        LineData lineData = new LineData(dataSet);
-        temperatureChart.setData(lineData);
-
-        // Set visible range - show last 20 data points initially if there are many
-        if (dataPointCount > 20) {
-            temperatureChart.setVisibleXRangeMaximum(20);
-            temperatureChart.moveViewToX(dataPointCount - 1); // Move to most recent data
-        }
-
-        temperatureChart.notifyDataSetChanged();
-        temperatureChart.invalidate();
+                .document(recipeId), Boolean.TRUE.equals(currentRecipe.getReadingsTsMigrated()));
     }
 
     private void setupPhChart() {
@@ -1231,166 +1293,49 @@ public class ViewRecipeActivity extends AppCompatActivity {
         phChart.invalidate();
     }
 
-    private void loadPhReadings() {
-        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
-        if (user == null) {
-            Log.w(TAG, "Cannot load pH readings: No user logged in.");
-            return;
-        }
-
-        // Stop previous listener if exists
-        if (phReadingsListener != null) {
-            phReadingsListener.remove();
-        }
-
-        // Listen to pH readings for this recipe
-        phReadingsListener = db.collection("users")
-                .document(user.getUid())
-                .collection("Recipes")
-                .document(recipeId)
-                .collection("ph_readings")
-                .orderBy("timestamp", Query.Direction.ASCENDING)
-                .addSnapshotListener((snapshots, error) -> {
-                    if (error != null) {
-                        Log.e(TAG, "Error loading pH readings", error);
-                        return;
-                    }
-
-                    if (snapshots == null || snapshots.isEmpty()) {
-                        // No data yet
-                        phChart.clear();
-                        phChart.setNoDataText("No pH readings yet");
-                        phChart.invalidate();
-                        return;
-                    }
-
-                    // Parse readings
-                    List<SensorReadings> readings = new ArrayList<>();
-                    for (QueryDocumentSnapshot doc : snapshots) {
-                        SensorReadings reading = doc.toObject(SensorReadings.class);
-                        readings.add(reading);
-                    }
-
-                    updatePhChart(readings);
-                });
-    }
-
-    private void updatePhChart(List<SensorReadings> readings) {
-        if (readings.isEmpty()) {
-            phChart.clear();
-            phChart.setNoDataText("No pH readings yet");
-            phChart.invalidate();
-            return;
-        }
-
-        List<Entry> phEntries = new ArrayList<>();
-        List<String> xLabels = new ArrayList<>();
-
-        SimpleDateFormat inputFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-        SimpleDateFormat outputFormat = new SimpleDateFormat("MM/dd HH:mm", Locale.getDefault());
-
-        float minPh = Float.MAX_VALUE;
-        float maxPh = Float.MIN_VALUE;
-
-        for (int i = 0; i < readings.size(); i++) {
-            SensorReadings reading = readings.get(i);
-            float ph = reading.getPh_value();
-            phEntries.add(new Entry(i, ph));
-
-            // Track min/max for Y-axis
-            minPh = Math.min(minPh, ph);
-            maxPh = Math.max(maxPh, ph);
+    private void setupCombinedChart() {
+        // General Styling
+        combinedChart.setBackgroundColor(Color.WHITE);
+        combinedChart.setDrawGridBackground(false);
+        combinedChart.setDrawBorders(false);
 
-            // Format timestamp for X-axis label
-            try {
-                Date date = inputFormat.parse(reading.getTimestamp());
-                if (date != null) {
-                    xLabels.add(outputFormat.format(date));
-                } else {
-                    xLabels.add(String.valueOf(i + 1));
-                }
-            } catch (ParseException e) {
-                xLabels.add(String.valueOf(i + 1));
-            }
-        }
+        // Remove description
+        combinedChart.getDescription().setEnabled(false);
 
-        // Configure X-axis with time labels
-        XAxis xAxis = phChart.getXAxis();
-        xAxis.setValueFormatter(new IndexAxisValueFormatter(xLabels));
-
-        // Intelligently set label count based on number of data points
-        int dataPointCount = readings.size();
-        int labelCount;
-
-        if (dataPointCount <= 10) {
-            labelCount = dataPointCount;
-        } else if (dataPointCount <= 50) {
-            labelCount = dataPointCount / 5;
-        } else if (dataPointCount <= 100) {
-            labelCount = dataPointCount / 10;
-        } else {
-            labelCount = 15;
-        }
+        // Enable touch gestures
+        combinedChart.setTouchEnabled(true);
+        combinedChart.setDragEnabled(true);
+        combinedChart.setScaleEnabled(true);
+        combinedChart.setScaleXEnabled(true);
+        combinedChart.setScaleYEnabled(false);
+        combinedChart.setPinchZoom(false);
+        combinedChart.setDoubleTapToZoomEnabled(true);
 
-        xAxis.setLabelCount(labelCount, false);
-        xAxis.setLabelRotationAngle(-45f);
+        // Customize Axes
+        XAxis xAxis = combinedChart.getXAxis();
+        xAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
         xAxis.setGranularity(1f);
-        xAxis.setGranularityEnabled(true);
-
-        // Configure Y-axis with dynamic range based on data
-        YAxis yAxis = phChart.getAxisLeft();
-        // Add some padding (10%) above and below the data range
-        float range = maxPh - minPh;
-        float padding = range > 0 ? range * 0.1f : 0.5f; // At least 0.5 pH padding
-        yAxis.setAxisMinimum(minPh - padding);
-        yAxis.setAxisMaximum(maxPh + padding);
-
-        // Create dataset
-        LineDataSet dataSet = new LineDataSet(phEntries, "pH Value");
-        dataSet.setColor(Color.parseColor("#FF6B35"));
-        dataSet.setCircleColor(Color.parseColor("#FF6B35"));
-        dataSet.setCircleHoleColor(Color.BLACK);
-        dataSet.setLineWidth(2f);
-
-        // Adjust circle size based on data density
-        if (dataPointCount > 50) {
-            dataSet.setCircleRadius(1.5f);
-            dataSet.setDrawCircles(true);
-        } else if (dataPointCount > 20) {
-            dataSet.setCircleRadius(2f);
-            dataSet.setDrawCircles(true);
-        } else {
-            dataSet.setCircleRadius(3f);
-            dataSet.setDrawCircles(true);
-        }
-
-        dataSet.setDrawValues(false);
-        dataSet.setMode(LineDataSet.Mode.CUBIC_BEZIER);
-        dataSet.setCubicIntensity(0.2f);
+        xAxis.setDrawGridLines(false);
+        xAxis.setTextColor(Color.DKGRAY);
+        xAxis.setAxisLineColor(Color.DKGRAY);
+        xAxis.setLabelRotationAngle(-45f);
 
-        // Update chart
-        LineData lineData = new LineData(dataSet);
-        phChart.setData(lineData);
+        // Temperature on the left, pH on the right
+        YAxis leftAxis = combinedChart.getAxisLeft();
+        leftAxis.setAxisLineColor(Color.DKGRAY);
+        leftAxis.setDrawGridLines(true);
+        leftAxis.setGridColor(Color.LTGRAY);
 
-        // Set visible range - show last 20 data points initially if there are many
-        if (dataPointCount > 20) {
-            phChart.setVisibleXRangeMaximum(20);
-            phChart.moveViewToX(dataPointCount - 1);
-        }
+        YAxis rightAxis = combinedChart.getAxisRight();
+        rightAxis.setAxisLineColor(Color.DKGRAY);
 
-        phChart.notifyDataSetChanged();
-        phChart.invalidate();
-    }
+        // Customize Legend
+        combinedChart.getLegend().setEnabled(true);
+        combinedChart.getLegend().setTextSize(12f);
+        combinedChart.getLegend().setTextColor(Color.DKGRAY);
 
-    private void stopChartListener() {
-        if (tempReadingsListener != null) {
-            tempReadingsListener.remove();
-            tempReadingsListener = null;
-        }
-        if (phReadingsListener != null) {
-            phReadingsListener.remove();
-            phReadingsListener = null;
-        }
+        combinedChart.setNoDataText("Awaiting temperature and pH readings...");
+        combinedChart.invalidate();
     }
 
     @Override
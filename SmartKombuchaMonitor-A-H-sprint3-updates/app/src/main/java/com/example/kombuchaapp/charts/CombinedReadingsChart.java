@@ -0,0 +1,243 @@
+package com.example.kombuchaapp.charts;
+
+import android.view.MotionEvent;
+
+import com.example.kombuchaapp.readings.AggregatePyramid;
+import com.example.kombuchaapp.readings.AsOfJoin;
+import com.example.kombuchaapp.readings.TimeSeriesBuffer;
+import com.github.mikephil.charting.charts.LineChart;
+import com.github.mikephil.charting.components.YAxis;
+import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.data.LineDataSet;
+import com.github.mikephil.charting.listener.ChartTouchListener;
+import com.github.mikephil.charting.listener.OnChartGestureListener;
+
+/**
+ * Draws two series on one LineChart with a y-axis each, aligned with an
+ * AsOfJoin: the left series is drawn as is, the right one as its value as
+ * of each left sample (a step line, since it only changes when a new right
+ * sample arrives). Used to show temperature and pH together, so a change
+ * in temperature can be lined up with the acidification rate.
+ *
+ * Like ReadingsChart, long series are downsampled through an
+ * AggregatePyramid of the left series; the right series is drawn at the
+ * same rows.
+ */
+public class CombinedReadingsChart {
+
+    private static final float POINTS_PER_PIXEL = 2f;
+    private static final int FALLBACK_WIDTH_PX = 1080;
+    private static final int MIN_POINTS = 20;
+
+    private final LineChart chart;
+    private final String leftLabel;
+    private final int leftColor;
+    private final String rightLabel;
+    private final int rightColor;
+    private final String noDataText;
+
+    private final AsOfJoin join = new AsOfJoin();
+    private final AggregatePyramid pyramid = new AggregatePyramid(join.rows());
+
+    private long originMs;
+    private TimeSeriesDataSet leftSet;
+    private TimeSeriesDataSet rightSet;
+    private boolean downsampled;
+    private int[] rowIndices = new int[0];
+    private int[] matchedIndices = new int[0];
+
+    public CombinedReadingsChart(LineChart chart, String leftLabel, int leftColor,
+                                 String rightLabel, int rightColor, String noDataText) {
+        this.chart = chart;
+        this.leftLabel = leftLabel;
+        this.leftColor = leftColor;
+        this.rightLabel = rightLabel;
+        this.rightColor = rightColor;
+        this.noDataText = noDataText;
+
+        chart.getAxisLeft().setTextColor(leftColor);
+        YAxis rightAxis = chart.getAxisRight();
+        rightAxis.setEnabled(true);
+        rightAxis.setTextColor(rightColor);
+        rightAxis.setDrawGridLines(false);
+        chart.setNoDataText(noDataText);
+        chart.setOnChartGestureListener(new ViewportListener());
+    }
+
+    public AsOfJoin getJoin() {
+        return join;
+    }
+
+    public void addLeftSamples(TimeSeriesBuffer batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int firstChanged = join.addLeft(batch);
+        pyramid.onSamplesChanged(firstChanged);
+        refresh(firstChanged);
+    }
+
+    public void addRightSamples(TimeSeriesBuffer batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        refresh(join.addRight(batch));
+    }
+
+    public void clearLeft() {
+        releaseDataSets();
+        join.clearLeft();
+        pyramid.clear();
+        showEmpty();
+    }
+
+    public void clearRight() {
+        join.clearRight();
+        if (leftSet != null) {
+            refresh(0);
+        }
+    }
+
+    // firstChanged is the first row that was added or recomputed
+    private void refresh(int firstChanged) {
+        TimeSeriesBuffer rows = join.rows();
+        if (firstChanged >= rows.size() || rows.isEmpty()) {
+            return;
+        }
+
+        boolean created = leftSet == null;
+        if (created) {
+            originMs = rows.firstTime();
+            leftSet = createDataSet(rows, leftLabel, leftColor, YAxis.AxisDependency.LEFT);
+            rightSet = createDataSet(join.matched(), rightLabel, rightColor, YAxis.AxisDependency.RIGHT);
+            rightSet.setMode(LineDataSet.Mode.STEPPED);
+            chart.setData(new LineData(leftSet, rightSet));
+            chart.getXAxis().setValueFormatter(new ReadingsChart.TimeLabelFormatter(originMs));
+        }
+
+        float lastX = TimeSeriesDataSet.toX(rows.lastTime(), originMs);
+        boolean followTail = created
+                || chart.getHighestVisibleX() >= lastX - chart.getVisibleXRange() * 0.05f;
+        updateDisplayedRows(chart.getLowestVisibleX(), chart.getHighestVisibleX());
+        chart.notifyDataSetChanged();
+        if (followTail) {
+            chart.moveViewToX(lastX);
+        }
+        chart.invalidate();
+    }
+
+    private void updateDisplayedRows(float lowX, float highX) {
+        int target = targetPointCount();
+        if (!downsampled && join.rowCount() <= target) {
+            leftSet.showAll();
+            rightSet.showAll();
+        } else {
+            downsampled = true;
+            downsample(lowX, highX, target);
+        }
+        chart.getData().notifyDataChanged();
+    }
+
+    // Same split as ReadingsChart: full budget on screen, an outline elsewhere
+    private void downsample(float lowX, float highX, int target) {
+        float span = Math.max(highX - lowX, 1f);
+        long fromMs = TimeSeriesDataSet.toTime(lowX - span, originMs);
+        long toMs = TimeSeriesDataSet.toTime(highX + span, originMs) + 1;
+        int outline = target / 4;
+
+        int needed = target + 2 * outline + 6;
+        if (rowIndices.length < needed) {
+            rowIndices = new int[needed];
+            matchedIndices = new int[needed];
+        }
+
+        int n = pyramid.select(Long.MIN_VALUE, fromMs, outline, rowIndices, 0);
+        n = pyramid.select(fromMs, toMs, target, rowIndices, n);
+        n = pyramid.select(toMs, Long.MAX_VALUE, outline, rowIndices, n);
+
+        // The matched values are a suffix of the rows
+        int firstMatched = join.firstMatchedRow();
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (rowIndices[i] >= firstMatched) {
+                matchedIndices[m++] = rowIndices[i] - firstMatched;
+            }
+        }
+        leftSet.showIndices(rowIndices, n);
+        rightSet.showIndices(matchedIndices, m);
+    }
+
+    private void onViewportChanged() {
+        if (leftSet == null || !downsampled) {
+            return;
+        }
+        downsample(chart.getLowestVisibleX(), chart.getHighestVisibleX(), targetPointCount());
+        chart.getData().notifyDataChanged();
+        chart.notifyDataSetChanged();
+        chart.invalidate();
+    }
+
+    private int targetPointCount() {
+        float width = chart.getViewPortHandler().contentWidth();
+        if (width <= 0) {
+            // Not laid out yet
+            width = FALLBACK_WIDTH_PX;
+        }
+        return Math.max(MIN_POINTS, (int) (width * POINTS_PER_PIXEL));
+    }
+
+    private TimeSeriesDataSet createDataSet(TimeSeriesBuffer buffer, String label, int color,
+                                            YAxis.AxisDependency axis) {
+        TimeSeriesDataSet set = new TimeSeriesDataSet(buffer, originMs, label);
+        set.setAxisDependency(axis);
+        set.setColor(color);
+        set.setLineWidth(2f);
+        set.setDrawCircles(false);
+        set.setDrawValues(false);
+        return set;
+    }
+
+    private void releaseDataSets() {
+        if (leftSet != null) {
+            // The datasets still point at the buffers about to be emptied
+            chart.clear();
+        }
+        leftSet = null;
+        rightSet = null;
+        downsampled = false;
+    }
+
+    private void showEmpty() {
+        chart.setNoDataText(noDataText);
+        chart.invalidate();
+    }
+
+    // Resample once a zoom or pan gesture has finished
+    private class ViewportListener implements OnChartGestureListener {
+        @Override
+        public void onChartGestureEnd(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) {
+            onViewportChanged();
+        }
+
+        @Override
+        public void onChartGestureStart(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) {}
+
+        @Override
+        public void onChartLongPressed(MotionEvent me) {}
+
+        @Override
+        public void onChartDoubleTapped(MotionEvent me) {}
+
+        @Override
+        public void onChartSingleTapped(MotionEvent me) {}
+
+        @Override
+        public void onChartFling(MotionEvent me1, MotionEvent me2, float velocityX, float velocityY) {}
+
+        @Override
+        public void onChartScale(MotionEvent me, float scaleX, float scaleY) {}
+
+        @Override
+        public void onChartTranslate(MotionEvent me, float dX, float dY) {}
+    }
+}
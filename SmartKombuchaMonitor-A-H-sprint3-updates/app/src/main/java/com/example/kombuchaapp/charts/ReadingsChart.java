@@ -0,0 +1,755 @@
+package com.example.kombuchaapp.charts;
+
+import android.graphics.Color;
+import android.view.MotionEvent;
+
+import com.example.kombuchaapp.readings.AggregatePyramid;
+import com.example.kombuchaapp.readings.MinuteLabelCache;
+import com.example.kombuchaapp.readings.ReadingStats;
+import com.example.kombuchaapp.readings.SensorAverage;
+import com.example.kombuchaapp.readings.SensorGaps;
+import com.example.kombuchaapp.readings.SensorSamples;
+import com.example.kombuchaapp.readings.TimeSeriesBuffer;
+import com.example.kombuchaapp.readings.TimestampParser;
+import com.github.mikephil.charting.charts.LineChart;
+import com.github.mikephil.charting.components.AxisBase;
+import com.github.mikephil.charting.components.LimitLine;
+import com.github.mikephil.charting.components.XAxis;
+import com.github.mikephil.charting.components.YAxis;
+import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.data.LineDataSet;
+import com.github.mikephil.charting.formatter.ValueFormatter;
+import com.github.mikephil.charting.listener.ChartTouchListener;
+import com.github.mikephil.charting.listener.OnChartGestureListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Draws one series on a LineChart, one line per sensor. ReadingsLoader
+ * decodes readings from Firestore and hands them over as sample batches
+ * per sensor: new readings at the end of a line are appended to its
+ * dataset, older ones (pages loaded on demand) are merged in without
+ * moving the viewport.
+ *
+ * Readings are held in a TimeSeriesBuffer per sensor and drawn through a
+ * read-only TimeSeriesDataSet, so no Entry or label objects are kept per
+ * reading. The x-axis is time (minutes since the first reading). Once a
+ * line has more points than about twice the chart's pixel width, only the
+ * min and max sample of each bucket of an AggregatePyramid level are drawn,
+ * picked for the visible range whenever the user zooms or pans, so spikes
+ * survive zooming out and a redraw costs about the same however long the
+ * brew.
+ *
+ * With two or more sensors the average of all of them (SensorAverage) can be
+ * drawn as an extra dashed line (setShowAverage).
+ *
+ * Spans where a sensor sent nothing for longer than SensorGaps.GAP_MS are
+ * flagged with a marker at their start, so a flat stretch of line between
+ * two distant readings isn't mistaken for data.
+ *
+ * Readings the outlier filter flagged (addSuspectSamples) are drawn as red
+ * rings without a line. They stay out of the lines, stats and y-axis, so
+ * a 0°C glitch doesn't squash the chart (getSuspectCount still counts it).
+ *
+ * The y-axis bounds come from each sensor's ReadingStats, which are kept
+ * up to date per batch and also back the statistics panel.
+ */
+public class ReadingsChart {
+
+    private static final int VISIBLE_POINTS = 20;
+    private static final float POINTS_PER_PIXEL = 2f;
+    private static final int FALLBACK_WIDTH_PX = 1080;
+
+    // Lines of further sensors; the first keeps the chart's own colour
+    private static final int[] SENSOR_COLORS = {
+            Color.parseColor("#009688"),
+            Color.parseColor("#8E24AA"),
+            Color.parseColor("#43A047"),
+            Color.parseColor("#D81B60"),
+            Color.parseColor("#6D4C41"),
+            Color.parseColor("#3949AB"),
+            Color.parseColor("#FFB300"),
+    };
+    private static final int AVERAGE_COLOR = Color.DKGRAY;
+    private static final int GAP_COLOR = Color.parseColor("#9E9E9E");
+    private static final int SUSPECT_COLOR = Color.parseColor("#E53935");
+    // Flapping sensors can leave hundreds of gaps; only the newest are marked
+    private static final int MAX_GAP_FLAGS = 20;
+
+    private final LineChart chart;
+    private final String label;
+    private final int color;
+    private final float minPadding;
+    private final String noDataText;
+    private final ReadingStats.Classifier levels;
+
+    // In order of first reading
+    private final Map<String, Line> lines = new LinkedHashMap<>();
+    private final SensorAverage average = new SensorAverage();
+    private final Line averageLine = new Line(null, average.series(), null);
+    // Flagged readings per sensor, kept apart from the lines
+    private final Map<String, TimeSeriesBuffer> suspects = new HashMap<>();
+    private final Map<String, TimeSeriesDataSet> suspectSets = new HashMap<>();
+    private boolean showAverage;
+    private boolean gapsChanged;
+    private Runnable onStatsChanged;
+
+    private long originMs;
+    private Runnable onReachedStart;
+    private LineData data;
+
+    // levels may be null if time per level isn't needed
+    public ReadingsChart(LineChart chart, String label, int color, float minPadding,
+                         String noDataText, ReadingStats.Classifier levels) {
+        this.chart = chart;
+        this.label = label;
+        this.color = color;
+        this.minPadding = minPadding;
+        this.noDataText = noDataText;
+        this.levels = levels;
+
+        chart.setOnChartGestureListener(new ViewportListener());
+        chart.getXAxis().setDrawLimitLinesBehindData(true);
+    }
+
+    public void setOnReachedStartListener(Runnable onReachedStart) {
+        this.onReachedStart = onReachedStart;
+    }
+
+    // Runs after every batch and clear, once getStats() reflects it
+    public void setOnStatsChangedListener(Runnable onStatsChanged) {
+        this.onStatsChanged = onStatsChanged;
+    }
+
+    // Sensors with readings on the chart, in order of their first batch
+    public List<String> getSensorIds() {
+        return new ArrayList<>(lines.keySet());
+    }
+
+    // Null if the sensor has no readings on the chart
+    public ReadingStats getStats(String sensorId) {
+        Line line = lines.get(SensorSamples.sensorOrDefault(sensorId));
+        return line != null ? line.stats : null;
+    }
+
+    // The sensor's clean readings on the chart, oldest first; null if none. Not to be modified
+    public TimeSeriesBuffer getSamples(String sensorId) {
+        Line line = lines.get(SensorSamples.sensorOrDefault(sensorId));
+        return line != null ? line.samples : null;
+    }
+
+    // Readings of the sensor that were flagged as suspect and left out of its line
+    public int getSuspectCount(String sensorId) {
+        TimeSeriesBuffer flagged = suspects.get(SensorSamples.sensorOrDefault(sensorId));
+        return flagged != null ? flagged.size() : 0;
+    }
+
+    public boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    // Readings of all sensors together
+    public int size() {
+        int size = 0;
+        for (Line line : lines.values()) {
+            size += line.samples.size();
+        }
+        return size;
+    }
+
+    // The average line is only drawn while there are at least two sensors
+    public void setShowAverage(boolean show) {
+        if (showAverage == show) {
+            return;
+        }
+        showAverage = show;
+        if (data != null) {
+            refresh(false, chart.getVisibleXRange());
+            keepViewport(chart.getLowestVisibleX(), chart.getVisibleXRange());
+        }
+    }
+
+    public void addSamples(TimeSeriesBuffer batch) {
+        addSamples(SensorSamples.DEFAULT_SENSOR, batch);
+    }
+
+    /*
+     * Adds a time-ordered batch of one sensor's samples. Samples newer than
+     * everything on the chart are appended (following the tail if the user
+     * is looking at it); older ones, such as pages loaded on demand, are
+     * merged in and the current viewport is kept.
+     */
+    public void addSamples(String sensorId, TimeSeriesBuffer batch) {
+        if (batch.isEmpty()) {
+            if (isEmpty()) {
+                // No data yet
+                showEmpty();
+            }
+            return;
+        }
+
+        String id = SensorSamples.sensorOrDefault(sensorId);
+        Line line = lines.get(id);
+        if (line == null) {
+            line = new Line(id, new TimeSeriesBuffer(), new ReadingStats(levels));
+            lines.put(id, line);
+        }
+
+        if (data == null) {
+            line.merge(batch);
+            averageLine.onChanged(average.add(id, batch));
+            refresh(true, defaultSpan());
+            notifyStatsChanged();
+            return;
+        }
+
+        float visible = chart.getVisibleXRange();
+        float lowX = chart.getLowestVisibleX();
+        boolean followTail = chart.getHighestVisibleX() >= lastX() - visible * 0.05f;
+        float span = nextVisibleSpan(visible);
+        long oldFirstMs = firstTime();
+
+        int oldSize = line.samples.size();
+        int firstChanged = line.merge(batch);
+        averageLine.onChanged(average.add(id, batch));
+        if (firstChanged == oldSize && batch.firstTime() >= oldFirstMs) {
+            refresh(followTail, span);
+        } else if (followTail && batch.lastTime() >= lastTime()) {
+            refresh(true, span);
+        } else {
+            refresh(false, visible);
+            keepViewport(lowX, visible);
+        }
+        notifyStatsChanged();
+    }
+
+    /*
+     * Adds a time-ordered batch of one sensor's suspect readings. They are
+     * only drawn once the chart has clean readings to place them against.
+     */
+    public void addSuspectSamples(String sensorId, TimeSeriesBuffer batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        String id = SensorSamples.sensorOrDefault(sensorId);
+        TimeSeriesBuffer flagged = suspects.get(id);
+        if (flagged == null) {
+            flagged = new TimeSeriesBuffer(batch.size());
+            suspects.put(id, flagged);
+        }
+        flagged.merge(batch);
+
+        if (data != null) {
+            updateSuspectSets();
+            data.notifyDataChanged();
+            chart.notifyDataSetChanged();
+            chart.invalidate();
+        }
+        notifyStatsChanged();
+    }
+
+    public void clear() {
+        if (data != null) {
+            // The old datasets still point at the buffers we're about to empty
+            chart.clear();
+        }
+        data = null;
+        lines.clear();
+        suspects.clear();
+        suspectSets.clear();
+        average.clear();
+        averageLine.reset();
+        chart.getXAxis().removeAllLimitLines();
+        gapsChanged = false;
+        notifyStatsChanged();
+    }
+
+    private void notifyStatsChanged() {
+        if (onStatsChanged != null) {
+            onStatsChanged.run();
+        }
+    }
+
+    private boolean averageShown() {
+        return showAverage && lines.size() >= 2 && !average.series().isEmpty();
+    }
+
+    private void refresh(boolean followTail, float span) {
+        float lastX = lastX();
+        float firstX = TimeSeriesDataSet.toX(firstTime(), originMs);
+
+        boolean created = data == null;
+        if (created) {
+            originMs = firstTime();
+            lastX = lastX();
+            firstX = 0f;
+            data = new LineData();
+        }
+
+        // Decide which x-range will be on screen so downsampling can favour it
+        float lowX;
+        float highX;
+        if (followTail) {
+            highX = lastX;
+            lowX = Math.max(firstX, lastX - span);
+        } else {
+            lowX = chart.getLowestVisibleX();
+            highX = chart.getHighestVisibleX();
+        }
+
+        int target = targetPointCount();
+        int longest = 0;
+        for (Line line : lines.values()) {
+            if (line.dataSet == null) {
+                line.show(createDataSet(line, lineColor(line), labelFor(line.sensorId)));
+            }
+            line.updateDisplayedEntries(lowX, highX, target);
+            line.dataSet.setCircleRadius(circleRadiusFor(line.samples.size()));
+            longest = Math.max(longest, line.samples.size());
+        }
+        if (averageShown()) {
+            if (averageLine.dataSet == null) {
+                averageLine.show(createAverageDataSet());
+            }
+            averageLine.updateDisplayedEntries(lowX, highX, target);
+        } else {
+            averageLine.hide();
+        }
+        updateSuspectSets();
+        data.notifyDataChanged();
+        if (created) {
+            chart.setData(data);
+            chart.getXAxis().setValueFormatter(new TimeLabelFormatter(originMs));
+        }
+
+        XAxis xAxis = chart.getXAxis();
+        if (gapsChanged) {
+            updateGapFlags(xAxis);
+        }
+        xAxis.setLabelCount(labelCountFor(longest), false);
+        xAxis.setLabelRotationAngle(-45f);
+        xAxis.setGranularity(1f);
+        xAxis.setGranularityEnabled(true);
+
+        // Add some padding (10%) above and below the data range of every sensor
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (Line line : lines.values()) {
+            min = Math.min(min, line.stats.getMin());
+            max = Math.max(max, line.stats.getMax());
+        }
+        YAxis yAxis = chart.getAxisLeft();
+        float range = max - min;
+        float padding = range > 0 ? range * 0.1f : minPadding;
+        yAxis.setAxisMinimum(min - padding);
+        yAxis.setAxisMaximum(max + padding);
+
+        chart.notifyDataSetChanged();
+
+        // Keep showing the newest points, unless the user has scrolled back
+        if (followTail && lastX - firstX > span) {
+            chart.setVisibleXRangeMaximum(span);
+            chart.moveViewToX(lastX);
+            // Lift the limit again so the user can still zoom out over the whole brew
+            chart.setVisibleXRangeMaximum(Float.MAX_VALUE);
+        }
+
+        chart.invalidate();
+    }
+
+    // Few enough to always draw every one
+    private void updateSuspectSets() {
+        for (Map.Entry<String, TimeSeriesBuffer> e : suspects.entrySet()) {
+            TimeSeriesDataSet set = suspectSets.get(e.getKey());
+            if (set == null) {
+                set = createSuspectDataSet(e.getValue(), e.getKey());
+                suspectSets.put(e.getKey(), set);
+                data.addDataSet(set);
+            }
+            set.showAll();
+        }
+    }
+
+    // Marks the start of the newest gaps of every sensor
+    private void updateGapFlags(XAxis xAxis) {
+        gapsChanged = false;
+        xAxis.removeAllLimitLines();
+
+        List<long[]> newest = new ArrayList<>();
+        for (Line line : lines.values()) {
+            int taken = 0;
+            for (Map.Entry<Long, Long> gap : line.gaps.gaps().descendingMap().entrySet()) {
+                if (taken++ == MAX_GAP_FLAGS) {
+                    break;
+                }
+                newest.add(new long[]{gap.getKey(), gap.getValue(), indexOf(line)});
+            }
+        }
+        Collections.sort(newest, (a, b) -> Long.compare(b[0], a[0]));
+
+        List<String> sensors = getSensorIds();
+        for (int i = 0; i < newest.size() && i < MAX_GAP_FLAGS; i++) {
+            long[] gap = newest.get(i);
+            String sensorId = sensors.get((int) gap[2]);
+            String prefix = SensorSamples.DEFAULT_SENSOR.equals(sensorId) ? "" : sensorId + " ";
+            LimitLine flag = new LimitLine(TimeSeriesDataSet.toX(gap[0], originMs),
+                    prefix + "offline " + formatGap(gap[1] - gap[0]));
+            flag.setLineColor(GAP_COLOR);
+            flag.setLineWidth(1f);
+            flag.enableDashedLine(6f, 6f, 0f);
+            flag.setTextColor(GAP_COLOR);
+            flag.setTextSize(9f);
+            flag.setLabelPosition(LimitLine.LimitLabelPosition.RIGHT_TOP);
+            xAxis.addLimitLine(flag);
+        }
+    }
+
+    private static String formatGap(long ms) {
+        long minutes = ms / TimestampParser.MS_PER_MINUTE;
+        if (minutes < 60) {
+            return minutes + "m";
+        }
+        return (minutes / 60) + "h " + (minutes % 60) + "m";
+    }
+
+    // Shows the same x-range as before the axis bounds changed
+    private void keepViewport(float lowX, float visible) {
+        chart.setVisibleXRangeMaximum(visible);
+        chart.moveViewToX(lowX);
+        chart.setVisibleXRangeMaximum(Float.MAX_VALUE);
+        chart.invalidate();
+    }
+
+    // Oldest reading of any sensor; only valid if not empty
+    private long firstTime() {
+        long first = Long.MAX_VALUE;
+        for (Line line : lines.values()) {
+            first = Math.min(first, line.samples.firstTime());
+        }
+        return first;
+    }
+
+    // Newest reading of any sensor; only valid if not empty
+    private long lastTime() {
+        return newestLine().samples.lastTime();
+    }
+
+    private Line newestLine() {
+        Line newest = null;
+        for (Line line : lines.values()) {
+            if (newest == null || line.samples.lastTime() > newest.samples.lastTime()) {
+                newest = line;
+            }
+        }
+        return newest;
+    }
+
+    private float lastX() {
+        return TimeSeriesDataSet.toX(lastTime(), originMs);
+    }
+
+    // Time covered by the newest VISIBLE_POINTS readings of the most recent sensor
+    private float defaultSpan() {
+        TimeSeriesBuffer samples = newestLine().samples;
+        int first = Math.max(0, samples.size() - VISIBLE_POINTS);
+        float span = TimeSeriesDataSet.toX(samples.lastTime(), samples.timeAt(first));
+        return Math.max(span, 1f);
+    }
+
+    // How much of the x-axis to keep on screen while following new readings
+    private float nextVisibleSpan(float visible) {
+        float firstX = TimeSeriesDataSet.toX(firstTime(), originMs);
+        if (chart.getLowestVisibleX() <= firstX + visible * 0.05f) {
+            // The whole series was on screen, keep it that way
+            return Float.MAX_VALUE;
+        }
+        return Math.max(visible, defaultSpan());
+    }
+
+    private void onViewportChanged() {
+        if (data == null) {
+            return;
+        }
+
+        // Scrolled or zoomed out to the oldest loaded reading, ask for the page before it
+        float firstX = TimeSeriesDataSet.toX(firstTime(), originMs);
+        if (onReachedStart != null
+                && chart.getLowestVisibleX() <= firstX + chart.getVisibleXRange() * 0.1f) {
+            onReachedStart.run();
+        }
+
+        boolean resampled = false;
+        int target = targetPointCount();
+        float lowX = chart.getLowestVisibleX();
+        float highX = chart.getHighestVisibleX();
+        for (Line line : lines.values()) {
+            resampled |= line.resample(lowX, highX, target);
+        }
+        resampled |= averageLine.resample(lowX, highX, target);
+        if (!resampled) {
+            return;
+        }
+        data.notifyDataChanged();
+        chart.notifyDataSetChanged();
+        chart.invalidate();
+    }
+
+    private int targetPointCount() {
+        float width = chart.getViewPortHandler().contentWidth();
+        if (width <= 0) {
+            // Not laid out yet
+            width = FALLBACK_WIDTH_PX;
+        }
+        return Math.max(VISIBLE_POINTS, (int) (width * POINTS_PER_PIXEL));
+    }
+
+    private int lineColor(Line line) {
+        int index = indexOf(line);
+        return index == 0 ? color : SENSOR_COLORS[(index - 1) % SENSOR_COLORS.length];
+    }
+
+    // Position among the sensors, in order of their first batch
+    private int indexOf(Line line) {
+        int index = 0;
+        for (Line other : lines.values()) {
+            if (other == line) {
+                break;
+            }
+            index++;
+        }
+        return index;
+    }
+
+    private String labelFor(String sensorId) {
+        if (SensorSamples.DEFAULT_SENSOR.equals(sensorId)) {
+            return label;
+        }
+        return label + " (" + sensorId + ")";
+    }
+
+    private TimeSeriesDataSet createDataSet(Line line, int lineColor, String lineLabel) {
+        TimeSeriesDataSet set = new TimeSeriesDataSet(line.samples, originMs, lineLabel);
+        set.setColor(lineColor);
+        set.setCircleColor(lineColor);
+        set.setCircleHoleColor(Color.BLACK);
+        set.setLineWidth(2f);
+        set.setDrawCircles(true);
+        set.setDrawValues(false);
+        set.setMode(LineDataSet.Mode.CUBIC_BEZIER);
+        set.setCubicIntensity(0.2f); // Smoother curves for dense data
+        return set;
+    }
+
+    private TimeSeriesDataSet createAverageDataSet() {
+        TimeSeriesDataSet set = new TimeSeriesDataSet(average.series(), originMs, label + " (average)");
+        set.setColor(AVERAGE_COLOR);
+        set.setLineWidth(1.5f);
+        set.enableDashedLine(10f, 6f, 0f);
+        set.setDrawCircles(false);
+        set.setDrawValues(false);
+        set.setHighlightEnabled(false);
+        return set;
+    }
+
+    private TimeSeriesDataSet createSuspectDataSet(TimeSeriesBuffer flagged, String sensorId) {
+        String suffix = SensorSamples.DEFAULT_SENSOR.equals(sensorId) ? " (suspect)" : " (" + sensorId + ", suspect)";
+        TimeSeriesDataSet set = new TimeSeriesDataSet(flagged, originMs, label + suffix);
+        set.setColor(Color.TRANSPARENT);
+        set.setLineWidth(0f);
+        set.setDrawCircles(true);
+        set.setCircleColor(SUSPECT_COLOR);
+        set.setCircleRadius(4f);
+        set.setDrawCircleHole(true);
+        set.setCircleHoleColor(Color.WHITE);
+        set.setCircleHoleRadius(2.5f);
+        set.setDrawValues(false);
+        set.setHighlightEnabled(false);
+        return set;
+    }
+
+    private void showEmpty() {
+        clear();
+        chart.clear();
+        chart.setNoDataText(noDataText);
+        chart.invalidate();
+    }
+
+    private static int labelCountFor(int dataPointCount) {
+        if (dataPointCount <= 10) {
+            // Show all labels if 10 or fewer points
+            return dataPointCount;
+        } else if (dataPointCount <= 50) {
+            // Show every 5th label
+            return dataPointCount / 5;
+        } else if (dataPointCount <= 100) {
+            // Show every 10th label
+            return dataPointCount / 10;
+        }
+        // For very large datasets, show roughly 15-20 labels
+        return 15;
+    }
+
+    private static float circleRadiusFor(int dataPointCount) {
+        if (dataPointCount > 50) {
+            return 1.5f;
+        } else if (dataPointCount > 20) {
+            return 2f;
+        }
+        return 3f;
+    }
+
+    /*
+     * One drawn line: a sensor's readings, or the average of all sensors
+     * (stats and gaps are null then). Samples that changed since the dataset was last
+     * updated start at changedFrom.
+     */
+    private class Line {
+        final String sensorId;
+        final TimeSeriesBuffer samples;
+        final AggregatePyramid pyramid;
+        final ReadingStats stats;
+        final SensorGaps gaps;
+        TimeSeriesDataSet dataSet;
+        boolean downsampled;
+        int[] sampleIndices = new int[0];
+        int changedFrom;
+
+        Line(String sensorId, TimeSeriesBuffer samples, ReadingStats stats) {
+            this.sensorId = sensorId;
+            this.samples = samples;
+            this.pyramid = new AggregatePyramid(samples);
+            this.stats = stats;
+            this.gaps = stats != null ? new SensorGaps() : null;
+        }
+
+        // Returns the first changed index, like TimeSeriesBuffer.merge
+        int merge(TimeSeriesBuffer batch) {
+            int firstChanged = stats.merge(samples, batch);
+            onChanged(firstChanged);
+            gapsChanged |= gaps.onMerged(samples, batch, firstChanged);
+            return firstChanged;
+        }
+
+        void onChanged(int firstChanged) {
+            pyramid.onSamplesChanged(firstChanged);
+            changedFrom = Math.min(changedFrom, firstChanged);
+        }
+
+        void show(TimeSeriesDataSet created) {
+            dataSet = created;
+            downsampled = false;
+            changedFrom = 0;
+            data.addDataSet(dataSet);
+        }
+
+        void hide() {
+            if (dataSet != null && data != null) {
+                data.removeDataSet(dataSet);
+            }
+            dataSet = null;
+        }
+
+        void reset() {
+            dataSet = null;
+            downsampled = false;
+            pyramid.clear();
+            changedFrom = 0;
+        }
+
+        void updateDisplayedEntries(float lowX, float highX, int target) {
+            if (!downsampled && samples.size() <= target) {
+                // Still small enough to draw every reading; only widen the bounds for the changed ones
+                if (changedFrom == 0) {
+                    dataSet.showAll();
+                } else {
+                    dataSet.notifyAppended(changedFrom);
+                }
+            } else {
+                downsampled = true;
+                downsample(lowX, highX, target);
+            }
+            changedFrom = samples.size();
+        }
+
+        // Picks the points for a new viewport; false if every reading is drawn anyway
+        boolean resample(float lowX, float highX, int target) {
+            if (dataSet == null || !downsampled) {
+                return false;
+            }
+            downsample(lowX, highX, target);
+            return true;
+        }
+
+        /*
+         * The visible range (plus one screen either side for panning) gets
+         * the full point budget; the rest of the line only needs a rough
+         * outline until the user scrolls there and the range is resampled.
+         */
+        private void downsample(float lowX, float highX, int target) {
+            float span = Math.max(highX - lowX, 1f);
+            long fromMs = TimeSeriesDataSet.toTime(lowX - span, originMs);
+            long toMs = TimeSeriesDataSet.toTime(highX + span, originMs) + 1;
+            int outline = target / 4;
+
+            // Each pyramid bucket adds at most two points, plus the range ends
+            int needed = target + 2 * outline + 6;
+            if (sampleIndices.length < needed) {
+                sampleIndices = new int[needed];
+            }
+
+            int n = pyramid.select(Long.MIN_VALUE, fromMs, outline, sampleIndices, 0);
+            n = pyramid.select(fromMs, toMs, target, sampleIndices, n);
+            n = pyramid.select(toMs, Long.MAX_VALUE, outline, sampleIndices, n);
+            dataSet.showIndices(sampleIndices, n);
+        }
+    }
+
+    // Resample once a zoom or pan gesture has finished
+    private class ViewportListener implements OnChartGestureListener {
+        @Override
+        public void onChartGestureEnd(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) {
+            onViewportChanged();
+        }
+
+        @Override
+        public void onChartGestureStart(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) {}
+
+        @Override
+        public void onChartLongPressed(MotionEvent me) {}
+
+        @Override
+        public void onChartDoubleTapped(MotionEvent me) {}
+
+        @Override
+        public void onChartSingleTapped(MotionEvent me) {}
+
+        @Override
+        public void onChartFling(MotionEvent me1, MotionEvent me2, float velocityX, float velocityY) {}
+
+        @Override
+        public void onChartScale(MotionEvent me, float scaleX, float scaleY) {}
+
+        @Override
+        public void onChartTranslate(MotionEvent me, float dX, float dY) {}
+    }
+
+    // Formats axis positions (minutes since the origin) as wall-clock labels
+    static class TimeLabelFormatter extends ValueFormatter {
+        private final long originMs;
+        private final MinuteLabelCache labels = new MinuteLabelCache();
+
+        TimeLabelFormatter(long originMs) {
+            this.originMs = originMs;
+        }
+
+        @Override
+        public String getAxisLabel(float value, AxisBase axis) {
+            return labels.label(TimeSeriesDataSet.toTime(value, originMs));
+        }
+    }
+}
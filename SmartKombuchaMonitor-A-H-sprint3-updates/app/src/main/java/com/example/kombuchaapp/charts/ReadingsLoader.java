@@ -0,0 +1,676 @@
+package com.example.kombuchaapp.charts;
+
+import android.util.Log;
+
+import com.example.kombuchaapp.readings.ReadingChunks;
+import com.example.kombuchaapp.readings.ReadingDeduper;
+import com.example.kombuchaapp.readings.ReadingSeries;
+import com.example.kombuchaapp.readings.ReadingTimestamps;
+import com.example.kombuchaapp.readings.SensorGaps;
+import com.example.kombuchaapp.readings.SensorSamples;
+import com.example.kombuchaapp.readings.SuspectReadings;
+import com.example.kombuchaapp.readings.TimeSeriesBuffer;
+import com.example.kombuchaapp.readings.TimestampParser;
+import com.example.kombuchaapp.repositories.ListenerHub;
+import com.example.kombuchaapp.repositories.LocalReadingsStore;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Feeds a ReadingsChart from one series of a recipe without downloading
+ * the whole brew. Readings may be stored one per document (legacy) or
+ * packed into hourly chunks (see ReadingChunks), and cold hours end up as
+ * Gorilla-encoded chunks once ReadingsCompaction has run. All of them are
+ * decoded and merged by time, one line per sensor_id: however many probes
+ * a recipe has, a series still costs one listener per storage layout.
+ * Each sensor's readings pass a Hampel filter (SuspectReadings) on the way
+ * out; glitches go to the chart as suspect points and not to the
+ * listeners that only want clean readings.
+ *
+ * Whatever was downloaded before is drawn straight from LocalReadingsStore.
+ * Snapshot listeners then cover only what is newer than the stored range,
+ * and never more than the last DEFAULT_WINDOW_MS. Anything older than the
+ * stored range is fetched with one-shot range queries, a page at a time,
+ * when the user scrolls or zooms out to the start of the chart; a gap
+ * between the stored range and the listeners goes through the same
+ * queries straight away. Everything fetched is written back to the store.
+ *
+ * Legacy readings are queried by their numeric ts_ms once the recipe's
+ * readingsTsMigrated flag says ReadingsMigration has backfilled it; every
+ * reading written since carries it too. Before that they are queried by
+ * the timestamp string, which sorts the same way but is in local time and
+ * has whole seconds only.
+ *
+ * The listeners go through a ListenerHub, which drops them while the screen
+ * is stopped; on the way back they pick up from the sensor that is furthest
+ * behind rather than from the start of the window.
+ */
+public class ReadingsLoader {
+
+    private static final String TAG = "ReadingsLoader";
+
+    // Matches the compaction cutoff, so listeners start where nothing has been compacted yet
+    private static final long DEFAULT_WINDOW_MS = ReadingChunks.HOT_WINDOW_MS;
+    private static final int PAGE_SIZE = 500;
+    private static final int CHUNK_PAGE_SIZE = 24;
+    // Fetch one older page right away if the live window alone would look empty
+    private static final int MIN_INITIAL_READINGS = 20;
+    private static final long NO_GAP = -1;
+
+    private final ReadingsChart chart;
+    private final ReadingSeries series;
+    private final LocalReadingsStore store;
+    private final ListenerHub hub;
+    private final TimestampParser timestampParser = new TimestampParser();
+
+    private DocumentReference recipeRef;
+    private String recipeId;
+    // Query legacy readings by ts_ms rather than the timestamp string
+    private boolean byTsMs;
+
+    // Firestore is only asked for samples at or after liveFromMs (listeners)
+    // or before olderBeforeMs (pages); the store has what lies between
+    private long liveFromMs;
+    private long olderBeforeMs;
+    private long liveHighMs;
+    // Newest live sample per sensor; sensors report on their own clocks and Wi-Fi
+    private final Map<String, Long> liveHighBySensor = new HashMap<>();
+    // Lowest time each older source is complete down to; 0 once exhausted
+    private long readingsFloorMs;
+    private long chunksFloorMs;
+    // While not NO_GAP, older pages fill [gapFromMs, liveFromMs) instead, down from the listeners
+    private long gapFromMs = NO_GAP;
+    private long storedLowMs;
+    private CollectionReference readingsRef;
+    private CollectionReference chunksRef;
+    private final LiveSubscriber readingsSubscriber = new LiveSubscriber() {
+        @Override
+        public Query query() {
+            if (byTsMs) {
+                return readingsRef
+                        .whereGreaterThanOrEqualTo(ReadingTimestamps.FIELD_TS_MS, liveFromMs)
+                        .orderBy(ReadingTimestamps.FIELD_TS_MS, Query.Direction.ASCENDING);
+            }
+            return readingsRef
+                    .whereGreaterThanOrEqualTo(ReadingTimestamps.FIELD_TIMESTAMP, ReadingTimestamps.format(liveFromMs))
+                    .orderBy(ReadingTimestamps.FIELD_TIMESTAMP, Query.Direction.ASCENDING);
+        }
+
+        @Override
+        public void onEvent(QuerySnapshot snapshots, FirebaseFirestoreException error) {
+            onReadingsSnapshot(this, snapshots, error);
+        }
+    };
+    private final LiveSubscriber chunksSubscriber = new LiveSubscriber() {
+        @Override
+        public Query query() {
+            return chunksRef
+                    .whereGreaterThanOrEqualTo(ReadingChunks.FIELD_START_MS, ReadingChunks.bucketStart(liveFromMs))
+                    .orderBy(ReadingChunks.FIELD_START_MS, Query.Direction.ASCENDING);
+        }
+
+        @Override
+        public void onEvent(QuerySnapshot snapshots, FirebaseFirestoreException error) {
+            onChunksSnapshot(this, snapshots, error);
+        }
+    };
+    private ListenerHub.Subscription readingsSubscription;
+    private ListenerHub.Subscription chunksSubscription;
+
+    // Sensors retry on flaky Wi-Fi; drops readings that were already delivered
+    private final ReadingDeduper deduper = new ReadingDeduper();
+    private final SuspectReadings suspects;
+    // Per live chunk: {samples already on the chart, time of the last one}
+    private final Map<String, long[]> chunkProgress = new HashMap<>();
+    private int pendingFirstSnapshots;
+
+    // Data before the live window, newest first; paged with startAfter
+    private Query olderReadingsQuery;
+    private Query olderChunksQuery;
+    private DocumentSnapshot oldestReading;
+    private DocumentSnapshot oldestChunk;
+    private boolean readingsExhausted;
+    private boolean chunksExhausted;
+    private int olderInFlight;
+
+    // Newest sample handed out so far per sensor, to spot when a tail moves
+    private final Map<String, Long> latestMs = new HashMap<>();
+    private OnLatestReadingListener onLatestReading;
+    private RecipeReadingsStream.OnSamplesListener onSamples;
+
+    // Bumped on every start and stop so replies to an earlier session are ignored
+    private int generation;
+
+    public ReadingsLoader(ReadingsChart chart, ReadingSeries series, LocalReadingsStore store, ListenerHub hub) {
+        this.chart = chart;
+        this.series = series;
+        this.store = store;
+        this.hub = hub;
+        this.suspects = new SuspectReadings(series);
+        chart.setOnReachedStartListener(this::loadOlderPage);
+    }
+
+    // Called whenever a sensor's newest reading moves on, including on start, suspect or not
+    public void setOnLatestReadingListener(OnLatestReadingListener listener) {
+        this.onLatestReading = listener;
+    }
+
+    // Called with every batch of clean readings the chart gets, and whenever the chart is cleared
+    public void setOnSamplesListener(RecipeReadingsStream.OnSamplesListener listener) {
+        this.onSamples = listener;
+    }
+
+    // byTsMs: the recipe's readingsTsMigrated flag
+    public void start(DocumentReference recipeRef, boolean byTsMs) {
+        stop();
+        int startGeneration = generation;
+        this.recipeRef = recipeRef;
+        this.recipeId = recipeRef.getId();
+        this.byTsMs = byTsMs;
+        deduper.clear();
+        suspects.clear();
+        chunkProgress.clear();
+        liveHighBySensor.clear();
+        pendingFirstSnapshots = 2;
+        oldestReading = null;
+        oldestChunk = null;
+        readingsExhausted = false;
+        chunksExhausted = false;
+        olderInFlight = 0;
+        olderReadingsQuery = null;
+        olderChunksQuery = null;
+        latestMs.clear();
+        chart.clear();
+        if (onSamples != null) {
+            onSamples.onCleared(series);
+        }
+
+        store.load(recipeId, series, new LocalReadingsStore.OnStoredReadingsListener() {
+            @Override
+            public void onSuccess(SensorSamples samples, long lowMs, long highMs) {
+                if (startGeneration != generation) {
+                    return;
+                }
+                long windowStartMs = System.currentTimeMillis() - DEFAULT_WINDOW_MS;
+                if (lowMs <= highMs) {
+                    deliver(samples);
+                    // After a long absence the listeners would reach back into compacted hours
+                    attachListeners(Math.max(highMs + 1, windowStartMs), lowMs, highMs + 1);
+                } else {
+                    attachListeners(windowStartMs, windowStartMs, NO_GAP);
+                }
+            }
+
+            @Override
+            public void onFailure(String error) {
+                if (startGeneration != generation) {
+                    return;
+                }
+                long windowStartMs = System.currentTimeMillis() - DEFAULT_WINDOW_MS;
+                attachListeners(windowStartMs, windowStartMs, NO_GAP);
+            }
+        });
+    }
+
+    // gapFromMs is where the stored range ends, or NO_GAP; the gap is fetched right away
+    private void attachListeners(long liveFromMs, long storedLowMs, long gapFromMs) {
+        this.liveFromMs = liveFromMs;
+        this.storedLowMs = storedLowMs;
+        liveHighMs = liveFromMs - 1;
+        readingsRef = recipeRef.collection(series.readingsCollection);
+        chunksRef = recipeRef.collection(series.chunksCollection);
+
+        if (gapFromMs != NO_GAP && gapFromMs < liveFromMs) {
+            this.gapFromMs = gapFromMs;
+            buildOlderQueries(liveFromMs);
+        } else {
+            this.gapFromMs = NO_GAP;
+            buildOlderQueries(storedLowMs);
+        }
+
+        readingsSubscriber.awaitingFirst = true;
+        chunksSubscriber.awaitingFirst = true;
+        readingsSubscription = hub.subscribe(readingsSubscriber);
+        chunksSubscription = hub.subscribe(chunksSubscriber);
+        if (this.gapFromMs != NO_GAP) {
+            loadOlderPage();
+        }
+    }
+
+    // Pages down from olderBeforeMs, no further than gapFromMs while there is a gap
+    private void buildOlderQueries(long olderBeforeMs) {
+        this.olderBeforeMs = olderBeforeMs;
+        readingsFloorMs = olderBeforeMs;
+        chunksFloorMs = olderBeforeMs;
+        oldestReading = null;
+        oldestChunk = null;
+        readingsExhausted = false;
+        chunksExhausted = false;
+
+        Query readings;
+        String timeField;
+        if (byTsMs) {
+            timeField = ReadingTimestamps.FIELD_TS_MS;
+            readings = readingsRef.whereLessThan(timeField, olderBeforeMs);
+            if (gapFromMs != NO_GAP) {
+                readings = readings.whereGreaterThanOrEqualTo(timeField, gapFromMs);
+            }
+        } else {
+            // The timestamp strings sort chronologically, so they work as range cursors.
+            // They only have whole seconds; samples are trimmed to the exact bounds below.
+            timeField = ReadingTimestamps.FIELD_TIMESTAMP;
+            readings = readingsRef.whereLessThan(timeField,
+                    ReadingTimestamps.format(olderBeforeMs + TimestampParser.MS_PER_SECOND));
+            if (gapFromMs != NO_GAP) {
+                readings = readings.whereGreaterThanOrEqualTo(timeField, ReadingTimestamps.format(gapFromMs));
+            }
+        }
+        Query chunks = chunksRef.whereLessThan(ReadingChunks.FIELD_START_MS, olderBeforeMs);
+        if (gapFromMs != NO_GAP) {
+            chunks = chunks.whereGreaterThanOrEqualTo(ReadingChunks.FIELD_START_MS,
+                    ReadingChunks.bucketStart(gapFromMs));
+        }
+        olderReadingsQuery = readings.orderBy(timeField, Query.Direction.DESCENDING)
+                .limit(PAGE_SIZE);
+        olderChunksQuery = chunks.orderBy(ReadingChunks.FIELD_START_MS, Query.Direction.DESCENDING)
+                .limit(CHUNK_PAGE_SIZE);
+    }
+
+    /*
+     * The hub dropped the listeners (screen stopped). If the live range has
+     * been stored, the next query starts just past the newest reading of the
+     * sensor furthest behind, so a lagging sensor's next reading isn't
+     * skipped; what the others sent again is dropped by the deduper.
+     * Otherwise it repeats the same range, so the stored range stays whole.
+     */
+    private void onPaused() {
+        if (pendingFirstSnapshots == 0) {
+            liveFromMs = Math.max(liveFromMs, resumeFromMs());
+        }
+        pendingFirstSnapshots = 2;
+        chunkProgress.clear();
+    }
+
+    // A sensor quiet for longer than GAP_MS is offline, not lagging, and doesn't hold the rest back
+    private long resumeFromMs() {
+        long resumeMs = liveHighMs + 1;
+        for (Long highMs : liveHighBySensor.values()) {
+            resumeMs = Math.min(resumeMs, highMs + 1);
+        }
+        return Math.max(resumeMs, liveHighMs + 1 - SensorGaps.GAP_MS);
+    }
+
+    public void stop() {
+        // Drops any store load or older page still in flight
+        generation++;
+        if (readingsSubscription != null) {
+            readingsSubscription.remove();
+            readingsSubscription = null;
+        }
+        if (chunksSubscription != null) {
+            chunksSubscription.remove();
+            chunksSubscription = null;
+        }
+    }
+
+    // Edits and real deletes are rare, so drop the local copy and reload instead of patching the series
+    private void restart() {
+        if (recipeRef != null) {
+            store.clear(recipeId, series);
+            start(recipeRef, byTsMs);
+        }
+    }
+
+    private void onReadingsSnapshot(LiveSubscriber subscriber, QuerySnapshot snapshots,
+                                    FirebaseFirestoreException error) {
+        if (error != null) {
+            Log.e(TAG, "Error loading " + series.readingsCollection, error);
+            return;
+        }
+        if (snapshots == null) {
+            return;
+        }
+
+        List<DocumentSnapshot> docs;
+        if (subscriber.awaitingFirst) {
+            // May be a shared listener's latest snapshot, so its changes aren't ours
+            subscriber.awaitingFirst = false;
+            docs = snapshots.getDocuments();
+        } else {
+            List<DocumentChange> changes = snapshots.getDocumentChanges();
+            docs = new ArrayList<>(changes.size());
+            for (DocumentChange change : changes) {
+                // Late readings are just additions anywhere in the window; edits and deletes reload
+                if (change.getType() == DocumentChange.Type.ADDED) {
+                    docs.add(change.getDocument());
+                } else if (!isHousekeeping(change)) {
+                    restart();
+                    return;
+                }
+            }
+        }
+
+        SensorSamples batch = new SensorSamples();
+        for (DocumentSnapshot doc : docs) {
+            if (!series.decodeReading(doc, timestampParser, deduper, batch)) {
+                Log.w(TAG, "Skipping reading " + doc.getId() + " without a usable timestamp or " + series.valueField);
+            }
+        }
+
+        // Only the newly added readings; late ones are merged into place by the chart
+        addLiveSamples(batch);
+    }
+
+    /*
+     * Changes that leave the chart as it is: ReadingsCompaction deleting
+     * readings it has folded into a chunk (which the chunk listener and the
+     * deduper take care of), and ReadingsMigration adding ts_ms to a reading
+     * that only had its timestamp string. Compaction only touches hours
+     * before the hot window, which the listeners reach once the screen has
+     * been open a while.
+     */
+    private boolean isHousekeeping(DocumentChange change) {
+        DocumentSnapshot doc = change.getDocument();
+        long timeMs = ReadingTimestamps.fromDocument(doc, timestampParser);
+        if (change.getType() == DocumentChange.Type.REMOVED) {
+            long compactedBeforeMs = ReadingChunks.bucketStart(System.currentTimeMillis() - ReadingChunks.HOT_WINDOW_MS);
+            return timeMs >= 0 && timeMs < compactedBeforeMs;
+        }
+        return timeMs >= 0 && timeMs == timestampParser.parse(doc.getString(ReadingTimestamps.FIELD_TIMESTAMP));
+    }
+
+    /*
+     * Live chunks grow in place, so usually only the samples past what we've
+     * already seen are new. A late reading is inserted in time order inside
+     * its chunk; then the whole chunk goes through the deduper instead.
+     */
+    private void onChunksSnapshot(LiveSubscriber subscriber, QuerySnapshot snapshots,
+                                  FirebaseFirestoreException error) {
+        if (error != null) {
+            Log.e(TAG, "Error loading " + series.chunksCollection, error);
+            return;
+        }
+        if (snapshots == null) {
+            return;
+        }
+
+        List<DocumentSnapshot> docs;
+        if (subscriber.awaitingFirst) {
+            subscriber.awaitingFirst = false;
+            docs = snapshots.getDocuments();
+        } else {
+            List<DocumentChange> changes = snapshots.getDocumentChanges();
+            docs = new ArrayList<>(changes.size());
+            for (DocumentChange change : changes) {
+                if (change.getType() == DocumentChange.Type.REMOVED) {
+                    restart();
+                    return;
+                }
+                docs.add(change.getDocument());
+            }
+        }
+
+        SensorSamples batch = new SensorSamples();
+        TimeSeriesBuffer chunk = new TimeSeriesBuffer();
+        for (DocumentSnapshot doc : docs) {
+            chunk.clear();
+            int count = ReadingChunks.decode(doc, series.valueField, chunk);
+
+            long[] progress = chunkProgress.get(doc.getId());
+            int seen = progress != null ? (int) progress[0] : 0;
+            if (count < seen) {
+                // Samples were rewritten or removed
+                restart();
+                return;
+            }
+            int from = seen > 0 && chunk.timeAt(seen - 1) == progress[1] ? seen : 0;
+            if (count > 0) {
+                chunkProgress.put(doc.getId(), new long[]{count, chunk.lastTime()});
+            }
+            String sensorId = ReadingChunks.sensorOf(doc);
+            batch.merge(sensorId, firstSightings(sensorId, chunk, from));
+        }
+
+        addLiveSamples(batch);
+    }
+
+    private void addLiveSamples(SensorSamples batch) {
+        // The listeners start on a whole second or hour, so skip what the store already had
+        SensorSamples fresh = batch.slice(liveFromMs, Long.MAX_VALUE);
+        deliver(fresh);
+        if (!fresh.isEmpty()) {
+            liveHighMs = Math.max(liveHighMs, fresh.lastTime());
+        }
+        for (Map.Entry<String, TimeSeriesBuffer> e : fresh.entries()) {
+            if (!e.getValue().isEmpty()) {
+                Long highMs = liveHighBySensor.get(e.getKey());
+                if (highMs == null || e.getValue().lastTime() > highMs) {
+                    liveHighBySensor.put(e.getKey(), e.getValue().lastTime());
+                }
+            }
+        }
+
+        boolean firstSnapshotsDone = onFirstSnapshot();
+        // The range only counts as complete once both layouts have reported in, and joins the stored one once the gap is in
+        if (firstSnapshotsDone && gapFromMs == NO_GAP) {
+            store.save(recipeId, series, fresh, liveFromMs, liveHighMs);
+        } else if (!fresh.isEmpty()) {
+            store.save(recipeId, series, fresh, 1, 0);
+        }
+    }
+
+    // Returns true once both live listeners have delivered their first snapshot
+    private boolean onFirstSnapshot() {
+        if (pendingFirstSnapshots > 0 && --pendingFirstSnapshots == 0
+                && chart.size() < MIN_INITIAL_READINGS) {
+            loadOlderPage();
+        }
+        return pendingFirstSnapshots == 0;
+    }
+
+    // Older pages: stores what they cover, down to where both layouts are complete
+    private void addOlderSamples(SensorSamples batch) {
+        if (gapFromMs != NO_GAP) {
+            addGapSamples(batch);
+            return;
+        }
+        SensorSamples older = batch.slice(Long.MIN_VALUE, olderBeforeMs);
+        deliver(older);
+        store.save(recipeId, series, older, Math.max(readingsFloorMs, chunksFloorMs), olderBeforeMs - 1);
+    }
+
+    // Gap pages keep coming until both layouts are exhausted; only then is the range stored
+    private void addGapSamples(SensorSamples batch) {
+        SensorSamples gap = batch.slice(gapFromMs, olderBeforeMs);
+        deliver(gap);
+        store.save(recipeId, series, gap, 1, 0);
+        if (olderInFlight > 0) {
+            return;
+        }
+        if (!readingsExhausted || !chunksExhausted) {
+            loadOlderPage();
+            return;
+        }
+
+        // Joins the stored range to the live one, and to what the listeners stored if they're done
+        long highMs = pendingFirstSnapshots == 0 ? Math.max(liveHighMs, olderBeforeMs - 1) : olderBeforeMs - 1;
+        store.save(recipeId, series, new SensorSamples(), gapFromMs, highMs);
+        gapFromMs = NO_GAP;
+        buildOlderQueries(storedLowMs);
+    }
+
+    private void deliver(SensorSamples samples) {
+        if (samples.isEmpty() && chart.isEmpty()) {
+            // Lets the chart show its no-data text
+            chart.addSamples(new TimeSeriesBuffer());
+            return;
+        }
+
+        for (Map.Entry<String, TimeSeriesBuffer> e : samples.entries()) {
+            String sensorId = e.getKey();
+            TimeSeriesBuffer raw = e.getValue();
+            if (raw.isEmpty()) {
+                continue;
+            }
+            TimeSeriesBuffer clean = new TimeSeriesBuffer(raw.size());
+            TimeSeriesBuffer suspect = new TimeSeriesBuffer(4);
+            suspects.split(sensorId, raw, chart.getSamples(sensorId), clean, suspect);
+
+            if (!clean.isEmpty()) {
+                chart.addSamples(sensorId, clean);
+                if (onSamples != null) {
+                    onSamples.onSamples(series, sensorId, clean);
+                }
+            }
+            if (!suspect.isEmpty()) {
+                chart.addSuspectSamples(sensorId, suspect);
+            }
+
+            Long latest = latestMs.get(sensorId);
+            if (latest == null || raw.lastTime() > latest) {
+                latestMs.put(sensorId, raw.lastTime());
+                if (onLatestReading != null) {
+                    boolean isSuspect = !suspect.isEmpty() && suspect.lastTime() == raw.lastTime();
+                    onLatestReading.onLatestReading(series, sensorId, raw.lastTime(),
+                            raw.valueAt(raw.size() - 1), isSuspect);
+                }
+            }
+        }
+    }
+
+    // Chunk samples from index from on that the deduper hasn't seen; chunks hold one sensor each
+    private TimeSeriesBuffer firstSightings(String sensorId, TimeSeriesBuffer chunk, int from) {
+        TimeSeriesBuffer fresh = new TimeSeriesBuffer(Math.max(1, chunk.size() - from));
+        for (int i = from; i < chunk.size(); i++) {
+            if (deduper.firstSighting(sensorId, chunk.timeAt(i))) {
+                fresh.append(chunk.timeAt(i), chunk.valueAt(i));
+            }
+        }
+        return fresh;
+    }
+
+    public void loadOlderPage() {
+        // Nothing to page until the store has been read and the queries exist
+        if (olderReadingsQuery == null || olderInFlight > 0) {
+            return;
+        }
+        if (!readingsExhausted) {
+            loadOlderReadings();
+        }
+        if (!chunksExhausted) {
+            loadOlderChunks();
+        }
+    }
+
+    private void loadOlderReadings() {
+        int requestGeneration = generation;
+        olderInFlight++;
+
+        Query page = oldestReading != null ? olderReadingsQuery.startAfter(oldestReading) : olderReadingsQuery;
+        page.get()
+                .addOnSuccessListener(snapshots -> {
+                    if (requestGeneration != generation) {
+                        return;
+                    }
+                    olderInFlight--;
+                    readingsExhausted = snapshots.size() < PAGE_SIZE;
+
+                    List<DocumentSnapshot> docs = snapshots.getDocuments();
+                    if (!docs.isEmpty()) {
+                        oldestReading = docs.get(docs.size() - 1);
+                    }
+
+                    // Newest first, so decode back to front
+                    SensorSamples batch = new SensorSamples();
+                    for (int i = docs.size() - 1; i >= 0; i--) {
+                        series.decodeReading(docs.get(i), timestampParser, deduper, batch);
+                    }
+                    if (readingsExhausted) {
+                        readingsFloorMs = 0;
+                    } else if (!batch.isEmpty()) {
+                        // The next page may still hold readings from the same second (or millisecond)
+                        long step = byTsMs ? 1 : TimestampParser.MS_PER_SECOND;
+                        long nextStep = (TimestampParser.floorDiv(batch.firstTime(), step) + 1) * step;
+                        readingsFloorMs = Math.min(readingsFloorMs, nextStep);
+                    }
+                    addOlderSamples(batch);
+                })
+                .addOnFailureListener(e -> {
+                    if (requestGeneration != generation) {
+                        return;
+                    }
+                    olderInFlight--;
+                    Log.e(TAG, "Failed to load older " + series.readingsCollection, e);
+                });
+    }
+
+    private void loadOlderChunks() {
+        int requestGeneration = generation;
+        olderInFlight++;
+
+        Query page = oldestChunk != null ? olderChunksQuery.startAfter(oldestChunk) : olderChunksQuery;
+        page.get()
+                .addOnSuccessListener(snapshots -> {
+                    if (requestGeneration != generation) {
+                        return;
+                    }
+                    olderInFlight--;
+                    chunksExhausted = snapshots.size() < CHUNK_PAGE_SIZE;
+
+                    List<DocumentSnapshot> docs = snapshots.getDocuments();
+                    if (!docs.isEmpty()) {
+                        oldestChunk = docs.get(docs.size() - 1);
+                    }
+
+                    SensorSamples batch = new SensorSamples();
+                    TimeSeriesBuffer chunk = new TimeSeriesBuffer();
+                    for (int i = docs.size() - 1; i >= 0; i--) {
+                        chunk.clear();
+                        ReadingChunks.decode(docs.get(i), series.valueField, chunk);
+                        String sensorId = ReadingChunks.sensorOf(docs.get(i));
+                        batch.merge(sensorId, firstSightings(sensorId, chunk, 0));
+                    }
+                    if (chunksExhausted) {
+                        chunksFloorMs = 0;
+                    } else if (oldestChunk != null) {
+                        Long startMs = oldestChunk.getLong(ReadingChunks.FIELD_START_MS);
+                        if (startMs != null) {
+                            chunksFloorMs = Math.min(chunksFloorMs, startMs);
+                        }
+                    }
+                    addOlderSamples(batch);
+                })
+                .addOnFailureListener(e -> {
+                    if (requestGeneration != generation) {
+                        return;
+                    }
+                    olderInFlight--;
+                    Log.e(TAG, "Failed to load older " + series.chunksCollection, e);
+                });
+    }
+
+    interface OnLatestReadingListener {
+        void onLatestReading(ReadingSeries series, String sensorId, long timeMs, float value, boolean suspect);
+    }
+
+    private abstract class LiveSubscriber implements ListenerHub.Subscriber {
+        // The next snapshot is the full result of a freshly attached query
+        boolean awaitingFirst = true;
+
+        @Override
+        public void onPaused() {
+            awaitingFirst = true;
+            ReadingsLoader.this.onPaused();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.kombuchaapp.charts;
+
+import com.example.kombuchaapp.readings.ReadingSeries;
+import com.example.kombuchaapp.readings.TimeSeriesBuffer;
+import com.example.kombuchaapp.repositories.ListenerHub;
+import com.example.kombuchaapp.repositories.LocalReadingsStore;
+import com.google.firebase.firestore.DocumentReference;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The one place a recipe's readings are read from Firestore. Each series
+ * has a single ReadingsLoader (one live query per storage layout), which
+ * feeds its chart; every new latest reading is also fanned out to the
+ * registered listeners, e.g. temperature alerts and the harvest detector,
+ * so they no longer need a limit(1) listener of their own on the same
+ * collection. The listeners live in the given ListenerHub, so they pause
+ * and resume with the screen without the caller restarting anything.
+ *
+ * A recipe may have several sensors per series. They share the series'
+ * listeners; everything handed out here says which sensor_id it is from.
+ *
+ * Readings the outlier filter flags as suspect (a loose connector reading
+ * 0°C) are only passed to listeners that ask for them, so alerts don't
+ * fire on glitches by default.
+ */
+public class RecipeReadingsStream {
+
+    private final LocalReadingsStore store;
+    private final ListenerHub hub;
+    private final Map<ReadingSeries, ReadingsLoader> loaders = new EnumMap<>(ReadingSeries.class);
+    private final Map<ReadingSeries, List<OnReadingListener>> listeners = new EnumMap<>(ReadingSeries.class);
+    private final Map<ReadingSeries, List<OnReadingListener>> suspectListeners = new EnumMap<>(ReadingSeries.class);
+    private final List<OnSamplesListener> samplesListeners = new ArrayList<>();
+
+    public RecipeReadingsStream(LocalReadingsStore store, ListenerHub hub) {
+        this.store = store;
+        this.hub = hub;
+    }
+
+    public void attachChart(ReadingSeries series, ReadingsChart chart) {
+        ReadingsLoader loader = new ReadingsLoader(chart, series, store, hub);
+        loader.setOnLatestReadingListener(this::dispatch);
+        loader.setOnSamplesListener(new OnSamplesListener() {
+            @Override
+            public void onSamples(ReadingSeries series, String sensorId, TimeSeriesBuffer samples) {
+                for (OnSamplesListener listener : samplesListeners) {
+                    listener.onSamples(series, sensorId, samples);
+                }
+            }
+
+            @Override
+            public void onCleared(ReadingSeries series) {
+                for (OnSamplesListener listener : samplesListeners) {
+                    listener.onCleared(series);
+                }
+            }
+        });
+        loaders.put(series, loader);
+    }
+
+    public void addListener(ReadingSeries series, OnReadingListener listener) {
+        addListener(series, listener, false);
+    }
+
+    // includeSuspect: also called for readings the outlier filter flagged, e.g. to tell the sensor is alive
+    public void addListener(ReadingSeries series, OnReadingListener listener, boolean includeSuspect) {
+        Map<ReadingSeries, List<OnReadingListener>> target = includeSuspect ? suspectListeners : listeners;
+        List<OnReadingListener> seriesListeners = target.get(series);
+        if (seriesListeners == null) {
+            seriesListeners = new ArrayList<>();
+            target.put(series, seriesListeners);
+        }
+        seriesListeners.add(listener);
+    }
+
+    // Gets every batch of every attached series, e.g. to join them into one view
+    public void addSamplesListener(OnSamplesListener listener) {
+        samplesListeners.add(listener);
+    }
+
+    // byTsMs: the recipe's readingsTsMigrated flag, see ReadingsLoader
+    public void start(DocumentReference recipeRef, boolean byTsMs) {
+        for (ReadingsLoader loader : loaders.values()) {
+            loader.start(recipeRef, byTsMs);
+        }
+    }
+
+    public void stop() {
+        for (ReadingsLoader loader : loaders.values()) {
+            loader.stop();
+        }
+    }
+
+    private void dispatch(ReadingSeries series, String sensorId, long timeMs, float value, boolean suspect) {
+        dispatch(suspectListeners.get(series), series, sensorId, timeMs, value);
+        if (!suspect) {
+            dispatch(listeners.get(series), series, sensorId, timeMs, value);
+        }
+    }
+
+    private static void dispatch(List<OnReadingListener> seriesListeners, ReadingSeries series,
+                                 String sensorId, long timeMs, float value) {
+        if (seriesListeners == null) {
+            return;
+        }
+        for (OnReadingListener listener : seriesListeners) {
+            listener.onReading(series, sensorId, timeMs, value);
+        }
+    }
+
+    // Called per sensor, with that sensor's newest reading
+    public interface OnReadingListener {
+        void onReading(ReadingSeries series, String sensorId, long timeMs, float value);
+    }
+
+    // Batches are one sensor's clean readings, time-ordered but may be older than what came before (paging)
+    public interface OnSamplesListener {
+        void onSamples(ReadingSeries series, String sensorId, TimeSeriesBuffer samples);
+        void onCleared(ReadingSeries series);
+    }
+}
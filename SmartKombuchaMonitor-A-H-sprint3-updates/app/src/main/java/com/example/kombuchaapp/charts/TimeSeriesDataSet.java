@@ -0,0 +1,235 @@
+package com.example.kombuchaapp.charts;
+
+import com.example.kombuchaapp.readings.TimeSeriesBuffer;
+import com.github.mikephil.charting.data.DataSet;
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineDataSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only LineDataSet that reads straight from a TimeSeriesBuffer instead
+ * of a List of Entry objects. X values are minutes since {@code originMs}.
+ *
+ * The set can either expose every sample or only a subset of sample indices
+ * (e.g. a downsampled selection). Entry objects are only created when the
+ * renderer asks for a visible point and are never retained.
+ */
+public class TimeSeriesDataSet extends LineDataSet {
+
+    private static final float MS_PER_X = 60_000f;
+
+    private final TimeSeriesBuffer buffer;
+    private final long originMs;
+
+    // When non-null, only these sample indices (ascending) are part of the set
+    private int[] indices;
+    private int indexCount;
+
+    public TimeSeriesDataSet(TimeSeriesBuffer buffer, long originMs, String label) {
+        super(new ArrayList<>(), label);
+        this.buffer = buffer;
+        this.originMs = originMs;
+        calcMinMax();
+    }
+
+    public static float toX(long timeMs, long originMs) {
+        return (timeMs - originMs) / MS_PER_X;
+    }
+
+    public static long toTime(float x, long originMs) {
+        return originMs + Math.round((double) x * MS_PER_X);
+    }
+
+    public long getOriginMs() {
+        return originMs;
+    }
+
+    // Expose every sample in the buffer
+    public void showAll() {
+        indices = null;
+        indexCount = 0;
+        calcMinMax();
+    }
+
+    // Expose only the given sample indices; the array is owned by the set afterwards
+    public void showIndices(int[] sampleIndices, int count) {
+        indices = sampleIndices;
+        indexCount = count;
+        calcMinMax();
+    }
+
+    public boolean isShowingAll() {
+        return indices == null;
+    }
+
+    // Extends min/max with samples appended to the buffer since the last update
+    public void notifyAppended(int firstNewSample) {
+        if (indices != null) {
+            return;
+        }
+        for (int i = firstNewSample; i < buffer.size(); i++) {
+            includeInMinMax(xAt(i), yAt(i));
+        }
+    }
+
+    private int sampleIndex(int entryIndex) {
+        return indices != null ? indices[entryIndex] : entryIndex;
+    }
+
+    private float xAt(int entryIndex) {
+        return toX(buffer.timeAt(sampleIndex(entryIndex)), originMs);
+    }
+
+    private float yAt(int entryIndex) {
+        return buffer.valueAt(sampleIndex(entryIndex));
+    }
+
+    private void includeInMinMax(float x, float y) {
+        if (x < mXMin) mXMin = x;
+        if (x > mXMax) mXMax = x;
+        if (y < mYMin) mYMin = y;
+        if (y > mYMax) mYMax = y;
+    }
+
+    @Override
+    public int getEntryCount() {
+        if (buffer == null) {
+            return 0;
+        }
+        return indices != null ? indexCount : buffer.size();
+    }
+
+    @Override
+    public void calcMinMax() {
+        mXMin = Float.MAX_VALUE;
+        mXMax = -Float.MAX_VALUE;
+        mYMin = Float.MAX_VALUE;
+        mYMax = -Float.MAX_VALUE;
+
+        // Called from the super constructor before the buffer is assigned
+        if (buffer == null) {
+            return;
+        }
+
+        int count = getEntryCount();
+        for (int i = 0; i < count; i++) {
+            includeInMinMax(xAt(i), yAt(i));
+        }
+    }
+
+    @Override
+    public void calcMinMaxY(float fromX, float toX) {
+        mYMin = Float.MAX_VALUE;
+        mYMax = -Float.MAX_VALUE;
+
+        int count = getEntryCount();
+        if (count == 0) {
+            return;
+        }
+
+        int from = getEntryIndex(fromX, Float.NaN, Rounding.DOWN);
+        int to = getEntryIndex(toX, Float.NaN, Rounding.UP);
+        for (int i = from; i <= to; i++) {
+            float y = yAt(i);
+            if (y < mYMin) mYMin = y;
+            if (y > mYMax) mYMax = y;
+        }
+    }
+
+    @Override
+    public Entry getEntryForIndex(int index) {
+        return new Entry(xAt(index), yAt(index));
+    }
+
+    @Override
+    public Entry getEntryForXValue(float xValue, float closestToY, Rounding rounding) {
+        int index = getEntryIndex(xValue, closestToY, rounding);
+        return index >= 0 ? getEntryForIndex(index) : null;
+    }
+
+    @Override
+    public Entry getEntryForXValue(float xValue, float closestToY) {
+        return getEntryForXValue(xValue, closestToY, Rounding.CLOSEST);
+    }
+
+    @Override
+    public List<Entry> getEntriesForXValue(float xValue) {
+        List<Entry> entries = new ArrayList<>();
+        int index = getEntryIndex(xValue, Float.NaN, Rounding.CLOSEST);
+        if (index >= 0 && xAt(index) == xValue) {
+            entries.add(getEntryForIndex(index));
+        }
+        return entries;
+    }
+
+    // Binary search over the buffer; sample times are unique within a series
+    @Override
+    public int getEntryIndex(float xValue, float closestToY, Rounding rounding) {
+        int count = getEntryCount();
+        if (count == 0) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (xAt(mid) < xValue) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        // low is the first entry at or after xValue (or the last entry)
+        int closest = low;
+        if (rounding == Rounding.DOWN) {
+            if (xAt(closest) > xValue && closest > 0) {
+                closest--;
+            }
+        } else if (rounding == Rounding.CLOSEST) {
+            if (closest > 0 && Math.abs(xAt(closest - 1) - xValue) <= Math.abs(xAt(closest) - xValue)) {
+                closest--;
+            }
+        }
+        return closest;
+    }
+
+    @Override
+    public int getEntryIndex(Entry e) {
+        int index = getEntryIndex(e.getX(), Float.NaN, Rounding.CLOSEST);
+        return index >= 0 && xAt(index) == e.getX() ? index : -1;
+    }
+
+    @Override
+    public boolean addEntry(Entry e) {
+        throw new UnsupportedOperationException("TimeSeriesDataSet is read-only");
+    }
+
+    @Override
+    public void addEntryOrdered(Entry e) {
+        throw new UnsupportedOperationException("TimeSeriesDataSet is read-only");
+    }
+
+    @Override
+    public boolean removeEntry(Entry e) {
+        throw new UnsupportedOperationException("TimeSeriesDataSet is read-only");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("TimeSeriesDataSet is read-only");
+    }
+
+    // Materialises a regular LineDataSet; only used by MPAndroidChart's copy helpers
+    @Override
+    public DataSet<Entry> copy() {
+        List<Entry> entries = new ArrayList<>(getEntryCount());
+        for (int i = 0; i < getEntryCount(); i++) {
+            entries.add(getEntryForIndex(i));
+        }
+        return new LineDataSet(entries, getLabel());
+    }
+}
@@ -28,11 +28,15 @@ public class Recipe {
     private String status;
     private String notes;
     private Boolean published;
+    private Boolean readingsTsMigrated;
 
     private int likes = 0;
 
     private List<String> likedBy = new ArrayList<>();
 
+    // Sensors (sensor_control document ids) this brew reads from
+    private List<String> sensorIds = new ArrayList<>();
+
     // Review fields
     private Float rating;
     private String reviewNotes;
@@ -74,13 +78,16 @@ public class Recipe {
     public String getStatus() { return status; }
     public String getNotes() { return notes; }
     public Boolean getPublished() {return published; }
+    public Boolean getReadingsTsMigrated() { return readingsTsMigrated; }
     public int getLikes() { return likes; }
     public List<String> getLikedBy() { return likedBy; }
     public Float getRating() { return rating; }
     public String getReviewNotes() { return reviewNotes; }
     public Timestamp getReviewDate() { return reviewDate; }
+    public List<String> getSensorIds() { return sensorIds; }
 
     public void setLikedBy(List<String> likedBy) {this.likedBy = likedBy; }
+    public void setSensorIds(List<String> sensorIds) { this.sensorIds = sensorIds; }
 
     public void setRecipeId(String recipeId) { this.recipeId = recipeId; }
     public void setUserId(String userId) { this.userId = userId; }
@@ -97,6 +104,7 @@ public class Recipe {
     public void setStatus(String status) { this.status = status; }
     public void setNotes(String notes) { this.notes = notes; }
     public void setPublished(Boolean published ) { this.published = published; }
+    public void setReadingsTsMigrated(Boolean readingsTsMigrated) { this.readingsTsMigrated = readingsTsMigrated; }
     public void setLikes(int likes) { this.likes = likes; }
     public void setRating(Float rating) { this.rating = rating; }
     public void setReviewNotes(String reviewNotes) { this.reviewNotes = reviewNotes; }
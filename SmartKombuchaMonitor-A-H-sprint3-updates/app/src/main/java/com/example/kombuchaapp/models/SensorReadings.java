@@ -7,6 +7,8 @@ public class SensorReadings {
     private float temperature_f;
     private float ph_value;
     private String timestamp;
+    // Epoch millis; null on readings written before the field was introduced
+    private Long ts_ms;
     private String user_id;
 
     public SensorReadings() {}
@@ -76,6 +78,14 @@ public class SensorReadings {
         this.timestamp = timestamp;
     }
 
+    public Long getTs_ms() {
+        return ts_ms;
+    }
+
+    public void setTs_ms(Long ts_ms) {
+        this.ts_ms = ts_ms;
+    }
+
     public String getUser_id() {
         return user_id;
     }
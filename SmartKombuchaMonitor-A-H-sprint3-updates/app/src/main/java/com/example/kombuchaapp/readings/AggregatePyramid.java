@@ -0,0 +1,248 @@
+package com.example.kombuchaapp.readings;
+
+import java.util.Arrays;
+
+/**
+ * Min/max/avg aggregates of a TimeSeriesBuffer at 1 min, 15 min, 1 h and
+ * 6 h resolution, kept in step with the buffer as samples arrive.
+ *
+ * Buckets store the indices of their lowest and highest sample rather than
+ * the values, so a zoomed-out chart can draw real samples, and a short
+ * spike keeps its peak at every level. Picking points for a time range
+ * costs O(buckets in range), so it scales with the requested point count
+ * (the screen width), not with the number of readings.
+ *
+ * Not thread-safe; owned by whoever owns the buffer.
+ */
+public class AggregatePyramid {
+
+    private static final long[] LEVEL_MS = {
+            TimestampParser.MS_PER_MINUTE,
+            15 * TimestampParser.MS_PER_MINUTE,
+            TimestampParser.MS_PER_HOUR,
+            6 * TimestampParser.MS_PER_HOUR,
+    };
+
+    private final TimeSeriesBuffer series;
+    private final Level[] levels = new Level[LEVEL_MS.length];
+
+    public AggregatePyramid(TimeSeriesBuffer series) {
+        this.series = series;
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = new Level(LEVEL_MS[i]);
+        }
+    }
+
+    public int levelCount() {
+        return levels.length;
+    }
+
+    public long bucketMs(int level) {
+        return levels[level].bucketMs;
+    }
+
+    public int bucketCount(int level) {
+        return levels[level].size;
+    }
+
+    public long bucketStart(int level, int bucket) {
+        return levels[level].starts[bucket];
+    }
+
+    public float min(int level, int bucket) {
+        return series.valueAt(levels[level].minIndex[bucket]);
+    }
+
+    public float max(int level, int bucket) {
+        return series.valueAt(levels[level].maxIndex[bucket]);
+    }
+
+    public float average(int level, int bucket) {
+        Level l = levels[level];
+        return (float) (l.sums[bucket] / l.counts[bucket]);
+    }
+
+    public void clear() {
+        for (Level level : levels) {
+            level.size = 0;
+            level.lastIndex = -1;
+        }
+    }
+
+    /*
+     * Call after the buffer changed from index firstChanged onwards (what
+     * TimeSeriesBuffer.merge returns). Appends only touch the newest bucket;
+     * an insert further back rebuilds every bucket from that point, since
+     * the sample indices after it have moved.
+     */
+    public void onSamplesChanged(int firstChanged) {
+        if (firstChanged >= series.size()) {
+            return;
+        }
+        long changedMs = series.timeAt(firstChanged);
+        for (Level level : levels) {
+            int from = firstChanged;
+            if (level.size > 0 && changedMs < level.starts[level.size - 1] + level.bucketMs
+                    && !isAppendTo(level, firstChanged)) {
+                long rebuildFrom = level.bucketStart(changedMs);
+                level.size = level.lowerBound(rebuildFrom);
+                from = series.lowerBound(rebuildFrom);
+            }
+            for (int i = from; i < series.size(); i++) {
+                level.add(series, i);
+            }
+        }
+    }
+
+    // True if firstChanged is just past the last sample this level has seen
+    private boolean isAppendTo(Level level, int firstChanged) {
+        int last = level.size - 1;
+        return level.lastIndex == firstChanged - 1
+                && series.timeAt(firstChanged) >= level.starts[last];
+    }
+
+    /*
+     * Writes ascending indices of samples in [fromMs, toMs) that trace the
+     * range with at most about maxPoints points: every sample if they fit,
+     * otherwise the min and max of each bucket at the finest level that
+     * fits, always including the first and last sample of the range.
+     * Returns the new number of indices in out.
+     */
+    public int select(long fromMs, long toMs, int maxPoints, int[] out, int outCount) {
+        int from = series.lowerBound(fromMs);
+        int to = series.lowerBound(toMs);
+        if (to <= from) {
+            return outCount;
+        }
+        if (to - from <= maxPoints) {
+            for (int i = from; i < to; i++) {
+                out[outCount++] = i;
+            }
+            return outCount;
+        }
+        // Open-ended ranges would overflow the bucket arithmetic
+        fromMs = Math.max(fromMs, series.timeAt(from));
+        toMs = Math.min(toMs, series.timeAt(to - 1) + 1);
+
+        int maxBuckets = Math.max(1, (maxPoints - 2) / 2);
+        Level level = levels[levels.length - 1];
+        for (Level candidate : levels) {
+            if (candidate.bucketsIn(fromMs, toMs) <= maxBuckets) {
+                level = candidate;
+                break;
+            }
+        }
+
+        int bFrom = level.lowerBound(level.bucketStart(fromMs));
+        int bTo = level.lowerBound(toMs);
+        // Even 6 h buckets are too many (very long brew, tiny budget): fold neighbours together
+        int group = Math.max(1, (bTo - bFrom + maxBuckets - 1) / maxBuckets);
+
+        out[outCount++] = from;
+        int last = from;
+        for (int b = bFrom; b < bTo; b += group) {
+            int end = Math.min(b + group, bTo);
+            int lo = level.minIndex[b];
+            int hi = level.maxIndex[b];
+            for (int k = b + 1; k < end; k++) {
+                if (series.valueAt(level.minIndex[k]) < series.valueAt(lo)) {
+                    lo = level.minIndex[k];
+                }
+                if (series.valueAt(level.maxIndex[k]) > series.valueAt(hi)) {
+                    hi = level.maxIndex[k];
+                }
+            }
+            int first = Math.min(lo, hi);
+            int second = Math.max(lo, hi);
+            // Buckets straddling the range ends may point outside it
+            if (first > last && first < to - 1) {
+                out[outCount++] = first;
+                last = first;
+            }
+            if (second > last && second < to - 1) {
+                out[outCount++] = second;
+                last = second;
+            }
+        }
+        if (to - 1 > last) {
+            out[outCount++] = to - 1;
+        }
+        return outCount;
+    }
+
+    private static class Level {
+        final long bucketMs;
+        int size;
+        long[] starts = new long[16];
+        int[] minIndex = new int[16];
+        int[] maxIndex = new int[16];
+        double[] sums = new double[16];
+        int[] counts = new int[16];
+        // Buffer index of the newest sample folded in
+        int lastIndex = -1;
+
+        Level(long bucketMs) {
+            this.bucketMs = bucketMs;
+        }
+
+        long bucketStart(long timeMs) {
+            return TimestampParser.floorDiv(timeMs, bucketMs) * bucketMs;
+        }
+
+        void add(TimeSeriesBuffer series, int index) {
+            long start = bucketStart(series.timeAt(index));
+            float value = series.valueAt(index);
+            int b = size - 1;
+            if (b < 0 || starts[b] != start) {
+                ensureCapacity(size + 1);
+                b = size++;
+                starts[b] = start;
+                minIndex[b] = index;
+                maxIndex[b] = index;
+                sums[b] = 0;
+                counts[b] = 0;
+            } else {
+                if (value < series.valueAt(minIndex[b])) {
+                    minIndex[b] = index;
+                }
+                if (value > series.valueAt(maxIndex[b])) {
+                    maxIndex[b] = index;
+                }
+            }
+            sums[b] += value;
+            counts[b]++;
+            lastIndex = index;
+        }
+
+        // First bucket starting at or after timeMs
+        int lowerBound(long timeMs) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] < timeMs) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        int bucketsIn(long fromMs, long toMs) {
+            return lowerBound(toMs) - lowerBound(bucketStart(fromMs));
+        }
+
+        private void ensureCapacity(int minCapacity) {
+            if (minCapacity <= starts.length) {
+                return;
+            }
+            int capacity = Math.max(minCapacity, starts.length + (starts.length >> 1));
+            starts = Arrays.copyOf(starts, capacity);
+            minIndex = Arrays.copyOf(minIndex, capacity);
+            maxIndex = Arrays.copyOf(maxIndex, capacity);
+            sums = Arrays.copyOf(sums, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+    }
+}
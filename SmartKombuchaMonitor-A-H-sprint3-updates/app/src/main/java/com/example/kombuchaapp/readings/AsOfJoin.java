@@ -0,0 +1,122 @@
+package com.example.kombuchaapp.readings;
+
+/**
+ * Streaming as-of join of two series: every sample of the left series
+ * (the rows) is paired with the latest right sample at or before it, e.g.
+ * each temperature reading with the pH last measured before it.
+ *
+ * Both inputs grow through batches and the join is kept up to date
+ * incrementally. A batch only recomputes the rows from the first one it can
+ * affect, so live appends cost O(batch); an older page merged into the
+ * middle of a series recomputes the rows after it.
+ *
+ * Rows before the first right sample have no match, so the matched values
+ * are a suffix of the rows: {@link #matched()} holds (row time, right value)
+ * for exactly those rows, ready to be drawn against the same time axis.
+ *
+ * With a maxAgeMs, a right sample older than that at a row no longer
+ * counts for it (a sensor that went quiet), and the row is matched to NaN.
+ *
+ * Not thread-safe.
+ */
+public class AsOfJoin {
+
+    private final TimeSeriesBuffer rows = new TimeSeriesBuffer();
+    private final TimeSeriesBuffer right = new TimeSeriesBuffer();
+    private final TimeSeriesBuffer matched = new TimeSeriesBuffer();
+    private final long maxAgeMs;
+
+    public AsOfJoin() {
+        this(Long.MAX_VALUE);
+    }
+
+    public AsOfJoin(long maxAgeMs) {
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    // The left series; one row per sample
+    public TimeSeriesBuffer rows() {
+        return rows;
+    }
+
+    // Right value as of each row, for the last matched().size() rows
+    public TimeSeriesBuffer matched() {
+        return matched;
+    }
+
+    public int rowCount() {
+        return rows.size();
+    }
+
+    public long rowTime(int row) {
+        return rows.timeAt(row);
+    }
+
+    public float leftValue(int row) {
+        return rows.valueAt(row);
+    }
+
+    // NaN if there was no right sample yet at the row's time, or only one older than maxAgeMs
+    public float rightValue(int row) {
+        int index = row - firstMatchedRow();
+        return index >= 0 ? matched.valueAt(index) : Float.NaN;
+    }
+
+    public int firstMatchedRow() {
+        return rows.size() - matched.size();
+    }
+
+    /*
+     * Adds a time-ordered batch to the left series. Returns the first row
+     * whose values changed (rowCount() before the call for a pure append).
+     */
+    public int addLeft(TimeSeriesBuffer batch) {
+        int firstChanged = rows.merge(batch);
+        return rejoinFrom(firstChanged);
+    }
+
+    // Adds a time-ordered batch to the right series; returns the first row it changed
+    public int addRight(TimeSeriesBuffer batch) {
+        int firstChanged = right.merge(batch);
+        if (firstChanged >= right.size()) {
+            return rows.size();
+        }
+        return rejoinFrom(rows.lowerBound(right.timeAt(firstChanged)));
+    }
+
+    public void clearLeft() {
+        rows.clear();
+        matched.clear();
+    }
+
+    public void clearRight() {
+        right.clear();
+        matched.clear();
+    }
+
+    public void clear() {
+        clearLeft();
+        right.clear();
+    }
+
+    private int rejoinFrom(int row) {
+        if (row >= rows.size()) {
+            return rows.size();
+        }
+        // Rows sharing a timestamp may sit on either side of row; redo them all
+        row = rows.lowerBound(rows.timeAt(row));
+        matched.truncate(matched.lowerBound(rows.timeAt(row)));
+
+        int r = right.upperBound(rows.timeAt(row)) - 1;
+        for (int i = row; i < rows.size(); i++) {
+            long time = rows.timeAt(i);
+            while (r + 1 < right.size() && right.timeAt(r + 1) <= time) {
+                r++;
+            }
+            if (r >= 0) {
+                matched.append(time, time - right.timeAt(r) <= maxAgeMs ? right.valueAt(r) : Float.NaN);
+            }
+        }
+        return row;
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.kombuchaapp.readings;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only columnar file holding every reading of a finished brew, written
+ * once at completion and memory-mapped when the chart opens. Self-contained,
+ * so the same file can be shared or backed up.
+ *
+ * All fields little-endian:
+ *
+ *   0   magic       "KBRW"
+ *   4   version     int (2)
+ *   8   seriesCount int, one entry per series and sensor
+ *   12  reserved    int
+ *   16  createdMs   long
+ *   24  directory   seriesCount x 32 bytes:
+ *                     seriesCode int (1 = temperature, 2 = pH)
+ *                     count      int
+ *                     timesAt    long, offset of count x long epoch millis, ascending
+ *                     valuesAt   long, offset of count x float32 values
+ *                     sensorAt   long, offset of the sensor id (int byte length +
+ *                                UTF-8), 0 for SensorSamples.DEFAULT_SENSOR
+ *
+ * Columns start on 8-byte boundaries, so reading one is a bulk copy out of
+ * the mapping rather than a parse per point. Version 1 files are read as
+ * well; their sensorAt was reserved and is always 0.
+ */
+public final class BrewArchive {
+
+    public static final String FILE_EXTENSION = ".kbrw";
+
+    private static final int MAGIC = 0x5752424B; // "KBRW" read as little-endian
+    private static final int VERSION = 2;
+    private static final int OLDEST_READABLE_VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int DIRECTORY_ENTRY_BYTES = 32;
+
+    private final MappedByteBuffer map;
+    private final long createdMs;
+    private final int seriesCount;
+
+    private BrewArchive(MappedByteBuffer map, long createdMs, int seriesCount) {
+        this.map = map;
+        this.createdMs = createdMs;
+        this.seriesCount = seriesCount;
+    }
+
+    public long getCreatedMs() {
+        return createdMs;
+    }
+
+    /*
+     * Writes the archive to a temporary file next to target and renames it
+     * into place, so readers never see a half-written archive.
+     */
+    public static void write(File target, Map<ReadingSeries, SensorSamples> series, long createdMs)
+            throws IOException {
+        List<ReadingSeries> entrySeries = new ArrayList<>();
+        List<String> entrySensors = new ArrayList<>();
+        List<TimeSeriesBuffer> entrySamples = new ArrayList<>();
+        for (Map.Entry<ReadingSeries, SensorSamples> e : series.entrySet()) {
+            for (Map.Entry<String, TimeSeriesBuffer> sensor : e.getValue().entries()) {
+                entrySeries.add(e.getKey());
+                entrySensors.add(sensor.getKey());
+                entrySamples.add(sensor.getValue());
+            }
+        }
+
+        int entries = entrySamples.size();
+        long directoryEnd = HEADER_BYTES + (long) entries * DIRECTORY_ENTRY_BYTES;
+        long size = directoryEnd;
+        byte[][] names = new byte[entries][];
+        for (int i = 0; i < entries; i++) {
+            names[i] = entrySensors.get(i).getBytes(StandardCharsets.UTF_8);
+            if (names[i].length > 0) {
+                size += align8(4L + names[i].length);
+            }
+        }
+        for (TimeSeriesBuffer samples : entrySamples) {
+            size += samples.size() * 8L + align8(samples.size() * 4L);
+        }
+
+        File tmp = new File(target.getPath() + ".tmp");
+        try (RandomAccessFile file = new RandomAccessFile(tmp, "rw");
+             FileChannel channel = file.getChannel()) {
+            file.setLength(size);
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+
+            out.putInt(0, MAGIC);
+            out.putInt(4, VERSION);
+            out.putInt(8, entries);
+            out.putInt(12, 0);
+            out.putLong(16, createdMs);
+
+            int entry = HEADER_BYTES;
+            long column = directoryEnd;
+            for (int e = 0; e < entries; e++) {
+                long sensorAt = 0;
+                if (names[e].length > 0) {
+                    sensorAt = column;
+                    out.putInt((int) sensorAt, names[e].length);
+                    for (int b = 0; b < names[e].length; b++) {
+                        out.put((int) (sensorAt + 4 + b), names[e][b]);
+                    }
+                    column += align8(4L + names[e].length);
+                }
+
+                TimeSeriesBuffer samples = entrySamples.get(e);
+                int count = samples.size();
+                long timesAt = column;
+                long valuesAt = timesAt + count * 8L;
+                column = valuesAt + align8(count * 4L);
+
+                out.putInt(entry, seriesCode(entrySeries.get(e)));
+                out.putInt(entry + 4, count);
+                out.putLong(entry + 8, timesAt);
+                out.putLong(entry + 16, valuesAt);
+                out.putLong(entry + 24, sensorAt);
+                entry += DIRECTORY_ENTRY_BYTES;
+
+                for (int i = 0; i < count; i++) {
+                    out.putLong((int) (timesAt + i * 8L), samples.timeAt(i));
+                    out.putFloat((int) (valuesAt + i * 4L), samples.valueAt(i));
+                }
+            }
+            out.force();
+        }
+
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            throw new IOException("Could not move archive into place: " + target);
+        }
+    }
+
+    public static BrewArchive open(File file) throws IOException {
+        MappedByteBuffer map;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (map.capacity() < HEADER_BYTES || map.getInt(0) != MAGIC) {
+            throw new IOException("Not a brew archive: " + file);
+        }
+        if (map.getInt(4) < OLDEST_READABLE_VERSION || map.getInt(4) > VERSION) {
+            throw new IOException("Unsupported brew archive version " + map.getInt(4));
+        }
+        int seriesCount = map.getInt(8);
+        if (seriesCount < 0 || HEADER_BYTES + (long) seriesCount * DIRECTORY_ENTRY_BYTES > map.capacity()) {
+            throw new IOException("Corrupt brew archive directory: " + file);
+        }
+        return new BrewArchive(map, map.getLong(16), seriesCount);
+    }
+
+    public boolean has(ReadingSeries series) {
+        int code = seriesCode(series);
+        for (int i = 0; i < seriesCount; i++) {
+            if (map.getInt(entryAt(i)) == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Copies every sensor of one series out of the mapping; empty if the archive doesn't have it
+    public SensorSamples read(ReadingSeries series) throws IOException {
+        SensorSamples samples = new SensorSamples();
+        int code = seriesCode(series);
+        for (int i = 0; i < seriesCount; i++) {
+            int entry = entryAt(i);
+            if (map.getInt(entry) == code) {
+                samples.merge(readSensor(entry), readColumns(entry, series));
+            }
+        }
+        return samples;
+    }
+
+    private TimeSeriesBuffer readColumns(int entry, ReadingSeries series) throws IOException {
+        int count = map.getInt(entry + 4);
+        long timesAt = map.getLong(entry + 8);
+        long valuesAt = map.getLong(entry + 16);
+        if (count < 0 || timesAt < 0 || valuesAt < 0
+                || timesAt + count * 8L > map.capacity() || valuesAt + count * 4L > map.capacity()) {
+            throw new IOException("Corrupt brew archive column for " + series);
+        }
+
+        long[] times = new long[count];
+        float[] values = new float[count];
+        column(timesAt).asLongBuffer().get(times);
+        column(valuesAt).asFloatBuffer().get(values);
+        return new TimeSeriesBuffer(times, values, count);
+    }
+
+    private String readSensor(int entry) throws IOException {
+        long sensorAt = map.getLong(entry + 24);
+        if (sensorAt == 0) {
+            return SensorSamples.DEFAULT_SENSOR;
+        }
+        if (sensorAt < 0 || sensorAt + 4 > map.capacity()) {
+            throw new IOException("Corrupt brew archive sensor name");
+        }
+        int length = map.getInt((int) sensorAt);
+        if (length < 0 || sensorAt + 4 + length > map.capacity()) {
+            throw new IOException("Corrupt brew archive sensor name");
+        }
+        byte[] name = new byte[length];
+        ByteBuffer bytes = map.duplicate();
+        bytes.position((int) sensorAt + 4);
+        bytes.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer column(long offset) {
+        ByteBuffer column = map.duplicate();
+        column.position((int) offset);
+        return column.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int entryAt(int index) {
+        return HEADER_BYTES + index * DIRECTORY_ENTRY_BYTES;
+    }
+
+    // Fixed codes, so reordering ReadingSeries doesn't break existing files
+    private static int seriesCode(ReadingSeries series) {
+        switch (series) {
+            case TEMPERATURE:
+                return 1;
+            case PH:
+                return 2;
+            default:
+                throw new IllegalArgumentException("No archive code for " + series);
+        }
+    }
+
+    private static long align8(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
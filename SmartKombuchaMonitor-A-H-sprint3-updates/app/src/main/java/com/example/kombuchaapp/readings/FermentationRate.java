@@ -0,0 +1,203 @@
+package com.example.kombuchaapp.readings;
+
+/**
+ * How fast one sensor's pH is falling, and when it will reach a target.
+ * A straight line is fitted to the readings of the last WINDOW_MS by
+ * weighted least squares, newer readings weighing more (halving every
+ * HALF_LIFE_MS) so the rate follows a brew that slows down.
+ *
+ * The fit only keeps the five weighted sums it needs. x is hours before
+ * the newest reading, so when a reading arrives the sums are decayed and
+ * shifted to it in closed form, and readings leaving the window are
+ * subtracted again: O(1) per reading. The sums are rebuilt from the window
+ * now and then so rounding can't build up over a weeks-long brew.
+ *
+ * Every fit is also appended to rates(), the dpH/dt series in pH per hour.
+ *
+ * Readings must be newer than the last one; older ones are ignored.
+ * Not thread-safe.
+ */
+public class FermentationRate {
+
+    public static final long WINDOW_MS = 12 * 60 * TimestampParser.MS_PER_MINUTE;
+    public static final long HALF_LIFE_MS = 6 * 60 * TimestampParser.MS_PER_MINUTE;
+    // Returned by etaMs() while the pH isn't falling
+    public static final long NO_ETA = -1;
+
+    // Fewer readings, or a shorter span, fit noise rather than the trend
+    private static final int MIN_READINGS = 6;
+    private static final long MIN_SPAN_MS = 60 * TimestampParser.MS_PER_MINUTE;
+    // Slower than this is a stalled brew; an ETA would be weeks of noise
+    private static final double MIN_FALL_PER_HOUR = 0.001;
+    private static final double MS_PER_HOUR = 60.0 * TimestampParser.MS_PER_MINUTE;
+    private static final double DECAY_PER_HOUR = Math.log(2) * MS_PER_HOUR / HALF_LIFE_MS;
+
+    // Readings in the window, oldest first
+    private long[] times = new long[64];
+    private float[] values = new float[64];
+    private int head;
+    private int count;
+    private int removedSinceRebuild;
+
+    // Weighted sums of 1, x, x², y and xy over the window
+    private double sw;
+    private double swx;
+    private double swxx;
+    private double swy;
+    private double swxy;
+    private long lastTimeMs = Long.MIN_VALUE;
+
+    private final TimeSeriesBuffer rates = new TimeSeriesBuffer();
+
+    // Feeds a time-ordered batch; readings not newer than the last one are skipped
+    public void add(TimeSeriesBuffer batch) {
+        for (int i = batch.upperBound(lastTimeMs); i < batch.size(); i++) {
+            add(batch.timeAt(i), batch.valueAt(i));
+        }
+    }
+
+    public void add(long timeMs, float ph) {
+        if (timeMs <= lastTimeMs || Float.isNaN(ph) || Float.isInfinite(ph)) {
+            return;
+        }
+        if (count > 0) {
+            moveTo(timeMs);
+        }
+        lastTimeMs = timeMs;
+        push(timeMs, ph);
+        sw += 1;
+        swy += ph;
+
+        long cutoff = timeMs - WINDOW_MS;
+        while (times[head] < cutoff) {
+            subtract(times[head], values[head]);
+            head = (head + 1) % times.length;
+            count--;
+            removedSinceRebuild++;
+        }
+        if (removedSinceRebuild > Math.max(count, MIN_READINGS)) {
+            rebuild();
+        }
+
+        if (hasFit()) {
+            rates.append(timeMs, (float) ratePerHour());
+        }
+    }
+
+    public boolean hasFit() {
+        if (count < MIN_READINGS || lastTimeMs - times[head] < MIN_SPAN_MS) {
+            return false;
+        }
+        return denominator() > 1e-9;
+    }
+
+    // Slope of the fit in pH per hour (negative while souring); only valid if hasFit()
+    public double ratePerHour() {
+        return (sw * swxy - swx * swy) / denominator();
+    }
+
+    // The fitted pH at the newest reading, which is steadier than the reading itself
+    public double fittedPh() {
+        return (swy - ratePerHour() * swx) / sw;
+    }
+
+    /*
+     * When the fitted line reaches targetPh: the newest reading's time if
+     * it already has, NO_ETA without a fit or while the pH isn't falling.
+     */
+    public long etaMs(float targetPh) {
+        if (!hasFit()) {
+            return NO_ETA;
+        }
+        double ph = fittedPh();
+        if (ph <= targetPh) {
+            return lastTimeMs;
+        }
+        double rate = ratePerHour();
+        if (rate > -MIN_FALL_PER_HOUR) {
+            return NO_ETA;
+        }
+        return lastTimeMs + (long) ((ph - targetPh) / -rate * MS_PER_HOUR);
+    }
+
+    public long lastTimeMs() {
+        return lastTimeMs;
+    }
+
+    // dpH/dt in pH per hour at each reading since there was a fit
+    public TimeSeriesBuffer rates() {
+        return rates;
+    }
+
+    public void clear() {
+        head = 0;
+        count = 0;
+        removedSinceRebuild = 0;
+        sw = swx = swxx = swy = swxy = 0;
+        lastTimeMs = Long.MIN_VALUE;
+        rates.clear();
+    }
+
+    private double denominator() {
+        return sw * swxx - swx * swx;
+    }
+
+    // Re-centres the sums on a newer reading: every weight decays and every x moves back by d
+    private void moveTo(long timeMs) {
+        double d = (timeMs - lastTimeMs) / MS_PER_HOUR;
+        double decay = Math.exp(-DECAY_PER_HOUR * d);
+        double w = sw * decay;
+        double wx = swx * decay;
+        double wxx = swxx * decay;
+        double wy = swy * decay;
+        double wxy = swxy * decay;
+        sw = w;
+        swx = wx - d * w;
+        swxx = wxx - 2 * d * wx + d * d * w;
+        swy = wy;
+        swxy = wxy - d * wy;
+    }
+
+    private void subtract(long timeMs, float ph) {
+        double x = (timeMs - lastTimeMs) / MS_PER_HOUR;
+        double w = Math.exp(DECAY_PER_HOUR * x);
+        sw -= w;
+        swx -= w * x;
+        swxx -= w * x * x;
+        swy -= w * ph;
+        swxy -= w * x * ph;
+    }
+
+    private void rebuild() {
+        removedSinceRebuild = 0;
+        sw = swx = swxx = swy = swxy = 0;
+        for (int i = 0; i < count; i++) {
+            int at = (head + i) % times.length;
+            double x = (times[at] - lastTimeMs) / MS_PER_HOUR;
+            double w = Math.exp(DECAY_PER_HOUR * x);
+            sw += w;
+            swx += w * x;
+            swxx += w * x * x;
+            swy += w * values[at];
+            swxy += w * x * values[at];
+        }
+    }
+
+    private void push(long timeMs, float ph) {
+        if (count == times.length) {
+            long[] newTimes = new long[count * 2];
+            float[] newValues = new float[count * 2];
+            for (int i = 0; i < count; i++) {
+                newTimes[i] = times[(head + i) % count];
+                newValues[i] = values[(head + i) % count];
+            }
+            times = newTimes;
+            values = newValues;
+            head = 0;
+        }
+        int at = (head + count) % times.length;
+        times[at] = timeMs;
+        values[at] = ph;
+        count++;
+    }
+}
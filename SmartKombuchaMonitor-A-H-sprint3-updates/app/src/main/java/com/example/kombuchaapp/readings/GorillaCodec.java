@@ -0,0 +1,203 @@
+package com.example.kombuchaapp.readings;
+
+import java.util.Arrays;
+
+/**
+ * Gorilla-style compression for a time-ordered run of samples (Pelkonen et
+ * al., "Gorilla: A Fast, Scalable, In-Memory Time Series Database").
+ *
+ * Timestamps are stored as delta-of-delta, so a sensor reporting on a
+ * steady interval costs about one bit per sample. Values are XORed with the
+ * previous value; a repeated reading costs one bit and a small change only
+ * the bits that differ.
+ *
+ * Layout: sample count (32 bits), first time (64 bits), first value (32
+ * bits), first delta (64 bits, if count > 1), then one encoded time and
+ * value per remaining sample.
+ */
+public final class GorillaCodec {
+
+    private GorillaCodec() {}
+
+    public static byte[] encode(TimeSeriesBuffer series, int from, int to) {
+        int count = Math.max(to - from, 0);
+        BitWriter out = new BitWriter(16 + count * 4);
+        out.write(count, 32);
+        if (count == 0) {
+            return out.toByteArray();
+        }
+
+        long prevTime = series.timeAt(from);
+        int prevBits = Float.floatToRawIntBits(series.valueAt(from));
+        out.write(prevTime, 64);
+        out.write(prevBits, 32);
+        if (count == 1) {
+            return out.toByteArray();
+        }
+
+        long prevDelta = series.timeAt(from + 1) - prevTime;
+        out.write(prevDelta, 64);
+
+        int prevLeading = -1;
+        int prevTrailing = 0;
+        for (int i = from + 1; i < to; i++) {
+            long time = series.timeAt(i);
+            if (i > from + 1) {
+                long delta = time - prevTime;
+                writeDeltaOfDelta(out, delta - prevDelta);
+                prevDelta = delta;
+            }
+            prevTime = time;
+
+            int bits = Float.floatToRawIntBits(series.valueAt(i));
+            int xor = bits ^ prevBits;
+            prevBits = bits;
+            if (xor == 0) {
+                out.write(0, 1);
+                continue;
+            }
+
+            int leading = Math.min(Integer.numberOfLeadingZeros(xor), 31);
+            int trailing = Integer.numberOfTrailingZeros(xor);
+            if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                // Fits in the previous meaningful window
+                out.write(0b10, 2);
+                out.write(xor >>> prevTrailing, 32 - prevLeading - prevTrailing);
+            } else {
+                int length = 32 - leading - trailing;
+                out.write(0b11, 2);
+                out.write(leading, 5);
+                out.write(length - 1, 5);
+                out.write(xor >>> trailing, length);
+                prevLeading = leading;
+                prevTrailing = trailing;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    // Appends the decoded samples to out and returns how many there were
+    public static int decode(byte[] data, TimeSeriesBuffer out) {
+        BitReader in = new BitReader(data);
+        int count = (int) in.read(32);
+        if (count == 0) {
+            return 0;
+        }
+
+        long time = in.read(64);
+        int bits = (int) in.read(32);
+        out.append(time, Float.intBitsToFloat(bits));
+        if (count == 1) {
+            return 1;
+        }
+
+        long delta = in.read(64);
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 1; i < count; i++) {
+            if (i > 1) {
+                delta += readDeltaOfDelta(in);
+            }
+            time += delta;
+
+            if (in.read(1) != 0) {
+                if (in.read(1) != 0) {
+                    leading = (int) in.read(5);
+                    int length = (int) in.read(5) + 1;
+                    trailing = 32 - leading - length;
+                }
+                int length = 32 - leading - trailing;
+                bits ^= (int) (in.read(length) << trailing);
+            }
+            out.append(time, Float.intBitsToFloat(bits));
+        }
+        return count;
+    }
+
+    /*
+     * '0'                 dod == 0
+     * '10'   + 7 bits     dod in [-63, 64]
+     * '110'  + 9 bits     dod in [-255, 256]
+     * '1110' + 12 bits    dod in [-2047, 2048]
+     * '1111' + 64 bits    anything else
+     */
+    private static void writeDeltaOfDelta(BitWriter out, long dod) {
+        if (dod == 0) {
+            out.write(0, 1);
+        } else if (dod >= -63 && dod <= 64) {
+            out.write(0b10, 2);
+            out.write(dod + 63, 7);
+        } else if (dod >= -255 && dod <= 256) {
+            out.write(0b110, 3);
+            out.write(dod + 255, 9);
+        } else if (dod >= -2047 && dod <= 2048) {
+            out.write(0b1110, 4);
+            out.write(dod + 2047, 12);
+        } else {
+            out.write(0b1111, 4);
+            out.write(dod, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitReader in) {
+        if (in.read(1) == 0) {
+            return 0;
+        }
+        if (in.read(1) == 0) {
+            return in.read(7) - 63;
+        }
+        if (in.read(1) == 0) {
+            return in.read(9) - 255;
+        }
+        if (in.read(1) == 0) {
+            return in.read(12) - 2047;
+        }
+        return in.read(64);
+    }
+
+    private static final class BitWriter {
+        private byte[] bytes;
+        private long bitCount;
+
+        BitWriter(int initialBytes) {
+            bytes = new byte[Math.max(initialBytes, 16)];
+        }
+
+        // Writes the low `count` bits of value, most significant first
+        void write(long value, int count) {
+            for (int i = count - 1; i >= 0; i--) {
+                int byteIndex = (int) (bitCount >>> 3);
+                if (byteIndex >= bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+                if (((value >>> i) & 1L) != 0) {
+                    bytes[byteIndex] |= (byte) (0x80 >>> (bitCount & 7));
+                }
+                bitCount++;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, (int) ((bitCount + 7) >>> 3));
+        }
+    }
+
+    private static final class BitReader {
+        private final byte[] bytes;
+        private long position;
+
+        BitReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long read(int count) {
+            long value = 0;
+            for (int i = 0; i < count; i++) {
+                int b = bytes[(int) (position >>> 3)] & 0xFF;
+                value = (value << 1) | ((b >>> (7 - (position & 7))) & 1);
+                position++;
+            }
+            return value;
+        }
+    }
+}
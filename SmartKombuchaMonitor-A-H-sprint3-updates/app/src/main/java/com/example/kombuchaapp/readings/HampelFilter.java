@@ -0,0 +1,150 @@
+package com.example.kombuchaapp.readings;
+
+/**
+ * Streaming Hampel identifier for one sensor: a reading is suspect if it
+ * is further from the median of the previous WINDOW readings than
+ * SIGMAS robust standard deviations (1.4826 x the median absolute
+ * deviation), and never closer than minDeviation, so a perfectly steady
+ * probe doesn't flag every small wobble. Catches single glitches such as
+ * 0°C from a loose connector, while a real change of level passes once
+ * it has lasted about half a window.
+ *
+ * The window is kept sorted. Finding where a reading goes or leaves is a
+ * binary search, the MAD is a selection over the two sorted halves around
+ * the median, and moving the window is one arraycopy of at most WINDOW
+ * floats; so about O(log w) comparisons per reading and no allocation.
+ *
+ * Readings must be offered in time order. Not thread-safe.
+ */
+public class HampelFilter {
+
+    public static final int WINDOW = 9;
+    public static final float SIGMAS = 3f;
+    // Fewer readings than this say too little about the level to judge anything
+    private static final int MIN_HISTORY = 5;
+    private static final float MAD_TO_SIGMA = 1.4826f;
+
+    private final float minDeviation;
+    // Window in arrival order (to know which reading leaves) and sorted
+    private final float[] ring = new float[WINDOW];
+    private final float[] sorted = new float[WINDOW];
+    private int ringStart;
+    private int count;
+    private long lastTimeMs = Long.MIN_VALUE;
+
+    public HampelFilter(float minDeviation) {
+        this.minDeviation = minDeviation;
+    }
+
+    // Time of the newest reading offered; Long.MIN_VALUE before the first
+    public long lastTimeMs() {
+        return lastTimeMs;
+    }
+
+    /*
+     * Judges a reading against the ones before it, then adds it to the
+     * window whatever the verdict (the median doesn't mind one glitch, and
+     * a lasting change has to get in to be accepted). Returns true if suspect.
+     */
+    public boolean offer(long timeMs, float value) {
+        lastTimeMs = Math.max(lastTimeMs, timeMs);
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            return true;
+        }
+
+        boolean suspect = false;
+        if (count >= MIN_HISTORY) {
+            float median = median();
+            float limit = Math.max(SIGMAS * MAD_TO_SIGMA * mad(median), minDeviation);
+            suspect = Math.abs(value - median) > limit;
+        }
+        push(value);
+        return suspect;
+    }
+
+    public void clear() {
+        ringStart = 0;
+        count = 0;
+        lastTimeMs = Long.MIN_VALUE;
+    }
+
+    private void push(float value) {
+        if (count == WINDOW) {
+            float leaving = ring[ringStart];
+            int at = lowerBound(leaving);
+            System.arraycopy(sorted, at + 1, sorted, at, count - at - 1);
+            ring[ringStart] = value;
+            ringStart = (ringStart + 1) % WINDOW;
+            count--;
+        } else {
+            ring[(ringStart + count) % WINDOW] = value;
+        }
+        int at = lowerBound(value);
+        System.arraycopy(sorted, at, sorted, at + 1, count - at);
+        sorted[at] = value;
+        count++;
+    }
+
+    private int lowerBound(float value) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private float median() {
+        int mid = count / 2;
+        return (count & 1) == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2f;
+    }
+
+    /*
+     * Median of |x - median|. Readings below the median give distances
+     * that grow going left, the rest distances that grow going right, so
+     * the k-th smallest distance is a selection over two sorted lists.
+     */
+    private float mad(float median) {
+        int split = lowerBound(median);
+        int mid = count / 2;
+        if ((count & 1) == 1) {
+            return kthDistance(mid, median, split);
+        }
+        return (kthDistance(mid - 1, median, split) + kthDistance(mid, median, split)) / 2f;
+    }
+
+    // k-th (0-based) smallest distance; the left list is sorted[split - 1] down to sorted[0]
+    private float kthDistance(int k, float median, int split) {
+        int leftCount = split;
+        int rightCount = count - split;
+        // Take i from the left and j = k + 1 - i from the right
+        int low = Math.max(0, k + 1 - rightCount);
+        int high = Math.min(k + 1, leftCount);
+        while (true) {
+            int i = (low + high) >>> 1;
+            int j = k + 1 - i;
+            if (i < leftCount && j > 0 && right(j - 1, median, split) > left(i, median, split)) {
+                low = i + 1;
+            } else if (i > 0 && j < rightCount && left(i - 1, median, split) > right(j, median, split)) {
+                high = i - 1;
+            } else {
+                float fromLeft = i > 0 ? left(i - 1, median, split) : 0f;
+                float fromRight = j > 0 ? right(j - 1, median, split) : 0f;
+                return Math.max(fromLeft, fromRight);
+            }
+        }
+    }
+
+    private float left(int index, float median, int split) {
+        return median - sorted[split - 1 - index];
+    }
+
+    private float right(int index, float median, int split) {
+        return sorted[split + index] - median;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.kombuchaapp.readings;
+
+import java.util.TimeZone;
+
+/**
+ * Formats epoch millis as "MM/dd HH:mm" in local time and memoizes the
+ * result per minute. Axis labels are requested again on every redraw, so a
+ * small direct-mapped cache means a label String is built once per minute
+ * bucket instead of once per frame. Not thread-safe.
+ */
+public class MinuteLabelCache {
+
+    private static final int SLOTS = 128;
+
+    private final TimeZone zone;
+    private final long[] minutes = new long[SLOTS];
+    private final String[] labels = new String[SLOTS];
+    private final char[] chars = new char[11];
+
+    public MinuteLabelCache() {
+        this(TimeZone.getDefault());
+    }
+
+    public MinuteLabelCache(TimeZone zone) {
+        this.zone = zone;
+    }
+
+    public String label(long timeMs) {
+        long minute = TimestampParser.floorDiv(timeMs, TimestampParser.MS_PER_MINUTE);
+        int slot = (int) (minute & (SLOTS - 1));
+        if (labels[slot] != null && minutes[slot] == minute) {
+            return labels[slot];
+        }
+
+        String label = format(minute * TimestampParser.MS_PER_MINUTE);
+        minutes[slot] = minute;
+        labels[slot] = label;
+        return label;
+    }
+
+    private String format(long timeMs) {
+        long localMs = timeMs + zone.getOffset(timeMs);
+        long days = TimestampParser.floorDiv(localMs, TimestampParser.MS_PER_DAY);
+        int minuteOfDay = (int) ((localMs - days * TimestampParser.MS_PER_DAY) / TimestampParser.MS_PER_MINUTE);
+
+        // Civil date from days since the epoch (inverse of TimestampParser.daysFromCivil)
+        long z = days + 719468;
+        long era = TimestampParser.floorDiv(z, 146097);
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+
+        put2(0, month);
+        chars[2] = '/';
+        put2(3, day);
+        chars[5] = ' ';
+        put2(6, minuteOfDay / 60);
+        chars[8] = ':';
+        put2(9, minuteOfDay % 60);
+        return new String(chars);
+    }
+
+    private void put2(int at, int value) {
+        chars[at] = (char) ('0' + value / 10);
+        chars[at + 1] = (char) ('0' + value % 10);
+    }
+}
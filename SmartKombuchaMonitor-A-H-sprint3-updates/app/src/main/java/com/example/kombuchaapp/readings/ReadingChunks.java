@@ -0,0 +1,131 @@
+package com.example.kombuchaapp.readings;
+
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chunked layout for sensor readings: one document per series per hour
+ * instead of one per sample.
+ *
+ * users/{uid}/Recipes/{rid}/temperature_chunks/{start_ms}
+ *   start_ms:      bucket start, epoch millis (also the document id)
+ *   ts_ms:         [t0, t1, ...]   sample times, ascending
+ *   temperature_c: [v0, v1, ...]   values, same length as ts_ms
+ *
+ * pH chunks look the same with ph_value as the value array.
+ *
+ * With more than one sensor per recipe each sensor gets its own chunks:
+ *   users/{uid}/Recipes/{rid}/temperature_chunks/{start_ms}_{sensor_id}
+ *   sensor_id:     the sensor, plus the fields above
+ * Chunks without sensor_id belong to SensorSamples.DEFAULT_SENSOR.
+ *
+ * The sensors write the plain chunks; this app only reads them and
+ * compacts the old ones.
+ *
+ * Chunks older than HOT_WINDOW_MS are rewritten by ReadingsCompaction into
+ * a single Gorilla-encoded blob (see GorillaCodec):
+ *   start_ms, encoding: "gorilla", count, data: Blob
+ */
+public final class ReadingChunks {
+
+    public static final long BUCKET_MS = TimestampParser.MS_PER_HOUR;
+
+    public static final String FIELD_START_MS = "start_ms";
+    public static final String FIELD_TIMES = "ts_ms";
+    public static final String FIELD_SENSOR_ID = "sensor_id";
+    public static final String FIELD_ENCODING = "encoding";
+    public static final String FIELD_COUNT = "count";
+    public static final String FIELD_DATA = "data";
+
+    public static final String ENCODING_GORILLA = "gorilla";
+
+    // Readings newer than this stay as written and are what the chart listens to
+    public static final long HOT_WINDOW_MS = 24 * TimestampParser.MS_PER_HOUR;
+
+    private ReadingChunks() {}
+
+    public static long bucketStart(long timeMs) {
+        return TimestampParser.floorDiv(timeMs, BUCKET_MS) * BUCKET_MS;
+    }
+
+    public static String bucketId(long timeMs) {
+        return String.valueOf(bucketStart(timeMs));
+    }
+
+    // Document id of a sensor's chunk starting at startMs
+    public static String chunkId(long startMs, String sensorId) {
+        String id = String.valueOf(startMs);
+        return isDefaultSensor(sensorId) ? id : id + "_" + sensorId;
+    }
+
+    public static String sensorOf(DocumentSnapshot chunk) {
+        return SensorSamples.sensorOrDefault(chunk.getString(FIELD_SENSOR_ID));
+    }
+
+    private static boolean isDefaultSensor(String sensorId) {
+        return sensorId == null || SensorSamples.DEFAULT_SENSOR.equals(sensorId);
+    }
+
+    // Newest sample time in a plain chunk, or -1 if it has none
+    public static long lastTime(DocumentSnapshot chunk) {
+        Object times = chunk.get(FIELD_TIMES);
+        long last = -1;
+        if (times instanceof List) {
+            for (Object t : (List<?>) times) {
+                if (t instanceof Number) {
+                    last = Math.max(last, ((Number) t).longValue());
+                }
+            }
+        }
+        return last;
+    }
+
+    /*
+     * Appends the chunk's samples to out and returns how many were added.
+     * A chunk whose arrays don't line up is truncated to the shorter one.
+     */
+    public static int decode(DocumentSnapshot chunk, String valueField, TimeSeriesBuffer out) {
+        if (ENCODING_GORILLA.equals(chunk.getString(FIELD_ENCODING))) {
+            Blob data = chunk.getBlob(FIELD_DATA);
+            return data != null ? GorillaCodec.decode(data.toBytes(), out) : 0;
+        }
+
+        Object times = chunk.get(FIELD_TIMES);
+        Object values = chunk.get(valueField);
+        if (!(times instanceof List) || !(values instanceof List)) {
+            return 0;
+        }
+
+        List<?> timeList = (List<?>) times;
+        List<?> valueList = (List<?>) values;
+        int count = Math.min(timeList.size(), valueList.size());
+        int added = 0;
+        for (int i = 0; i < count; i++) {
+            Object t = timeList.get(i);
+            Object v = valueList.get(i);
+            if (t instanceof Number && v instanceof Number) {
+                out.append(((Number) t).longValue(), ((Number) v).floatValue());
+                added++;
+            }
+        }
+        return added;
+    }
+
+    // Document contents for a compacted chunk holding a sensor's series[from, to)
+    public static Map<String, Object> encodedChunk(long startMs, String sensorId, TimeSeriesBuffer series,
+                                                   int from, int to) {
+        Map<String, Object> data = new HashMap<>();
+        data.put(FIELD_START_MS, startMs);
+        if (!isDefaultSensor(sensorId)) {
+            data.put(FIELD_SENSOR_ID, sensorId);
+        }
+        data.put(FIELD_ENCODING, ENCODING_GORILLA);
+        data.put(FIELD_COUNT, to - from);
+        data.put(FIELD_DATA, Blob.fromBytes(GorillaCodec.encode(series, from, to)));
+        return data;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.kombuchaapp.readings;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the last CAPACITY readings by (sensor id, time) so a reading a
+ * sensor sent twice (a retry on flaky Wi-Fi) is only plotted once.
+ *
+ * Memory is fixed: keys are packed into longs, kept in a ring in the order
+ * they were seen and in an open-addressing hash set; once the ring is full
+ * the oldest key is forgotten. Retries arrive within seconds of the
+ * original, far inside that horizon.
+ *
+ * Not thread-safe.
+ */
+public class ReadingDeduper {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    // Low bits of a key hold the sensor's index, the rest the time
+    private static final int SENSOR_BITS = 10;
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final long[] ring;
+    private int ringStart;
+    private int ringSize;
+
+    private final long[] table;
+    private final int mask;
+
+    private final Map<String, Integer> sensorIndex = new HashMap<>();
+
+    public ReadingDeduper() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ReadingDeduper(int capacity) {
+        ring = new long[capacity];
+        // At most half full, so probe runs stay short
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+        table = new long[tableSize];
+        mask = tableSize - 1;
+        Arrays.fill(table, EMPTY);
+    }
+
+    /*
+     * Returns true the first time a sensor's reading at timeMs is offered,
+     * false for a repeat still within the last CAPACITY readings. A null
+     * sensorId stands for SensorSamples.DEFAULT_SENSOR.
+     */
+    public boolean firstSighting(String sensorId, long timeMs) {
+        long key = (timeMs << SENSOR_BITS) | sensorIndex(sensorId);
+        int slot = find(key);
+        if (table[slot] == key) {
+            return false;
+        }
+
+        if (ringSize == ring.length) {
+            remove(ring[ringStart]);
+            ringStart = (ringStart + 1) % ring.length;
+            ringSize--;
+            // The slot may have moved up during the removal
+            slot = find(key);
+        }
+        table[slot] = key;
+        ring[(ringStart + ringSize) % ring.length] = key;
+        ringSize++;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(table, EMPTY);
+        ringStart = 0;
+        ringSize = 0;
+    }
+
+    private int sensorIndex(String sensorId) {
+        String id = sensorId != null ? sensorId : "";
+        Integer index = sensorIndex.get(id);
+        if (index == null) {
+            // More than 1024 sensors on one brew would share indices; never the case in practice
+            index = sensorIndex.size() & ((1 << SENSOR_BITS) - 1);
+            sensorIndex.put(id, index);
+        }
+        return index;
+    }
+
+    // Slot holding key, or the empty slot where it would go
+    private int find(long key) {
+        int slot = hash(key);
+        while (table[slot] != EMPTY && table[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Linear-probing delete: shift later entries of the run back into the gap
+    private void remove(long key) {
+        int gap = find(key);
+        if (table[gap] != key) {
+            return;
+        }
+        table[gap] = EMPTY;
+        int slot = (gap + 1) & mask;
+        while (table[slot] != EMPTY) {
+            int home = hash(table[slot]);
+            // Move it if its home is not between the gap and its slot (cyclically)
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                table[gap] = table[slot];
+                table[slot] = EMPTY;
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+}
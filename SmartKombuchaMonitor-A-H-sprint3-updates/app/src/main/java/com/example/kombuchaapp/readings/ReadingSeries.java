@@ -0,0 +1,60 @@
+package com.example.kombuchaapp.readings;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+
+/**
+ * The sensor series stored under a recipe, with the Firestore collections
+ * for each storage layout and the field that holds the value.
+ */
+public enum ReadingSeries {
+    TEMPERATURE("temperature_readings", "temperature_chunks", "temperature_c", 2f),
+    PH("ph_readings", "ph_chunks", "ph_value", 0.3f);
+
+    // Which sensor sent a legacy reading; missing on older documents
+    public static final String FIELD_SENSOR_ID = "sensor_id";
+
+    // One document per reading (legacy layout)
+    public final String readingsCollection;
+    // One document per hour bucket, see ReadingChunks
+    public final String chunksCollection;
+    public final String valueField;
+    // Smallest jump from the recent median that can count as a glitch (see HampelFilter)
+    public final float outlierMinDeviation;
+
+    ReadingSeries(String readingsCollection, String chunksCollection, String valueField,
+                  float outlierMinDeviation) {
+        this.readingsCollection = readingsCollection;
+        this.chunksCollection = chunksCollection;
+        this.valueField = valueField;
+        this.outlierMinDeviation = outlierMinDeviation;
+    }
+
+    /*
+     * Adds a legacy one-reading document to out, in time order (late
+     * readings are inserted, not appended). Returns false, leaving out
+     * untouched, if it has no usable time or value.
+     */
+    public boolean decodeReading(DocumentSnapshot doc, TimestampParser parser, TimeSeriesBuffer out) {
+        return decodeReading(doc, parser, null, out);
+    }
+
+    // As above, but skips a reading deduper has already seen from the same sensor
+    public boolean decodeReading(DocumentSnapshot doc, TimestampParser parser, ReadingDeduper deduper,
+                                 TimeSeriesBuffer out) {
+        long timeMs = ReadingTimestamps.fromDocument(doc, parser);
+        Double value = doc.getDouble(valueField);
+        if (timeMs < 0 || value == null) {
+            return false;
+        }
+        if (deduper == null || deduper.firstSighting(doc.getString(FIELD_SENSOR_ID), timeMs)) {
+            out.insert(timeMs, value.floatValue());
+        }
+        return true;
+    }
+
+    // As above, keeping each sensor's readings apart
+    public boolean decodeReading(DocumentSnapshot doc, TimestampParser parser, ReadingDeduper deduper,
+                                 SensorSamples out) {
+        return decodeReading(doc, parser, deduper, out.forSensor(doc.getString(FIELD_SENSOR_ID)));
+    }
+}
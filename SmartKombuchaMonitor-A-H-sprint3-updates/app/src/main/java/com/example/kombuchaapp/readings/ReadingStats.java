@@ -0,0 +1,128 @@
+package com.example.kombuchaapp.readings;
+
+/**
+ * Running statistics of one series: count, min, max, mean and variance
+ * (Welford), plus how long the series spent in each level of an optional
+ * Classifier, e.g. the TemperatureAlert levels.
+ *
+ * Updated in O(1) per reading as batches are merged into the series, so
+ * nothing ever rescans the whole brew. Time in a level is credited per
+ * interval between consecutive readings to the level of the earlier one;
+ * a batch merged into the middle of the series (an older page) only
+ * re-credits the intervals around it. Gaps longer than MAX_GAP_MS (sensor
+ * offline) only count up to MAX_GAP_MS.
+ *
+ * Not thread-safe; owned by whoever owns the series.
+ */
+public class ReadingStats {
+
+    public static final long MAX_GAP_MS = TimestampParser.MS_PER_HOUR;
+
+    private final Classifier classifier;
+    private final long[] levelMs;
+
+    private int count;
+    private float min = Float.MAX_VALUE;
+    private float max = -Float.MAX_VALUE;
+    private double mean;
+    private double m2;
+
+    // classifier may be null when only min/max/mean/variance are needed
+    public ReadingStats(Classifier classifier) {
+        this.classifier = classifier;
+        this.levelMs = new long[classifier != null ? classifier.levelCount() : 0];
+    }
+
+    /*
+     * Merges a time-ordered batch into series and updates the statistics.
+     * Returns what TimeSeriesBuffer.merge returns.
+     */
+    public int merge(TimeSeriesBuffer series, TimeSeriesBuffer batch) {
+        if (batch.isEmpty()) {
+            return series.size();
+        }
+
+        // Neighbours of the batch: the reading before its first and the one after its last
+        int before = Math.max(0, series.lowerBound(batch.firstTime()) - 1);
+        int after = series.upperBound(batch.lastTime());
+        if (classifier != null && !series.isEmpty()) {
+            credit(series, before, Math.min(after, series.size() - 1), -1);
+        }
+
+        int firstChanged = series.merge(batch);
+
+        if (classifier != null) {
+            credit(series, before, Math.min(after + batch.size(), series.size() - 1), 1);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            add(batch.valueAt(i));
+        }
+        return firstChanged;
+    }
+
+    private void add(float value) {
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+    }
+
+    // Adds (sign 1) or takes back (sign -1) the intervals between readings from and to
+    private void credit(TimeSeriesBuffer series, int from, int to, int sign) {
+        for (int i = from; i < to; i++) {
+            long gap = Math.min(series.timeAt(i + 1) - series.timeAt(i), MAX_GAP_MS);
+            levelMs[classifier.levelOf(series.valueAt(i))] += sign * gap;
+        }
+    }
+
+    public void clear() {
+        count = 0;
+        min = Float.MAX_VALUE;
+        max = -Float.MAX_VALUE;
+        mean = 0;
+        m2 = 0;
+        for (int i = 0; i < levelMs.length; i++) {
+            levelMs[i] = 0;
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public float getMin() {
+        return min;
+    }
+
+    public float getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    // Population variance of every reading so far
+    public double getVariance() {
+        return count > 0 ? m2 / count : 0;
+    }
+
+    public double getStdDev() {
+        return Math.sqrt(getVariance());
+    }
+
+    public long getTimeInLevelMs(int level) {
+        return levelMs[level];
+    }
+
+    public interface Classifier {
+        int levelCount();
+        int levelOf(float value);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.kombuchaapp.readings;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Reading times during the move from the "yyyy-MM-dd HH:mm:ss" string field
+ * to a numeric epoch-millis field. Documents written by newer sensor firmware
+ * (or backfilled by ReadingsMigration) carry {@code ts_ms}; older ones only
+ * have the string, which is still parsed as device-local time.
+ */
+public final class ReadingTimestamps {
+
+    public static final String FIELD_TIMESTAMP = "timestamp";
+    public static final String FIELD_TS_MS = "ts_ms";
+    public static final String TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss";
+
+    private ReadingTimestamps() {}
+
+    // Epoch millis of a reading document, or -1 if it has no usable time
+    public static long fromDocument(DocumentSnapshot doc) {
+        return fromDocument(doc, new TimestampParser());
+    }
+
+    // Variant for hot paths that keep their own parser (and its zone offset cache)
+    public static long fromDocument(DocumentSnapshot doc, TimestampParser parser) {
+        Object tsMs = doc.get(FIELD_TS_MS);
+        if (tsMs instanceof Number) {
+            return ((Number) tsMs).longValue();
+        }
+        if (tsMs instanceof Timestamp) {
+            Timestamp ts = (Timestamp) tsMs;
+            return ts.getSeconds() * 1000L + ts.getNanoseconds() / 1_000_000;
+        }
+        return parser.parse(doc.getString(FIELD_TIMESTAMP));
+    }
+
+    // Parses the legacy string format; returns -1 if missing or malformed
+    public static long parse(String timestamp) {
+        return new TimestampParser().parse(timestamp);
+    }
+
+    // Legacy string for range queries on the timestamp field; not for hot paths
+    public static String format(long timeMs) {
+        return new SimpleDateFormat(TIMESTAMP_PATTERN, Locale.US).format(new Date(timeMs));
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.kombuchaapp.readings;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Average of every sensor of a series: one point at each reading time of
+ * any sensor, the mean of the latest value of every sensor at that time.
+ * Sensors aren't synchronised and may sample at different intervals, so
+ * averaging whatever fell into the same time bucket would jump between
+ * sensors; an as-of join per sensor (AsOfJoin) keeps all of them in.
+ * A sensor whose latest reading is older than SensorGaps.GAP_MS counts as
+ * gone and is left out until it reports again.
+ *
+ * Every join has the same rows, the reading times of all sensors. Kept up
+ * to date as batches arrive: a live batch costs O(batch × sensors), an
+ * older page merged into the middle recomputes the points after it.
+ *
+ * Not thread-safe.
+ */
+public class SensorAverage {
+
+    private final Map<String, AsOfJoin> joins = new LinkedHashMap<>();
+    private final TimeSeriesBuffer means = new TimeSeriesBuffer();
+
+    public TimeSeriesBuffer series() {
+        return means;
+    }
+
+    /*
+     * Adds one sensor's time-ordered batch. Returns the index of the first
+     * point of series() that changed, like TimeSeriesBuffer.merge.
+     */
+    public int add(String sensorId, TimeSeriesBuffer batch) {
+        AsOfJoin own = joins.get(sensorId);
+        if (own == null) {
+            own = new AsOfJoin(SensorGaps.GAP_MS);
+            if (!joins.isEmpty()) {
+                own.addLeft(joins.values().iterator().next().rows());
+            }
+            joins.put(sensorId, own);
+        }
+
+        int firstChanged = means.size();
+        for (AsOfJoin join : joins.values()) {
+            firstChanged = Math.min(firstChanged, join.addLeft(batch));
+        }
+        firstChanged = Math.min(firstChanged, own.addRight(batch));
+
+        means.truncate(firstChanged);
+        int rows = own.rowCount();
+        for (int row = firstChanged; row < rows; row++) {
+            float sum = 0;
+            int count = 0;
+            for (AsOfJoin join : joins.values()) {
+                float value = join.rightValue(row);
+                if (!Float.isNaN(value)) {
+                    sum += value;
+                    count++;
+                }
+            }
+            // Every row is some sensor's own reading, so count is at least one
+            means.append(own.rowTime(row), sum / count);
+        }
+        return firstChanged;
+    }
+
+    public void clear() {
+        joins.clear();
+        means.clear();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.kombuchaapp.readings;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Spans of one sensor's series with no readings for longer than GAP_MS,
+ * i.e. when the sensor was offline. Kept in step with the series like
+ * ReadingStats: a merged batch only rescans the readings around it, so
+ * appends cost O(batch) and an older page O(page).
+ *
+ * Not thread-safe; owned by whoever owns the series.
+ */
+public class SensorGaps {
+
+    // Sensors report every few minutes; also how long until one is called offline
+    public static final long GAP_MS = 15 * TimestampParser.MS_PER_MINUTE;
+
+    // Time of the reading before each gap -> time of the reading after it
+    private final TreeMap<Long, Long> gaps = new TreeMap<>();
+
+    /*
+     * Call after batch was merged into series, with what the merge returned.
+     * Returns true if any gap appeared, moved or closed.
+     */
+    public boolean onMerged(TimeSeriesBuffer series, TimeSeriesBuffer batch, int firstChanged) {
+        if (batch.isEmpty() || firstChanged >= series.size()) {
+            return false;
+        }
+        // From the reading before the batch to the first one after it
+        int from = Math.max(0, firstChanged - 1);
+        int to = Math.min(series.size() - 1, series.upperBound(batch.lastTime()));
+        if (from >= to) {
+            return false;
+        }
+
+        Map<Long, Long> stale = gaps.subMap(series.timeAt(from), true, series.timeAt(to), false);
+        boolean changed = !stale.isEmpty();
+        stale.clear();
+        for (int i = from; i < to; i++) {
+            long start = series.timeAt(i);
+            long end = series.timeAt(i + 1);
+            if (end - start > GAP_MS) {
+                gaps.put(start, end);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // Start -> end of every gap, newest last
+    public NavigableMap<Long, Long> gaps() {
+        return gaps;
+    }
+
+    public int size() {
+        return gaps.size();
+    }
+
+    public void clear() {
+        gaps.clear();
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.kombuchaapp.readings;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Samples of one series split by the sensor that took them, each part in
+ * time order. A recipe may have several probes (e.g. top and bottom of a
+ * large vessel) writing to the same collection; one listener reads them
+ * all and the readings are told apart here by sensor_id.
+ *
+ * Readings without a sensor_id (older documents, older chunks) belong to
+ * DEFAULT_SENSOR.
+ */
+public class SensorSamples {
+
+    public static final String DEFAULT_SENSOR = "";
+
+    private final Map<String, TimeSeriesBuffer> bySensor = new TreeMap<>();
+
+    public static String sensorOrDefault(String sensorId) {
+        return sensorId != null ? sensorId : DEFAULT_SENSOR;
+    }
+
+    // The sensor's samples, created empty on first use
+    public TimeSeriesBuffer forSensor(String sensorId) {
+        String id = sensorOrDefault(sensorId);
+        TimeSeriesBuffer samples = bySensor.get(id);
+        if (samples == null) {
+            samples = new TimeSeriesBuffer();
+            bySensor.put(id, samples);
+        }
+        return samples;
+    }
+
+    // Null if the sensor has no samples here
+    public TimeSeriesBuffer get(String sensorId) {
+        return bySensor.get(sensorOrDefault(sensorId));
+    }
+
+    public Set<String> sensors() {
+        return bySensor.keySet();
+    }
+
+    public Set<Map.Entry<String, TimeSeriesBuffer>> entries() {
+        return bySensor.entrySet();
+    }
+
+    public void merge(String sensorId, TimeSeriesBuffer samples) {
+        if (!samples.isEmpty()) {
+            forSensor(sensorId).merge(samples);
+        }
+    }
+
+    public void merge(SensorSamples other) {
+        for (Map.Entry<String, TimeSeriesBuffer> e : other.bySensor.entrySet()) {
+            merge(e.getKey(), e.getValue());
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (TimeSeriesBuffer samples : bySensor.values()) {
+            size += samples.size();
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // Oldest sample of any sensor; only valid if not empty
+    public long firstTime() {
+        long first = Long.MAX_VALUE;
+        for (TimeSeriesBuffer samples : bySensor.values()) {
+            if (!samples.isEmpty()) {
+                first = Math.min(first, samples.firstTime());
+            }
+        }
+        return first;
+    }
+
+    // Newest sample of any sensor; only valid if not empty
+    public long lastTime() {
+        long last = Long.MIN_VALUE;
+        for (TimeSeriesBuffer samples : bySensor.values()) {
+            if (!samples.isEmpty()) {
+                last = Math.max(last, samples.lastTime());
+            }
+        }
+        return last;
+    }
+
+    // Samples in [fromMs, beforeMs) of every sensor
+    public SensorSamples slice(long fromMs, long beforeMs) {
+        SensorSamples slice = new SensorSamples();
+        for (Map.Entry<String, TimeSeriesBuffer> e : bySensor.entrySet()) {
+            TimeSeriesBuffer samples = e.getValue();
+            int from = samples.lowerBound(fromMs);
+            int to = samples.lowerBound(beforeMs);
+            if (from < to) {
+                slice.forSensor(e.getKey()).merge(samples, from, to);
+            }
+        }
+        return slice;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.kombuchaapp.readings;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sorts one series' readings into clean and suspect ones, with a
+ * HampelFilter per sensor. Suspect readings are kept (and stored), but
+ * charts draw them apart and alerts ignore them.
+ *
+ * Readings newer than any the sensor's filter has seen continue its
+ * stream. Older ones (a page loaded on demand, or a late run) can't be
+ * judged against that. Each such run gets its own filter, seeded with
+ * the clean readings next to it: the ones just before if there are any,
+ * otherwise the ones just after, with the run then judged newest first.
+ * Without a seed the first readings of every page couldn't be flagged.
+ */
+public class SuspectReadings {
+
+    private final float minDeviation;
+    private final Map<String, HampelFilter> filters = new HashMap<>();
+
+    public SuspectReadings(ReadingSeries series) {
+        this.minDeviation = series.outlierMinDeviation;
+    }
+
+    // Appends each reading of the time-ordered batch to clean or suspect
+    public void split(String sensorId, TimeSeriesBuffer batch, TimeSeriesBuffer clean, TimeSeriesBuffer suspect) {
+        split(sensorId, batch, null, clean, suspect);
+    }
+
+    /*
+     * known: the sensor's clean readings so far (e.g. its line on the
+     * chart), oldest first; null if there are none.
+     */
+    public void split(String sensorId, TimeSeriesBuffer batch, TimeSeriesBuffer known,
+                      TimeSeriesBuffer clean, TimeSeriesBuffer suspect) {
+        String id = SensorSamples.sensorOrDefault(sensorId);
+        HampelFilter live = filters.get(id);
+        if (live == null) {
+            live = new HampelFilter(minDeviation);
+            filters.put(id, live);
+        }
+
+        int from = batch.upperBound(live.lastTimeMs());
+        if (from > 0) {
+            splitPast(batch, from, known, clean, suspect);
+        }
+        for (int i = from; i < batch.size(); i++) {
+            route(live.offer(batch.timeAt(i), batch.valueAt(i)), batch.timeAt(i), batch.valueAt(i), clean, suspect);
+        }
+    }
+
+    // batch[0, to) is older than the live stream
+    private void splitPast(TimeSeriesBuffer batch, int to, TimeSeriesBuffer known,
+                           TimeSeriesBuffer clean, TimeSeriesBuffer suspect) {
+        HampelFilter past = new HampelFilter(minDeviation);
+        boolean[] flagged = new boolean[to];
+        int before = known != null ? known.lowerBound(batch.timeAt(0)) : 0;
+        int after = known != null ? known.upperBound(batch.timeAt(to - 1)) : 0;
+
+        if (before > 0 || known == null || after == known.size()) {
+            if (known != null) {
+                for (int k = Math.max(0, before - HampelFilter.WINDOW); k < before; k++) {
+                    past.offer(known.timeAt(k), known.valueAt(k));
+                }
+            }
+            for (int i = 0; i < to; i++) {
+                flagged[i] = past.offer(batch.timeAt(i), batch.valueAt(i));
+            }
+        } else {
+            // Nothing on the chart before it, as for an older page: judge it from the later side
+            for (int k = Math.min(known.size(), after + HampelFilter.WINDOW) - 1; k >= after; k--) {
+                past.offer(known.timeAt(k), known.valueAt(k));
+            }
+            for (int i = to - 1; i >= 0; i--) {
+                flagged[i] = past.offer(batch.timeAt(i), batch.valueAt(i));
+            }
+        }
+
+        for (int i = 0; i < to; i++) {
+            route(flagged[i], batch.timeAt(i), batch.valueAt(i), clean, suspect);
+        }
+    }
+
+    private static void route(boolean isSuspect, long timeMs, float value,
+                              TimeSeriesBuffer clean, TimeSeriesBuffer suspect) {
+        if (isSuspect) {
+            suspect.append(timeMs, value);
+        } else {
+            clean.append(timeMs, value);
+        }
+    }
+
+    public void clear() {
+        filters.clear();
+    }
+}
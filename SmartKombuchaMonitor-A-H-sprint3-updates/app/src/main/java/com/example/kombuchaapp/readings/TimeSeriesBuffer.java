@@ -0,0 +1,201 @@
+package com.example.kombuchaapp.readings;
+
+import java.util.Arrays;
+
+/**
+ * Growable, time-ordered series of sensor samples stored in two parallel
+ * primitive arrays (epoch millis and value), so a reading costs 12 bytes
+ * instead of a SensorReadings object, an Entry and a label String.
+ */
+public class TimeSeriesBuffer {
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private long[] times;
+    private float[] values;
+    private int size;
+
+    public TimeSeriesBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TimeSeriesBuffer(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        times = new long[capacity];
+        values = new float[capacity];
+    }
+
+    // Takes ownership of the arrays, e.g. columns copied out of a BrewArchive
+    TimeSeriesBuffer(long[] times, float[] values, int size) {
+        this.times = times;
+        this.values = values;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long timeAt(int index) {
+        return times[index];
+    }
+
+    public float valueAt(int index) {
+        return values[index];
+    }
+
+    public long firstTime() {
+        return times[0];
+    }
+
+    public long lastTime() {
+        return times[size - 1];
+    }
+
+    public void setValueAt(int index, float value) {
+        values[index] = value;
+    }
+
+    // Caller is responsible for keeping samples in time order
+    public void append(long timeMs, float value) {
+        ensureCapacity(size + 1);
+        times[size] = timeMs;
+        values[size] = value;
+        size++;
+    }
+
+    /*
+     * Inserts one sample in time order (after any at the same time) and
+     * returns its index. Cheap for late samples, which land near the end.
+     */
+    public int insert(long timeMs, float value) {
+        ensureCapacity(size + 1);
+        int at = size;
+        while (at > 0 && times[at - 1] > timeMs) {
+            times[at] = times[at - 1];
+            values[at] = values[at - 1];
+            at--;
+        }
+        times[at] = timeMs;
+        values[at] = value;
+        size++;
+        return at;
+    }
+
+    public int merge(TimeSeriesBuffer other) {
+        return merge(other, 0, other.size());
+    }
+
+    /*
+     * Merges other[from, to), which must be in time order, into this series.
+     * Samples after the current last one are a plain append; anything older is
+     * merged in place from the back. Returns the index of the first sample
+     * that was added or moved, so callers can tell an append (== old size)
+     * from an insert.
+     */
+    public int merge(TimeSeriesBuffer other, int from, int to) {
+        int count = to - from;
+        int oldSize = size;
+        if (count <= 0) {
+            return oldSize;
+        }
+
+        ensureCapacity(size + count);
+        if (size == 0 || other.times[from] >= times[size - 1]) {
+            System.arraycopy(other.times, from, times, size, count);
+            System.arraycopy(other.values, from, values, size, count);
+            size += count;
+            return oldSize;
+        }
+
+        int firstChanged = upperBound(other.times[from]);
+        int i = size - 1;
+        int j = to - 1;
+        for (int k = size + count - 1; j >= from; k--) {
+            if (i >= firstChanged && times[i] > other.times[j]) {
+                times[k] = times[i];
+                values[k] = values[i];
+                i--;
+            } else {
+                times[k] = other.times[j];
+                values[k] = other.values[j];
+                j--;
+            }
+        }
+        size += count;
+        return firstChanged;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /*
+     * Keeps only the first sample at each time, the one ReadingDeduper
+     * would have let through. Returns how many were dropped.
+     */
+    public int dropRepeatedTimes() {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (kept > 0 && times[kept - 1] == times[i]) {
+                continue;
+            }
+            times[kept] = times[i];
+            values[kept] = values[i];
+            kept++;
+        }
+        int dropped = size - kept;
+        size = kept;
+        return dropped;
+    }
+
+    // Drops every sample from index newSize on
+    public void truncate(int newSize) {
+        if (newSize < size) {
+            size = Math.max(0, newSize);
+        }
+    }
+
+    // Index of the first sample at or after timeMs, or size() if there is none
+    public int lowerBound(long timeMs) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < timeMs) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Index of the first sample after timeMs, or size() if there is none
+    public int upperBound(long timeMs) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= timeMs) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= times.length) {
+            return;
+        }
+        int newCapacity = Math.max(minCapacity, times.length + (times.length >> 1));
+        times = Arrays.copyOf(times, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+    }
+}
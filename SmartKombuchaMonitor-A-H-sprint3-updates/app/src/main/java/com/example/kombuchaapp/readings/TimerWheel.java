@@ -0,0 +1,142 @@
+package com.example.kombuchaapp.readings;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hashed timer wheel: one deadline per key, all driven by a single tick.
+ * Scheduling, rescheduling and cancelling are O(1); advance() only looks
+ * at the slots passed since the last call, so a tick costs about
+ * (keys / slot count) however many keys there are. Deadlines further out
+ * than one turn of the wheel wait in their slot for later turns.
+ *
+ * Deadlines fire at most one tick late. Not thread-safe.
+ */
+public class TimerWheel<K> {
+
+    private final long tickMs;
+    private final Entry<K>[] slots;
+    private final int mask;
+    private final Map<K, Entry<K>> entries = new HashMap<>();
+    // Ticks before this one have been processed; this one may still hold later deadlines
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickMs, int slotCount, long nowMs) {
+        if (tickMs <= 0 || slotCount <= 0 || Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("Tick must be positive and slot count a power of two");
+        }
+        this.tickMs = tickMs;
+        this.slots = (Entry<K>[]) new Entry<?>[slotCount];
+        this.mask = slotCount - 1;
+        this.currentTick = TimestampParser.floorDiv(nowMs, tickMs);
+    }
+
+    public long getTickMs() {
+        return tickMs;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public boolean contains(K key) {
+        return entries.containsKey(key);
+    }
+
+    // Sets or moves the key's deadline; one already passed fires on the next advance()
+    public void schedule(K key, long deadlineMs) {
+        Entry<K> entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry<>(key);
+            entries.put(key, entry);
+        } else {
+            unlink(entry);
+        }
+        entry.deadlineMs = deadlineMs;
+        // Never behind the hand, or it would wait a whole turn
+        long tick = Math.max(TimestampParser.floorDiv(deadlineMs, tickMs), currentTick);
+        link(entry, (int) (tick & mask));
+    }
+
+    public void cancel(K key) {
+        Entry<K> entry = entries.remove(key);
+        if (entry != null) {
+            unlink(entry);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = null;
+        }
+    }
+
+    /*
+     * Moves the hand to nowMs and adds the keys whose deadline is at or
+     * before it to expired, in no particular order. They are no longer
+     * scheduled afterwards.
+     */
+    public void advance(long nowMs, List<K> expired) {
+        long nowTick = TimestampParser.floorDiv(nowMs, tickMs);
+        if (nowTick < currentTick) {
+            return;
+        }
+        // After a long pause every slot is due at most once
+        long from = Math.max(currentTick, nowTick - mask);
+        for (long tick = from; tick <= nowTick; tick++) {
+            Entry<K> entry = slots[(int) (tick & mask)];
+            while (entry != null) {
+                Entry<K> next = entry.next;
+                if (entry.deadlineMs <= nowMs) {
+                    unlink(entry);
+                    entries.remove(entry.key);
+                    expired.add(entry.key);
+                }
+                entry = next;
+            }
+        }
+        currentTick = nowTick;
+    }
+
+    private void link(Entry<K> entry, int slot) {
+        entry.slot = slot;
+        entry.prev = null;
+        entry.next = slots[slot];
+        if (entry.next != null) {
+            entry.next.prev = entry;
+        }
+        slots[slot] = entry;
+    }
+
+    private void unlink(Entry<K> entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            slots[entry.slot] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    private static class Entry<K> {
+        final K key;
+        long deadlineMs;
+        int slot;
+        Entry<K> prev;
+        Entry<K> next;
+
+        Entry(K key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.kombuchaapp.readings;
+
+import java.util.TimeZone;
+
+/**
+ * Fixed-layout parser for sensor timestamps ("yyyy-MM-dd HH:mm:ss", device
+ * local time). Works directly on the characters and does the calendar
+ * arithmetic itself, so parsing a reading allocates nothing, unlike
+ * SimpleDateFormat which builds a Calendar, a Date and a ParsePosition.
+ *
+ * The zone offset is cached per local hour, since readings arrive in order
+ * and DST changes only happen on hour boundaries. Not thread-safe; give
+ * each caller its own instance.
+ */
+public class TimestampParser {
+
+    public static final long MS_PER_SECOND = 1000L;
+    public static final long MS_PER_MINUTE = 60 * MS_PER_SECOND;
+    public static final long MS_PER_HOUR = 60 * MS_PER_MINUTE;
+    public static final long MS_PER_DAY = 24 * MS_PER_HOUR;
+
+    private static final int LENGTH = 19;
+
+    private final TimeZone zone;
+    private long cachedHour = Long.MIN_VALUE;
+    private int cachedOffset;
+
+    public TimestampParser() {
+        this(TimeZone.getDefault());
+    }
+
+    public TimestampParser(TimeZone zone) {
+        this.zone = zone;
+    }
+
+    // Epoch millis, or -1 if the text doesn't match the layout
+    public long parse(CharSequence text) {
+        if (text == null || text.length() < LENGTH
+                || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != ' '
+                || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            return -1;
+        }
+
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return -1;
+        }
+
+        long localMs = daysFromCivil(year, month, day) * MS_PER_DAY
+                + hour * MS_PER_HOUR + minute * MS_PER_MINUTE + second * MS_PER_SECOND;
+        return localMs - offsetForLocal(localMs);
+    }
+
+    // Same rule as GregorianCalendar: look the offset up at local time minus the raw offset
+    private int offsetForLocal(long localMs) {
+        long localHour = floorDiv(localMs, MS_PER_HOUR);
+        if (localHour != cachedHour) {
+            cachedOffset = zone.getOffset(localMs - zone.getRawOffset());
+            cachedHour = localHour;
+        }
+        return cachedOffset;
+    }
+
+    // Parses `count` ASCII digits starting at `start`, or -1 if any isn't a digit
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int d = text.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // Math.floorDiv needs API 24
+    public static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x < 0) != (y < 0))) {
+            q--;
+        }
+        return q;
+    }
+
+    // Days since 1970-01-01 for a proleptic Gregorian date (H. Hinnant's algorithm)
+    public static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (int) floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
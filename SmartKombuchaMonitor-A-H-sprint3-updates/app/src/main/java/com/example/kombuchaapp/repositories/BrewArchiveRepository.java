@@ -0,0 +1,121 @@
+package com.example.kombuchaapp.repositories;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.kombuchaapp.readings.BrewArchive;
+import com.example.kombuchaapp.readings.ReadingSeries;
+import com.example.kombuchaapp.readings.SensorSamples;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Writes and opens the on-device BrewArchive of completed recipes
+
+public class BrewArchiveRepository {
+
+    private static final String TAG = "BrewArchiveRepository";
+    private static final String ARCHIVE_DIR = "archives";
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final File archiveDir;
+    private final RecipeRepository recipeRepository;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public BrewArchiveRepository(Context context) {
+        archiveDir = new File(context.getApplicationContext().getFilesDir(), ARCHIVE_DIR);
+        recipeRepository = new RecipeRepository();
+    }
+
+    // Also the file to hand out for sharing or backup
+    public File getArchiveFile(String recipeId) {
+        return new File(archiveDir, recipeId + BrewArchive.FILE_EXTENSION);
+    }
+
+    public boolean hasArchive(String recipeId) {
+        return getArchiveFile(recipeId).exists();
+    }
+
+    /*
+     * Downloads every reading of the recipe once and freezes them into its
+     * archive. Meant for completed brews, whose readings no longer change.
+     */
+    public void archiveRecipe(String recipeId, RecipeRepository.OnUpdateListener listener) {
+        Map<ReadingSeries, SensorSamples> series = new EnumMap<>(ReadingSeries.class);
+        fetchSeries(recipeId, ReadingSeries.values(), 0, series, listener);
+    }
+
+    private void fetchSeries(String recipeId, ReadingSeries[] all, int index,
+                             Map<ReadingSeries, SensorSamples> fetched,
+                             RecipeRepository.OnUpdateListener listener) {
+        if (index >= all.length) {
+            executor.execute(() -> writeArchive(recipeId, fetched, listener));
+            return;
+        }
+
+        recipeRepository.getReadings(recipeId, all[index], new RecipeRepository.OnReadingsLoadedListener() {
+            @Override
+            public void onSuccess(SensorSamples readings) {
+                fetched.put(all[index], readings);
+                fetchSeries(recipeId, all, index + 1, fetched, listener);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                listener.onFailure(error);
+            }
+        });
+    }
+
+    private void writeArchive(String recipeId, Map<ReadingSeries, SensorSamples> series,
+                              RecipeRepository.OnUpdateListener listener) {
+        try {
+            if (!archiveDir.isDirectory() && !archiveDir.mkdirs()) {
+                throw new IOException("Could not create " + archiveDir);
+            }
+            BrewArchive.write(getArchiveFile(recipeId), series, System.currentTimeMillis());
+            mainHandler.post(() -> listener.onSuccess("Brew archived"));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to archive recipe " + recipeId, e);
+            mainHandler.post(() -> listener.onFailure(e.getMessage()));
+        }
+    }
+
+    public void loadArchive(String recipeId, OnArchiveLoadedListener listener) {
+        executor.execute(() -> {
+            try {
+                BrewArchive archive = BrewArchive.open(getArchiveFile(recipeId));
+                Map<ReadingSeries, SensorSamples> series = new EnumMap<>(ReadingSeries.class);
+                for (ReadingSeries s : ReadingSeries.values()) {
+                    series.put(s, archive.read(s));
+                }
+                mainHandler.post(() -> listener.onSuccess(series));
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to open archive of " + recipeId, e);
+                mainHandler.post(() -> listener.onFailure(e.getMessage()));
+            }
+        });
+    }
+
+    // The readings are live again (rebrew) or gone (delete)
+    public void deleteArchive(String recipeId) {
+        executor.execute(() -> {
+            File file = getArchiveFile(recipeId);
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Could not delete archive " + file);
+            }
+        });
+    }
+
+    public interface OnArchiveLoadedListener {
+        void onSuccess(Map<ReadingSeries, SensorSamples> series);
+        void onFailure(String error);
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.kombuchaapp.repositories;
+
+import android.util.Log;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * Moves a recipe between draft, brewing, paused and completed. Every
+ * transition is a single Firestore transaction that checks the recipe is
+ * in a state the transition starts from, claims or releases its sensors
+ * (see SensorControlRepository) and writes the new status and dates. Two
+ * people tapping Start at once can't both get the sensors, and a failure
+ * leaves the status and the sensor assignment as they were.
+ *
+ * Transitions that claim sensors first make sure ServerClock knows the
+ * server time, as that is what lapsed leases are judged by.
+ */
+
+public class BrewStateMachine {
+
+    private static final String TAG = "BrewStateMachine";
+
+    public static final String DRAFT = "draft";
+    public static final String BREWING = "brewing";
+    public static final String PAUSED = "paused";
+    public static final String COMPLETED = "completed";
+
+    public enum Transition {
+        START(BREWING, "Brewing started", DRAFT),
+        PAUSE(PAUSED, "Brewing paused. Sensors deactivated.", BREWING),
+        RESUME(BREWING, "Brewing resumed", PAUSED),
+        COMPLETE(COMPLETED, "Brew completed", BREWING),
+        BACK_TO_DRAFT(DRAFT, "Recipe moved back to draft", BREWING, PAUSED),
+        REBREW(BREWING, "Brewing restarted!", COMPLETED);
+
+        public final String target;
+        final String message;
+        private final String[] from;
+
+        Transition(String target, String message, String... from) {
+            this.target = target;
+            this.message = message;
+            this.from = from;
+        }
+
+        public boolean isAllowedFrom(String status) {
+            String current = status != null ? status.toLowerCase(Locale.ROOT) : DRAFT;
+            for (String allowed : from) {
+                if (allowed.equals(current)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Brewing needs sensors; every other state lets them go
+        public boolean claimsSensors() {
+            return BREWING.equals(target);
+        }
+    }
+
+    private final FirebaseAuth fAuth;
+    private final FirebaseFirestore fStore;
+    private final ServerClock serverClock;
+
+    public BrewStateMachine() {
+        fAuth = FirebaseAuth.getInstance();
+        fStore = FirebaseFirestore.getInstance();
+        serverClock = ServerClock.getInstance();
+    }
+
+    /*
+     * sensorIds is what a brewing state should claim; null keeps the
+     * sensors the recipe had last time. Ignored by the other transitions.
+     */
+    public void apply(String recipeId, Transition transition, List<String> sensorIds,
+                      RecipeRepository.OnUpdateListener listener) {
+        FirebaseUser user = fAuth.getCurrentUser();
+        if (user == null) {
+            listener.onFailure("User not logged in");
+            return;
+        }
+        String userId = user.getUid();
+        if (!transition.claimsSensors()) {
+            runTransition(userId, recipeId, transition, sensorIds, listener);
+            return;
+        }
+        serverClock.sync(new RecipeRepository.OnUpdateListener() {
+            @Override
+            public void onSuccess(String message) {
+                runTransition(userId, recipeId, transition, sensorIds, listener);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                listener.onFailure("Couldn't check the server time: " + error);
+            }
+        });
+    }
+
+    private void runTransition(String userId, String recipeId, Transition transition, List<String> sensorIds,
+                               RecipeRepository.OnUpdateListener listener) {
+        DocumentReference recipeRef = fStore.collection("users").document(userId)
+                .collection("Recipes").document(recipeId);
+
+        fStore.runTransaction(transaction -> {
+                    DocumentSnapshot recipe = transaction.get(recipeRef);
+                    if (!recipe.exists()) {
+                        throw new FirebaseFirestoreException("Recipe not found",
+                                FirebaseFirestoreException.Code.NOT_FOUND);
+                    }
+                    String status = recipe.getString("status");
+                    if (!transition.isAllowedFrom(status)) {
+                        // Someone else got there first, or the screen is out of date
+                        throw new FirebaseFirestoreException("Recipe is already " + (status != null ? status : DRAFT),
+                                FirebaseFirestoreException.Code.FAILED_PRECONDITION);
+                    }
+
+                    List<String> previous = (List<String>) recipe.get(SensorControlRepository.FIELD_RECIPE_SENSORS);
+                    if (previous == null) {
+                        previous = Collections.emptyList();
+                    }
+                    List<String> claimed = Collections.emptyList();
+                    if (transition.claimsSensors()) {
+                        claimed = sensorIds != null ? sensorIds : previous;
+                        if (claimed.isEmpty()) {
+                            throw new FirebaseFirestoreException("No sensors chosen",
+                                    FirebaseFirestoreException.Code.INVALID_ARGUMENT);
+                        }
+                    }
+                    List<String> released = new ArrayList<>();
+                    for (String sensorId : previous) {
+                        if (!claimed.contains(sensorId)) {
+                            released.add(sensorId);
+                        }
+                    }
+
+                    // Every read comes before the first write
+                    List<DocumentSnapshot> toRelease = SensorControlRepository.readSensors(fStore, transaction, released);
+                    List<DocumentSnapshot> toClaim = SensorControlRepository.readSensors(fStore, transaction, claimed);
+                    // Lapsed leases of other brews are taken over here, under the transaction
+                    SensorControlRepository.checkFree(toClaim, recipeId, serverClock.nowMs());
+
+                    SensorControlRepository.writeReleased(transaction, toRelease, recipeId);
+                    SensorControlRepository.writeAssigned(transaction, toClaim, recipeId, userId);
+                    transaction.update(recipeRef, recipeUpdates(transition, claimed));
+                    return null;
+                })
+                .addOnSuccessListener(aVoid -> {
+                    Log.d(TAG, "Recipe " + recipeId + " " + transition + " -> " + transition.target);
+                    listener.onSuccess(transition.message);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to " + transition + " recipe " + recipeId, e);
+                    listener.onFailure(e.getMessage());
+                });
+    }
+
+    private static Map<String, Object> recipeUpdates(Transition transition, List<String> claimed) {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("status", transition.target);
+        switch (transition) {
+            case START:
+            case REBREW:
+                updates.put("brewingStartDate", Timestamp.now());
+                updates.put("completionDate", null);
+                break;
+            case COMPLETE:
+                updates.put("completionDate", Timestamp.now());
+                break;
+            case BACK_TO_DRAFT:
+                updates.put("brewingStartDate", null);
+                updates.put("completionDate", null);
+                break;
+            default:
+                // Pausing and resuming keep the brew's dates
+                break;
+        }
+        if (transition.claimsSensors()) {
+            // Kept after the sensors are released, to resume on the same ones
+            updates.put(SensorControlRepository.FIELD_RECIPE_SENSORS, new ArrayList<>(claimed));
+        }
+        return updates;
+    }
+}
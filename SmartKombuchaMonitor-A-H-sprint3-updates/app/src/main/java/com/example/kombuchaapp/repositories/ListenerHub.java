@@ -0,0 +1,155 @@
+package com.example.kombuchaapp.repositories;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Snapshot listeners tied to a screen's lifecycle. Subscribers asking for
+ * the same query share one Firestore listener (ref-counted); a subscriber
+ * joining a query that is already live gets the latest snapshot straight
+ * away. When the owner stops, every Firestore listener is removed but the
+ * subscriptions are kept. When it starts again each subscriber is asked
+ * for its query afresh, so it can resume from the last reading it saw
+ * instead of downloading everything again.
+ *
+ * Main thread only.
+ */
+
+public class ListenerHub implements DefaultLifecycleObserver {
+
+    private final Map<Query, SharedListener> live = new HashMap<>();
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private boolean started;
+
+    public ListenerHub(LifecycleOwner owner) {
+        owner.getLifecycle().addObserver(this);
+        started = owner.getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED);
+    }
+
+    public Subscription subscribe(Subscriber subscriber) {
+        Subscription subscription = new Subscription(subscriber);
+        subscriptions.add(subscription);
+        if (started) {
+            attach(subscription);
+        }
+        return subscription;
+    }
+
+    @Override
+    public void onStart(@NonNull LifecycleOwner owner) {
+        if (started) {
+            return;
+        }
+        started = true;
+        for (Subscription subscription : new ArrayList<>(subscriptions)) {
+            attach(subscription);
+        }
+    }
+
+    @Override
+    public void onStop(@NonNull LifecycleOwner owner) {
+        started = false;
+        for (SharedListener shared : live.values()) {
+            shared.registration.remove();
+        }
+        live.clear();
+        for (Subscription subscription : new ArrayList<>(subscriptions)) {
+            subscription.query = null;
+            subscription.subscriber.onPaused();
+        }
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        onStop(owner);
+        subscriptions.clear();
+        owner.getLifecycle().removeObserver(this);
+    }
+
+    private void attach(Subscription subscription) {
+        Query query = subscription.subscriber.query();
+        subscription.query = query;
+
+        SharedListener shared = live.get(query);
+        if (shared == null) {
+            shared = new SharedListener();
+            live.put(query, shared);
+            shared.subscribers.add(subscription.subscriber);
+            shared.registration = query.addSnapshotListener(shared);
+        } else {
+            shared.subscribers.add(subscription.subscriber);
+            if (shared.latest != null) {
+                subscription.subscriber.onEvent(shared.latest, null);
+            }
+        }
+    }
+
+    private void detach(Subscription subscription) {
+        if (subscription.query == null) {
+            return;
+        }
+        SharedListener shared = live.get(subscription.query);
+        subscription.query = null;
+        if (shared == null) {
+            return;
+        }
+        shared.subscribers.remove(subscription.subscriber);
+        if (shared.subscribers.isEmpty()) {
+            shared.registration.remove();
+            live.values().remove(shared);
+        }
+    }
+
+    /*
+     * A snapshot listener that can say which query it wants each time it is
+     * (re)attached. The first snapshot after attaching should be read as
+     * the full result set, since it may be a shared listener's latest one.
+     */
+    public interface Subscriber extends EventListener<QuerySnapshot> {
+        Query query();
+        void onPaused();
+    }
+
+    public class Subscription {
+        private final Subscriber subscriber;
+        private Query query;
+
+        private Subscription(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        public void remove() {
+            detach(this);
+            subscriptions.remove(this);
+        }
+    }
+
+    private static class SharedListener implements EventListener<QuerySnapshot> {
+        final List<Subscriber> subscribers = new ArrayList<>();
+        ListenerRegistration registration;
+        QuerySnapshot latest;
+
+        @Override
+        public void onEvent(QuerySnapshot value, FirebaseFirestoreException error) {
+            if (value != null) {
+                latest = value;
+            }
+            for (Subscriber subscriber : new ArrayList<>(subscribers)) {
+                subscriber.onEvent(value, error);
+            }
+        }
+    }
+}
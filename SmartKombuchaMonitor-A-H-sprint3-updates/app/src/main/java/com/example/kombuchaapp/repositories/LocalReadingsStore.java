@@ -0,0 +1,223 @@
+package com.example.kombuchaapp.repositories;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.kombuchaapp.readings.ReadingSeries;
+import com.example.kombuchaapp.readings.SensorSamples;
+import com.example.kombuchaapp.readings.TimeSeriesBuffer;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * On-device copy of the readings already downloaded for each recipe, so
+ * reopening a brew draws from disk and only asks Firestore for what is new.
+ *
+ * Besides the samples, each recipe/series keeps the time range it holds
+ * completely (low_ms..high_ms): everything Firestore had in that range is
+ * on disk. Readers fetch only after high_ms (live) and before low_ms (older
+ * pages). Samples outside the range may exist but are not trusted. The
+ * range covers every sensor of the series, as they share one listener.
+ *
+ * A sensor has at most one reading per millisecond, as on the chart
+ * (ReadingDeduper): the first one stored is kept.
+ *
+ * All disk work runs on one background thread, in call order; listeners
+ * are called on the main thread.
+ */
+
+public class LocalReadingsStore extends SQLiteOpenHelper {
+
+    private static final String TAG = "LocalReadingsStore";
+
+    private static final String DATABASE_NAME = "readings.db";
+    private static final int DATABASE_VERSION = 2;
+
+    private static final String TABLE_READINGS = "readings";
+    private static final String TABLE_SYNC = "sync_state";
+
+    private static LocalReadingsStore instance;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static synchronized LocalReadingsStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new LocalReadingsStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private LocalReadingsStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_READINGS + " ("
+                + "recipe_id TEXT NOT NULL, "
+                + "series TEXT NOT NULL, "
+                + "sensor_id TEXT NOT NULL, "
+                + "ts_ms INTEGER NOT NULL, "
+                + "value REAL NOT NULL, "
+                + "PRIMARY KEY (recipe_id, series, sensor_id, ts_ms)) WITHOUT ROWID");
+        db.execSQL("CREATE TABLE " + TABLE_SYNC + " ("
+                + "recipe_id TEXT NOT NULL, "
+                + "series TEXT NOT NULL, "
+                + "low_ms INTEGER NOT NULL, "
+                + "high_ms INTEGER NOT NULL, "
+                + "PRIMARY KEY (recipe_id, series))");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Only a cache of Firestore, so start over
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_READINGS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC);
+        onCreate(db);
+    }
+
+    // Loads the stored range and its samples in time order; an empty store reports low > high
+    public void load(String recipeId, ReadingSeries series, OnStoredReadingsListener listener) {
+        executor.execute(() -> {
+            try {
+                SQLiteDatabase db = getReadableDatabase();
+                String[] key = {recipeId, series.name()};
+                long lowMs = 0;
+                long highMs = -1;
+                try (Cursor cursor = db.rawQuery("SELECT low_ms, high_ms FROM " + TABLE_SYNC
+                        + " WHERE recipe_id = ? AND series = ?", key)) {
+                    if (cursor.moveToFirst()) {
+                        lowMs = cursor.getLong(0);
+                        highMs = cursor.getLong(1);
+                    }
+                }
+
+                SensorSamples samples = new SensorSamples();
+                if (lowMs <= highMs) {
+                    try (Cursor cursor = db.rawQuery("SELECT sensor_id, ts_ms, value FROM " + TABLE_READINGS
+                                    + " WHERE recipe_id = ? AND series = ? AND ts_ms BETWEEN ? AND ?"
+                                    + " ORDER BY sensor_id, ts_ms",
+                            new String[]{recipeId, series.name(), String.valueOf(lowMs), String.valueOf(highMs)})) {
+                        String sensorId = null;
+                        TimeSeriesBuffer sensor = null;
+                        while (cursor.moveToNext()) {
+                            if (sensor == null || !cursor.getString(0).equals(sensorId)) {
+                                sensorId = cursor.getString(0);
+                                sensor = samples.forSensor(sensorId);
+                            }
+                            sensor.append(cursor.getLong(1), cursor.getFloat(2));
+                        }
+                    }
+                }
+
+                long low = lowMs;
+                long high = highMs;
+                mainHandler.post(() -> listener.onSuccess(samples, low, high));
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to load stored " + series.readingsCollection, e);
+                mainHandler.post(() -> listener.onFailure(e.getMessage()));
+            }
+        });
+    }
+
+    /*
+     * Stores samples and widens the complete range by [lowMs, highMs], which
+     * must touch or overlap what is already stored. Pass lowMs > highMs to
+     * store samples without claiming any range.
+     */
+    public void save(String recipeId, ReadingSeries series, SensorSamples samples, long lowMs, long highMs) {
+        executor.execute(() -> {
+            SQLiteDatabase db;
+            try {
+                db = getWritableDatabase();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to open " + DATABASE_NAME, e);
+                return;
+            }
+            db.beginTransaction();
+            try {
+                try (SQLiteStatement insert = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_READINGS
+                        + " (recipe_id, series, sensor_id, ts_ms, value) VALUES (?, ?, ?, ?, ?)")) {
+                    insert.bindString(1, recipeId);
+                    insert.bindString(2, series.name());
+                    for (Map.Entry<String, TimeSeriesBuffer> e : samples.entries()) {
+                        TimeSeriesBuffer sensor = e.getValue();
+                        insert.bindString(3, e.getKey());
+                        for (int i = 0; i < sensor.size(); i++) {
+                            insert.bindLong(4, sensor.timeAt(i));
+                            insert.bindDouble(5, sensor.valueAt(i));
+                            insert.executeInsert();
+                        }
+                    }
+                }
+
+                if (lowMs <= highMs) {
+                    widenRange(db, recipeId, series, lowMs, highMs);
+                }
+                db.setTransactionSuccessful();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to store " + series.readingsCollection, e);
+            } finally {
+                db.endTransaction();
+            }
+        });
+    }
+
+    // Read-modify-write, as UPSERT needs a newer SQLite than minSdk 23 ships
+    private void widenRange(SQLiteDatabase db, String recipeId, ReadingSeries series, long lowMs, long highMs) {
+        try (Cursor cursor = db.rawQuery("SELECT low_ms, high_ms FROM " + TABLE_SYNC
+                + " WHERE recipe_id = ? AND series = ?", new String[]{recipeId, series.name()})) {
+            if (cursor.moveToFirst()) {
+                lowMs = Math.min(lowMs, cursor.getLong(0));
+                highMs = Math.max(highMs, cursor.getLong(1));
+            }
+        }
+
+        ContentValues row = new ContentValues();
+        row.put("recipe_id", recipeId);
+        row.put("series", series.name());
+        row.put("low_ms", lowMs);
+        row.put("high_ms", highMs);
+        db.insertWithOnConflict(TABLE_SYNC, null, row, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    // Forgets one series, e.g. after readings were edited or deleted remotely
+    public void clear(String recipeId, ReadingSeries series) {
+        executor.execute(() -> delete("recipe_id = ? AND series = ?", new String[]{recipeId, series.name()}));
+    }
+
+    public void clearRecipe(String recipeId) {
+        executor.execute(() -> delete("recipe_id = ?", new String[]{recipeId}));
+    }
+
+    private void delete(String where, String[] args) {
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.delete(TABLE_READINGS, where, args);
+                db.delete(TABLE_SYNC, where, args);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to clear stored readings", e);
+        }
+    }
+
+    public interface OnStoredReadingsListener {
+        void onSuccess(SensorSamples samples, long lowMs, long highMs);
+        void onFailure(String error);
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.kombuchaapp.repositories;
+
+import android.util.Log;
+
+import com.example.kombuchaapp.readings.ReadingChunks;
+import com.example.kombuchaapp.readings.ReadingSeries;
+import com.example.kombuchaapp.readings.ReadingTimestamps;
+import com.example.kombuchaapp.readings.SensorSamples;
+import com.example.kombuchaapp.readings.TimeSeriesBuffer;
+import com.example.kombuchaapp.readings.TimestampParser;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Moves cold readings (older than ReadingChunks.HOT_WINDOW_MS) out of the
+ * one-document-per-reading collections into Gorilla-encoded hourly chunks.
+ * Each hour is written, read back from the server and compared sample by
+ * sample before its original documents are deleted, so an interrupted run
+ * never loses data; re-running merges into the chunk it already wrote.
+ *
+ * Cold readings are found by their numeric ts_ms, so this is only for
+ * recipes flagged readingsTsMigrated (see ReadingsMigration).
+ */
+
+public class ReadingsCompaction {
+
+    private static final String TAG = "ReadingsCompaction";
+
+    private static final int PAGE_SIZE = 500;
+    // Firestore allows 500 writes per batch
+    private static final int DELETE_BATCH_SIZE = 500;
+
+    private final FirebaseAuth fAuth;
+    private final FirebaseFirestore fStore;
+
+    public ReadingsCompaction() {
+        fAuth = FirebaseAuth.getInstance();
+        fStore = FirebaseFirestore.getInstance();
+    }
+
+    public void compactRecipe(String recipeId, OnCompactionListener listener) {
+        FirebaseUser user = fAuth.getCurrentUser();
+        if (user == null) {
+            listener.onFailure("User not logged in");
+            return;
+        }
+
+        DocumentReference recipeRef = fStore.collection("users")
+                .document(user.getUid())
+                .collection("Recipes")
+                .document(recipeId);
+
+        long cutoffMs = ReadingChunks.bucketStart(System.currentTimeMillis() - ReadingChunks.HOT_WINDOW_MS);
+        compactSeries(recipeRef, 0, cutoffMs, 0, listener);
+    }
+
+    private void compactSeries(DocumentReference recipeRef, int seriesIndex, long cutoffMs, int compactedSoFar,
+                               OnCompactionListener listener) {
+        ReadingSeries[] allSeries = ReadingSeries.values();
+        if (seriesIndex >= allSeries.length) {
+            Log.d(TAG, "Compacted " + compactedSoFar + " readings of " + recipeRef.getId());
+            listener.onSuccess(compactedSoFar);
+            return;
+        }
+
+        new SeriesCompaction(recipeRef, allSeries[seriesIndex], cutoffMs).run(new OnCompactionListener() {
+            @Override
+            public void onSuccess(int compactedCount) {
+                compactSeries(recipeRef, seriesIndex + 1, cutoffMs, compactedSoFar + compactedCount, listener);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                listener.onFailure(error);
+            }
+        });
+    }
+
+    // One hour of one sensor's legacy readings waiting to be folded into its chunk
+    private static class Bucket {
+        final long startMs;
+        final String sensorId;
+        final TimeSeriesBuffer samples = new TimeSeriesBuffer(64);
+        final List<DocumentReference> docs = new ArrayList<>();
+
+        Bucket(long startMs, String sensorId) {
+            this.startMs = startMs;
+            this.sensorId = sensorId;
+        }
+    }
+
+    private class SeriesCompaction {
+        private final ReadingSeries series;
+        private final CollectionReference readingsRef;
+        private final CollectionReference chunksRef;
+        private final long cutoffMs;
+        private final Query coldReadings;
+        private final TimestampParser timestampParser = new TimestampParser();
+        private final TimeSeriesBuffer single = new TimeSeriesBuffer(16);
+
+        // Buckets seen but not yet flushed, oldest hour first, by sensor within the hour
+        private final TreeMap<Long, Map<String, Bucket>> buckets = new TreeMap<>();
+        private int compacted;
+        private OnCompactionListener listener;
+
+        SeriesCompaction(DocumentReference recipeRef, ReadingSeries series, long cutoffMs) {
+            this.series = series;
+            this.readingsRef = recipeRef.collection(series.readingsCollection);
+            this.chunksRef = recipeRef.collection(series.chunksCollection);
+            this.cutoffMs = cutoffMs;
+            coldReadings = readingsRef
+                    .whereLessThan(ReadingTimestamps.FIELD_TS_MS, cutoffMs)
+                    .orderBy(ReadingTimestamps.FIELD_TS_MS, Query.Direction.ASCENDING)
+                    .limit(PAGE_SIZE);
+        }
+
+        void run(OnCompactionListener listener) {
+            this.listener = listener;
+            fetchPage(null);
+        }
+
+        private void fetchPage(DocumentSnapshot lastDoc) {
+            Query page = lastDoc != null ? coldReadings.startAfter(lastDoc) : coldReadings;
+            page.get()
+                    .addOnSuccessListener(snapshots -> {
+                        List<DocumentSnapshot> docs = snapshots.getDocuments();
+                        boolean lastPage = docs.size() < PAGE_SIZE;
+                        long pageEndBucket = Long.MAX_VALUE;
+                        for (DocumentSnapshot doc : docs) {
+                            long timeMs = addReading(doc);
+                            if (timeMs >= 0) {
+                                pageEndBucket = ReadingChunks.bucketStart(timeMs);
+                            }
+                        }
+
+                        // The newest bucket may continue on the next page
+                        List<Bucket> ready = new ArrayList<>();
+                        while (!buckets.isEmpty()
+                                && (lastPage || buckets.firstKey() < pageEndBucket)) {
+                            ready.addAll(buckets.pollFirstEntry().getValue().values());
+                        }
+
+                        DocumentSnapshot nextStart = docs.isEmpty() ? null : docs.get(docs.size() - 1);
+                        flushBuckets(ready, 0, () -> {
+                            if (lastPage) {
+                                listener.onSuccess(compacted);
+                            } else {
+                                fetchPage(nextStart);
+                            }
+                        });
+                    })
+                    .addOnFailureListener(e -> {
+                        Log.e(TAG, "Failed to fetch " + series.readingsCollection, e);
+                        listener.onFailure(e.getMessage());
+                    });
+        }
+
+        // Queues one legacy reading and returns its time, or -1 if it can't be compacted
+        private long addReading(DocumentSnapshot doc) {
+            single.clear();
+            if (!series.decodeReading(doc, timestampParser, single)) {
+                Log.w(TAG, "Leaving reading " + doc.getId() + " without a usable timestamp or " + series.valueField);
+                return -1;
+            }
+            long timeMs = single.timeAt(0);
+            if (timeMs >= cutoffMs) {
+                return -1;
+            }
+
+            long startMs = ReadingChunks.bucketStart(timeMs);
+            String sensorId = SensorSamples.sensorOrDefault(doc.getString(ReadingSeries.FIELD_SENSOR_ID));
+            Map<String, Bucket> hour = buckets.get(startMs);
+            if (hour == null) {
+                hour = new HashMap<>();
+                buckets.put(startMs, hour);
+            }
+            Bucket bucket = hour.get(sensorId);
+            if (bucket == null) {
+                bucket = new Bucket(startMs, sensorId);
+                hour.put(sensorId, bucket);
+            }
+            // Almost always an append; the string order only slips around DST changes
+            bucket.samples.merge(single);
+            bucket.docs.add(doc.getReference());
+            return timeMs;
+        }
+
+        private void flushBuckets(List<Bucket> ready, int index, Runnable onDone) {
+            if (index >= ready.size()) {
+                onDone.run();
+                return;
+            }
+            Bucket bucket = ready.get(index);
+            writeChunk(bucket, () -> {
+                compacted += bucket.docs.size();
+                flushBuckets(ready, index + 1, onDone);
+            });
+        }
+
+        /*
+         * Merges the bucket into its chunk (which may already hold sensor
+         * chunk samples or an earlier, interrupted compaction), then verifies
+         * the stored blob before deleting anything.
+         */
+        private void writeChunk(Bucket bucket, Runnable onDone) {
+            DocumentReference chunkRef = chunksRef.document(ReadingChunks.chunkId(bucket.startMs, bucket.sensorId));
+            fStore.runTransaction(transaction -> {
+                        DocumentSnapshot chunk = transaction.get(chunkRef);
+                        TimeSeriesBuffer merged = new TimeSeriesBuffer(bucket.samples.size() + 16);
+                        if (chunk.exists()) {
+                            ReadingChunks.decode(chunk, series.valueField, merged);
+                        }
+                        merged.merge(bucket.samples);
+                        // Readings already folded in by an earlier run that stopped before deleting, and retries
+                        merged.dropRepeatedTimes();
+
+                        transaction.set(chunkRef, ReadingChunks.encodedChunk(bucket.startMs, bucket.sensorId, merged, 0, merged.size()));
+                        return merged;
+                    })
+                    .addOnSuccessListener(written -> verifyChunk(chunkRef, written, bucket, onDone))
+                    .addOnFailureListener(e -> {
+                        Log.e(TAG, "Failed to write chunk " + chunkRef.getId(), e);
+                        listener.onFailure(e.getMessage());
+                    });
+        }
+
+        private void verifyChunk(DocumentReference chunkRef, TimeSeriesBuffer written, Bucket bucket,
+                                 Runnable onDone) {
+            chunkRef.get(Source.SERVER)
+                    .addOnSuccessListener(chunk -> {
+                        TimeSeriesBuffer stored = new TimeSeriesBuffer(written.size() + 16);
+                        ReadingChunks.decode(chunk, series.valueField, stored);
+                        if (!sameSamples(stored, written)) {
+                            Log.e(TAG, "Chunk " + chunkRef.getId() + " did not read back as written, keeping originals");
+                            listener.onFailure("Compacted chunk failed verification");
+                            return;
+                        }
+                        deleteOriginals(bucket.docs, 0, onDone);
+                    })
+                    .addOnFailureListener(e -> {
+                        Log.e(TAG, "Failed to verify chunk " + chunkRef.getId(), e);
+                        listener.onFailure(e.getMessage());
+                    });
+        }
+
+        private void deleteOriginals(List<DocumentReference> docs, int from, Runnable onDone) {
+            if (from >= docs.size()) {
+                onDone.run();
+                return;
+            }
+
+            int to = Math.min(from + DELETE_BATCH_SIZE, docs.size());
+            WriteBatch batch = fStore.batch();
+            for (int i = from; i < to; i++) {
+                batch.delete(docs.get(i));
+            }
+            batch.commit()
+                    .addOnSuccessListener(aVoid -> deleteOriginals(docs, to, onDone))
+                    .addOnFailureListener(e -> {
+                        Log.e(TAG, "Failed to delete compacted " + series.readingsCollection, e);
+                        listener.onFailure(e.getMessage());
+                    });
+        }
+    }
+
+    static boolean sameSamples(TimeSeriesBuffer a, TimeSeriesBuffer b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.timeAt(i) != b.timeAt(i)
+                    || Float.floatToRawIntBits(a.valueAt(i)) != Float.floatToRawIntBits(b.valueAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public interface OnCompactionListener {
+        void onSuccess(int compactedCount);
+        void onFailure(String error);
+    }
+}
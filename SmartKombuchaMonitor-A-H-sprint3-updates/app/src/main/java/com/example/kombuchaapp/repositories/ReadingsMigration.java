@@ -0,0 +1,188 @@
+package com.example.kombuchaapp.repositories;
+
+import android.util.Log;
+
+import com.example.kombuchaapp.readings.ReadingTimestamps;
+import com.example.kombuchaapp.readings.TimestampParser;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.List;
+import java.util.TimeZone;
+
+//Backfills the numeric ts_ms field on existing sensor readings of a recipe
+
+public class ReadingsMigration {
+
+    private static final String TAG = "ReadingsMigration";
+
+    // Firestore allows 500 writes per batch; stay below it
+    private static final int PAGE_SIZE = 400;
+
+    private static final String[] READING_COLLECTIONS = {"temperature_readings", "ph_readings"};
+
+    // On the recipe
+    private static final String FIELD_MIGRATED = "readingsTsMigrated";
+    // Zone the timestamp strings are read in, e.g. "Europe/Berlin"
+    private static final String FIELD_ZONE = "readingsTsZone";
+
+    private final FirebaseAuth fAuth;
+    private final FirebaseFirestore fStore;
+
+    public ReadingsMigration() {
+        fAuth = FirebaseAuth.getInstance();
+        fStore = FirebaseFirestore.getInstance();
+    }
+
+    /*
+     * Pages through both readings collections by document id, adding ts_ms to
+     * every reading that only has the string timestamp, one WriteBatch per
+     * page. Once both are done the recipe is flagged so it isn't scanned again.
+     * Safe to re-run: readings that already have a numeric ts_ms are left
+     * alone, and one stored as a Timestamp is rewritten as a number, so that
+     * range queries on ts_ms see every reading.
+     *
+     * The strings carry no zone. They are read in the zone recorded on the
+     * recipe; the first phone to migrate it records its own, in a
+     * transaction, so a run from another phone in another zone resumes in
+     * the same one rather than mixing two.
+     */
+    public void migrateRecipe(String recipeId, OnMigrationListener listener) {
+        FirebaseUser user = fAuth.getCurrentUser();
+        if (user == null) {
+            listener.onFailure("User not logged in");
+            return;
+        }
+
+        DocumentReference recipeRef = fStore.collection("users")
+                .document(user.getUid())
+                .collection("Recipes")
+                .document(recipeId);
+
+        fStore.runTransaction(transaction -> {
+                    String zoneId = transaction.get(recipeRef).getString(FIELD_ZONE);
+                    if (zoneId == null) {
+                        zoneId = TimeZone.getDefault().getID();
+                        transaction.update(recipeRef, FIELD_ZONE, zoneId);
+                    }
+                    return zoneId;
+                })
+                .addOnSuccessListener(zoneId -> {
+                    Log.d(TAG, "Reading timestamps of " + recipeId + " are in " + zoneId);
+                    TimestampParser parser = new TimestampParser(TimeZone.getTimeZone(zoneId));
+                    migrateCollection(recipeRef, parser, 0, 0, listener);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to record the zone of recipe " + recipeId, e);
+                    listener.onFailure(e.getMessage());
+                });
+    }
+
+    private void migrateCollection(DocumentReference recipeRef, TimestampParser parser, int collectionIndex,
+                                   int updatedSoFar, OnMigrationListener listener) {
+        if (collectionIndex >= READING_COLLECTIONS.length) {
+            recipeRef.update(FIELD_MIGRATED, true)
+                    .addOnSuccessListener(aVoid -> {
+                        Log.d(TAG, "Backfilled ts_ms on " + updatedSoFar + " readings of " + recipeRef.getId());
+                        listener.onSuccess(updatedSoFar);
+                    })
+                    .addOnFailureListener(e -> {
+                        Log.e(TAG, "Failed to mark recipe as migrated", e);
+                        listener.onFailure(e.getMessage());
+                    });
+            return;
+        }
+
+        CollectionReference readingsRef = recipeRef.collection(READING_COLLECTIONS[collectionIndex]);
+        migratePage(readingsRef, parser, null, updatedSoFar, new OnMigrationListener() {
+            @Override
+            public void onSuccess(int updatedCount) {
+                migrateCollection(recipeRef, parser, collectionIndex + 1, updatedCount, listener);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                listener.onFailure(error);
+            }
+        });
+    }
+
+    private void migratePage(CollectionReference readingsRef, TimestampParser parser, DocumentSnapshot lastDoc,
+                             int updatedSoFar, OnMigrationListener listener) {
+        Query page = readingsRef.orderBy(FieldPath.documentId(), Query.Direction.ASCENDING).limit(PAGE_SIZE);
+        if (lastDoc != null) {
+            page = page.startAfter(lastDoc);
+        }
+
+        page.get()
+                .addOnSuccessListener(snapshots -> {
+                    List<DocumentSnapshot> docs = snapshots.getDocuments();
+                    if (docs.isEmpty()) {
+                        listener.onSuccess(updatedSoFar);
+                        return;
+                    }
+
+                    WriteBatch batch = fStore.batch();
+                    int pending = addBackfills(batch, snapshots, parser);
+                    DocumentSnapshot nextStart = docs.get(docs.size() - 1);
+                    boolean lastPage = docs.size() < PAGE_SIZE;
+
+                    if (pending == 0) {
+                        continueOrFinish(readingsRef, parser, nextStart, lastPage, updatedSoFar, listener);
+                        return;
+                    }
+
+                    batch.commit()
+                            .addOnSuccessListener(aVoid -> continueOrFinish(readingsRef, parser, nextStart, lastPage,
+                                    updatedSoFar + pending, listener))
+                            .addOnFailureListener(e -> {
+                                Log.e(TAG, "Failed to backfill " + readingsRef.getId(), e);
+                                listener.onFailure(e.getMessage());
+                            });
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to fetch " + readingsRef.getId(), e);
+                    listener.onFailure(e.getMessage());
+                });
+    }
+
+    private void continueOrFinish(CollectionReference readingsRef, TimestampParser parser, DocumentSnapshot nextStart,
+                                  boolean lastPage, int updatedSoFar, OnMigrationListener listener) {
+        if (lastPage) {
+            listener.onSuccess(updatedSoFar);
+        } else {
+            migratePage(readingsRef, parser, nextStart, updatedSoFar, listener);
+        }
+    }
+
+    // Queues a ts_ms update for every reading in the page without a numeric one
+    private int addBackfills(WriteBatch batch, QuerySnapshot snapshots, TimestampParser parser) {
+        int pending = 0;
+        for (DocumentSnapshot doc : snapshots.getDocuments()) {
+            if (doc.get(ReadingTimestamps.FIELD_TS_MS) instanceof Number) {
+                continue;
+            }
+            long timeMs = ReadingTimestamps.fromDocument(doc, parser);
+            if (timeMs < 0) {
+                Log.w(TAG, "Reading " + doc.getId() + " has no parseable timestamp, leaving it as is");
+                continue;
+            }
+            batch.update(doc.getReference(), ReadingTimestamps.FIELD_TS_MS, timeMs);
+            pending++;
+        }
+        return pending;
+    }
+
+    public interface OnMigrationListener {
+        void onSuccess(int updatedCount);
+        void onFailure(String error);
+    }
+}
@@ -2,7 +2,13 @@ package com.example.kombuchaapp.repositories;
 
 import android.util.Log;
 import com.example.kombuchaapp.models.Recipe;
-import com.google.firebase.Timestamp;
+import com.example.kombuchaapp.readings.ReadingChunks;
+import com.example.kombuchaapp.readings.ReadingDeduper;
+import com.example.kombuchaapp.readings.ReadingSeries;
+import com.example.kombuchaapp.readings.ReadingTimestamps;
+import com.example.kombuchaapp.readings.SensorSamples;
+import com.example.kombuchaapp.readings.TimeSeriesBuffer;
+import com.example.kombuchaapp.readings.TimestampParser;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.CollectionReference;
@@ -175,35 +181,6 @@ public class RecipeRepository {
     }
 
 
-    public void updateRecipeStatus(String recipeId, String newStatus, OnUpdateListener listener) {
-        CollectionReference recipesRef = getRecipesCollection();
-
-        if (recipesRef == null) {
-            listener.onFailure("User not logged in");
-            return;
-        }
-
-        Map<String, Object> updates = new HashMap<>();
-        updates.put("status", newStatus);
-
-        if ("brewing".equals(newStatus)) {
-            updates.put("brewingStartDate", Timestamp.now());
-        } else if ("completed".equals(newStatus)) {
-            updates.put("completionDate", Timestamp.now());
-        }
-
-        recipesRef.document(recipeId)
-                .update(updates)
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Recipe status updated to: " + newStatus);
-                    listener.onSuccess("Status updated to " + newStatus);
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to update status: " + e.getMessage());
-                    listener.onFailure(e.getMessage());
-                });
-    }
-
     public void deleteRecipe(String recipeId, OnUpdateListener listener) {
         CollectionReference recipesRef = getRecipesCollection();
 
@@ -212,8 +189,8 @@ public class RecipeRepository {
             return;
         }
 
-        // First, delete all subcollections (temperature_readings and ph_readings)
-        deleteRecipeSubcollections(recipeId, new OnUpdateListener() {
+        // First, delete all subcollections (readings and reading chunks)
+        deleteRecipeReadings(recipeId, new OnUpdateListener() {
             @Override
             public void onSuccess(String message) {
                 // After subcollections are deleted, delete the recipe document
@@ -237,125 +214,84 @@ public class RecipeRepository {
         });
     }
 
-    private void deleteRecipeSubcollections(String recipeId, OnUpdateListener listener) {
+    // Deletes every sensor reading of a recipe, in both the per-reading and the chunked layout
+    public void deleteRecipeReadings(String recipeId, OnUpdateListener listener) {
         FirebaseUser user = fAuth.getCurrentUser();
         if (user == null) {
             listener.onFailure("User not logged in");
             return;
         }
 
-        String userId = user.getUid();
-        
-        // Track completion of both subcollection deletions
-        final boolean[] tempComplete = {false};
-        final boolean[] phComplete = {false};
-        final boolean[] hasError = {false};
-        
-        // Delete temperature readings
-        fStore.collection("users")
-                .document(userId)
+        DocumentReference recipeRef = fStore.collection("users")
+                .document(user.getUid())
                 .collection("Recipes")
-                .document(recipeId)
-                .collection("temperature_readings")
-                .get()
-                .addOnSuccessListener(tempSnapshots -> {
-                    if (tempSnapshots.isEmpty()) {
-                        Log.d(TAG, "No temperature readings to delete");
-                        tempComplete[0] = true;
-                        checkSubcollectionDeletionComplete(tempComplete, phComplete, hasError, listener);
-                    } else {
-                        int totalDocs = tempSnapshots.size();
-                        final int[] deletedCount = {0};
-                        
-                        Log.d(TAG, "Deleting " + totalDocs + " temperature readings");
-                        
-                        for (DocumentSnapshot doc : tempSnapshots.getDocuments()) {
-                            doc.getReference().delete()
-                                    .addOnSuccessListener(aVoid -> {
-                                        deletedCount[0]++;
-                                        Log.d(TAG, "Deleted temp reading " + deletedCount[0] + "/" + totalDocs);
-                                        
-                                        if (deletedCount[0] == totalDocs) {
-                                            tempComplete[0] = true;
-                                            Log.d(TAG, "All temperature readings deleted");
-                                            checkSubcollectionDeletionComplete(tempComplete, phComplete, hasError, listener);
-                                        }
-                                    })
-                                    .addOnFailureListener(e -> {
-                                        Log.e(TAG, "Failed to delete temp reading", e);
-                                        hasError[0] = true;
-                                        deletedCount[0]++;
-                                        
-                                        if (deletedCount[0] == totalDocs) {
-                                            tempComplete[0] = true;
-                                            checkSubcollectionDeletionComplete(tempComplete, phComplete, hasError, listener);
-                                        }
-                                    });
-                        }
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to fetch temperature readings", e);
+                .document(recipeId);
+
+        List<CollectionReference> collections = new ArrayList<>();
+        for (ReadingSeries series : ReadingSeries.values()) {
+            collections.add(recipeRef.collection(series.readingsCollection));
+            collections.add(recipeRef.collection(series.chunksCollection));
+        }
+
+        // Track completion of all subcollection deletions
+        final int[] remaining = {collections.size()};
+        final boolean[] hasError = {false};
+
+        for (CollectionReference collection : collections) {
+            deleteAllDocuments(collection, failed -> {
+                if (failed) {
                     hasError[0] = true;
-                    tempComplete[0] = true;
-                    checkSubcollectionDeletionComplete(tempComplete, phComplete, hasError, listener);
-                });
+                }
+                remaining[0]--;
+                checkSubcollectionDeletionComplete(remaining, hasError, listener);
+            });
+        }
+    }
 
-        // Delete pH readings
-        fStore.collection("users")
-                .document(userId)
-                .collection("Recipes")
-                .document(recipeId)
-                .collection("ph_readings")
-                .get()
-                .addOnSuccessListener(phSnapshots -> {
-                    if (phSnapshots.isEmpty()) {
-                        Log.d(TAG, "No pH readings to delete");
-                        phComplete[0] = true;
-                        checkSubcollectionDeletionComplete(tempComplete, phComplete, hasError, listener);
-                    } else {
-                        int totalDocs = phSnapshots.size();
-                        final int[] deletedCount = {0};
-                        
-                        Log.d(TAG, "Deleting " + totalDocs + " pH readings");
-                        
-                        for (DocumentSnapshot doc : phSnapshots.getDocuments()) {
-                            doc.getReference().delete()
-                                    .addOnSuccessListener(aVoid -> {
-                                        deletedCount[0]++;
-                                        Log.d(TAG, "Deleted pH reading " + deletedCount[0] + "/" + totalDocs);
-                                        
-                                        if (deletedCount[0] == totalDocs) {
-                                            phComplete[0] = true;
-                                            Log.d(TAG, "All pH readings deleted");
-                                            checkSubcollectionDeletionComplete(tempComplete, phComplete, hasError, listener);
-                                        }
-                                    })
-                                    .addOnFailureListener(e -> {
-                                        Log.e(TAG, "Failed to delete pH reading", e);
-                                        hasError[0] = true;
-                                        deletedCount[0]++;
-                                        
-                                        if (deletedCount[0] == totalDocs) {
-                                            phComplete[0] = true;
-                                            checkSubcollectionDeletionComplete(tempComplete, phComplete, hasError, listener);
-                                        }
-                                    });
-                        }
+    private void deleteAllDocuments(CollectionReference collection, OnCollectionDeletedListener listener) {
+        String name = collection.getId();
+        collection.get()
+                .addOnSuccessListener(snapshots -> {
+                    if (snapshots.isEmpty()) {
+                        Log.d(TAG, "No " + name + " to delete");
+                        listener.onDeleted(false);
+                        return;
+                    }
+
+                    int totalDocs = snapshots.size();
+                    final int[] deletedCount = {0};
+                    final boolean[] failed = {false};
+
+                    Log.d(TAG, "Deleting " + totalDocs + " " + name);
+
+                    for (DocumentSnapshot doc : snapshots.getDocuments()) {
+                        doc.getReference().delete()
+                                .addOnSuccessListener(aVoid -> {
+                                    deletedCount[0]++;
+                                    if (deletedCount[0] == totalDocs) {
+                                        Log.d(TAG, "All " + name + " deleted");
+                                        listener.onDeleted(failed[0]);
+                                    }
+                                })
+                                .addOnFailureListener(e -> {
+                                    Log.e(TAG, "Failed to delete from " + name, e);
+                                    failed[0] = true;
+                                    deletedCount[0]++;
+                                    if (deletedCount[0] == totalDocs) {
+                                        listener.onDeleted(true);
+                                    }
+                                });
                     }
                 })
                 .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to fetch pH readings", e);
-                    hasError[0] = true;
-                    phComplete[0] = true;
-                    checkSubcollectionDeletionComplete(tempComplete, phComplete, hasError, listener);
+                    Log.e(TAG, "Failed to fetch " + name, e);
+                    listener.onDeleted(true);
                 });
     }
 
-    private void checkSubcollectionDeletionComplete(boolean[] tempComplete, boolean[] phComplete, 
-                                                     boolean[] hasError, OnUpdateListener listener) {
-        // Only proceed when BOTH subcollections are completely deleted
-        if (tempComplete[0] && phComplete[0]) {
+    private void checkSubcollectionDeletionComplete(int[] remaining, boolean[] hasError, OnUpdateListener listener) {
+        // Only proceed when ALL subcollections are completely deleted
+        if (remaining[0] == 0) {
             if (hasError[0]) {
                 Log.w(TAG, "Subcollections deleted with some errors");
                 listener.onFailure("Some sensor data could not be deleted");
@@ -366,6 +302,79 @@ public class RecipeRepository {
         }
     }
 
+    // Loads the full history of one series per sensor, merging the per-reading and chunked layouts by time
+    public void getReadings(String recipeId, ReadingSeries series, OnReadingsLoadedListener listener) {
+        FirebaseUser user = fAuth.getCurrentUser();
+        if (user == null) {
+            listener.onFailure("User not logged in");
+            return;
+        }
+
+        DocumentReference recipeRef = fStore.collection("users")
+                .document(user.getUid())
+                .collection("Recipes")
+                .document(recipeId);
+
+        SensorSamples readings = new SensorSamples();
+        SensorSamples chunked = new SensorSamples();
+        final int[] remaining = {2};
+        final boolean[] failed = {false};
+
+        recipeRef.collection(series.readingsCollection)
+                .orderBy(ReadingTimestamps.FIELD_TIMESTAMP, com.google.firebase.firestore.Query.Direction.ASCENDING)
+                .get()
+                .addOnSuccessListener(snapshots -> {
+                    TimestampParser parser = new TimestampParser();
+                    // Retried uploads leave duplicate documents; ordered by time, repeats are adjacent
+                    ReadingDeduper deduper = new ReadingDeduper();
+                    for (DocumentSnapshot doc : snapshots.getDocuments()) {
+                        series.decodeReading(doc, parser, deduper, readings);
+                    }
+                    remaining[0]--;
+                    checkReadingsLoaded(remaining, failed, readings, chunked, listener);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to load " + series.readingsCollection, e);
+                    if (!failed[0]) {
+                        failed[0] = true;
+                        listener.onFailure(e.getMessage());
+                    }
+                });
+
+        recipeRef.collection(series.chunksCollection)
+                .orderBy(ReadingChunks.FIELD_START_MS, com.google.firebase.firestore.Query.Direction.ASCENDING)
+                .get()
+                .addOnSuccessListener(snapshots -> {
+                    TimeSeriesBuffer chunk = new TimeSeriesBuffer();
+                    for (DocumentSnapshot doc : snapshots.getDocuments()) {
+                        chunk.clear();
+                        ReadingChunks.decode(doc, series.valueField, chunk);
+                        chunked.merge(ReadingChunks.sensorOf(doc), chunk);
+                    }
+                    remaining[0]--;
+                    checkReadingsLoaded(remaining, failed, readings, chunked, listener);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to load " + series.chunksCollection, e);
+                    if (!failed[0]) {
+                        failed[0] = true;
+                        listener.onFailure(e.getMessage());
+                    }
+                });
+    }
+
+    private void checkReadingsLoaded(int[] remaining, boolean[] failed, SensorSamples readings,
+                                     SensorSamples chunked, OnReadingsLoadedListener listener) {
+        if (remaining[0] == 0 && !failed[0]) {
+            readings.merge(chunked);
+            // A compaction that stopped before deleting leaves readings in both layouts
+            for (Map.Entry<String, TimeSeriesBuffer> e : readings.entries()) {
+                e.getValue().dropRepeatedTimes();
+            }
+            listener.onSuccess(readings);
+        }
+    }
+
     public void updateRecipePublished(String recipeId, boolean published, OnUpdateListener listener) {
         CollectionReference recipesRef = getRecipesCollection();
 
@@ -472,10 +481,13 @@ public class RecipeRepository {
         recipe.setBrewingStartDate(doc.getTimestamp("brewingStartDate"));
         recipe.setCompletionDate(doc.getTimestamp("completionDate"));
         recipe.setPublished(doc.getBoolean("published"));
+        recipe.setReadingsTsMigrated(doc.getBoolean("readingsTsMigrated"));
         Long likesValue = doc.getLong("likes");
         recipe.setLikes(likesValue != null ? likesValue.intValue() : 0);
         List<String> likedByList = (List<String>) doc.get("likedBy");
         recipe.setLikedBy(likedByList != null ? likedByList : new ArrayList<>());
+        List<String> sensorIdList = (List<String>) doc.get(SensorControlRepository.FIELD_RECIPE_SENSORS);
+        recipe.setSensorIds(sensorIdList != null ? sensorIdList : new ArrayList<>());
 
         return recipe;
     }
@@ -499,4 +511,13 @@ public class RecipeRepository {
         void onSuccess(String message);
         void onFailure(String error);
     }
+
+    public interface OnReadingsLoadedListener {
+        void onSuccess(SensorSamples readings);
+        void onFailure(String error);
+    }
+
+    private interface OnCollectionDeletedListener {
+        void onDeleted(boolean hadError);
+    }
 }
@@ -0,0 +1,360 @@
+package com.example.kombuchaapp.repositories;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Which recipe holds each of this user's sensors, kept up to date by
+ * snapshot listeners shared by the whole app, so screens can tell
+ * synchronously whether a sensor is free instead of asking the server on
+ * every tap.
+ *
+ * "This user's sensors" are the ones named in any of their recipes'
+ * sensorIds, looked up by document ID ten at a time, plus the ones
+ * assigned to them, so nothing here needs to read sensor_control as a
+ * whole. A sensor nobody here has used yet is unknown, which the screens
+ * treat as free.
+ *
+ * The listeners run while at least one OnAssignmentsChangedListener is
+ * added; isLoaded() is false before every one of them has delivered its
+ * first snapshot, after a failure until they are attached again (with
+ * backoff), and after the last listener has gone. A cached answer can be
+ * a moment out of date, so it only decides what the UI offers: the claim
+ * itself is still checked in BrewStateMachine's transaction. Leases are
+ * judged by ServerClock, synced when the listeners start.
+ *
+ * App-scoped, main thread only.
+ */
+
+public class SensorAssignments {
+
+    private static final String TAG = "SensorAssignments";
+    // The one document all sensors shared before each got its own; not a sensor
+    private static final String LEGACY_DOCUMENT = "active_config";
+    // Most document IDs one whereIn takes
+    private static final int IDS_PER_QUERY = 10;
+    private static final long RETRY_MIN_MS = 5_000L;
+    private static final long RETRY_MAX_MS = 5 * 60_000L;
+    private static final String HELD = "held";
+
+    private static SensorAssignments instance;
+
+    private final FirebaseAuth fAuth;
+    private final FirebaseFirestore fStore;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Every sensor of this user's with a document, assigned or not
+    private final Map<String, Assignment> bySensor = new HashMap<>();
+    // What each sensor query last delivered, HELD or one chunk of recipe sensor IDs
+    private final Map<String, Map<String, Assignment>> byQuery = new HashMap<>();
+    private final List<OnAssignmentsChangedListener> listeners = new ArrayList<>();
+    private final List<ListenerRegistration> sensorRegistrations = new ArrayList<>();
+    private final Set<String> recipeSensorIds = new HashSet<>();
+    private final Runnable reattach = this::attach;
+    private ListenerRegistration recipesRegistration;
+    private String userId;
+    // Bumped on every detach, so a callback of a removed listener is ignored
+    private int generation;
+    private boolean recipesLoaded;
+    private boolean loaded;
+    private long retryMs = RETRY_MIN_MS;
+
+    public interface OnAssignmentsChangedListener {
+        void onAssignmentsChanged();
+    }
+
+    public static synchronized SensorAssignments getInstance() {
+        if (instance == null) {
+            instance = new SensorAssignments();
+        }
+        return instance;
+    }
+
+    private SensorAssignments() {
+        fAuth = FirebaseAuth.getInstance();
+        fStore = FirebaseFirestore.getInstance();
+    }
+
+    // Starts listening with the first listener; told straight away if the cache is already loaded
+    public void addListener(OnAssignmentsChangedListener listener) {
+        if (listeners.contains(listener)) {
+            return;
+        }
+        listeners.add(listener);
+        if (listeners.size() == 1) {
+            syncClock();
+            attach();
+        } else if (loaded) {
+            listener.onAssignmentsChanged();
+        } else if (recipesRegistration == null) {
+            // Nobody was logged in when the first listener came
+            attach();
+        }
+    }
+
+    public void removeListener(OnAssignmentsChangedListener listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty()) {
+            mainHandler.removeCallbacks(reattach);
+            retryMs = RETRY_MIN_MS;
+            detach();
+        }
+    }
+
+    private void attach() {
+        FirebaseUser user = fAuth.getCurrentUser();
+        if (user == null || recipesRegistration != null) {
+            return;
+        }
+        userId = user.getUid();
+        int attached = generation;
+        recipesRegistration = fStore.collection("users").document(userId).collection("Recipes")
+                .addSnapshotListener((snapshots, e) -> {
+                    if (attached != generation) {
+                        return;
+                    }
+                    if (e != null) {
+                        onListenerFailed("Recipes", e);
+                        return;
+                    }
+                    if (snapshots == null) {
+                        return;
+                    }
+                    Set<String> sensorIds = new HashSet<>();
+                    for (DocumentSnapshot recipe : snapshots.getDocuments()) {
+                        List<String> ids = (List<String>) recipe.get(SensorControlRepository.FIELD_RECIPE_SENSORS);
+                        if (ids != null) {
+                            sensorIds.addAll(ids);
+                        }
+                    }
+                    recipesLoaded = true;
+                    if (!sensorIds.equals(recipeSensorIds) || sensorRegistrations.isEmpty()) {
+                        recipeSensorIds.clear();
+                        recipeSensorIds.addAll(sensorIds);
+                        attachSensorQueries();
+                    }
+                });
+    }
+
+    // Again from scratch whenever the recipes name a different set of sensors
+    private void attachSensorQueries() {
+        removeSensorQueries();
+        CollectionReference sensors = fStore.collection(SensorControlRepository.COLLECTION);
+        listenTo(HELD, sensors.whereEqualTo(SensorControlRepository.FIELD_USER_ID, userId));
+
+        List<String> ids = new ArrayList<>();
+        for (String sensorId : recipeSensorIds) {
+            // Not a valid document ID, so it can't have a document either
+            if (!sensorId.isEmpty() && !sensorId.contains("/")) {
+                ids.add(sensorId);
+            }
+        }
+        Collections.sort(ids);
+        for (int from = 0; from < ids.size(); from += IDS_PER_QUERY) {
+            List<String> chunk = new ArrayList<>(ids.subList(from, Math.min(from + IDS_PER_QUERY, ids.size())));
+            listenTo("ids" + from, sensors.whereIn(FieldPath.documentId(), chunk));
+        }
+    }
+
+    private void listenTo(String key, Query query) {
+        int attached = generation;
+        sensorRegistrations.add(query.addSnapshotListener((snapshots, e) -> {
+            if (attached != generation) {
+                return;
+            }
+            if (e != null) {
+                onListenerFailed(key, e);
+                return;
+            }
+            if (snapshots == null) {
+                return;
+            }
+            // Small enough to take whole, which also covers sensors leaving the query
+            Map<String, Assignment> delivered = new HashMap<>();
+            for (DocumentSnapshot sensor : snapshots.getDocuments()) {
+                if (!LEGACY_DOCUMENT.equals(sensor.getId())) {
+                    delivered.put(sensor.getId(), new Assignment(
+                            sensor.getString(SensorControlRepository.FIELD_RECIPE_ID),
+                            sensor.getString(SensorControlRepository.FIELD_USER_ID),
+                            SensorControlRepository.leaseRenewedMs(sensor)));
+                }
+            }
+            byQuery.put(key, delivered);
+            retryMs = RETRY_MIN_MS;
+            updateLoaded();
+        }));
+    }
+
+    /*
+     * A failed listener delivers nothing more, so everything is removed and
+     * attached again later; until then callers go without the cache and
+     * leave the check to the transaction.
+     */
+    private void onListenerFailed(String what, Exception e) {
+        Log.e(TAG, what + " listener failed, retrying in " + retryMs + " ms", e);
+        detach();
+        notifyListeners();
+        mainHandler.removeCallbacks(reattach);
+        mainHandler.postDelayed(reattach, retryMs);
+        retryMs = Math.min(retryMs * 2, RETRY_MAX_MS);
+    }
+
+    private void detach() {
+        generation++;
+        if (recipesRegistration != null) {
+            recipesRegistration.remove();
+            recipesRegistration = null;
+        }
+        removeSensorQueries();
+        recipeSensorIds.clear();
+        recipesLoaded = false;
+        loaded = false;
+        bySensor.clear();
+    }
+
+    private void removeSensorQueries() {
+        for (ListenerRegistration registration : sensorRegistrations) {
+            registration.remove();
+        }
+        sensorRegistrations.clear();
+        byQuery.clear();
+    }
+
+    // Loaded once every current query has delivered; until then the last complete view stands
+    private void updateLoaded() {
+        if (!recipesLoaded || byQuery.size() < sensorRegistrations.size()) {
+            return;
+        }
+        bySensor.clear();
+        for (Map<String, Assignment> delivered : byQuery.values()) {
+            bySensor.putAll(delivered);
+        }
+        loaded = true;
+        notifyListeners();
+    }
+
+    // Which leases have lapsed can change with the clock, so the screens are told again
+    private void syncClock() {
+        ServerClock.getInstance().sync(new RecipeRepository.OnUpdateListener() {
+            @Override
+            public void onSuccess(String message) {
+                if (loaded) {
+                    notifyListeners();
+                }
+            }
+
+            @Override
+            public void onFailure(String error) {
+                Log.w(TAG, "Judging leases by the local clock: " + error);
+            }
+        });
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /*
+     * The sensors among sensorIds that another recipe holds on a live
+     * lease. Sensors without a document yet are free, as are lapsed ones,
+     * which the next claim takes over.
+     */
+    public List<String> busySensors(List<String> sensorIds, String recipeId) {
+        long now = ServerClock.getInstance().nowMs();
+        List<String> busy = new ArrayList<>();
+        for (String sensorId : sensorIds) {
+            Assignment assignment = bySensor.get(sensorId);
+            if (assignment != null && assignment.isHeldByOther(recipeId, now)) {
+                busy.add(sensorId);
+            }
+        }
+        return busy;
+    }
+
+    // Known sensors the recipe could claim now, sorted by ID
+    public List<String> freeSensors(String recipeId) {
+        long now = ServerClock.getInstance().nowMs();
+        List<String> free = new ArrayList<>();
+        for (Map.Entry<String, Assignment> entry : bySensor.entrySet()) {
+            if (!entry.getValue().isHeldByOther(recipeId, now)) {
+                free.add(entry.getKey());
+            }
+        }
+        Collections.sort(free);
+        return free;
+    }
+
+    // Every sensor still pointed at the recipe, lapsed or not
+    public List<String> sensorsOf(String recipeId) {
+        List<String> sensorIds = new ArrayList<>();
+        for (Map.Entry<String, Assignment> entry : bySensor.entrySet()) {
+            if (recipeId.equals(entry.getValue().recipeId)) {
+                sensorIds.add(entry.getKey());
+            }
+        }
+        return sensorIds;
+    }
+
+    // This user's assigned sensors by recipe, lapsed or not: the brews they run
+    public Map<String, List<String>> sensorsByRecipe() {
+        Map<String, List<String>> byRecipe = new HashMap<>();
+        for (Map.Entry<String, Assignment> entry : bySensor.entrySet()) {
+            Assignment assignment = entry.getValue();
+            if (assignment.recipeId == null || !userId.equals(assignment.userId)) {
+                continue;
+            }
+            List<String> sensorIds = byRecipe.get(assignment.recipeId);
+            if (sensorIds == null) {
+                sensorIds = new ArrayList<>();
+                byRecipe.put(assignment.recipeId, sensorIds);
+            }
+            sensorIds.add(entry.getKey());
+        }
+        for (List<String> sensorIds : byRecipe.values()) {
+            Collections.sort(sensorIds);
+        }
+        return byRecipe;
+    }
+
+    private void notifyListeners() {
+        // A listener may remove itself when told
+        for (OnAssignmentsChangedListener listener : new ArrayList<>(listeners)) {
+            listener.onAssignmentsChanged();
+        }
+    }
+
+    private static class Assignment {
+        // null once released
+        final String recipeId;
+        final String userId;
+        final long renewedMs;
+
+        Assignment(String recipeId, String userId, long renewedMs) {
+            this.recipeId = recipeId;
+            this.userId = userId;
+            this.renewedMs = renewedMs;
+        }
+
+        boolean isHeldByOther(String otherRecipeId, long nowMs) {
+            return recipeId != null && !recipeId.equals(otherRecipeId)
+                    && !SensorControlRepository.isLeaseExpired(renewedMs, nowMs);
+        }
+    }
+}
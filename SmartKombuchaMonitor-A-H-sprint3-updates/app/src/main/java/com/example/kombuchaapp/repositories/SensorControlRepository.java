@@ -0,0 +1,268 @@
+package com.example.kombuchaapp.repositories;
+
+import android.util.Log;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Which brew each sensor feeds. Every sensor has its own
+ * sensor_control/{sensorId} document naming its recipe and user, which is
+ * what the sensor itself reads; the recipe keeps the list of its sensors
+ * (sensorIds) for the other direction. Brews only compete for the sensors
+ * they share, so any number can run at once.
+ *
+ * Assigning and releasing happen in BrewStateMachine's transactions,
+ * together with the status change; releaseSensors is for recipes that are
+ * going away.
+ *
+ * An assignment is a lease: it lapses LEASE_MS after lease_renewed_at
+ * unless the brew's owner (LeaseHeartbeat) or the sensor itself renews
+ * it with a server timestamp every HEARTBEAT_MS. A brew whose phone
+ * crashed or lost the app therefore can't hold its sensors forever; once
+ * the lease has lapsed, the next brew to claim them simply takes them
+ * over, checked inside its own transaction. Lapsing is judged against
+ * ServerClock, never the phone's own clock.
+ *
+ * While a brew is on screen the app also sets sample_interval_ms, valid
+ * until sample_interval_until (see SamplingController); releasing clears
+ * both with the assignment.
+ */
+
+public class SensorControlRepository {
+
+    private static final String TAG = "SensorControlRepository";
+
+    public static final String COLLECTION = "sensor_control";
+    public static final String FIELD_RECIPE_ID = "active_recipe_id";
+    public static final String FIELD_USER_ID = "active_user_id";
+    public static final String FIELD_ASSIGNED_AT = "assigned_at";
+    public static final String FIELD_LEASE_RENEWED_AT = "lease_renewed_at";
+    // How often the sensor should write readings; absent means its built-in rate
+    public static final String FIELD_SAMPLE_INTERVAL_MS = "sample_interval_ms";
+    // The interval only holds until then, so one nobody updates any more lapses back to the built-in rate
+    public static final String FIELD_SAMPLE_INTERVAL_UNTIL = "sample_interval_until";
+
+    public static final long LEASE_MS = 6 * 60 * 60_000L;
+    // Several heartbeats per lease, so one or two lost ones don't matter
+    public static final long HEARTBEAT_MS = 60 * 60_000L;
+    // Renewal time of a sensor with no lease at all
+    public static final long NO_LEASE = -1;
+    // On the recipe document
+    public static final String FIELD_RECIPE_SENSORS = "sensorIds";
+
+    private final FirebaseFirestore fStore;
+
+    public SensorControlRepository() {
+        fStore = FirebaseFirestore.getInstance();
+    }
+
+    // Sensor ids as typed by the user: comma or space separated, duplicates dropped
+    public static List<String> parseSensorIds(String text) {
+        Set<String> ids = new LinkedHashSet<>();
+        if (text != null) {
+            for (String part : text.split("[,\\s]+")) {
+                String id = part.trim();
+                if (!id.isEmpty()) {
+                    ids.add(id);
+                }
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /*
+     * Transaction steps for BrewStateMachine. Firestore wants every read of
+     * a transaction before its first write, hence read, check and write are
+     * separate.
+     */
+    static List<DocumentSnapshot> readSensors(FirebaseFirestore fStore, Transaction transaction,
+                                              List<String> sensorIds) throws FirebaseFirestoreException {
+        List<DocumentSnapshot> sensors = new ArrayList<>(sensorIds.size());
+        for (String sensorId : sensorIds) {
+            if (sensorId.isEmpty() || sensorId.contains("/")) {
+                throw new FirebaseFirestoreException("Invalid sensor ID: " + sensorId,
+                        FirebaseFirestoreException.Code.INVALID_ARGUMENT);
+            }
+            sensors.add(transaction.get(fStore.collection(COLLECTION).document(sensorId)));
+        }
+        return sensors;
+    }
+
+    // Fails if any of the sensors holds a live lease for a recipe other than recipeId
+    static void checkFree(List<DocumentSnapshot> sensors, String recipeId, long nowMs)
+            throws FirebaseFirestoreException {
+        for (DocumentSnapshot sensor : sensors) {
+            String activeRecipeId = sensor.getString(FIELD_RECIPE_ID);
+            if (activeRecipeId == null || activeRecipeId.equals(recipeId)) {
+                continue;
+            }
+            if (isLeaseExpired(sensor, nowMs)) {
+                Log.i(TAG, "Sensor " + sensor.getId() + " lease of recipe " + activeRecipeId
+                        + " has lapsed, taking it over");
+                continue;
+            }
+            throw new FirebaseFirestoreException(
+                    "Sensor " + sensor.getId() + " is already brewing another recipe",
+                    FirebaseFirestoreException.Code.FAILED_PRECONDITION);
+        }
+    }
+
+    /*
+     * Assignments from before leases carry no renewal time; they count from
+     * assigned_at, or as lapsed if that is missing too (the old
+     * active_config kind).
+     */
+    static boolean isLeaseExpired(DocumentSnapshot sensor, long nowMs) {
+        return isLeaseExpired(leaseRenewedMs(sensor), nowMs);
+    }
+
+    public static boolean isLeaseExpired(long renewedMs, long nowMs) {
+        return renewedMs == NO_LEASE || renewedMs + LEASE_MS < nowMs;
+    }
+
+    /*
+     * A write of ours still on its way to the server counts from the local
+     * clock. Only the cached view in SensorAssignments sees those;
+     * transactions read the server's copy.
+     */
+    static long leaseRenewedMs(DocumentSnapshot sensor) {
+        Timestamp renewed = sensor.getTimestamp(FIELD_LEASE_RENEWED_AT,
+                DocumentSnapshot.ServerTimestampBehavior.ESTIMATE);
+        if (renewed == null) {
+            renewed = sensor.getTimestamp(FIELD_ASSIGNED_AT,
+                    DocumentSnapshot.ServerTimestampBehavior.ESTIMATE);
+        }
+        return renewed != null ? renewed.toDate().getTime() : NO_LEASE;
+    }
+
+    static void writeAssigned(Transaction transaction, List<DocumentSnapshot> sensors,
+                              String recipeId, String userId) {
+        for (DocumentSnapshot sensor : sensors) {
+            Map<String, Object> assignment = new HashMap<>();
+            assignment.put(FIELD_RECIPE_ID, recipeId);
+            assignment.put(FIELD_USER_ID, userId);
+            assignment.put(FIELD_ASSIGNED_AT, FieldValue.serverTimestamp());
+            assignment.put(FIELD_LEASE_RENEWED_AT, FieldValue.serverTimestamp());
+            transaction.set(sensor.getReference(), assignment);
+        }
+    }
+
+    // Only the sensors still pointed at recipeId; another brew may have taken one since
+    static void writeReleased(Transaction transaction, List<DocumentSnapshot> sensors, String recipeId) {
+        for (DocumentSnapshot sensor : sensors) {
+            if (recipeId.equals(sensor.getString(FIELD_RECIPE_ID))) {
+                transaction.update(sensor.getReference(), releasedFields());
+            }
+        }
+    }
+
+    /*
+     * Lets go of every sensor still pointed at the recipe. Looked up by the
+     * sensor documents rather than the recipe's list, so it also works for
+     * a recipe that has been deleted. The recipe keeps its sensorIds, to
+     * pick the same sensors again on resume.
+     */
+    public void releaseSensors(String recipeId, RecipeRepository.OnUpdateListener listener) {
+        fStore.collection(COLLECTION)
+                .whereEqualTo(FIELD_RECIPE_ID, recipeId)
+                .get()
+                .addOnSuccessListener(snapshots -> {
+                    if (snapshots.isEmpty()) {
+                        listener.onSuccess("No sensors to release");
+                        return;
+                    }
+                    WriteBatch batch = fStore.batch();
+                    for (DocumentSnapshot sensor : snapshots.getDocuments()) {
+                        batch.update(sensor.getReference(), releasedFields());
+                    }
+                    batch.commit()
+                            .addOnSuccessListener(aVoid -> {
+                                Log.d(TAG, "Released " + snapshots.size() + " sensors of recipe " + recipeId);
+                                listener.onSuccess("Sensors released");
+                            })
+                            .addOnFailureListener(e -> {
+                                Log.e(TAG, "Failed to release sensors of recipe " + recipeId, e);
+                                listener.onFailure(e.getMessage());
+                            });
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to look up sensors of recipe " + recipeId, e);
+                    listener.onFailure(e.getMessage());
+                });
+    }
+
+    public interface OnLeasesRenewedListener {
+        // The sensors still pointed at the recipe, each renewed
+        void onRenewed(List<String> heldSensorIds);
+        void onFailure(String error);
+    }
+
+    /*
+     * Heartbeat: pushes the lease of each sensor out by another LEASE_MS.
+     * A transaction, so that only sensors still pointed at recipeId are
+     * renewed; one another brew has taken over since is left alone and
+     * missing from heldSensorIds.
+     */
+    public void renewLeases(String recipeId, List<String> sensorIds, OnLeasesRenewedListener listener) {
+        if (sensorIds.isEmpty()) {
+            listener.onRenewed(new ArrayList<>());
+            return;
+        }
+        fStore.runTransaction(transaction -> {
+                    List<DocumentSnapshot> sensors = readSensors(fStore, transaction, sensorIds);
+                    List<String> held = new ArrayList<>();
+                    for (DocumentSnapshot sensor : sensors) {
+                        if (recipeId.equals(sensor.getString(FIELD_RECIPE_ID))) {
+                            transaction.update(sensor.getReference(),
+                                    FIELD_LEASE_RENEWED_AT, FieldValue.serverTimestamp());
+                            held.add(sensor.getId());
+                        }
+                    }
+                    return held;
+                })
+                .addOnSuccessListener(listener::onRenewed)
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to renew sensor leases of recipe " + recipeId, e);
+                    listener.onFailure(e.getMessage());
+                });
+    }
+
+    // validUntilMs 0 clears the interval, handing the sensor back to its built-in rate
+    public void setSampleInterval(String sensorId, long intervalMs, long validUntilMs,
+                                  RecipeRepository.OnUpdateListener listener) {
+        boolean clear = validUntilMs == 0;
+        fStore.collection(COLLECTION).document(sensorId)
+                .update(FIELD_SAMPLE_INTERVAL_MS, clear ? null : intervalMs,
+                        FIELD_SAMPLE_INTERVAL_UNTIL, clear ? null : new Timestamp(new Date(validUntilMs)))
+                .addOnSuccessListener(aVoid -> listener.onSuccess(clear ? "Sample interval cleared" : "Sample interval set"))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to set sample interval of sensor " + sensorId, e);
+                    listener.onFailure(e.getMessage());
+                });
+    }
+
+    private static Map<String, Object> releasedFields() {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(FIELD_RECIPE_ID, null);
+        updates.put(FIELD_USER_ID, null);
+        updates.put(FIELD_ASSIGNED_AT, null);
+        updates.put(FIELD_LEASE_RENEWED_AT, null);
+        updates.put(FIELD_SAMPLE_INTERVAL_MS, null);
+        updates.put(FIELD_SAMPLE_INTERVAL_UNTIL, null);
+        return updates;
+    }
+}
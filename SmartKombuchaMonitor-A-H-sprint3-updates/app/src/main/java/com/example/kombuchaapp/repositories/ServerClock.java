@@ -0,0 +1,134 @@
+package com.example.kombuchaapp.repositories;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Source;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * The server's idea of now, for judging sensor leases. Lease times are
+ * server timestamps, so comparing them with the phone's own clock lets a
+ * phone set an hour fast take a live lease, and one set slow never see a
+ * dead one lapse.
+ *
+ * sync() writes a server timestamp to users/{uid}/clock/probe and reads it
+ * back from the server. The write landed somewhere within its round trip,
+ * so the midpoint is off by at most half of it. From then on the time
+ * counts up on elapsedRealtime, which the user can't change, and is
+ * measured again after RESYNC_MS. Before the first sync nowMs() is the
+ * local clock, which is only good enough for the UI.
+ *
+ * App-scoped. sync() on the main thread; nowMs() from any thread, as it
+ * is also read inside transactions.
+ */
+
+public class ServerClock {
+
+    private static final String TAG = "ServerClock";
+    // Phones drift by seconds a day; the user changing the clock doesn't matter here
+    private static final long RESYNC_MS = 60 * 60_000L;
+    private static final long NOT_SYNCED = -1;
+
+    private static ServerClock instance;
+
+    private final FirebaseAuth fAuth;
+    private final FirebaseFirestore fStore;
+    // Callers waiting for the sync in flight
+    private final List<RecipeRepository.OnUpdateListener> waiting = new ArrayList<>();
+    private long serverAtSyncMs;
+    private long elapsedAtSyncMs = NOT_SYNCED;
+
+    public static synchronized ServerClock getInstance() {
+        if (instance == null) {
+            instance = new ServerClock();
+        }
+        return instance;
+    }
+
+    private ServerClock() {
+        fAuth = FirebaseAuth.getInstance();
+        fStore = FirebaseFirestore.getInstance();
+    }
+
+    public synchronized boolean isSynced() {
+        return elapsedAtSyncMs != NOT_SYNCED
+                && SystemClock.elapsedRealtime() - elapsedAtSyncMs < RESYNC_MS;
+    }
+
+    public synchronized long nowMs() {
+        if (elapsedAtSyncMs == NOT_SYNCED) {
+            return System.currentTimeMillis();
+        }
+        return serverAtSyncMs + SystemClock.elapsedRealtime() - elapsedAtSyncMs;
+    }
+
+    // Measures the server time unless it was measured within RESYNC_MS
+    public void sync(RecipeRepository.OnUpdateListener listener) {
+        if (isSynced()) {
+            listener.onSuccess("Server time known");
+            return;
+        }
+        waiting.add(listener);
+        if (waiting.size() > 1) {
+            return;
+        }
+        FirebaseUser user = fAuth.getCurrentUser();
+        if (user == null) {
+            finish(false, "User not logged in");
+            return;
+        }
+        DocumentReference probe = fStore.collection("users").document(user.getUid())
+                .collection("clock").document("probe");
+
+        long sentAt = SystemClock.elapsedRealtime();
+        probe.set(Collections.singletonMap("now", FieldValue.serverTimestamp()))
+                .addOnSuccessListener(aVoid -> {
+                    long ackedAt = SystemClock.elapsedRealtime();
+                    probe.get(Source.SERVER)
+                            .addOnSuccessListener(snapshot -> {
+                                Timestamp now = snapshot.getTimestamp("now");
+                                if (now == null) {
+                                    finish(false, "Server time missing");
+                                    return;
+                                }
+                                synchronized (this) {
+                                    serverAtSyncMs = now.toDate().getTime();
+                                    elapsedAtSyncMs = (sentAt + ackedAt) / 2;
+                                }
+                                Log.d(TAG, "Server clock is " + (nowMs() - System.currentTimeMillis())
+                                        + " ms ahead, +-" + (ackedAt - sentAt) / 2 + " ms");
+                                finish(true, "Server time known");
+                            })
+                            .addOnFailureListener(e -> {
+                                Log.e(TAG, "Failed to read the server time", e);
+                                finish(false, e.getMessage());
+                            });
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to write the server time", e);
+                    finish(false, e.getMessage());
+                });
+    }
+
+    private void finish(boolean success, String message) {
+        List<RecipeRepository.OnUpdateListener> done = new ArrayList<>(waiting);
+        waiting.clear();
+        for (RecipeRepository.OnUpdateListener listener : done) {
+            if (success) {
+                listener.onSuccess(message);
+            } else {
+                listener.onFailure(message);
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.kombuchaapp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Simulated sensor for SamplingPolicy: a week-long brew sampled at the
+ * fixed rate sensors use today, and again with the interval the app would
+ * write to sensor_control after every reading. The brew sits at 77°F,
+ * has a heater fault on day 3 that takes it into the warning range, and
+ * sours to its harvest pH on day 6.
+ *
+ * The simulated sensor picks up a new interval with its next reading; the
+ * real one gets it through a snapshot of its sensor_control document.
+ * Control writes count the interval changes and the renewals before an
+ * interval's VALID_MS runs out, as SamplingController writes them.
+ * At the time of writing the adaptive run needs about 3.7x fewer writes.
+ */
+public class SensorSamplingSimulationTest {
+
+    private static final long MINUTE_MS = 60_000L;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    private static final long DAY_MS = 24 * HOUR_MS;
+    private static final long BREW_MS = 7 * DAY_MS;
+    private static final long FAULT_START_MS = 2 * DAY_MS + 10 * HOUR_MS;
+    private static final float READY_PH = PhAlert.HARVEST_PH + PhAlert.HARVEST_TOLERANCE;
+
+    private static double trueTempF(long t) {
+        double base = 77.0 + 0.3 * Math.sin(2 * Math.PI * t / DAY_MS);
+        double hours = (double) (t - FAULT_START_MS) / HOUR_MS;
+        if (hours <= 0) {
+            return base;
+        }
+        // Up 0.75°F an hour for 8 hours, holds 4, back down over 8
+        if (hours < 8) {
+            return base + 0.75 * hours;
+        }
+        if (hours < 12) {
+            return base + 6;
+        }
+        if (hours < 20) {
+            return base + 6 - 0.75 * (hours - 12);
+        }
+        return base;
+    }
+
+    private static double truePh(long t) {
+        return 2.8 + 1.6 * Math.exp(-(double) t / (3.2 * DAY_MS));
+    }
+
+    // First time the brew leaves the optimal range, and first time it is ready
+    private static long firstTime(boolean ph) {
+        for (long t = 0; t < BREW_MS; t += 1000) {
+            if (ph ? truePh(t) <= READY_PH : trueTempF(t) >= 80.0) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Run {
+        int readings;
+        int intervalChanges;
+        int controlWrites;
+        long maxGapMs;
+        long intervalAtFault = -1;
+        long intervalAtHarvest = -1;
+        long faultSeenMs = -1;
+        long harvestSeenMs = -1;
+    }
+
+    private static Run simulate(boolean adaptive) {
+        Random random = new Random(42);
+        SamplingPolicy policy = new SamplingPolicy();
+        long faultMs = firstTime(false);
+        long harvestMs = firstTime(true);
+        Run run = new Run();
+        long intervalMs = SamplingPolicy.DENSE_MS;
+        long renewAtMs = Long.MAX_VALUE;
+        long previousMs = -1;
+
+        for (long t = 0; t < BREW_MS; t += intervalMs) {
+            float tempF = (float) (trueTempF(t) + random.nextGaussian() * 0.1);
+            float ph = (float) (truePh(t) + random.nextGaussian() * 0.01);
+            run.readings++;
+            if (previousMs >= 0) {
+                run.maxGapMs = Math.max(run.maxGapMs, t - previousMs);
+            }
+            previousMs = t;
+            if (run.faultSeenMs < 0 && t >= faultMs && tempF >= 80f) {
+                run.faultSeenMs = t;
+            }
+            if (run.harvestSeenMs < 0 && t >= harvestMs && ph <= READY_PH) {
+                run.harvestSeenMs = t;
+            }
+
+            policy.addTemperatureC(t, (tempF - 32f) * 5f / 9f);
+            policy.addPh(t, ph);
+            if (adaptive && policy.intervalMs() != intervalMs) {
+                intervalMs = policy.intervalMs();
+                run.intervalChanges++;
+                run.controlWrites++;
+                renewAtMs = intervalMs == SamplingPolicy.DENSE_MS ? Long.MAX_VALUE : t + SamplingPolicy.VALID_MS / 2;
+            } else if (adaptive && t >= renewAtMs) {
+                run.controlWrites++;
+                renewAtMs = t + SamplingPolicy.VALID_MS / 2;
+            }
+            if (run.intervalAtFault < 0 && t + intervalMs >= faultMs) {
+                run.intervalAtFault = intervalMs;
+            }
+            if (run.intervalAtHarvest < 0 && t + intervalMs >= harvestMs) {
+                run.intervalAtHarvest = intervalMs;
+            }
+        }
+        return run;
+    }
+
+    @Test
+    public void adaptiveSamplingWritesFarLessAndStaysDenseWhereItMatters() {
+        Run fixed = simulate(false);
+        Run adaptive = simulate(true);
+
+        int adaptiveWrites = adaptive.readings + adaptive.controlWrites;
+        assertTrue("readings + control writes should drop at least 3x, were " + fixed.readings
+                        + " and " + adaptiveWrites,
+                3 * adaptiveWrites <= fixed.readings);
+        // Dense as the brew crosses into the warning range and reaches harvest
+        assertEquals(SamplingPolicy.DENSE_MS, adaptive.intervalAtFault);
+        assertEquals(SamplingPolicy.DENSE_MS, adaptive.intervalAtHarvest);
+        assertTrue(adaptive.faultSeenMs - fixed.faultSeenMs <= SamplingPolicy.DENSE_MS);
+        assertTrue(adaptive.harvestSeenMs - fixed.harvestSeenMs <= SamplingPolicy.DENSE_MS);
+        // Never so sparse that the staleness monitor would call the sensor offline
+        assertTrue(adaptive.maxGapMs <= SamplingPolicy.SPARSE_MS);
+        assertTrue("interval should not flap", adaptive.intervalChanges < 30);
+    }
+
+    @Test
+    public void goesDenseAtOnceButSparseOnlyOnceSettled() {
+        SamplingPolicy policy = new SamplingPolicy();
+        assertEquals(SamplingPolicy.DENSE_MS, policy.intervalMs());
+
+        long t = 0;
+        for (; t < 20 * MINUTE_MS; t += SamplingPolicy.DENSE_MS) {
+            policy.addTemperatureC(t, 25f); // 77°F
+        }
+        assertEquals("not settled yet", SamplingPolicy.DENSE_MS, policy.intervalMs());
+        for (; t < 2 * HOUR_MS; t += SamplingPolicy.DENSE_MS) {
+            policy.addTemperatureC(t, 25f);
+        }
+        assertEquals(SamplingPolicy.SPARSE_MS, policy.intervalMs());
+
+        policy.addTemperatureC(t, 33f); // 91.4°F, lethal
+        assertEquals(SamplingPolicy.DENSE_MS, policy.intervalMs());
+    }
+}
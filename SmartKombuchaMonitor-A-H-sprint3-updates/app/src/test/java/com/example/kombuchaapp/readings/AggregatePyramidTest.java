@@ -0,0 +1,135 @@
+package com.example.kombuchaapp.readings;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AggregatePyramidTest {
+
+    private static final long STEP_MS = 30_000L;
+    private static final int DAY = 2880;
+    private static final int SPIKE = 1000;
+
+    private static TimeSeriesBuffer dayWithSpike() {
+        TimeSeriesBuffer series = new TimeSeriesBuffer();
+        for (int i = 0; i < DAY; i++) {
+            series.append(i * STEP_MS, i == SPIKE ? 100f : 25f + (float) Math.sin(i / 50.0));
+        }
+        return series;
+    }
+
+    private static AggregatePyramid built(TimeSeriesBuffer series) {
+        AggregatePyramid pyramid = new AggregatePyramid(series);
+        pyramid.onSamplesChanged(0);
+        return pyramid;
+    }
+
+    private static void assertAscending(int[] out, int count) {
+        for (int i = 1; i < count; i++) {
+            assertTrue("indices must ascend at " + i, out[i - 1] < out[i]);
+        }
+    }
+
+    @Test
+    public void everySampleWhenTheyFit() {
+        TimeSeriesBuffer series = dayWithSpike();
+        AggregatePyramid pyramid = built(series);
+        int[] out = new int[DAY];
+
+        int count = pyramid.select(10 * STEP_MS, 60 * STEP_MS, 100, out, 0);
+        assertEquals(50, count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(10 + i, out[i]);
+        }
+    }
+
+    @Test
+    public void downsamplesWithinBudgetAndKeepsEndsAndSpike() {
+        TimeSeriesBuffer series = dayWithSpike();
+        AggregatePyramid pyramid = built(series);
+        int[] out = new int[DAY];
+
+        int count = pyramid.select(Long.MIN_VALUE, Long.MAX_VALUE, 200, out, 0);
+        assertTrue("got " + count, count <= 200 && count > 100);
+        assertAscending(out, count);
+        assertEquals(0, out[0]);
+        assertEquals(DAY - 1, out[count - 1]);
+        boolean hasSpike = false;
+        for (int i = 0; i < count; i++) {
+            hasSpike |= out[i] == SPIKE;
+        }
+        assertTrue(hasSpike);
+    }
+
+    @Test
+    public void subRangeStartsAndEndsOnItsOwnSamples() {
+        TimeSeriesBuffer series = dayWithSpike();
+        AggregatePyramid pyramid = built(series);
+        int[] out = new int[DAY + 1];
+        out[0] = -1;
+
+        // Appends after what the caller already has in out
+        int count = pyramid.select(500 * STEP_MS + 1, 2000 * STEP_MS, 60, out, 1);
+        assertEquals(-1, out[0]);
+        assertTrue(count - 1 <= 60);
+        assertAscending(out, count);
+        assertEquals(501, out[1]);
+        assertEquals(1999, out[count - 1]);
+    }
+
+    @Test
+    public void tinyBudgetFoldsBuckets() {
+        TimeSeriesBuffer series = new TimeSeriesBuffer();
+        // A month at one reading a minute: even 6 h buckets are too many for 8 points
+        for (int i = 0; i < 30 * 1440; i++) {
+            series.append(i * 60_000L, i % 1440);
+        }
+        AggregatePyramid pyramid = built(series);
+        int[] out = new int[series.size()];
+
+        int count = pyramid.select(Long.MIN_VALUE, Long.MAX_VALUE, 8, out, 0);
+        assertTrue("got " + count, count <= 8);
+        assertAscending(out, count);
+        assertEquals(0, out[0]);
+        assertEquals(series.size() - 1, out[count - 1]);
+    }
+
+    @Test
+    public void emptyRangeAddsNothing() {
+        AggregatePyramid pyramid = built(dayWithSpike());
+        int[] out = new int[4];
+
+        assertEquals(2, pyramid.select(-10_000, -1, 100, out, 2));
+        assertEquals(0, built(new TimeSeriesBuffer()).select(0, Long.MAX_VALUE, 100, out, 0));
+    }
+
+    @Test
+    public void lateSamplesRebuildTheBucketsTheyLandIn() {
+        Random random = new Random(11);
+        TimeSeriesBuffer live = new TimeSeriesBuffer();
+        AggregatePyramid pyramid = new AggregatePyramid(live);
+        for (int round = 0; round < 100; round++) {
+            TimeSeriesBuffer batch = new TimeSeriesBuffer();
+            // Mostly appends, now and then a run of late readings hours back
+            long time = round % 7 == 6 ? random.nextInt(round + 1) * 20 * STEP_MS : (round * 20 + 20) * STEP_MS;
+            for (int i = 0; i < 10; i++) {
+                time += STEP_MS / 2 + random.nextInt((int) STEP_MS);
+                batch.append(time, (float) random.nextGaussian() * 5);
+            }
+            pyramid.onSamplesChanged(live.merge(batch));
+        }
+
+        AggregatePyramid fresh = built(live);
+        for (int level = 0; level < pyramid.levelCount(); level++) {
+            assertEquals(fresh.bucketCount(level), pyramid.bucketCount(level));
+            for (int b = 0; b < fresh.bucketCount(level); b++) {
+                assertEquals(fresh.bucketStart(level, b), pyramid.bucketStart(level, b));
+                assertEquals(fresh.min(level, b), pyramid.min(level, b), 0f);
+                assertEquals(fresh.max(level, b), pyramid.max(level, b), 0f);
+                assertEquals(fresh.average(level, b), pyramid.average(level, b), 1e-4f);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.kombuchaapp.readings;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AsOfJoinTest {
+
+    // Right value for each row by scanning the whole right series, NaN where there is none
+    private static float[] naiveJoin(TimeSeriesBuffer left, TimeSeriesBuffer right, long maxAgeMs) {
+        float[] joined = new float[left.size()];
+        for (int row = 0; row < left.size(); row++) {
+            long time = left.timeAt(row);
+            int match = -1;
+            for (int r = 0; r < right.size(); r++) {
+                if (right.timeAt(r) <= time) {
+                    match = r;
+                }
+            }
+            joined[row] = match < 0 || time - right.timeAt(match) > maxAgeMs ? Float.NaN : right.valueAt(match);
+        }
+        return joined;
+    }
+
+    private static TimeSeriesBuffer randomBatch(Random random, float base) {
+        TimeSeriesBuffer batch = new TimeSeriesBuffer();
+        // Times on a coarse grid, so batches share timestamps with each other and within themselves
+        long time = random.nextInt(200) * 1000L;
+        int count = 1 + random.nextInt(8);
+        for (int i = 0; i < count; i++) {
+            time += random.nextInt(3) * 1000L;
+            batch.append(time, base + random.nextInt(1000));
+        }
+        return batch;
+    }
+
+    private static void assertMatchesNaive(long maxAgeMs, long seed) {
+        Random random = new Random(seed);
+        AsOfJoin join = new AsOfJoin(maxAgeMs);
+        TimeSeriesBuffer left = new TimeSeriesBuffer();
+        TimeSeriesBuffer right = new TimeSeriesBuffer();
+        float[] before = new float[0];
+
+        for (int step = 0; step < 400; step++) {
+            int firstChanged;
+            int oldRows = left.size();
+            if (random.nextBoolean()) {
+                TimeSeriesBuffer batch = randomBatch(random, 0);
+                left.merge(batch);
+                firstChanged = join.addLeft(batch);
+            } else {
+                TimeSeriesBuffer batch = randomBatch(random, 5000);
+                right.merge(batch);
+                firstChanged = join.addRight(batch);
+            }
+
+            float[] expected = naiveJoin(left, right, maxAgeMs);
+            assertEquals(left.size(), join.rowCount());
+            for (int row = 0; row < left.size(); row++) {
+                assertEquals("step " + step + " row " + row, left.timeAt(row), join.rowTime(row));
+                assertEquals(left.valueAt(row), join.leftValue(row), 0f);
+                assertEquals("step " + step + " row " + row,
+                        Float.floatToIntBits(expected[row]), Float.floatToIntBits(join.rightValue(row)));
+            }
+            // Rows with no right sample at all are exactly the ones before firstMatchedRow()
+            for (int row = 0; row < left.size(); row++) {
+                boolean anyRight = !right.isEmpty() && right.timeAt(0) <= left.timeAt(row);
+                assertEquals(anyRight, row >= join.firstMatchedRow());
+            }
+            // Nothing before firstChanged moved
+            assertTrue(firstChanged <= oldRows);
+            for (int row = 0; row < Math.min(firstChanged, before.length); row++) {
+                assertEquals(Float.floatToIntBits(before[row]), Float.floatToIntBits(expected[row]));
+            }
+            before = expected;
+        }
+    }
+
+    @Test
+    public void interleavedBatchesMatchANaiveJoin() {
+        assertMatchesNaive(Long.MAX_VALUE, 1);
+        assertMatchesNaive(Long.MAX_VALUE, 2);
+    }
+
+    @Test
+    public void staleRightSamplesAreMatchedToNaN() {
+        assertMatchesNaive(3000, 3);
+        assertMatchesNaive(0, 4);
+    }
+
+    @Test
+    public void clearingTheRightSideUnmatchesEveryRow() {
+        AsOfJoin join = new AsOfJoin();
+        TimeSeriesBuffer left = new TimeSeriesBuffer();
+        left.append(1000, 1f);
+        left.append(2000, 2f);
+        TimeSeriesBuffer right = new TimeSeriesBuffer();
+        right.append(1500, 7f);
+        join.addLeft(left);
+        join.addRight(right);
+        assertEquals(7f, join.rightValue(1), 0f);
+
+        join.clearRight();
+        assertEquals(2, join.rowCount());
+        assertTrue(Float.isNaN(join.rightValue(1)));
+        join.addRight(right);
+        assertEquals(1, join.firstMatchedRow());
+        assertEquals(7f, join.rightValue(1), 0f);
+    }
+}
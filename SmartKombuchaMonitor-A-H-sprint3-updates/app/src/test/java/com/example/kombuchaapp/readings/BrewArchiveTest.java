@@ -0,0 +1,92 @@
+package com.example.kombuchaapp.readings;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BrewArchiveTest {
+
+    private static final long CREATED_MS = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static TimeSeriesBuffer ramp(int count, float from) {
+        TimeSeriesBuffer samples = new TimeSeriesBuffer();
+        for (int i = 0; i < count; i++) {
+            samples.append(CREATED_MS - (count - i) * 30_000L, from + i * 0.01f);
+        }
+        return samples;
+    }
+
+    private static void assertSameSamples(TimeSeriesBuffer expected, TimeSeriesBuffer actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.timeAt(i), actual.timeAt(i));
+            assertEquals(Float.floatToRawIntBits(expected.valueAt(i)), Float.floatToRawIntBits(actual.valueAt(i)));
+        }
+    }
+
+    @Test
+    public void readsBackEverySensorOfEverySeries() throws IOException {
+        SensorSamples temperature = new SensorSamples();
+        temperature.merge("probe-1", ramp(1000, 24f));
+        // Odd lengths and a multi-byte name exercise the 8-byte column alignment
+        temperature.merge("sonde-é", ramp(7, 26f));
+        temperature.merge(SensorSamples.DEFAULT_SENSOR, ramp(3, 22f));
+        SensorSamples ph = new SensorSamples();
+        TimeSeriesBuffer phSamples = ramp(5, 3.2f);
+        phSamples.setValueAt(2, Float.NaN);
+        ph.merge("probe-1", phSamples);
+        Map<ReadingSeries, SensorSamples> series = new EnumMap<>(ReadingSeries.class);
+        series.put(ReadingSeries.TEMPERATURE, temperature);
+        series.put(ReadingSeries.PH, ph);
+        File file = new File(folder.getRoot(), "brew" + BrewArchive.FILE_EXTENSION);
+
+        BrewArchive.write(file, series, CREATED_MS);
+        BrewArchive archive = BrewArchive.open(file);
+
+        assertEquals(CREATED_MS, archive.getCreatedMs());
+        assertTrue(archive.has(ReadingSeries.TEMPERATURE));
+        assertTrue(archive.has(ReadingSeries.PH));
+        SensorSamples readTemperature = archive.read(ReadingSeries.TEMPERATURE);
+        assertEquals(temperature.sensors(), readTemperature.sensors());
+        for (String sensor : temperature.sensors()) {
+            assertSameSamples(temperature.get(sensor), readTemperature.get(sensor));
+        }
+        assertSameSamples(phSamples, archive.read(ReadingSeries.PH).get("probe-1"));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void missingSeriesReadsEmpty() throws IOException {
+        SensorSamples temperature = new SensorSamples();
+        temperature.merge("probe-1", ramp(10, 24f));
+        Map<ReadingSeries, SensorSamples> series = new EnumMap<>(ReadingSeries.class);
+        series.put(ReadingSeries.TEMPERATURE, temperature);
+        File file = folder.newFile("brew" + BrewArchive.FILE_EXTENSION);
+
+        BrewArchive.write(file, series, CREATED_MS);
+        BrewArchive archive = BrewArchive.open(file);
+
+        assertFalse(archive.has(ReadingSeries.PH));
+        assertTrue(archive.read(ReadingSeries.PH).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAFileThatIsNotAnArchive() throws IOException {
+        File file = folder.newFile("notes.txt");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("not a brew archive at all, just text".getBytes("UTF-8"));
+        }
+        BrewArchive.open(file);
+    }
+}
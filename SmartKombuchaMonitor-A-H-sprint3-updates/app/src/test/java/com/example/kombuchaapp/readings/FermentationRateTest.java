@@ -0,0 +1,148 @@
+package com.example.kombuchaapp.readings;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the O(1) decayed sums against a weighted fit recomputed from
+ * scratch over the window after every reading.
+ */
+public class FermentationRateTest {
+
+    private static final long MINUTE_MS = TimestampParser.MS_PER_MINUTE;
+    private static final double MS_PER_HOUR = 60.0 * MINUTE_MS;
+    private static final float TARGET_PH = 3.0f;
+
+    // Same model as FermentationRate, straight from the definition
+    private static final class BruteForceFit {
+        final boolean hasFit;
+        final double rate;
+        final double fitted;
+
+        BruteForceFit(TimeSeriesBuffer all, int last) {
+            long lastMs = all.timeAt(last);
+            double sw = 0;
+            double swx = 0;
+            double swxx = 0;
+            double swy = 0;
+            double swxy = 0;
+            int count = 0;
+            long firstMs = lastMs;
+            for (int i = 0; i <= last; i++) {
+                long t = all.timeAt(i);
+                if (t < lastMs - FermentationRate.WINDOW_MS) {
+                    continue;
+                }
+                double x = (t - lastMs) / MS_PER_HOUR;
+                double w = Math.pow(0.5, (lastMs - t) / (double) FermentationRate.HALF_LIFE_MS);
+                double y = all.valueAt(i);
+                sw += w;
+                swx += w * x;
+                swxx += w * x * x;
+                swy += w * y;
+                swxy += w * x * y;
+                count++;
+                firstMs = Math.min(firstMs, t);
+            }
+            double denominator = sw * swxx - swx * swx;
+            hasFit = count >= 6 && lastMs - firstMs >= 60 * MINUTE_MS && denominator > 1e-9;
+            rate = (sw * swxy - swx * swy) / denominator;
+            fitted = (swy - rate * swx) / sw;
+        }
+    }
+
+    private static void assertMatchesBruteForce(TimeSeriesBuffer readings) {
+        FermentationRate fit = new FermentationRate();
+        int fits = 0;
+        for (int i = 0; i < readings.size(); i++) {
+            fit.add(readings.timeAt(i), readings.valueAt(i));
+            BruteForceFit expected = new BruteForceFit(readings, i);
+
+            assertEquals("hasFit at " + i, expected.hasFit, fit.hasFit());
+            if (!expected.hasFit) {
+                continue;
+            }
+            fits++;
+            assertEquals("rate at " + i, expected.rate, fit.ratePerHour(), 1e-6);
+            assertEquals("fitted pH at " + i, expected.fitted, fit.fittedPh(), 1e-6);
+
+            long lastMs = readings.timeAt(i);
+            if (expected.fitted <= TARGET_PH) {
+                assertEquals(lastMs, fit.etaMs(TARGET_PH));
+            } else if (expected.rate < -0.01) {
+                double hours = (expected.fitted - TARGET_PH) / -expected.rate;
+                long eta = fit.etaMs(TARGET_PH);
+                assertEquals("eta at " + i, hours, (eta - lastMs) / MS_PER_HOUR, hours * 1e-5 + 1e-3);
+            }
+        }
+        assertTrue(fits > 0);
+    }
+
+    private static float souring(long t, Random random) {
+        return (float) (2.8 + 1.6 * Math.exp(-t / (3.2 * 24 * 60.0 * MINUTE_MS)) + random.nextGaussian() * 0.01);
+    }
+
+    // Four days at 30s: the window fills, slides and the sums are rebuilt many times over
+    @Test
+    public void slidingWindowAndRebuildsMatchAFullRefit() {
+        Random random = new Random(1);
+        TimeSeriesBuffer readings = new TimeSeriesBuffer();
+        for (long t = 0; t < 4 * 24 * 60 * MINUTE_MS; t += 30_000L) {
+            readings.append(t, souring(t, random));
+        }
+
+        assertMatchesBruteForce(readings);
+    }
+
+    /*
+     * Sparse readings first, so the window slides and its ring buffer wraps,
+     * then dense ones, so the ring grows while it is wrapped. A gap longer
+     * than the window empties it down to the newest reading.
+     */
+    @Test
+    public void ringGrowsWhileWrappedAndSurvivesAnOfflineSensor() {
+        Random random = new Random(2);
+        TimeSeriesBuffer readings = new TimeSeriesBuffer();
+        long t = 0;
+        for (; t < 30 * 60 * MINUTE_MS; t += 40 * MINUTE_MS + random.nextInt(60_000)) {
+            readings.append(t, souring(t, random));
+        }
+        for (int i = 0; i < 600; i++, t += 20_000L + random.nextInt(20_000)) {
+            readings.append(t, souring(t, random));
+        }
+        t += 2 * FermentationRate.WINDOW_MS;
+        for (int i = 0; i < 200; i++, t += 60_000L) {
+            readings.append(t, souring(t, random));
+        }
+
+        assertMatchesBruteForce(readings);
+    }
+
+    @Test
+    public void noEtaWhileThePhIsNotFalling() {
+        FermentationRate fit = new FermentationRate();
+        for (long t = 0; t < 3 * 60 * MINUTE_MS; t += MINUTE_MS) {
+            fit.add(t, 3.5f + t / (float) (1000 * MS_PER_HOUR));
+        }
+
+        assertTrue(fit.hasFit());
+        assertTrue(fit.ratePerHour() > 0);
+        assertEquals(FermentationRate.NO_ETA, fit.etaMs(TARGET_PH));
+    }
+
+    @Test
+    public void olderAndInvalidReadingsAreIgnored() {
+        FermentationRate fit = new FermentationRate();
+        fit.add(10 * MINUTE_MS, 4f);
+        fit.add(5 * MINUTE_MS, 3f);
+        fit.add(10 * MINUTE_MS, 3f);
+        fit.add(11 * MINUTE_MS, Float.NaN);
+
+        assertEquals(10 * MINUTE_MS, fit.lastTimeMs());
+        assertFalse(fit.hasFit());
+        assertEquals(FermentationRate.NO_ETA, fit.etaMs(TARGET_PH));
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.kombuchaapp.readings;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GorillaCodecTest {
+
+    private static final long START_MS = 1_700_000_000_000L;
+
+    // Decodes what encode wrote for [from, to) and compares it sample by sample, bit for bit
+    private static void assertRoundTrip(TimeSeriesBuffer series, int from, int to) {
+        TimeSeriesBuffer decoded = new TimeSeriesBuffer();
+        int count = GorillaCodec.decode(GorillaCodec.encode(series, from, to), decoded);
+
+        assertEquals(to - from, count);
+        assertEquals(to - from, decoded.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals("time " + i, series.timeAt(from + i), decoded.timeAt(i));
+            assertEquals("value " + i, Float.floatToRawIntBits(series.valueAt(from + i)),
+                    Float.floatToRawIntBits(decoded.valueAt(i)));
+        }
+    }
+
+    private static void assertRoundTrip(TimeSeriesBuffer series) {
+        assertRoundTrip(series, 0, series.size());
+    }
+
+    @Test
+    public void steadyIntervalAndRepeatedValues() {
+        TimeSeriesBuffer series = new TimeSeriesBuffer();
+        for (int i = 0; i < 120; i++) {
+            series.append(START_MS + i * 30_000L, i < 60 ? 25f : 25.5f);
+        }
+        byte[] encoded = GorillaCodec.encode(series, 0, series.size());
+
+        assertRoundTrip(series);
+        // One bit per time and per repeated value, plus the header
+        assertTrue(encoded.length < 64);
+    }
+
+    @Test
+    public void irregularDeltasAtEveryEncodingBoundary() {
+        long[] dods = {0, 1, -1, 63, -63, 64, -64, 65, 255, -255, 256, -256, 257,
+                2047, -2047, 2048, -2048, 2049, -2049, 100_000};
+        TimeSeriesBuffer series = new TimeSeriesBuffer();
+        long time = START_MS;
+        long delta = 30_000L;
+        series.append(time, 20f);
+        for (int i = 0; i < dods.length; i++) {
+            delta += dods[i];
+            time += delta;
+            series.append(time, 20f + i * 0.25f);
+        }
+
+        assertRoundTrip(series);
+    }
+
+    @Test
+    public void negativeAndHugeDeltaOfDeltas() {
+        TimeSeriesBuffer series = new TimeSeriesBuffer();
+        series.append(0L, 1f);
+        series.append(START_MS, 2f);
+        series.append(START_MS - 5_000L, 3f);
+        series.append(Long.MAX_VALUE / 2, 4f);
+        series.append(-Long.MAX_VALUE / 2, 5f);
+        series.append(-Long.MAX_VALUE / 2 + 1, 6f);
+
+        assertRoundTrip(series);
+    }
+
+    @Test
+    public void specialFloatValues() {
+        float[] values = {0f, -0.0f, Float.NaN, Float.NaN, 0f, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY,
+                Float.MIN_VALUE, -Float.MAX_VALUE, 1f, Float.intBitsToFloat(~Float.floatToRawIntBits(1f)), 3.5f};
+        TimeSeriesBuffer series = new TimeSeriesBuffer();
+        for (int i = 0; i < values.length; i++) {
+            series.append(START_MS + i * 1000L, values[i]);
+        }
+
+        assertRoundTrip(series);
+    }
+
+    @Test
+    public void noiseReusesAndWidensTheValueWindow() {
+        Random random = new Random(7);
+        TimeSeriesBuffer series = new TimeSeriesBuffer();
+        for (int i = 0; i < 2000; i++) {
+            float value = i % 97 == 0 ? Float.intBitsToFloat(random.nextInt()) : 25f + (float) random.nextGaussian();
+            series.append(START_MS + i * 30_000L + random.nextInt(2000), value);
+        }
+
+        assertRoundTrip(series);
+    }
+
+    @Test
+    public void singleSampleAndEmptyRun() {
+        TimeSeriesBuffer series = new TimeSeriesBuffer();
+        series.append(START_MS, -0.0f);
+
+        assertRoundTrip(series);
+        assertRoundTrip(series, 0, 0);
+        assertRoundTrip(new TimeSeriesBuffer());
+    }
+
+    @Test
+    public void encodesOnlyTheRequestedRange() {
+        TimeSeriesBuffer series = new TimeSeriesBuffer();
+        for (int i = 0; i < 50; i++) {
+            series.append(START_MS + i * i * 1000L, i * 0.5f);
+        }
+
+        assertRoundTrip(series, 10, 35);
+        assertRoundTrip(series, 49, 50);
+        assertRoundTrip(series, 20, 22);
+    }
+
+    @Test
+    public void decodeAppendsToWhatIsAlreadyThere() {
+        TimeSeriesBuffer series = new TimeSeriesBuffer();
+        series.append(START_MS, 1f);
+        series.append(START_MS + 1000L, 2f);
+        TimeSeriesBuffer out = new TimeSeriesBuffer();
+        out.append(0L, 9f);
+
+        assertEquals(2, GorillaCodec.decode(GorillaCodec.encode(series, 0, 2), out));
+        assertEquals(3, out.size());
+        assertEquals(0L, out.timeAt(0));
+        assertEquals(START_MS + 1000L, out.lastTime());
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.kombuchaapp.readings;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ReadingDeduperTest {
+
+    @Test
+    public void repeatsAreDroppedPerSensor() {
+        ReadingDeduper deduper = new ReadingDeduper();
+
+        assertTrue(deduper.firstSighting("a", 1000));
+        assertFalse(deduper.firstSighting("a", 1000));
+        assertTrue(deduper.firstSighting("b", 1000));
+        assertTrue(deduper.firstSighting("a", 1001));
+        // null is the default sensor
+        assertTrue(deduper.firstSighting(null, 1000));
+        assertFalse(deduper.firstSighting(SensorSamples.DEFAULT_SENSOR, 1000));
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        ReadingDeduper deduper = new ReadingDeduper();
+        deduper.firstSighting("a", 1000);
+        deduper.clear();
+
+        assertTrue(deduper.firstSighting("a", 1000));
+    }
+
+    @Test
+    public void oldestReadingIsForgottenOnceFull() {
+        ReadingDeduper deduper = new ReadingDeduper(4);
+        for (long t = 1; t <= 5; t++) {
+            assertTrue(deduper.firstSighting("a", t));
+        }
+
+        assertFalse(deduper.firstSighting("a", 5));
+        assertFalse(deduper.firstSighting("a", 2));
+        assertTrue(deduper.firstSighting("a", 1));
+    }
+
+    // Against a plain set and queue, with few enough distinct keys that probe runs collide and get shifted back
+    @Test
+    public void matchesABoundedSetUnderRandomTraffic() {
+        int capacity = 64;
+        ReadingDeduper deduper = new ReadingDeduper(capacity);
+        Set<String> seen = new HashSet<>();
+        ArrayDeque<String> order = new ArrayDeque<>();
+        Random random = new Random(5);
+        String[] sensors = {"a", "b", "c"};
+
+        for (int i = 0; i < 50_000; i++) {
+            String sensor = sensors[random.nextInt(sensors.length)];
+            long time = random.nextInt(200) * 1000L;
+            String key = sensor + "@" + time;
+
+            boolean expected = !seen.contains(key);
+            if (expected) {
+                if (order.size() == capacity) {
+                    seen.remove(order.removeFirst());
+                }
+                seen.add(key);
+                order.addLast(key);
+            }
+            assertEquals("step " + i, expected, deduper.firstSighting(sensor, time));
+        }
+    }
+}
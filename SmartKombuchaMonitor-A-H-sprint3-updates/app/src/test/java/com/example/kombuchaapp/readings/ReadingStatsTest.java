@@ -0,0 +1,120 @@
+package com.example.kombuchaapp.readings;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ReadingStatsTest {
+
+    private static final long STEP_MS = 30_000L;
+
+    // Below 20, 20 to 30, 30 and up
+    private static final ReadingStats.Classifier BANDS = new ReadingStats.Classifier() {
+        @Override
+        public int levelCount() {
+            return 3;
+        }
+
+        @Override
+        public int levelOf(float value) {
+            return value < 20 ? 0 : value < 30 ? 1 : 2;
+        }
+    };
+
+    private static TimeSeriesBuffer run(long fromMs, int count, Random random) {
+        TimeSeriesBuffer batch = new TimeSeriesBuffer();
+        for (int i = 0; i < count; i++) {
+            batch.append(fromMs + i * STEP_MS, 25f + (float) random.nextGaussian() * 6);
+        }
+        return batch;
+    }
+
+    private static TimeSeriesBuffer one(long timeMs, float value) {
+        TimeSeriesBuffer batch = new TimeSeriesBuffer();
+        batch.append(timeMs, value);
+        return batch;
+    }
+
+    // Everything from scratch over the final series
+    private static void assertMatchesRecomputation(TimeSeriesBuffer series, ReadingStats stats) {
+        long[] levelMs = new long[BANDS.levelCount()];
+        for (int i = 0; i + 1 < series.size(); i++) {
+            long gap = Math.min(series.timeAt(i + 1) - series.timeAt(i), ReadingStats.MAX_GAP_MS);
+            levelMs[BANDS.levelOf(series.valueAt(i))] += gap;
+        }
+        double sum = 0;
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (int i = 0; i < series.size(); i++) {
+            sum += series.valueAt(i);
+            min = Math.min(min, series.valueAt(i));
+            max = Math.max(max, series.valueAt(i));
+        }
+        double mean = sum / series.size();
+        double squares = 0;
+        for (int i = 0; i < series.size(); i++) {
+            squares += (series.valueAt(i) - mean) * (series.valueAt(i) - mean);
+        }
+
+        assertEquals(series.size(), stats.getCount());
+        assertEquals(min, stats.getMin(), 0f);
+        assertEquals(max, stats.getMax(), 0f);
+        assertEquals(mean, stats.getMean(), 1e-9);
+        assertEquals(squares / series.size(), stats.getVariance(), 1e-9);
+        for (int level = 0; level < levelMs.length; level++) {
+            assertEquals("level " + level, levelMs[level], stats.getTimeInLevelMs(level));
+        }
+    }
+
+    @Test
+    public void olderPageAndLateReadingReCreditTheirNeighbours() {
+        Random random = new Random(4);
+        TimeSeriesBuffer series = new TimeSeriesBuffer();
+        ReadingStats stats = new ReadingStats(BANDS);
+        long liveMs = 1000 * STEP_MS;
+
+        // The live window, with a sensor outage longer than MAX_GAP_MS in it
+        stats.merge(series, run(liveMs, 100, random));
+        stats.merge(series, run(liveMs + 100 * STEP_MS + 2 * ReadingStats.MAX_GAP_MS, 50, random));
+        assertMatchesRecomputation(series, stats);
+
+        // An older page just before the live window
+        stats.merge(series, run(liveMs - 300 * STEP_MS, 300, random));
+        assertMatchesRecomputation(series, stats);
+
+        // A late reading between two others, and one at the same time as an existing one
+        stats.merge(series, one(liveMs + 40 * STEP_MS + STEP_MS / 2, 35f));
+        stats.merge(series, one(liveMs + 60 * STEP_MS, 15f));
+        assertMatchesRecomputation(series, stats);
+
+        // A page that overlaps what is there, and one that ends where the series starts
+        stats.merge(series, run(liveMs + 10 * STEP_MS + 7, 30, random));
+        stats.merge(series, run(liveMs - 400 * STEP_MS, 101, random));
+        assertMatchesRecomputation(series, stats);
+    }
+
+    @Test
+    public void randomBatchesAnywhereInTheSeries() {
+        Random random = new Random(8);
+        TimeSeriesBuffer series = new TimeSeriesBuffer();
+        ReadingStats stats = new ReadingStats(BANDS);
+        for (int round = 0; round < 200; round++) {
+            long fromMs = random.nextInt(5000) * STEP_MS + random.nextInt((int) STEP_MS);
+            stats.merge(series, run(fromMs, 1 + random.nextInt(20), random));
+        }
+
+        assertMatchesRecomputation(series, stats);
+    }
+
+    @Test
+    public void emptyBatchChangesNothing() {
+        TimeSeriesBuffer series = new TimeSeriesBuffer();
+        ReadingStats stats = new ReadingStats(null);
+
+        assertEquals(0, stats.merge(series, new TimeSeriesBuffer()));
+        assertTrue(stats.isEmpty());
+        assertEquals(0, stats.getVariance(), 0);
+    }
+}
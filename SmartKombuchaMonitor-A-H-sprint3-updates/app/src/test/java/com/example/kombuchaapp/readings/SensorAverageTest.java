@@ -0,0 +1,60 @@
+package com.example.kombuchaapp.readings;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SensorAverageTest {
+
+    private static final long MINUTE_MS = TimestampParser.MS_PER_MINUTE;
+
+    private static TimeSeriesBuffer every(long fromMs, long toMs, long stepMs, float value) {
+        TimeSeriesBuffer samples = new TimeSeriesBuffer();
+        for (long t = fromMs; t < toMs; t += stepMs) {
+            samples.append(t, value);
+        }
+        return samples;
+    }
+
+    @Test
+    public void sensorsOnDifferentIntervalsAverageWithoutZigzag() {
+        SensorAverage average = new SensorAverage();
+        // 2 and 5 minute probes, never in step
+        for (long t = 0; t < 60 * MINUTE_MS; t += 10 * MINUTE_MS) {
+            average.add("top", every(t + 7_000, t + 10 * MINUTE_MS, 2 * MINUTE_MS, 20f));
+            average.add("bottom", every(t + 31_000, t + 10 * MINUTE_MS, 5 * MINUTE_MS, 30f));
+        }
+
+        TimeSeriesBuffer series = average.series();
+        assertEquals(30 + 12, series.size());
+        // Only the top probe had reported at the very first reading
+        assertEquals(20f, series.valueAt(0), 0f);
+        for (int i = 1; i < series.size(); i++) {
+            assertEquals("point " + i, 25f, series.valueAt(i), 1e-6f);
+        }
+    }
+
+    @Test
+    public void quietSensorDropsOutAfterTheGap() {
+        SensorAverage average = new SensorAverage();
+        average.add("a", every(0, 60 * MINUTE_MS, MINUTE_MS, 10f));
+        average.add("b", every(0, MINUTE_MS, MINUTE_MS, 30f));
+
+        TimeSeriesBuffer series = average.series();
+        assertEquals(20f, series.valueAt(series.lowerBound(SensorGaps.GAP_MS)), 1e-6f);
+        assertEquals(10f, series.valueAt(series.lowerBound(SensorGaps.GAP_MS + MINUTE_MS)), 1e-6f);
+    }
+
+    @Test
+    public void olderPageReportsFirstChangedPoint() {
+        SensorAverage average = new SensorAverage();
+        average.add("a", every(10 * MINUTE_MS, 20 * MINUTE_MS, MINUTE_MS, 10f));
+        average.add("b", every(10 * MINUTE_MS, 20 * MINUTE_MS, MINUTE_MS, 20f));
+        int size = average.series().size();
+
+        assertEquals(size, average.add("a", every(20 * MINUTE_MS, 21 * MINUTE_MS, MINUTE_MS, 10f)));
+        assertEquals(0, average.add("b", every(0, MINUTE_MS, MINUTE_MS, 40f)));
+        assertEquals(40f, average.series().valueAt(0), 0f);
+        assertEquals(15f, average.series().valueAt(average.series().size() - 1), 1e-6f);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.kombuchaapp.readings;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SuspectReadingsTest {
+
+    private static final long STEP_MS = 30_000L;
+
+    private static TimeSeriesBuffer steady(long fromMs, int count, float value) {
+        TimeSeriesBuffer samples = new TimeSeriesBuffer();
+        for (int i = 0; i < count; i++) {
+            samples.append(fromMs + i * STEP_MS, value + (i % 3) * 0.1f);
+        }
+        return samples;
+    }
+
+    private static TimeSeriesBuffer withGlitch(TimeSeriesBuffer samples, int at) {
+        samples.setValueAt(at, 0f);
+        return samples;
+    }
+
+    @Test
+    public void liveStreamFlagsAGlitch() {
+        SuspectReadings suspects = new SuspectReadings(ReadingSeries.TEMPERATURE);
+        TimeSeriesBuffer clean = new TimeSeriesBuffer();
+        TimeSeriesBuffer suspect = new TimeSeriesBuffer();
+        suspects.split("probe", withGlitch(steady(0, 20, 25f), 12), clean, suspect);
+
+        assertEquals(1, suspect.size());
+        assertEquals(12 * STEP_MS, suspect.timeAt(0));
+        assertEquals(19, clean.size());
+    }
+
+    @Test
+    public void olderPageIsJudgedAgainstTheReadingsAfterIt() {
+        SuspectReadings suspects = new SuspectReadings(ReadingSeries.TEMPERATURE);
+        long liveStart = 100 * STEP_MS;
+        TimeSeriesBuffer known = new TimeSeriesBuffer();
+        suspects.split("probe", steady(liveStart, 20, 25f), known, known, new TimeSeriesBuffer());
+
+        // Glitches at both ends of the page, where a fresh filter has no history
+        TimeSeriesBuffer page = withGlitch(withGlitch(steady(liveStart - 10 * STEP_MS, 10, 25f), 0), 9);
+        TimeSeriesBuffer clean = new TimeSeriesBuffer();
+        TimeSeriesBuffer suspect = new TimeSeriesBuffer();
+        suspects.split("probe", page, known, clean, suspect);
+
+        assertEquals(2, suspect.size());
+        assertEquals(page.timeAt(0), suspect.timeAt(0));
+        assertEquals(page.timeAt(9), suspect.timeAt(1));
+        assertEquals(8, clean.size());
+        // Output stays in time order
+        for (int i = 1; i < clean.size(); i++) {
+            assertTrue(clean.timeAt(i) > clean.timeAt(i - 1));
+        }
+    }
+
+    @Test
+    public void lateRunIsJudgedAgainstTheReadingsBeforeIt() {
+        SuspectReadings suspects = new SuspectReadings(ReadingSeries.TEMPERATURE);
+        TimeSeriesBuffer known = steady(0, 40, 25f);
+        suspects.split("probe", known, null, new TimeSeriesBuffer(), new TimeSeriesBuffer());
+
+        TimeSeriesBuffer late = new TimeSeriesBuffer();
+        late.append(20 * STEP_MS + 1, 0f);
+        late.append(21 * STEP_MS + 1, 25f);
+        TimeSeriesBuffer clean = new TimeSeriesBuffer();
+        TimeSeriesBuffer suspect = new TimeSeriesBuffer();
+        suspects.split("probe", late, known, clean, suspect);
+
+        assertEquals(1, suspect.size());
+        assertEquals(0f, suspect.valueAt(0), 0f);
+        assertEquals(1, clean.size());
+    }
+
+    @Test
+    public void realChangeOfLevelPassesOnceItLasts() {
+        SuspectReadings suspects = new SuspectReadings(ReadingSeries.TEMPERATURE);
+        TimeSeriesBuffer samples = steady(0, 20, 25f);
+        samples.merge(steady(20 * STEP_MS, 20, 29f));
+        TimeSeriesBuffer clean = new TimeSeriesBuffer();
+        TimeSeriesBuffer suspect = new TimeSeriesBuffer();
+        suspects.split("probe", samples, clean, suspect);
+
+        assertTrue(suspect.size() <= HampelFilter.WINDOW / 2 + 1);
+        assertEquals(29f, clean.valueAt(clean.size() - 1), 0.2f);
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.kombuchaapp.readings;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TimeSeriesBufferTest {
+
+    private static TimeSeriesBuffer of(long... times) {
+        TimeSeriesBuffer series = new TimeSeriesBuffer();
+        for (long time : times) {
+            series.append(time, time / 10f);
+        }
+        return series;
+    }
+
+    private static void assertTimes(TimeSeriesBuffer series, long... times) {
+        assertEquals(times.length, series.size());
+        for (int i = 0; i < times.length; i++) {
+            assertEquals("time " + i, times[i], series.timeAt(i));
+        }
+    }
+
+    @Test
+    public void newerSamplesAreAppended() {
+        TimeSeriesBuffer series = of(10, 20, 30);
+
+        assertEquals(3, series.merge(of(30, 40, 50)));
+        assertTimes(series, 10, 20, 30, 30, 40, 50);
+    }
+
+    @Test
+    public void olderSamplesAreMergedInPlace() {
+        TimeSeriesBuffer series = of(10, 20, 30, 40);
+
+        assertEquals(1, series.merge(of(15, 35, 45)));
+        assertTimes(series, 10, 15, 20, 30, 35, 40, 45);
+        for (int i = 0; i < series.size(); i++) {
+            assertEquals(series.timeAt(i) / 10f, series.valueAt(i), 0f);
+        }
+    }
+
+    @Test
+    public void samplesAtTheSameTimeGoAfterTheOnesAlreadyThere() {
+        TimeSeriesBuffer series = of(10, 20, 30);
+        TimeSeriesBuffer late = new TimeSeriesBuffer();
+        late.append(20, -1f);
+
+        assertEquals(2, series.merge(late));
+        assertTimes(series, 10, 20, 20, 30);
+        assertEquals(2f, series.valueAt(1), 0f);
+        assertEquals(-1f, series.valueAt(2), 0f);
+    }
+
+    @Test
+    public void mergesOnlyTheGivenRange() {
+        TimeSeriesBuffer series = of(10, 50);
+
+        assertEquals(1, series.merge(of(0, 20, 30, 60), 1, 3));
+        assertTimes(series, 10, 20, 30, 50);
+        assertEquals(4, series.merge(of(5), 0, 0));
+        assertTimes(series, 10, 20, 30, 50);
+    }
+
+    @Test
+    public void mergeIntoEmptyAndBeforeEverything() {
+        TimeSeriesBuffer series = new TimeSeriesBuffer();
+        assertEquals(0, series.merge(of(10, 20)));
+        assertEquals(0, series.merge(of(1, 2)));
+        assertTimes(series, 1, 2, 10, 20);
+    }
+
+    @Test
+    public void keepsTheFirstSampleAtEachTime() {
+        TimeSeriesBuffer series = new TimeSeriesBuffer();
+        series.append(10, 1f);
+        series.append(10, 2f);
+        series.append(20, Float.NaN);
+        series.append(30, 3f);
+        series.append(30, 3f);
+        series.append(30, 4f);
+
+        assertEquals(3, series.dropRepeatedTimes());
+        assertTimes(series, 10, 20, 30);
+        assertEquals(1f, series.valueAt(0), 0f);
+        assertTrue(Float.isNaN(series.valueAt(1)));
+        assertEquals(3f, series.valueAt(2), 0f);
+        assertEquals(0, series.dropRepeatedTimes());
+        assertEquals(0, new TimeSeriesBuffer().dropRepeatedTimes());
+    }
+
+    @Test
+    public void randomMergesStaySorted() {
+        Random random = new Random(3);
+        TimeSeriesBuffer series = new TimeSeriesBuffer();
+        int expected = 0;
+        for (int round = 0; round < 200; round++) {
+            int count = random.nextInt(20);
+            long[] times = new long[count];
+            long time = random.nextInt(10_000);
+            for (int i = 0; i < count; i++) {
+                time += random.nextInt(50);
+                times[i] = time;
+            }
+            long[] before = new long[series.size()];
+            for (int i = 0; i < before.length; i++) {
+                before[i] = series.timeAt(i);
+            }
+            int firstChanged = series.merge(of(times));
+
+            expected += count;
+            assertEquals(expected, series.size());
+            assertTrue(firstChanged <= before.length);
+            // Nothing before firstChanged moved
+            for (int i = 0; i < firstChanged; i++) {
+                assertEquals(before[i], series.timeAt(i));
+            }
+        }
+        for (int i = 1; i < series.size(); i++) {
+            assertTrue(series.timeAt(i - 1) <= series.timeAt(i));
+        }
+    }
+}
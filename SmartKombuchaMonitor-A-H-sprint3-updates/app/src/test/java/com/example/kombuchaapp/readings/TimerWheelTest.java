@@ -0,0 +1,118 @@
+package com.example.kombuchaapp.readings;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TimerWheelTest {
+
+    private static final long TICK_MS = 1000;
+
+    private static List<String> advance(TimerWheel<String> wheel, long nowMs) {
+        List<String> expired = new ArrayList<>();
+        wheel.advance(nowMs, expired);
+        Collections.sort(expired);
+        return expired;
+    }
+
+    @Test
+    public void firesAtTheDeadlineAndNotBefore() {
+        TimerWheel<String> wheel = new TimerWheel<>(TICK_MS, 8, 0);
+        wheel.schedule("a", 2500);
+
+        assertTrue(advance(wheel, 2499).isEmpty());
+        assertEquals(Collections.singletonList("a"), advance(wheel, 2500));
+        assertFalse(wheel.contains("a"));
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    public void rescheduleAndCancel() {
+        TimerWheel<String> wheel = new TimerWheel<>(TICK_MS, 8, 0);
+        wheel.schedule("a", 1000);
+        wheel.schedule("b", 1000);
+        wheel.schedule("a", 5000);
+        wheel.cancel("b");
+
+        assertEquals(1, wheel.size());
+        assertTrue(advance(wheel, 4999).isEmpty());
+        assertEquals(Collections.singletonList("a"), advance(wheel, 5000));
+    }
+
+    @Test
+    public void deadlinesBeyondOneTurnWaitForTheirTurn() {
+        TimerWheel<String> wheel = new TimerWheel<>(TICK_MS, 4, 0);
+        // Same slot as tick 1, three turns later
+        wheel.schedule("far", 13_000);
+        wheel.schedule("near", 1000);
+
+        assertEquals(Collections.singletonList("near"), advance(wheel, 1000));
+        for (long now = 2000; now < 13_000; now += TICK_MS) {
+            assertTrue(advance(wheel, now).isEmpty());
+        }
+        assertEquals(Collections.singletonList("far"), advance(wheel, 13_000));
+    }
+
+    @Test
+    public void longPauseAndPastDeadlinesFireOnTheNextAdvance() {
+        TimerWheel<String> wheel = new TimerWheel<>(TICK_MS, 4, 10_000);
+        wheel.schedule("past", 0);
+        wheel.schedule("soon", 11_000);
+        wheel.schedule("later", 30_000);
+
+        assertEquals(Arrays.asList("later", "past", "soon"), advance(wheel, 1_000_000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void slotCountMustBeAPowerOfTwo() {
+        new TimerWheel<String>(TICK_MS, 6, 0);
+    }
+
+    // Against a plain map: every advance expires exactly the keys due by then
+    @Test
+    public void matchesAMapUnderRandomScheduling() {
+        Random random = new Random(9);
+        long now = 123_456;
+        TimerWheel<String> wheel = new TimerWheel<>(TICK_MS, 16, now);
+        Map<String, Long> deadlines = new HashMap<>();
+
+        for (int step = 0; step < 20_000; step++) {
+            String key = "k" + random.nextInt(100);
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1:
+                    long deadline = now - 5000 + random.nextInt(60_000);
+                    wheel.schedule(key, deadline);
+                    deadlines.put(key, deadline);
+                    break;
+                case 2:
+                    wheel.cancel(key);
+                    deadlines.remove(key);
+                    break;
+                default:
+                    now += random.nextInt(3) == 0 ? random.nextInt(40_000) : random.nextInt(1500);
+                    List<String> expected = new ArrayList<>();
+                    Iterator<Map.Entry<String, Long>> it = deadlines.entrySet().iterator();
+                    while (it.hasNext()) {
+                        Map.Entry<String, Long> e = it.next();
+                        if (e.getValue() <= now) {
+                            expected.add(e.getKey());
+                            it.remove();
+                        }
+                    }
+                    Collections.sort(expected);
+                    assertEquals("step " + step, expected, advance(wheel, now));
+            }
+            assertEquals(deadlines.size(), wheel.size());
+        }
+    }
+}
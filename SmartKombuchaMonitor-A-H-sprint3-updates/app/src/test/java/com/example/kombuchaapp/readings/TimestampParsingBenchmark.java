@@ -0,0 +1,135 @@
+package com.example.kombuchaapp.readings;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Microbenchmark for the chart's timestamp hot path: TimestampParser and
+ * MinuteLabelCache against the SimpleDateFormat parse/format they replaced.
+ * Also checks that both paths agree, including across a DST change.
+ *
+ * The timing run is skipped in the normal unit-test run. Run it with
+ * ./gradlew testDebugUnitTest -Pbenchmark=true --tests '*TimestampParsingBenchmark'
+ * and look at the printed ns/op numbers.
+ */
+public class TimestampParsingBenchmark {
+
+    private static final TimeZone ZONE = TimeZone.getTimeZone("America/New_York");
+    private static final int READINGS = 20_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+
+    // One reading every 30s, starting just before the 2024 spring-forward change
+    private static String[] sampleTimestamps() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+        format.setTimeZone(ZONE);
+        long start = 1710050400000L; // 2024-03-10 01:00 EST
+        String[] timestamps = new String[READINGS];
+        for (int i = 0; i < READINGS; i++) {
+            timestamps[i] = format.format(new Date(start + i * 30_000L));
+        }
+        return timestamps;
+    }
+
+    @Test
+    public void parserMatchesSimpleDateFormat() throws ParseException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+        format.setTimeZone(ZONE);
+        TimestampParser parser = new TimestampParser(ZONE);
+
+        for (String timestamp : sampleTimestamps()) {
+            assertEquals(timestamp, format.parse(timestamp).getTime(), parser.parse(timestamp));
+        }
+        // Also a leap day and a fall-back hour
+        for (String timestamp : new String[]{"2024-02-29 12:00:00", "2024-11-03 01:30:00", "1999-12-31 23:59:59"}) {
+            assertEquals(timestamp, format.parse(timestamp).getTime(), parser.parse(timestamp));
+        }
+    }
+
+    @Test
+    public void parserRejectsMalformedInput() {
+        TimestampParser parser = new TimestampParser(ZONE);
+        assertEquals(-1, parser.parse(null));
+        assertEquals(-1, parser.parse(""));
+        assertEquals(-1, parser.parse("2024-03-10T01:00:00"));
+        assertEquals(-1, parser.parse("2024-13-10 01:00:00"));
+        assertEquals(-1, parser.parse("2023-02-29 01:00:00"));
+        assertEquals(-1, parser.parse("2024-03-10 01:6x:00"));
+    }
+
+    @Test
+    public void labelsMatchSimpleDateFormat() {
+        SimpleDateFormat format = new SimpleDateFormat("MM/dd HH:mm", Locale.US);
+        format.setTimeZone(ZONE);
+        MinuteLabelCache labels = new MinuteLabelCache(ZONE);
+        TimestampParser parser = new TimestampParser(ZONE);
+
+        for (String timestamp : sampleTimestamps()) {
+            long timeMs = parser.parse(timestamp);
+            assertEquals(format.format(new Date(timeMs)), labels.label(timeMs));
+        }
+    }
+
+    @Test
+    public void benchmark() throws ParseException {
+        assumeTrue("opt-in, see the class comment", Boolean.getBoolean("benchmark"));
+        String[] timestamps = sampleTimestamps();
+
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += simpleDateFormatRound(timestamps);
+            sink += fastPathRound(timestamps);
+        }
+
+        long slowNs = 0;
+        long fastNs = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += simpleDateFormatRound(timestamps);
+            slowNs += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += fastPathRound(timestamps);
+            fastNs += System.nanoTime() - start;
+        }
+
+        double ops = (double) READINGS * MEASURED_ROUNDS;
+        System.out.printf(Locale.US, "SimpleDateFormat parse+format: %.1f ns/op%n", slowNs / ops);
+        System.out.printf(Locale.US, "TimestampParser+MinuteLabelCache: %.1f ns/op%n", fastNs / ops);
+        System.out.printf(Locale.US, "speedup: %.1fx%n", (double) slowNs / fastNs);
+        assertNotEquals(0, sink);
+    }
+
+    // What ReadingsChart used to do per reading: two formats, parse then format
+    private static long simpleDateFormatRound(String[] timestamps) throws ParseException {
+        SimpleDateFormat inputFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+        SimpleDateFormat outputFormat = new SimpleDateFormat("MM/dd HH:mm", Locale.US);
+        inputFormat.setTimeZone(ZONE);
+        outputFormat.setTimeZone(ZONE);
+        long sink = 0;
+        for (String timestamp : timestamps) {
+            Date date = inputFormat.parse(timestamp);
+            sink += date.getTime() + outputFormat.format(date).length();
+        }
+        return sink;
+    }
+
+    private static long fastPathRound(String[] timestamps) {
+        TimestampParser parser = new TimestampParser(ZONE);
+        MinuteLabelCache labels = new MinuteLabelCache(ZONE);
+        long sink = 0;
+        for (String timestamp : timestamps) {
+            long timeMs = parser.parse(timestamp);
+            sink += timeMs + labels.label(timeMs).length();
+        }
+        return sink;
+    }
+}
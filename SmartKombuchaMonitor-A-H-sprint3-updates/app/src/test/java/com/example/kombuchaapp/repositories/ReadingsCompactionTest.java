@@ -0,0 +1,29 @@
+package com.example.kombuchaapp.repositories;
+
+import com.example.kombuchaapp.readings.TimeSeriesBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReadingsCompactionTest {
+
+    private static TimeSeriesBuffer samples(Object... timesAndValues) {
+        TimeSeriesBuffer samples = new TimeSeriesBuffer();
+        for (int i = 0; i < timesAndValues.length; i += 2) {
+            samples.append(((Number) timesAndValues[i]).longValue(), (Float) timesAndValues[i + 1]);
+        }
+        return samples;
+    }
+
+    @Test
+    public void sameSamplesComparesTimesAndRawBits() {
+        TimeSeriesBuffer series = samples(1000, 20f, 2000, Float.NaN);
+
+        assertTrue(ReadingsCompaction.sameSamples(series, samples(1000, 20f, 2000, Float.NaN)));
+        assertFalse(ReadingsCompaction.sameSamples(series, samples(1000, 20f)));
+        assertFalse(ReadingsCompaction.sameSamples(series, samples(1001, 20f, 2000, Float.NaN)));
+        assertFalse(ReadingsCompaction.sameSamples(series, samples(1000, 20.000002f, 2000, Float.NaN)));
+        assertFalse(ReadingsCompaction.sameSamples(samples(1000, 0f), samples(1000, -0.0f)));
+    }
+}